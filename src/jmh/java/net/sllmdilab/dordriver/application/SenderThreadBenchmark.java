@@ -0,0 +1,79 @@
+package net.sllmdilab.dordriver.application;
+
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import ca.uhn.hl7v2.DefaultHapiContext;
+import ca.uhn.hl7v2.HL7Exception;
+import ca.uhn.hl7v2.model.v26.message.ORU_R01;
+import ca.uhn.hl7v2.parser.CanonicalModelClassFactory;
+import ca.uhn.hl7v2.parser.PipeParser;
+
+/**
+ * The send path of messages that are not compiled: parse, shift timestamps and encode with HAPI.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SenderThreadBenchmark {
+
+	//@formatter:off
+	static final String MESSAGE = "MSH|^~\\&|SendingApplication|SendingFacility|ReceivingApplication|ReceivingFacility|20120530112345||ORU^R01^ORU_R01|9879790004|P|2.6|||NE|AL|USA|ASCII|EN^English^ISO639||IHE_PCD_ORU_R01^IHE PCD^1.3.6.1.4.1.19376.1.6.1.1.1^ISO\r"+
+			"PID|||010101-2425||Doe^John^^^^^B\r"+
+			"PV1||I|ICU^2^23\r"+
+			"OBR|2||XXX|WAVEFORM|||20150615145531.000|20150615145532.000\r"+
+			"OBX|1000||69965^MDC_DEV_MON_PHYSIO_MULTI_PARAM_MDS^MDC|1.0.0.0||||F||||||||||ABC123\r"+
+			"OBX|1001|NA|131329^MDC_ECG_LEAD_I^MDC|1.1.1.1001|0.0^0.029039286658642516^0.05797^0.08668^0.11514^0.14329^0.17105^0.19837|266418^MDC_DIM_MILLI_VOLT^MDC||||||||20150615145531.000\r"+
+			"OBX|1002|NM|0^MDC_ATTR_SAMP_RATE^MDC|1.1.1.1001.1|256.0|264608^MDC_DIM_PER_SEC\r"+
+			"OBX|1003|NR|0^MDC_ATTR_DATA_RANGE^MDC|1.1.1.1001.2|-0.9999728924443673^0.9999969880372782||\r"+
+			"OBR|3||XXX|1234^CONTINUOUS_WAVEFORM^YYY|||20150615145531.000|20150615145532.000\r"+
+			"OBX|1013||69965^MDC_DEV_MON_PHYSIO_MULTI_PARAM_MDS^MDC|1.0.0.0||||F||||||||||ABC123\r"+
+			"OBX|1014|NA|150456^MDC_PULS_OXIM_SAT_O2_WAVEFORM^MDC|1.1.1.1004|0.0^0.029039286658642516^0.05797^0.08668|262688^MDC_DIM_PERCENT^MDC||||||||20150615145531.000\r"+
+			"OBX|1015|NM|0^MDC_ATTR_SAMP_RATE^MDC|1.1.1.1004.1|256.0|264608^MDC_DIM_PER_SEC\r";
+	//@formatter:on
+
+	private SenderThread senderThread;
+	private PipeParser parser;
+	private ORU_R01 message;
+
+	@Setup
+	public void setup() throws HL7Exception {
+		senderThread = new SenderThread("localhost", 2575, Collections.singletonList(MESSAGE), 1, 0,
+				new SenderThreadResult());
+		parser = new DefaultHapiContext(new CanonicalModelClassFactory("2.6")).getPipeParser();
+		message = senderThread.parseOruMessage(MESSAGE);
+	}
+
+	@Benchmark
+	public ORU_R01 parseOruMessage() throws HL7Exception {
+		return senderThread.parseOruMessage(MESSAGE);
+	}
+
+	/**
+	 * Shifts the timestamps of the same message over and over, every call moves them one second further.
+	 */
+	@Benchmark
+	public ORU_R01 injectTimestampsForMessage() throws HL7Exception {
+		senderThread.injectTimestampsForMessage(message, 1000);
+		return message;
+	}
+
+	@Benchmark
+	public String encodeMessage() throws HL7Exception {
+		return parser.encode(message);
+	}
+}
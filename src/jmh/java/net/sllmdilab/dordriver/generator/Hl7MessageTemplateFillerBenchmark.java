@@ -0,0 +1,135 @@
+package net.sllmdilab.dordriver.generator;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.TimeZone;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Filling the bundled waveform template, compiled on every fill or once up front, and loading waveform data from CSV,
+ * at several sample rates and file sizes.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class Hl7MessageTemplateFillerBenchmark {
+	private static final String TEMPLATE = "/HL7-waveform-tmpl.hl7";
+	private static final long MESSAGE_TIME_FRAME_MILLIS = 3000;
+	private static final double PULSE_RATE = 70;
+	private static final int CSV_SAMPLE_RATE = 250;
+
+	@State(Scope.Thread)
+	public static class FilledTemplate {
+		@Param({ "128", "512" })
+		private double sampleRate;
+
+		private final Hl7MessageTemplateFiller filler = new Hl7MessageTemplateFiller();
+		private String template;
+		private CompiledTemplate compiledTemplate;
+		private Map<String, String> values;
+
+		@Setup
+		public void setup() throws IOException {
+			template = readTemplate();
+			WaveFormDataFactory factory = new WaveFormDataFactory();
+			values = filler.setupKeyReplacements(createWaveFormData(factory, WaveFormType.ECG1),
+					createWaveFormData(factory, WaveFormType.SAT), createWaveFormData(factory, WaveFormType.ABP));
+			compiledTemplate = CompiledTemplate.compile(template, values.keySet(), "the generated wave form data");
+		}
+
+		private WaveFormData createWaveFormData(WaveFormDataFactory factory, WaveFormType type) {
+			return factory.createRandomWaveFormData(type, sampleRate, MESSAGE_TIME_FRAME_MILLIS, PULSE_RATE,
+					WaveFormModel.SIN);
+		}
+	}
+
+	@State(Scope.Thread)
+	public static class CsvFile {
+		@Param({ "1000", "10000" })
+		private int rows;
+
+		private final Hl7MessageTemplateFiller filler = new Hl7MessageTemplateFiller();
+		private File file;
+
+		@Setup
+		public void setup() throws IOException {
+			file = writeCsv(rows);
+		}
+
+		@TearDown
+		public void tearDown() {
+			file.delete();
+		}
+	}
+
+	@Benchmark
+	public String fillTemplate(FilledTemplate state) {
+		return state.filler.fillTemplate(state.template, state.values);
+	}
+
+	@Benchmark
+	public String fillCompiledTemplate(FilledTemplate state) {
+		return state.compiledTemplate.fill(state.values);
+	}
+
+	@Benchmark
+	public List<Map<String, String>> loadWaveFormData(CsvFile state) throws IOException {
+		return state.filler.loadWaveFormData(state.file.getPath());
+	}
+
+	private static String readTemplate() throws IOException {
+		StringBuilder sb = new StringBuilder();
+		try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+				Hl7MessageTemplateFillerBenchmark.class.getResourceAsStream(TEMPLATE), StandardCharsets.ISO_8859_1))) {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				sb.append(line).append('\n');
+			}
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * Writes an ECG and saturation sine in the format of the sample files.
+	 */
+	private static File writeCsv(int rows) throws IOException {
+		File file = File.createTempFile("waveform", ".csv");
+		SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSS");
+		format.setTimeZone(TimeZone.getTimeZone("UTC"));
+		long startMillis = 1420910440960L;
+
+		try (PrintWriter writer = new PrintWriter(file, "ISO-8859-1")) {
+			writer.println("TIMESTAMP,SAMPLES_ECG1,SAMPLES_SAT,RATE_ECG1,RATE_SAT");
+			for (int i = 0; i < rows; ++i) {
+				String timestamp = format.format(new Date(startMillis + i * 1000L / CSV_SAMPLE_RATE));
+				double x = 2 * Math.PI * i / CSV_SAMPLE_RATE;
+				writer.print("'" + timestamp + "'," + Math.sin(x) + "," + (2.5 + Math.cos(x) / 10));
+				writer.println(i == 0 ? "," + CSV_SAMPLE_RATE + "," + CSV_SAMPLE_RATE : ",,");
+			}
+		}
+		return file;
+	}
+}
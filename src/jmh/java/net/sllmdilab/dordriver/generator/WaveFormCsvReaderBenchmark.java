@@ -0,0 +1,126 @@
+package net.sllmdilab.dordriver.generator;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.text.DateFormat;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.List;
+import java.util.TimeZone;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import net.sllmdilab.commons.util.Constants;
+
+import org.apache.commons.lang.StringUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Reading a four lead, 500 Hz waveform data file of about {@code sizeMb} MB, emptying the table every message time
+ * frame as the template filler does. {@code splitLines} is the former way of reading the rows, kept here as the
+ * baseline.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx512m")
+public class WaveFormCsvReaderBenchmark {
+	private static final int SAMPLE_RATE = 500;
+	private static final int ROWS_PER_MESSAGE = 3 * SAMPLE_RATE;
+	private static final String[] KEYS = { "TIMESTAMP", "SAMPLES_ECG1", "SAMPLES_ECG2", "SAMPLES_SAT", "SAMPLES_ABP",
+			"RATE_ECG1" };
+
+	@Param({ "100" })
+	private int sizeMb;
+
+	private File file;
+
+	@Setup
+	public void setup() throws IOException {
+		file = File.createTempFile("waveform", ".csv");
+		SimpleDateFormat format = new SimpleDateFormat(Constants.ISO_DATE_FORMAT);
+		format.setTimeZone(TimeZone.getTimeZone("UTC"));
+		long startMillis = 1420910440960L;
+
+		try (BufferedWriter writer = new BufferedWriter(new FileWriter(file))) {
+			writer.write("'" + StringUtils.join(KEYS, "','") + "'\n");
+			for (int i = 0; file.length() < sizeMb * 1024L * 1024L; ++i) {
+				double x = 2 * Math.PI * i / SAMPLE_RATE;
+				writer.write("'" + format.format(startMillis + i * 1000L / SAMPLE_RATE) + "'," + round(Math.sin(x))
+						+ "," + round(Math.sin(x + 1)) + "," + round(97 + Math.cos(x)) + "," + round(90 + 30 * Math.sin(x)));
+				writer.write(i == 0 ? "," + SAMPLE_RATE + "\n" : "\n");
+				if (i % 100000 == 0) {
+					writer.flush();
+				}
+			}
+		}
+	}
+
+	@TearDown
+	public void tearDown() {
+		file.delete();
+	}
+
+	@Benchmark
+	public int tokenizer() throws IOException {
+		WaveFormTable table = new WaveFormTable();
+		int rows = 0;
+		try (WaveFormCsvReader reader = new WaveFormCsvReader(new FileReader(file))) {
+			reader.readHeader();
+			while (reader.readRow(table)) {
+				rows = nextRow(table, rows);
+			}
+		}
+		return rows;
+	}
+
+	@Benchmark
+	public int splitLines() throws IOException, ParseException {
+		WaveFormTable table = new WaveFormTable();
+		int rows = 0;
+		try (BufferedReader reader = new BufferedReader(new FileReader(file))) {
+			List<String> keys = Stream.of(reader.readLine().split(",")).map(s -> StringUtils.strip(s, "'"))
+					.collect(Collectors.toList());
+			String line;
+			while ((line = reader.readLine()) != null) {
+				String[] data = line.split(",");
+				DateFormat df = new SimpleDateFormat(Constants.ISO_DATE_FORMAT);
+				table.addTimestamp(df.parse(StringUtils.strip(data[0], "'")).getTime());
+				for (int idx = 1; idx < data.length; idx++) {
+					table.getColumn(keys.get(idx)).add(Double.parseDouble(StringUtils.strip(data[idx], "'")));
+				}
+				rows = nextRow(table, rows);
+			}
+		}
+		return rows;
+	}
+
+	private static int nextRow(WaveFormTable table, int rows) {
+		if (table.getRows() == ROWS_PER_MESSAGE) {
+			table.clear();
+		}
+		return rows + 1;
+	}
+
+	private static String round(double value) {
+		return Double.toString(Math.round(value * 1000) / 1000.0);
+	}
+}
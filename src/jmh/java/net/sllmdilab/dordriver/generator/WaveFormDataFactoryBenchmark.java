@@ -0,0 +1,39 @@
+package net.sllmdilab.dordriver.generator;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Generating the samples of one message time frame, 3 seconds, at typical waveform sample rates.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class WaveFormDataFactoryBenchmark {
+	private static final long MESSAGE_TIME_FRAME_MILLIS = 3000;
+	private static final double PULSE_RATE = 70;
+
+	@Param({ "125", "250", "500", "1000" })
+	private double sampleRate;
+
+	private final WaveFormDataFactory factory = new WaveFormDataFactory();
+
+	@Benchmark
+	public WaveFormData createRandomWaveFormData() {
+		return factory.createRandomWaveFormData(WaveFormType.ECG1, sampleRate, MESSAGE_TIME_FRAME_MILLIS,
+				PULSE_RATE, WaveFormModel.SIN);
+	}
+}
@@ -0,0 +1,146 @@
+package net.sllmdilab.dordriver.network;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.GatheringByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import net.sllmdilab.dordriver.message.CompiledMessage;
+import net.sllmdilab.dordriver.message.DeviceIdentity;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import ca.uhn.hl7v2.HL7Exception;
+import ca.uhn.hl7v2.llp.LLPException;
+
+/**
+ * The send path of compiled messages: encoding into an MLLP frame, writing the frame through an
+ * {@link MllpFrameWriter}, and reading and checking the acknowledgement.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MllpBenchmark {
+
+	//@formatter:off
+	private static final String MESSAGE = "MSH|^~\\&|SendingApplication|SendingFacility|ReceivingApplication|ReceivingFacility|20120530112345||ORU^R01^ORU_R01|9879790004|P|2.6|||NE|AL|USA|ASCII|EN^English^ISO639||IHE_PCD_ORU_R01^IHE PCD^1.3.6.1.4.1.19376.1.6.1.1.1^ISO\r"+
+			"PID|||010101-2425||Doe^John^^^^^B\r"+
+			"PV1||I|ICU^2^23\r"+
+			"OBR|2||XXX|WAVEFORM|||20150615145531.000|20150615145532.000\r"+
+			"OBX|1000||69965^MDC_DEV_MON_PHYSIO_MULTI_PARAM_MDS^MDC|1.0.0.0||||F||||||||||ABC123\r"+
+			"OBX|1001|NA|131329^MDC_ECG_LEAD_I^MDC|1.1.1.1001|0.0^0.029039286658642516^0.05797^0.08668^0.11514^0.14329^0.17105^0.19837|266418^MDC_DIM_MILLI_VOLT^MDC||||||||20150615145531.000\r"+
+			"OBX|1002|NM|0^MDC_ATTR_SAMP_RATE^MDC|1.1.1.1001.1|256.0|264608^MDC_DIM_PER_SEC\r"+
+			"OBR|3||XXX|1234^CONTINUOUS_WAVEFORM^YYY|||20150615145531.000|20150615145532.000\r"+
+			"OBX|1014|NA|150456^MDC_PULS_OXIM_SAT_O2_WAVEFORM^MDC|1.1.1.1004|0.0^0.029039286658642516^0.05797^0.08668|262688^MDC_DIM_PERCENT^MDC||||||||20150615145531.000\r";
+	private static final String ACK = "\u000bMSH|^~\\&|DOC|DOC|DOR|DOR|20150615145531||ACK^R01^ACK|9879790004|P|2.6\r"+
+			"MSA|AA|9879790004\r\u001c\r";
+	//@formatter:on
+
+	private static final long OFFSET_MILLIS = 86400000L;
+
+	private CompiledMessage message;
+	private DeviceIdentity deviceIdentity;
+	private byte[] frame;
+	private MllpFrameWriter frameWriter;
+	private MllpFrameReader ackReader;
+	private ByteArrayInputStream ackStream;
+
+	@Setup
+	public void setup() throws HL7Exception {
+		message = CompiledMessage.compile(MESSAGE);
+		deviceIdentity = new DeviceIdentity(42);
+		frame = new byte[message.getMaxEncodedLength() + 3];
+		frameWriter = new MllpFrameWriter(new DiscardingChannel());
+		ackReader = new MllpFrameReader();
+		ackStream = new ByteArrayInputStream(ACK.getBytes(StandardCharsets.ISO_8859_1));
+	}
+
+	@TearDown
+	public void tearDown() {
+		frameWriter.releaseBuffer();
+	}
+
+	@Benchmark
+	public int encodeFrame() {
+		return frame(message.encode(frame, 1, System.currentTimeMillis(), OFFSET_MILLIS, false));
+	}
+
+	@Benchmark
+	public int encodeFrameWithDeviceIdentity() {
+		return frame(message.encode(frame, 1, System.currentTimeMillis(), OFFSET_MILLIS, false, deviceIdentity));
+	}
+
+	/**
+	 * Encodes and writes the message through a pooled direct buffer, as with -z, to a channel that discards it.
+	 */
+	@Benchmark
+	public void writeFrame() throws IOException {
+		int length = message.encode(frame, 0, System.currentTimeMillis(), OFFSET_MILLIS, false);
+		frameWriter.write(frame, 0, length);
+	}
+
+	@Benchmark
+	public void decodeAck(Blackhole blackhole) throws LLPException, IOException {
+		ackStream.reset();
+		int length = ackReader.read(ackStream);
+		byte[] response = ackReader.getBytes();
+		blackhole.consume(AckParser.getAckCode(response, 0, length));
+		blackhole.consume(AckParser.getAcknowledgedControlId(response, 0, length));
+	}
+
+	private int frame(int length) {
+		frame[0] = MllpClient.START_BLOCK;
+		frame[length + 1] = MllpClient.END_BLOCK;
+		frame[length + 2] = MllpClient.CARRIAGE_RETURN;
+		return length + 3;
+	}
+
+	private static class DiscardingChannel implements GatheringByteChannel {
+
+		@Override
+		public long write(ByteBuffer[] srcs, int offset, int length) {
+			long written = 0;
+			for (int i = offset; i < offset + length; ++i) {
+				written += write(srcs[i]);
+			}
+			return written;
+		}
+
+		@Override
+		public long write(ByteBuffer[] srcs) {
+			return write(srcs, 0, srcs.length);
+		}
+
+		@Override
+		public int write(ByteBuffer src) {
+			int remaining = src.remaining();
+			src.position(src.limit());
+			return remaining;
+		}
+
+		@Override
+		public boolean isOpen() {
+			return true;
+		}
+
+		@Override
+		public void close() {
+		}
+	}
+}
@@ -1,30 +1,65 @@
 package net.sllmdilab.dordriver.application;
 
+import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.UnknownHostException;
 import java.util.ArrayList;
-import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
-import net.sllmdilab.dordriver.exeptions.UnsupportedMessageTypeException;
+import net.sllmdilab.dordriver.exeptions.DorDriverException;
+import net.sllmdilab.dordriver.message.DeviceIdentity;
+import net.sllmdilab.dordriver.message.Hl7MessageReader;
+import net.sllmdilab.dordriver.message.MessageCorpus;
+import net.sllmdilab.dordriver.message.MessageIndex;
+import net.sllmdilab.dordriver.message.StreamingMessageSource;
+import net.sllmdilab.dordriver.metrics.LatencyIntervalLog;
+import net.sllmdilab.dordriver.metrics.LiveMetrics;
+import net.sllmdilab.dordriver.metrics.PrometheusEndpoint;
+import net.sllmdilab.dordriver.mock.MockDocServer;
+import net.sllmdilab.dordriver.network.BalancingPolicy;
+import net.sllmdilab.dordriver.network.ConnectionManager;
+import net.sllmdilab.dordriver.network.ConnectionPool;
+import net.sllmdilab.dordriver.network.Endpoint;
+import net.sllmdilab.dordriver.network.LoadBalancer;
+import net.sllmdilab.dordriver.network.ReconnectBackoff;
+import net.sllmdilab.dordriver.network.SelectorLoop;
 
+import org.HdrHistogram.Histogram;
+import org.apache.commons.cli.CommandLine;
+import org.apache.commons.cli.DefaultParser;
+import org.apache.commons.cli.HelpFormatter;
+import org.apache.commons.cli.Options;
+import org.apache.commons.cli.ParseException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import ca.uhn.hl7v2.DefaultHapiContext;
 import ca.uhn.hl7v2.HL7Exception;
-import ca.uhn.hl7v2.HapiContext;
 import ca.uhn.hl7v2.llp.LLPException;
-import ca.uhn.hl7v2.model.v26.message.ORU_R01;
-import ca.uhn.hl7v2.parser.CanonicalModelClassFactory;
-import ca.uhn.hl7v2.parser.PipeParser;
-import ca.uhn.hl7v2.util.Hl7InputStreamMessageStringIterator;
 
 public class DorDriverApplication implements Runnable {
 	private static Logger logger = LoggerFactory.getLogger(DorDriverApplication.class);
 
+	private static final String TRANSPORT_BLOCKING = "blocking";
+	private static final String TRANSPORT_NIO = "nio";
+	private static final String EXECUTOR_PLATFORM = "platform";
+	private static final String EXECUTOR_VIRTUAL = "virtual";
+	private static final String ORU_R01_MESSAGE_TYPE = "ORU^R01";
+	private static final int STREAM_QUEUE_CAPACITY = 1000;
+	private static final String USAGE = "host[,host[:port]...] port inputfile [number of messages] [delay in milliseconds] [number of threads]";
+
 	private Integer numMessages = 1;
 	private Long millisDelay = 0L;
 	private String inputFileName;
@@ -33,6 +68,46 @@ public class DorDriverApplication implements Runnable {
 	private String destAddress;
 	private Integer destPort;
 	private boolean keepOriginalTimestamp = false; // Default
+	private boolean compiled = false;
+	private int inFlightWindow = 1;
+	private String transport = TRANSPORT_BLOCKING;
+	private int numSelectors = Runtime.getRuntime().availableProcessors();
+	private String executor = EXECUTOR_PLATFORM;
+	private MissedDeadlinePolicy missedDeadlinePolicy = MissedDeadlinePolicy.LOG;
+	private Double ratePerSecond;
+	private String latencyLogFileName;
+	private long intervalMillis = 1000;
+	private boolean logProgress = false;
+	private Integer metricsPort;
+	private LiveMetrics metrics;
+	private boolean stream = false;
+	private long maxStreamMessages = Long.MAX_VALUE;
+	private boolean indexed = false;
+	private boolean spread = false;
+	private boolean directBuffers = false;
+	private boolean rawAcks = false;
+	private boolean uniqueDevices = false;
+	private long initialBackoffMillis = ReconnectBackoff.DEFAULT_INITIAL_DELAY_MILLIS;
+	private long maxBackoffMillis = ReconnectBackoff.DEFAULT_MAX_DELAY_MILLIS;
+	private int maxConnectAttempts = ConnectionManager.DEFAULT_MAX_ATTEMPTS;
+	private Integer poolSize;
+	private ConnectionPool connectionPool;
+	private BalancingPolicy balancingPolicy = BalancingPolicy.ROUND_ROBIN;
+	private LoadBalancer loadBalancer;
+	private Integer workerPort;
+	private InetAddress workerAddress;
+	private String workers;
+	private List<String> messages;
+	private int firstDeviceNumber = 0;
+	private CountDownLatch preparedSignal;
+	private CountDownLatch startSignal;
+	private long wallClockMillis;
+	private Histogram ackLatencyHistogram = new Histogram(LatencyIntervalLog.SIGNIFICANT_DIGITS);
+	private Long mockAckDelayMillis;
+	private double mockErrorRate;
+	private double mockRejectRate;
+	private double mockDropRate;
+	private List<EndpointResult> endpointResults = new ArrayList<>();
 
 	public static void main(String[] args) throws HL7Exception, LLPException, IOException, InterruptedException {
 		(new DorDriverApplication()).readAndSendMessages(args);
@@ -57,49 +132,223 @@ public class DorDriverApplication implements Runnable {
 		this.keepOriginalTimestamp = keepOriginalTimestamp;
 	}
 
+	/**
+	 * Reads all ORU^R01 messages of the input. Only MSH-9 is checked, messages are not parsed until they are sent or
+	 * compiled.
+	 */
 	private List<String> readMessages(InputStream inputStream, long numMessages) throws IOException {
-		Iterator<String> it = new Hl7InputStreamMessageStringIterator(inputStream);
-
-		CanonicalModelClassFactory canonicalModelClassFactory = new CanonicalModelClassFactory("2.6");
-		HapiContext hapiContext = new DefaultHapiContext(canonicalModelClassFactory);
-		PipeParser parser = hapiContext.getPipeParser();
-
 		List<String> messageStrings = new ArrayList<>();
 		long messageIndex = 0;
 
-		while (it.hasNext()) {
-			try {
+		try (Hl7MessageReader reader = new Hl7MessageReader(inputStream)) {
+			String messageString;
+			while ((messageString = reader.next()) != null) {
 				logger.debug("Reading message " + messageIndex);
-				String messageString = it.next();
 
-				if (!(parser.parse(messageString) instanceof ORU_R01)) {
-					throw new UnsupportedMessageTypeException("Unsupported message type.");
+				if (ORU_R01_MESSAGE_TYPE.equals(Hl7MessageReader.getMessageType(messageString))) {
+					messageStrings.add(messageString);
+				} else {
+					logger.warn("Unsupported message type in message " + messageIndex + ", skipping it.");
 				}
-
-				messageStrings.add(messageString);
-
-			} catch (HL7Exception | UnsupportedMessageTypeException e) {
-				logger.warn("Error parsing message " + messageIndex + ", skipping it: " + e);
+				++messageIndex;
 			}
-			++messageIndex;
 		}
 
 		return messageStrings;
 	}
 
-	private void parseArgs(String[] args) throws FileNotFoundException {
+	private Options createOptions() {
+		Options options = new Options();
+		options.addOption("c", "compiled", false,
+				"Parse each message once at startup and only splice new timestamps into it on send.");
+		options.addOption("w", "window", true,
+				"Maximum number of unacknowledged messages in flight per connection (default 1).");
+		options.addOption("t", "transport", true, "Transport to use, " + TRANSPORT_BLOCKING + " (default) or "
+				+ TRANSPORT_NIO + ". With " + TRANSPORT_NIO + " each thread is a simulated device on a shared "
+				+ "selector loop and messages are always compiled.");
+		options.addOption("e", "executor", true, "Threads running the senders of the " + TRANSPORT_BLOCKING
+				+ " transport, " + EXECUTOR_PLATFORM + " (default) or " + EXECUTOR_VIRTUAL
+				+ ". Virtual threads require Java 21 or later.");
+		options.addOption("m", "missed-deadlines", true, "What to do when a send is due before the previous one "
+				+ "completed: catch-up sends the missed messages back to back, skip drops them and log (default) "
+				+ "sends late and continues the schedule from there.");
+		options.addOption("r", "rate", true, "Open loop mode: send at a constant total rate across all threads, "
+				+ "e.g. 5000/s or 300/m (a plain number is per second). Overrides the delay and measures latency "
+				+ "from the intended send time. Senders still wait for each acknowledgement unless pipelined with -w.");
+		options.addOption("l", "latency-log", true, "Write the ACK latencies of each interval to this file, as an "
+				+ "HdrHistogram log or, if the name ends with .csv, as one line of percentiles per interval.");
+		options.addOption("i", "interval", true,
+				"Length of a latency log and progress report interval in milliseconds (default 1000).");
+		options.addOption("p", "progress", false, "Log messages sent, failures, reconnects, messages in flight and "
+				+ "ACK latency percentiles every interval while running.");
+		options.addOption("M", "metrics-port", true,
+				"Serve live metrics in Prometheus text format at http://<host>:<port>/metrics while running.");
+		options.addOption("S", "stream", false, "Send the input file once, reading it while sending instead of "
+				+ "loading it into memory. The senders share the messages and [number of messages] limits the total. "
+				+ "Only with the " + TRANSPORT_BLOCKING + " transport.");
+		options.addOption("I", "index", false, "Replay the input file from a memory mapping using an index file "
+				+ "next to it, inputfile" + MessageIndex.INDEX_SUFFIX + ", which is created on first use. Segments of "
+				+ "the input file must be terminated by CR only. Messages are always compiled.");
+		options.addOption("D", "spread", false,
+				"Start each thread at a different message, spread evenly over the input, instead of at the first.");
+		options.addOption("z", "direct-buffers", false, "Write compiled and pipelined messages from pooled direct "
+				+ "buffers with gathering writes instead of through a buffered output stream. Not for messages sent "
+				+ "with HAPI.");
+		options.addOption("a", "raw-acks", false, "Send messages that are not compiled over a plain MLLP connection and "
+				+ "check acknowledgements by scanning MSA-1 instead of parsing them with HAPI.");
+		options.addOption("u", "unique-devices", false, "Make each thread look like a device of its own by appending "
+				+ "-<thread number> to PID-3, the bed of PV1-3 and OBX-18 and making MSH-10 unique. Messages are "
+				+ "always compiled.");
+		options.addOption("b", "backoff", true, "Back-off between failed connection attempts as <initial>[,<max>] "
+				+ "milliseconds (default " + ReconnectBackoff.DEFAULT_INITIAL_DELAY_MILLIS + ","
+				+ ReconnectBackoff.DEFAULT_MAX_DELAY_MILLIS + "). The delay doubles with every failure and is "
+				+ "jittered.");
+		options.addOption("A", "connect-attempts", true, "Connection attempts before giving up, 0 for unlimited "
+				+ "(default " + ConnectionManager.DEFAULT_MAX_ATTEMPTS + "). A thread that never connected stops, "
+				+ "later the message waiting for the connection fails.");
+		options.addOption("P", "pool", true, "Share a pool of this many connections between all threads instead of "
+				+ "a connection per thread. Only with the " + TRANSPORT_BLOCKING + " transport and without -w.");
+		options.addOption("L", "balance", true, "How threads are placed on the endpoints when host is a comma "
+				+ "separated list: round-robin (default), hash on thread number, or least-outstanding messages, "
+				+ "chosen on every connect.");
+		options.addOption("k", "mock-doc", true, "Start a mock DOC in this JVM listening on port, and on the ports "
+				+ "of all endpoints, which must be loopback addresses, acknowledging after <delay>[,<error rate>"
+				+ "[,<reject rate>[,<drop rate>]]]: a delay in milliseconds, the fractions of messages acknowledged "
+				+ "with AE and AR and the fraction on which the connection is dropped instead.");
+		options.addOption("W", "worker", true, "Run as a worker of a distributed run, waiting for jobs from a "
+				+ "coordinator on [address:]port. The address defaults to loopback, give e.g. 0.0.0.0 to accept "
+				+ "coordinators on other hosts. No other arguments are needed, the coordinator passes on its own.");
+		options.addOption("C", "workers", true, "Coordinate a distributed run over these workers, a comma separated "
+				+ "list of host[:port] (default port " + DriverWorker.DEFAULT_PORT + "). The threads and the messages "
+				+ "of the input file are divided between the workers, which start together, and their results are "
+				+ "reported as one run. Not with -S, -I, -l, -M or -k.");
+		options.addOption("s", "selectors", true,
+				"Number of selector loops for the " + TRANSPORT_NIO + " transport (default number of processors).");
+		return options;
+	}
+
+	/**
+	 * @throws ParseException
+	 *             or IllegalArgumentException if an argument is missing or invalid
+	 */
+	private void parseArgs(String[] args) throws ParseException {
+		Options options = createOptions();
+		CommandLine cmd = new DefaultParser().parse(options, args);
+
+		compiled = cmd.hasOption("compiled");
+		if (cmd.hasOption("window")) {
+			inFlightWindow = Integer.parseInt(cmd.getOptionValue("window"));
+		}
+		if (cmd.hasOption("transport")) {
+			transport = cmd.getOptionValue("transport");
+			if (!TRANSPORT_BLOCKING.equals(transport) && !TRANSPORT_NIO.equals(transport)) {
+				throw new ParseException("Unknown transport: " + transport);
+			}
+		}
+		if (cmd.hasOption("executor")) {
+			executor = cmd.getOptionValue("executor");
+			if (!EXECUTOR_PLATFORM.equals(executor) && !EXECUTOR_VIRTUAL.equals(executor)) {
+				throw new ParseException("Unknown executor: " + executor);
+			}
+		}
+		if (cmd.hasOption("missed-deadlines")) {
+			try {
+				missedDeadlinePolicy = MissedDeadlinePolicy.fromString(cmd.getOptionValue("missed-deadlines"));
+			} catch (IllegalArgumentException e) {
+				throw new ParseException("Unknown missed deadline policy: " + cmd.getOptionValue("missed-deadlines"));
+			}
+		}
+		if (cmd.hasOption("rate")) {
+			try {
+				ratePerSecond = parseRate(cmd.getOptionValue("rate"));
+			} catch (IllegalArgumentException e) {
+				throw new ParseException("Invalid rate: " + cmd.getOptionValue("rate"));
+			}
+		}
+		latencyLogFileName = cmd.getOptionValue("latency-log");
+		if (cmd.hasOption("interval")) {
+			intervalMillis = Long.parseLong(cmd.getOptionValue("interval"));
+		}
+		logProgress = cmd.hasOption("progress");
+		if (cmd.hasOption("metrics-port")) {
+			metricsPort = Integer.parseInt(cmd.getOptionValue("metrics-port"));
+		}
+		stream = cmd.hasOption("stream");
+		indexed = cmd.hasOption("index");
+		spread = cmd.hasOption("spread");
+		directBuffers = cmd.hasOption("direct-buffers");
+		rawAcks = cmd.hasOption("raw-acks");
+		uniqueDevices = cmd.hasOption("unique-devices");
+		if (cmd.hasOption("backoff")) {
+			try {
+				String[] parts = cmd.getOptionValue("backoff").split(",");
+				initialBackoffMillis = Long.parseLong(parts[0].trim());
+				if (parts.length > 1) {
+					maxBackoffMillis = Long.parseLong(parts[1].trim());
+				}
+				if (initialBackoffMillis < 0 || maxBackoffMillis < initialBackoffMillis) {
+					throw new IllegalArgumentException();
+				}
+			} catch (IllegalArgumentException e) {
+				throw new ParseException("Invalid back-off: " + cmd.getOptionValue("backoff"));
+			}
+		}
+		if (cmd.hasOption("connect-attempts")) {
+			maxConnectAttempts = Integer.parseInt(cmd.getOptionValue("connect-attempts"));
+		}
+		if (cmd.hasOption("pool")) {
+			poolSize = Integer.parseInt(cmd.getOptionValue("pool"));
+		}
+		if (cmd.hasOption("balance")) {
+			try {
+				balancingPolicy = BalancingPolicy.fromString(cmd.getOptionValue("balance"));
+			} catch (IllegalArgumentException e) {
+				throw new ParseException("Unknown balancing policy: " + cmd.getOptionValue("balance"));
+			}
+		}
+		if (cmd.hasOption("mock-doc")) {
+			try {
+				String[] parts = cmd.getOptionValue("mock-doc").split(",");
+				mockAckDelayMillis = Long.parseLong(parts[0].trim());
+				mockErrorRate = parts.length > 1 ? Double.parseDouble(parts[1].trim()) : 0;
+				mockRejectRate = parts.length > 2 ? Double.parseDouble(parts[2].trim()) : 0;
+				mockDropRate = parts.length > 3 ? Double.parseDouble(parts[3].trim()) : 0;
+				if (parts.length > 4 || mockAckDelayMillis < 0 || mockErrorRate < 0 || mockRejectRate < 0
+						|| mockDropRate < 0 || mockErrorRate + mockRejectRate + mockDropRate > 1) {
+					throw new IllegalArgumentException();
+				}
+			} catch (IllegalArgumentException e) {
+				throw new ParseException("Invalid mock DOC settings: " + cmd.getOptionValue("mock-doc"));
+			}
+		}
+		if (cmd.hasOption("selectors")) {
+			numSelectors = Integer.parseInt(cmd.getOptionValue("selectors"));
+		}
+		workers = cmd.getOptionValue("workers");
+		if (cmd.hasOption("worker")) {
+			String worker = cmd.getOptionValue("worker");
+			int separator = worker.lastIndexOf(':');
+			try {
+				workerAddress = separator < 0 ? InetAddress.getLoopbackAddress() : InetAddress.getByName(worker
+						.substring(0, separator));
+			} catch (UnknownHostException e) {
+				throw new ParseException("Unknown worker address: " + worker);
+			}
+			workerPort = Integer.parseInt(worker.substring(separator + 1));
+			return;
+		}
+		args = cmd.getArgs();
 
 		if (args.length < 3) {
-			printUsage();
-			System.exit(-1);
+			throw new ParseException("Missing host, port or input file.");
 		}
 		destAddress = args[0];
 		destPort = Integer.parseInt(args[1]);
 		inputFileName = args[2];
-		inputStream = new FileInputStream(inputFileName);
 
 		if (args.length > 3) {
 			numMessages = Integer.parseInt(args[3]);
+			maxStreamMessages = numMessages;
 		}
 
 		if (args.length > 4) {
@@ -111,46 +360,426 @@ public class DorDriverApplication implements Runnable {
 		}
 	}
 
-	private void printUsage() {
-		System.out
-				.println("Usage: host port inputfile [number of messages] [delay in milliseconds] [number of threads]");
+	/**
+	 * Parses a rate such as "5000/s", "300/m" or "20/h" into messages per second. A rate without unit is per second.
+	 */
+	static double parseRate(String value) {
+		String[] parts = value.trim().split("/");
+		if (parts.length > 2) {
+			throw new IllegalArgumentException("Invalid rate: " + value);
+		}
+
+		double rate = Double.parseDouble(parts[0]);
+		if (parts.length == 2) {
+			switch (parts[1].trim()) {
+			case "s":
+				break;
+			case "m":
+				rate /= 60;
+				break;
+			case "h":
+				rate /= 3600;
+				break;
+			default:
+				throw new IllegalArgumentException("Unknown rate unit: " + parts[1]);
+			}
+		}
+
+		if (!(rate > 0) || Double.isInfinite(rate)) {
+			throw new IllegalArgumentException("Rate must be positive: " + value);
+		}
+		return rate;
+	}
+
+	private void printUsage(Options options) {
+		new HelpFormatter().printHelp(USAGE, options);
 	}
 
 	private void readAndSendMessages(String[] args) throws HL7Exception, LLPException, InterruptedException,
 			IOException {
-		parseArgs(args);
-		readAndSendMessages();
+		try {
+			parseArgs(args);
+		} catch (ParseException | IllegalArgumentException e) {
+			System.out.println(e.getMessage());
+			printUsage(createOptions());
+			System.exit(-1);
+		}
+		if (workerPort != null) {
+			new DriverWorker(workerAddress, workerPort).serve();
+		} else if (workers != null) {
+			coordinate(args);
+		} else {
+			readAndSendMessages();
+		}
 	}
 
 	private void readAndSendMessages() throws HL7Exception, LLPException, InterruptedException, IOException {
-		List<String> messages = readMessages(inputStream, numMessages);
+		List<SenderThreadResult> results = sendMessages();
+		writeResults(results, ackLatencyHistogram, endpointResults, wallClockMillis);
+	}
+
+	/**
+	 * Runs the senders without reporting their results. The time taken is available from {@link #getWallClockMillis()}
+	 * afterwards.
+	 */
+	List<SenderThreadResult> sendMessages() throws HL7Exception, LLPException, InterruptedException, IOException {
+		boolean useNio = TRANSPORT_NIO.equals(transport);
+		if (stream && useNio) {
+			throw new DorDriverException("Streaming input is not supported by the " + TRANSPORT_NIO + " transport.");
+		}
+
+		if (stream && indexed) {
+			throw new DorDriverException("Streaming input can not be combined with an index.");
+		}
+
+		// Messages sent with HAPI go through its own connection, which has no channel to write direct buffers to
+		if (directBuffers && !useNio && !compiled && !indexed && !stream && !rawAcks && !uniqueDevices
+				&& inFlightWindow <= 1 && poolSize == null) {
+			throw new DorDriverException("Direct buffers are only used for compiled, pipelined, streamed, pooled or "
+					+ "raw acknowledgement sends, add one of -c, -w, -S, -I, -P, -a or -u.");
+		}
+
+		loadBalancer = new LoadBalancer(balancingPolicy, Endpoint.parseList(destAddress, destPort));
+		List<Endpoint> endpoints = loadBalancer.getEndpoints();
+
+		if (poolSize != null && (useNio || inFlightWindow > 1)) {
+			throw new DorDriverException("A connection pool is only supported by the " + TRANSPORT_BLOCKING
+					+ " transport without pipelining.");
+		}
+
+		if (poolSize != null && endpoints.size() > 1) {
+			throw new DorDriverException("A connection pool is only supported with a single endpoint.");
+		}
+
+		List<MockDocServer> mockServers = startMockServers(endpoints);
+		try {
+			return runSenders(useNio, endpoints);
+		} finally {
+			for (MockDocServer mockServer : mockServers) {
+				mockServer.close();
+			}
+		}
+	}
+
+	/**
+	 * Prepares the messages, starts the senders on the endpoints and waits for them to complete.
+	 */
+	private List<SenderThreadResult> runSenders(boolean useNio, List<Endpoint> endpoints) throws HL7Exception,
+			LLPException, InterruptedException, IOException {
+		Endpoint firstEndpoint = endpoints.get(0);
+		MessageCorpus corpus = null;
+		StreamingMessageSource messageSource = null;
+		if (indexed) {
+			if (inputStream != null) {
+				inputStream.close();
+			}
+			corpus = MessageCorpus.of(MessageIndex.open(new File(inputFileName)));
+			logger.info("Mapped " + corpus.size() + " indexed HL7v2 messages.");
+		} else if (stream) {
+			messageSource = new StreamingMessageSource(new Hl7MessageReader(openInputStream()), STREAM_QUEUE_CAPACITY,
+					maxStreamMessages, numThreads);
+			messageSource.start();
+			logger.info("Streaming HL7v2 messages from input stream.");
+		} else {
+			if (messages == null) {
+				messages = readMessages(openInputStream(), numMessages);
+				logger.info("Read " + messages.size() + " HL7v2 messages from input stream.");
+			}
+
+			// Only the form the senders use is kept, see SenderThread
+			if (compiled || uniqueDevices || useNio) {
+				corpus = MessageCorpus.compile(messages);
+				logger.info("Compiled " + corpus.size() + " messages.");
+			} else {
+				corpus = MessageCorpus.analyse(messages);
+				logger.info("Analysed " + corpus.size() + " messages.");
+			}
+		}
+
+		if (ratePerSecond != null) {
+			logger.info("Open loop mode, sending " + ratePerSecond + " messages per second.");
+		}
+
+		if (startSignal != null) {
+			preparedSignal.countDown();
+			startSignal.await();
+		}
+
+		LatencyIntervalLog latencyLog = null;
+		PrometheusEndpoint metricsEndpoint = null;
+		if (logProgress || metricsPort != null || latencyLogFileName != null) {
+			metrics = new LiveMetrics();
+			if (latencyLogFileName != null) {
+				latencyLog = new LatencyIntervalLog(latencyLogFileName);
+				latencyLog.start();
+				metrics.setLatencyLog(latencyLog);
+			}
+			metrics.start(intervalMillis, logProgress);
+			if (metricsPort != null) {
+				metricsEndpoint = new PrometheusEndpoint(metricsPort, metrics);
+				metricsEndpoint.start();
+			}
+		}
+
+		if (poolSize != null) {
+			connectionPool = new ConnectionPool(firstEndpoint.getHost(), firstEndpoint.getPort(), poolSize,
+					directBuffers);
+			logger.info("Sharing " + poolSize + " pooled connections between " + numThreads + " threads.");
+		}
+
+		long startMillis = System.currentTimeMillis();
+		List<SenderThreadResult> results;
+		if (endpoints.size() > 1) {
+			logger.info("Balancing over " + endpoints + ", " + balancingPolicy.toString().toLowerCase() + ".");
+		}
+
+		if (useNio) {
+			logger.info("Starting " + numThreads + " devices on " + numSelectors + " selector loops.");
+
+			results = startAndWaitForDevices(numMessages, millisDelay, numThreads, numSelectors,
+					firstEndpoint.getHost(), firstEndpoint.getPort(), corpus, keepOriginalTimestamp);
+
+			logger.info("All devices completed.");
+		} else if (EXECUTOR_VIRTUAL.equals(executor)) {
+			logger.info("Starting virtual threads.");
+
+			results = startAndWaitForVirtualThreads(numMessages, millisDelay, numThreads, firstEndpoint.getHost(),
+					firstEndpoint.getPort(), corpus, messageSource, inFlightWindow, keepOriginalTimestamp);
+
+			logger.info("All threads completed.");
+		} else {
+			logger.info("Starting threads.");
+
+			results = startAndWaitForThreads(numMessages, millisDelay, numThreads, firstEndpoint.getHost(),
+					firstEndpoint.getPort(), corpus, messageSource, inFlightWindow, keepOriginalTimestamp);
+
+			logger.info("All threads completed.");
+		}
+
+		wallClockMillis = System.currentTimeMillis() - startMillis;
+
+		if (connectionPool != null) {
+			connectionPool.close();
+		}
+		ackLatencyHistogram = new Histogram(LatencyIntervalLog.SIGNIFICANT_DIGITS);
+		if (metrics != null) {
+			metrics.close();
+			// The senders recorded their ACK latencies into the live metrics only
+			ackLatencyHistogram.add(metrics.getAckLatencyHistogram());
+		} else {
+			for (SenderThreadResult result : results) {
+				ackLatencyHistogram.add(result.ackLatencyHistogram);
+			}
+		}
+		if (metricsEndpoint != null) {
+			metricsEndpoint.close();
+		}
+		if (latencyLog != null) {
+			latencyLog.close();
+			logger.info("Wrote latency log to " + latencyLogFileName + ".");
+		}
+		endpointResults = new ArrayList<>();
+		for (Endpoint endpoint : endpoints) {
+			endpointResults.add(EndpointResult.of(endpoint));
+		}
+		return results;
+	}
+
+	/**
+	 * Starts a {@link MockDocServer} on each loopback address and port of the endpoints if a mock DOC is enabled.
+	 */
+	private List<MockDocServer> startMockServers(List<Endpoint> endpoints) throws IOException {
+		List<MockDocServer> mockServers = new ArrayList<>();
+		if (mockAckDelayMillis == null) {
+			return mockServers;
+		}
+
+		Set<InetSocketAddress> addresses = new LinkedHashSet<>();
+		for (Endpoint endpoint : endpoints) {
+			// The mock DOC listens on this host only, sending elsewhere would not measure it
+			InetAddress address = InetAddress.getByName(endpoint.getHost());
+			if (!address.isLoopbackAddress()) {
+				throw new DorDriverException("The mock DOC runs on this host, " + endpoint
+						+ " is not a loopback address.");
+			}
+			addresses.add(new InetSocketAddress(address, endpoint.getPort()));
+		}
+		try {
+			for (InetSocketAddress address : addresses) {
+				MockDocServer mockServer = new MockDocServer(address.getAddress(), address.getPort());
+				mockServers.add(mockServer);
+				mockServer.setAckDelayMillis(mockAckDelayMillis);
+				mockServer.setErrorRate(mockErrorRate);
+				mockServer.setRejectRate(mockRejectRate);
+				mockServer.setDropRate(mockDropRate);
+				mockServer.start();
+			}
+		} catch (IOException | RuntimeException e) {
+			for (MockDocServer mockServer : mockServers) {
+				mockServer.close();
+			}
+			throw e;
+		}
+		return mockServers;
+	}
+
+	private InputStream openInputStream() throws FileNotFoundException {
+		if (inputStream == null) {
+			inputStream = new FileInputStream(inputFileName);
+		}
+		return inputStream;
+	}
 
-		logger.info("Read " + messages.size() + " HL7v2 messages from input stream.");
-		logger.info("Starting threads.");
+	/**
+	 * Runs the messages of the input file on the {@link #workers} and reports the results of all workers together.
+	 * The workers are passed the same arguments.
+	 */
+	private void coordinate(String[] args) throws IOException {
+		if (stream || indexed) {
+			throw new DorDriverException("Streaming and indexed input are not supported with workers, the messages "
+					+ "are sent to the workers.");
+		}
+		if (latencyLogFileName != null || metricsPort != null || mockAckDelayMillis != null) {
+			throw new DorDriverException("A latency log, metrics port or mock DOC is not supported with workers.");
+		}
+
+		List<Endpoint> workerEndpoints = Endpoint.parseList(workers, DriverWorker.DEFAULT_PORT);
+		List<String> inputMessages = readMessages(openInputStream(), numMessages);
+		logger.info("Read " + inputMessages.size() + " HL7v2 messages from input stream.");
+
+		List<WorkerJob> jobs = WorkerJob.partition(args, inputMessages, numThreads, ratePerSecond, workerEndpoints.size());
+		logger.info("Running " + numThreads + " threads on workers " + workerEndpoints + ".");
+
+		DriverCoordinator coordinator = new DriverCoordinator(workerEndpoints);
+		List<SenderThreadResult> results = coordinator.run(jobs);
+		writeResults(results, coordinator.getAckLatencyHistogram(), coordinator.getEndpointResults(),
+				coordinator.getWallClockMillis());
+	}
+
+	/**
+	 * Configures the application to run the share of a distributed run assigned to this worker.
+	 */
+	void configureJob(WorkerJob job) throws ParseException {
+		parseArgs(job.getArgs());
+		workers = null;
+		messages = job.getMessages();
+		firstDeviceNumber = job.getFirstDevice();
+		numThreads = job.getNumDevices();
+		ratePerSecond = job.getRatePerSecond();
+	}
+
+	/**
+	 * Makes {@link #sendMessages()} count down prepared once the messages are compiled and wait for start before
+	 * starting the senders.
+	 */
+	void setStartSignal(CountDownLatch prepared, CountDownLatch start) {
+		this.preparedSignal = prepared;
+		this.startSignal = start;
+	}
+
+	long getWallClockMillis() {
+		return wallClockMillis;
+	}
+
+	/**
+	 * ACK latencies of all senders of the last {@link #sendMessages()}. With live metrics the senders record none of
+	 * their own, so this is the only complete record of the run.
+	 */
+	Histogram getAckLatencyHistogram() {
+		return ackLatencyHistogram;
+	}
+
+	/**
+	 * Totals of each endpoint of the last {@link #sendMessages()}.
+	 */
+	List<EndpointResult> getEndpointResults() {
+		return endpointResults;
+	}
+
+	/**
+	 * First message of sender i, spreading the senders evenly over the messages if {@link #spread} is set.
+	 */
+	private int getStartIndex(int i, int numSenders, MessageCorpus corpus) {
+		if (!spread || corpus == null) {
+			return 0;
+		}
+		return (int) ((long) i * corpus.size() / numSenders);
+	}
 
-		List<SenderThreadResult> results = startAndWaitForThreads(numMessages, millisDelay, numThreads, destAddress,
-				destPort, messages, keepOriginalTimestamp);
+	/**
+	 * Identity of sender i if {@link #uniqueDevices} is set, otherwise null and all senders send identical identities.
+	 */
+	private DeviceIdentity getDeviceIdentity(int i) {
+		return uniqueDevices ? new DeviceIdentity(firstDeviceNumber + i) : null;
+	}
+
+	/**
+	 * Connection manager of sender i, placing it on the endpoints of {@link #loadBalancer}.
+	 */
+	private ConnectionManager newConnectionManager(int i) {
+		ConnectionManager connectionManager = new ConnectionManager(new ReconnectBackoff(initialBackoffMillis,
+				maxBackoffMillis), maxConnectAttempts);
+		connectionManager.setLoadBalancer(loadBalancer, firstDeviceNumber + i);
+		return connectionManager;
+	}
 
-		logger.info("All threads completed.");
+	/**
+	 * Period of each of numSenders senders that together send at {@link #ratePerSecond}.
+	 */
+	private long getOpenLoopPeriodNanos(int numSenders) {
+		return Math.round(numSenders * TimeUnit.SECONDS.toNanos(1) / ratePerSecond);
+	}
 
-		writeResults(results);
+	/**
+	 * Offset of the first send of sender i, spreading the senders evenly over one period so that the combined sends
+	 * arrive at a constant rate instead of in bursts.
+	 */
+	private long getOpenLoopPhaseNanos(int i) {
+		return Math.round(i * TimeUnit.SECONDS.toNanos(1) / ratePerSecond);
 	}
 
-	private void writeResults(List<SenderThreadResult> results) {
+	private void writeResults(List<SenderThreadResult> results, Histogram ackLatencyHistogram,
+			List<EndpointResult> endpointResults, long wallClockMillis) {
 
 		long sumMillis = 0;
 		long sumSendMillis = 0;
 		int sumSentMessages = 0;
 		int sumFailedConnections = 0;
+		long sumReconnects = 0;
+		Histogram connectTimeHistogram = new Histogram(LatencyIntervalLog.SIGNIFICANT_DIGITS);
+		long sumFailedMessages = 0;
+		long sumApplicationErrors = 0;
+		long sumApplicationRejects = 0;
+		long sumPacedSends = 0;
+		long sumMissedDeadlines = 0;
+		long sumSkippedDeadlines = 0;
+		long sumJitterMicros = 0;
+		long maxJitterMicros = 0;
 
 		for (SenderThreadResult result : results) {
 			sumMillis += result.totalRunTimeMillis;
 			sumSendMillis += result.totalSendTimeMillis;
 			sumSentMessages += result.sentMessages;
 			sumFailedConnections += result.failedConnections;
+			sumReconnects += result.reconnects;
+			connectTimeHistogram.add(result.connectTimeHistogram);
+			sumFailedMessages += result.failedMessages;
+			sumApplicationErrors += result.applicationErrors;
+			sumApplicationRejects += result.applicationRejects;
+			sumPacedSends += result.pacedSends;
+			sumMissedDeadlines += result.missedDeadlines;
+			sumSkippedDeadlines += result.skippedDeadlines;
+			sumJitterMicros += result.totalJitterMicros;
+			maxJitterMicros = Math.max(maxJitterMicros, result.maxJitterMicros);
 
+			String pacing = "";
+			if (result.pacedSends > 0) {
+				pacing = " Send jitter average " + result.totalJitterMicros / result.pacedSends + " us, max "
+						+ result.maxJitterMicros + " us over " + result.pacedSends + " paced sends, "
+						+ result.missedDeadlines + " missed and " + result.skippedDeadlines + " skipped deadlines.";
+			}
 			logger.info("Thread " + result.threadId + " sent " + result.sentMessages + " messages in "
-					+ result.totalRunTimeMillis + " milliseconds.");
+					+ result.totalRunTimeMillis + " milliseconds." + pacing);
 		}
 
 		long averageMillis = sumMillis / results.size();
@@ -162,20 +791,94 @@ public class DorDriverApplication implements Runnable {
 		System.out.println("### Average runtime per thread (sending only): " + averageSendMillis);
 		System.out.println("### Successfully sent messages: " + sumSentMessages);
 		System.out.println("### Failed connections: " + sumFailedConnections);
+		System.out.println("### Reconnects: " + sumReconnects);
+		if (connectTimeHistogram.getTotalCount() > 0) {
+			System.out.println("### Average connect time (microseconds): "
+					+ Math.round(connectTimeHistogram.getMean()));
+			System.out.println("### Max connect time (microseconds): " + connectTimeHistogram.getMaxValue());
+		}
+		System.out.println("### Failed messages: " + sumFailedMessages);
+		if (ackLatencyHistogram.getTotalCount() > 0) {
+			System.out.println("### Acknowledged messages: " + ackLatencyHistogram.getTotalCount());
+			System.out.println("### Application errors (AE): " + sumApplicationErrors);
+			System.out.println("### Application rejects (AR): " + sumApplicationRejects);
+			System.out.println("### Average ACK latency (microseconds): " + Math.round(ackLatencyHistogram.getMean()));
+			System.out.println("### ACK latency p50 (microseconds): " + ackLatencyHistogram.getValueAtPercentile(50));
+			System.out.println("### ACK latency p90 (microseconds): " + ackLatencyHistogram.getValueAtPercentile(90));
+			System.out.println("### ACK latency p99 (microseconds): " + ackLatencyHistogram.getValueAtPercentile(99));
+			System.out.println("### ACK latency p99.9 (microseconds): " + ackLatencyHistogram.getValueAtPercentile(99.9));
+			System.out.println("### Max ACK latency (microseconds): " + ackLatencyHistogram.getMaxValue());
+		}
+		if (sumPacedSends > 0) {
+			System.out.println("### Average send jitter (microseconds): " + sumJitterMicros / sumPacedSends);
+			System.out.println("### Max send jitter (microseconds): " + maxJitterMicros);
+			System.out.println("### Missed send deadlines: " + sumMissedDeadlines);
+			System.out.println("### Skipped send deadlines: " + sumSkippedDeadlines);
+		}
+		if (ratePerSecond != null) {
+			System.out.println("### Target rate (messages per second): " + ratePerSecond);
+			System.out.println("### Achieved rate (messages per second): "
+					+ (wallClockMillis > 0 ? sumSentMessages * 1000.0 / wallClockMillis : 0));
+		}
+		if (endpointResults.size() > 1) {
+			for (EndpointResult endpointResult : endpointResults) {
+				writeEndpointResults(endpointResult, wallClockMillis);
+			}
+		}
+	}
+
+	private void writeEndpointResults(EndpointResult endpoint, long wallClockMillis) {
+		String prefix = "### " + endpoint.endpoint + " ";
+		System.out.println(prefix + "devices: " + endpoint.devices);
+		System.out.println(prefix + "sent messages: " + endpoint.sentMessages);
+		System.out.println(prefix + "acknowledged messages: " + endpoint.acknowledgedMessages);
+		System.out.println(prefix + "failed messages: " + endpoint.failedMessages);
+		System.out.println(prefix + "failed connections: " + endpoint.failedConnections);
+		System.out.println(prefix + "application errors (AE): " + endpoint.applicationErrors);
+		System.out.println(prefix + "application rejects (AR): " + endpoint.applicationRejects);
+		System.out.println(prefix + "acknowledged per second: "
+				+ (wallClockMillis > 0 ? endpoint.acknowledgedMessages * 1000.0 / wallClockMillis : 0));
+
+		Histogram histogram = endpoint.ackLatencyHistogram;
+		if (histogram.getTotalCount() > 0) {
+			System.out.println(prefix + "average ACK latency (microseconds): " + Math.round(histogram.getMean()));
+			System.out.println(prefix + "ACK latency p99 (microseconds): " + histogram.getValueAtPercentile(99));
+			System.out.println(prefix + "max ACK latency (microseconds): " + histogram.getMaxValue());
+		}
 	}
 
 	private List<SenderThreadResult> startAndWaitForThreads(int numMessages, long millisDelay, int numThreads,
-			String destAddress, int destPort, List<String> messages, boolean keepOriginalTimestamp)
+			String destAddress, int destPort, MessageCorpus corpus, StreamingMessageSource messageSource,
+			int inFlightWindow, boolean keepOriginalTimestamp)
 			throws InterruptedException {
 
 		List<SenderThread> threads = new ArrayList<>();
 		List<SenderThreadResult> results = new ArrayList<>();
+		long openLoopStartNanos = System.nanoTime();
 
 		for (int i = 0; i < numThreads; ++i) {
 			SenderThreadResult result = new SenderThreadResult();
 			results.add(result);
 
-			SenderThread thread = new SenderThread(destAddress, destPort, messages, numMessages, millisDelay, keepOriginalTimestamp, result);
+			SenderThread thread = new SenderThread(destAddress, destPort, corpus, numMessages, millisDelay,
+					keepOriginalTimestamp, result);
+			thread.setInFlightWindow(inFlightWindow);
+			thread.setMissedDeadlinePolicy(missedDeadlinePolicy);
+			thread.setCompiled(compiled);
+			if (messageSource != null) {
+				thread.setMessageSource(messageSource);
+			}
+			thread.setStartIndex(getStartIndex(i, numThreads, corpus));
+			thread.setDirectBuffers(directBuffers);
+			thread.setRawAcks(rawAcks);
+			thread.setDeviceIdentity(getDeviceIdentity(i));
+			thread.setConnectionManager(newConnectionManager(i));
+			thread.setConnectionPool(connectionPool);
+			thread.setMetrics(metrics);
+			if (ratePerSecond != null) {
+				thread.setOpenLoopSchedule(getOpenLoopPeriodNanos(numThreads),
+						openLoopStartNanos + getOpenLoopPhaseNanos(i));
+			}
 			threads.add(thread);
 
 			thread.start();
@@ -188,6 +891,117 @@ public class DorDriverApplication implements Runnable {
 		return results;
 	}
 
+	/**
+	 * Runs every sender on a virtual thread of its own. Senders are created as Thread objects but never started, only
+	 * their run method is executed, so results report the id of the virtual thread. The same executor is shared by the
+	 * HAPI connections of all senders.
+	 */
+	private List<SenderThreadResult> startAndWaitForVirtualThreads(int numMessages, long millisDelay, int numThreads,
+			String destAddress, int destPort, MessageCorpus corpus, StreamingMessageSource messageSource,
+			int inFlightWindow, boolean keepOriginalTimestamp)
+			throws InterruptedException {
+
+		ExecutorService executorService = newVirtualThreadPerTaskExecutor();
+		List<Future<?>> futures = new ArrayList<>();
+		List<SenderThreadResult> results = new ArrayList<>();
+		long openLoopStartNanos = System.nanoTime();
+
+		try {
+			for (int i = 0; i < numThreads; ++i) {
+				SenderThreadResult result = new SenderThreadResult();
+				results.add(result);
+
+				SenderThread sender = new SenderThread(destAddress, destPort, corpus, numMessages, millisDelay,
+						keepOriginalTimestamp, result, executorService);
+				sender.setInFlightWindow(inFlightWindow);
+				sender.setMissedDeadlinePolicy(missedDeadlinePolicy);
+				sender.setCompiled(compiled);
+				if (messageSource != null) {
+					sender.setMessageSource(messageSource);
+				}
+				sender.setStartIndex(getStartIndex(i, numThreads, corpus));
+				sender.setDirectBuffers(directBuffers);
+				sender.setRawAcks(rawAcks);
+				sender.setDeviceIdentity(getDeviceIdentity(i));
+				sender.setConnectionManager(newConnectionManager(i));
+				sender.setConnectionPool(connectionPool);
+				sender.setMetrics(metrics);
+				if (ratePerSecond != null) {
+					sender.setOpenLoopSchedule(getOpenLoopPeriodNanos(numThreads),
+							openLoopStartNanos + getOpenLoopPhaseNanos(i));
+				}
+
+				futures.add(executorService.submit(sender));
+			}
+
+			for (Future<?> future : futures) {
+				future.get();
+			}
+		} catch (ExecutionException e) {
+			throw new DorDriverException("Sender failed.", e.getCause());
+		} finally {
+			executorService.shutdownNow();
+		}
+
+		return results;
+	}
+
+	/**
+	 * Looks up Executors.newVirtualThreadPerTaskExecutor() reflectively since the application is built for Java 8.
+	 */
+	ExecutorService newVirtualThreadPerTaskExecutor() {
+		try {
+			return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+		} catch (ReflectiveOperationException e) {
+			throw new DorDriverException("Virtual threads are not supported by this Java version, Java 21 or later "
+					+ "is required.", e);
+		}
+	}
+
+	private List<SenderThreadResult> startAndWaitForDevices(int numMessages, long millisDelay, int numDevices,
+			int numSelectors, String destAddress, int destPort, MessageCorpus corpus, boolean keepOriginalTimestamp) throws InterruptedException, IOException {
+
+		InetSocketAddress address = new InetSocketAddress(destAddress, destPort);
+		List<SelectorLoop> loops = new ArrayList<>();
+		List<SenderThreadResult> results = new ArrayList<>();
+		CountDownLatch completion = new CountDownLatch(numDevices);
+
+		for (int i = 0; i < numSelectors; ++i) {
+			SelectorLoop loop = new SelectorLoop("selector-" + i);
+			loops.add(loop);
+			loop.start();
+		}
+
+		long openLoopStartNanos = System.nanoTime();
+		for (int i = 0; i < numDevices; ++i) {
+			SenderThreadResult result = new SenderThreadResult();
+			results.add(result);
+
+			SimulatedDevice device = new SimulatedDevice(firstDeviceNumber + i, address, corpus, numMessages,
+					millisDelay, missedDeadlinePolicy, keepOriginalTimestamp, result, completion);
+			device.setMetrics(metrics);
+			device.setStartIndex(getStartIndex(i, numDevices, corpus));
+			device.setDeviceIdentity(getDeviceIdentity(i));
+			device.setReconnectBackoff(new ReconnectBackoff(initialBackoffMillis, maxBackoffMillis),
+					maxConnectAttempts);
+			device.setLoadBalancer(loadBalancer);
+			if (ratePerSecond != null) {
+				device.setOpenLoopSchedule(getOpenLoopPeriodNanos(numDevices),
+						openLoopStartNanos + getOpenLoopPhaseNanos(i));
+			}
+			loops.get(i % numSelectors).register(device);
+		}
+
+		completion.await();
+
+		for (SelectorLoop loop : loops) {
+			loop.shutdown();
+			loop.join();
+		}
+
+		return results;
+	}
+
 	@Override
 	public void run() {
 		try {
@@ -208,4 +1022,116 @@ public class DorDriverApplication implements Runnable {
 	public void setInputStream(InputStream inputStream) {
 		this.inputStream = inputStream;
 	}
+
+	public void setCompiled(boolean compiled) {
+		this.compiled = compiled;
+	}
+
+	public void setInFlightWindow(int inFlightWindow) {
+		this.inFlightWindow = inFlightWindow;
+	}
+
+	public void setTransport(String transport) {
+		this.transport = transport;
+	}
+
+	public void setNumSelectors(int numSelectors) {
+		this.numSelectors = numSelectors;
+	}
+
+	public void setExecutor(String executor) {
+		this.executor = executor;
+	}
+
+	public void setMissedDeadlinePolicy(MissedDeadlinePolicy missedDeadlinePolicy) {
+		this.missedDeadlinePolicy = missedDeadlinePolicy;
+	}
+
+	/**
+	 * Enables open loop mode with the given total rate over all senders, or disables it if null.
+	 */
+	public void setRatePerSecond(Double ratePerSecond) {
+		this.ratePerSecond = ratePerSecond;
+	}
+
+	/**
+	 * Writes the ACK latencies of each interval to the given file, see {@link LatencyIntervalLog}.
+	 */
+	public void setLatencyLogFileName(String latencyLogFileName) {
+		this.latencyLogFileName = latencyLogFileName;
+	}
+
+	public void setIntervalMillis(long intervalMillis) {
+		this.intervalMillis = intervalMillis;
+	}
+
+	public void setLogProgress(boolean logProgress) {
+		this.logProgress = logProgress;
+	}
+
+	public void setMetricsPort(Integer metricsPort) {
+		this.metricsPort = metricsPort;
+	}
+
+	/**
+	 * Sends the input once, read while sending, instead of loading it and repeating it, see
+	 * {@link StreamingMessageSource}.
+	 */
+	public void setStream(boolean stream) {
+		this.stream = stream;
+	}
+
+	public void setInputFileName(String inputFileName) {
+		this.inputFileName = inputFileName;
+	}
+
+	/**
+	 * Replays {@link #inputFileName} from a memory mapping, see {@link MessageIndex}.
+	 */
+	public void setIndexed(boolean indexed) {
+		this.indexed = indexed;
+	}
+
+	public void setSpread(boolean spread) {
+		this.spread = spread;
+	}
+
+	public void setDirectBuffers(boolean directBuffers) {
+		this.directBuffers = directBuffers;
+	}
+
+	public void setRawAcks(boolean rawAcks) {
+		this.rawAcks = rawAcks;
+	}
+
+	public void setUniqueDevices(boolean uniqueDevices) {
+		this.uniqueDevices = uniqueDevices;
+	}
+
+	public void setBackoff(long initialBackoffMillis, long maxBackoffMillis) {
+		this.initialBackoffMillis = initialBackoffMillis;
+		this.maxBackoffMillis = maxBackoffMillis;
+	}
+
+	/**
+	 * Runs against a {@link MockDocServer} started in this JVM, or against the given hosts if ackDelayMillis is null.
+	 */
+	public void setMockDoc(Long ackDelayMillis, double errorRate, double rejectRate, double dropRate) {
+		this.mockAckDelayMillis = ackDelayMillis;
+		this.mockErrorRate = errorRate;
+		this.mockRejectRate = rejectRate;
+		this.mockDropRate = dropRate;
+	}
+
+	public void setMaxConnectAttempts(int maxConnectAttempts) {
+		this.maxConnectAttempts = maxConnectAttempts;
+	}
+
+	public void setPoolSize(Integer poolSize) {
+		this.poolSize = poolSize;
+	}
+
+	public void setBalancingPolicy(BalancingPolicy balancingPolicy) {
+		this.balancingPolicy = balancingPolicy;
+	}
 }
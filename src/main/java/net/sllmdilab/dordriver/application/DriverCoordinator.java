@@ -0,0 +1,163 @@
+package net.sllmdilab.dordriver.application;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import net.sllmdilab.dordriver.exeptions.DorDriverException;
+import net.sllmdilab.dordriver.metrics.LatencyIntervalLog;
+import net.sllmdilab.dordriver.network.Endpoint;
+
+import org.HdrHistogram.Histogram;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Spreads a run over several {@link DriverWorker}s, e.g. on different hosts, when one JVM can not generate enough
+ * load. The devices and messages are partitioned into one {@link WorkerJob} per worker, all workers are started
+ * together once every one of them is ready and their results are collected so that they can be reported as one run.
+ */
+public class DriverCoordinator {
+	private static final int CONNECT_TIMEOUT_MILLIS = 10000;
+	/** A worker that sends nothing, not even a heartbeat, for this long is considered lost */
+	private static final int READ_TIMEOUT_MILLIS = (int) (6 * DriverWorker.HEARTBEAT_MILLIS);
+
+	private static Logger logger = LoggerFactory.getLogger(DriverCoordinator.class);
+
+	private final List<Endpoint> workers;
+	private long wallClockMillis;
+	private final Map<String, EndpointResult> endpointResults = new LinkedHashMap<>();
+	private final Histogram ackLatencyHistogram = new Histogram(LatencyIntervalLog.SIGNIFICANT_DIGITS);
+
+	public DriverCoordinator(List<Endpoint> workers) {
+		this.workers = workers;
+	}
+
+	/**
+	 * Runs the jobs, the i:th on the i:th worker, and returns the results of all devices of all workers.
+	 */
+	public List<SenderThreadResult> run(List<WorkerJob> jobs) throws IOException {
+		if (jobs.size() != workers.size()) {
+			throw new IllegalArgumentException(jobs.size() + " jobs for " + workers.size() + " workers.");
+		}
+
+		List<Socket> sockets = new ArrayList<>();
+		List<DataInputStream> inputs = new ArrayList<>();
+		List<DataOutputStream> outputs = new ArrayList<>();
+		try {
+			for (int i = 0; i < workers.size(); ++i) {
+				Endpoint worker = workers.get(i);
+				Socket socket = new Socket();
+				sockets.add(socket);
+				try {
+					socket.connect(new InetSocketAddress(worker.getHost(), worker.getPort()), CONNECT_TIMEOUT_MILLIS);
+				} catch (IOException e) {
+					throw new DorDriverException("Could not connect to worker " + worker + ".", e);
+				}
+				socket.setTcpNoDelay(true);
+				socket.setSoTimeout(READ_TIMEOUT_MILLIS);
+				inputs.add(new DataInputStream(new BufferedInputStream(socket.getInputStream())));
+				DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+				outputs.add(out);
+
+				jobs.get(i).writeTo(out);
+				out.flush();
+			}
+
+			for (int i = 0; i < workers.size(); ++i) {
+				expect(DriverWorker.READY, inputs.get(i), workers.get(i));
+			}
+			logger.info("All " + workers.size() + " workers ready, starting.");
+
+			long startMillis = System.currentTimeMillis();
+			for (DataOutputStream out : outputs) {
+				out.writeByte(DriverWorker.START);
+				out.flush();
+			}
+
+			List<SenderThreadResult> results = new ArrayList<>();
+			endpointResults.clear();
+			ackLatencyHistogram.reset();
+			for (int i = 0; i < workers.size(); ++i) {
+				DataInputStream in = inputs.get(i);
+				expect(DriverWorker.RESULTS, in, workers.get(i));
+				long workerWallClockMillis = in.readLong();
+				int numResults = in.readInt();
+				for (int j = 0; j < numResults; ++j) {
+					results.add(SenderThreadResult.readFrom(in));
+				}
+				int numEndpoints = in.readInt();
+				for (int j = 0; j < numEndpoints; ++j) {
+					addEndpointResult(EndpointResult.readFrom(in));
+				}
+				ackLatencyHistogram.add(SenderThreadResult.readHistogram(in));
+				logger.info("Worker " + workers.get(i) + " completed " + numResults + " devices in "
+						+ workerWallClockMillis + " milliseconds.");
+			}
+			wallClockMillis = System.currentTimeMillis() - startMillis;
+
+			return results;
+		} finally {
+			for (Socket socket : sockets) {
+				socket.close();
+			}
+		}
+	}
+
+	/**
+	 * Time from starting the workers until the last one reported its results.
+	 */
+	public long getWallClockMillis() {
+		return wallClockMillis;
+	}
+
+	/**
+	 * ACK latencies of all devices of all workers of the last {@link #run(List)}.
+	 */
+	public Histogram getAckLatencyHistogram() {
+		return ackLatencyHistogram;
+	}
+
+	/**
+	 * Totals of each endpoint over all workers of the last {@link #run(List)}.
+	 */
+	public List<EndpointResult> getEndpointResults() {
+		return new ArrayList<>(endpointResults.values());
+	}
+
+	private void addEndpointResult(EndpointResult result) {
+		EndpointResult total = endpointResults.get(result.endpoint);
+		if (total == null) {
+			endpointResults.put(result.endpoint, result);
+		} else {
+			total.add(result);
+		}
+	}
+
+	private void expect(byte expected, DataInputStream in, Endpoint worker) throws IOException {
+		byte reply;
+		try {
+			do {
+				reply = in.readByte();
+			} while (reply == DriverWorker.HEARTBEAT);
+		} catch (SocketTimeoutException e) {
+			throw new DorDriverException("Worker " + worker + " sent nothing for " + READ_TIMEOUT_MILLIS
+					+ " milliseconds.", e);
+		}
+		if (reply == DriverWorker.FAILED) {
+			throw new DorDriverException("Worker " + worker + " failed: " + in.readUTF());
+		}
+		if (reply != expected) {
+			throw new DorDriverException("Unexpected reply " + reply + " from worker " + worker + ".");
+		}
+	}
+}
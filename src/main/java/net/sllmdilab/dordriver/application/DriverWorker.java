@@ -0,0 +1,214 @@
+package net.sllmdilab.dordriver.application;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.apache.commons.cli.ParseException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Runs the jobs of a {@link DriverCoordinator}, one at a time. A job is run in three steps so that all workers start
+ * sending together:
+ *
+ * <ol>
+ * <li>The coordinator sends a {@link WorkerJob}, the worker compiles the messages, connects its metrics and answers
+ * {@link #READY}, or {@link #FAILED} with a reason.</li>
+ * <li>Once every worker is ready the coordinator sends {@link #START} to all of them.</li>
+ * <li>When its devices are done the worker answers {@link #RESULTS}, followed by its wall clock time in milliseconds,
+ * the number of results, every {@link SenderThreadResult}, the number of endpoints, every {@link EndpointResult}
+ * and the ACK latencies of all its devices.</li>
+ * </ol>
+ *
+ * While preparing and running the worker sends {@link #HEARTBEAT} every {@link #HEARTBEAT_MILLIS} so that the
+ * coordinator can tell a long job from a lost worker. A job is aborted if the coordinator disconnects before sending
+ * {@link #START}.
+ */
+public class DriverWorker {
+	public static final int DEFAULT_PORT = 2580;
+
+	static final byte READY = 'R';
+	static final byte START = 'S';
+	static final byte RESULTS = 'D';
+	static final byte FAILED = 'F';
+	static final byte HEARTBEAT = 'H';
+	static final long HEARTBEAT_MILLIS = 5000;
+
+	private static Logger logger = LoggerFactory.getLogger(DriverWorker.class);
+
+	private final ServerSocket serverSocket;
+
+	/**
+	 * Listens on the loopback address only.
+	 *
+	 * @param port
+	 *            port to listen on for coordinators, 0 for any free port
+	 */
+	public DriverWorker(int port) throws IOException {
+		this(InetAddress.getLoopbackAddress(), port);
+	}
+
+	/**
+	 * @param bindAddress
+	 *            address to listen on for coordinators, e.g. the wildcard address to accept coordinators on other
+	 *            hosts
+	 * @param port
+	 *            port to listen on for coordinators, 0 for any free port
+	 */
+	public DriverWorker(InetAddress bindAddress, int port) throws IOException {
+		serverSocket = new ServerSocket(port, 50, bindAddress);
+	}
+
+	public int getPort() {
+		return serverSocket.getLocalPort();
+	}
+
+	public InetAddress getAddress() {
+		return serverSocket.getInetAddress();
+	}
+
+	/**
+	 * Runs jobs until the worker is closed.
+	 */
+	public void serve() {
+		logger.info("Worker waiting for jobs on " + serverSocket.getLocalSocketAddress() + ".");
+		while (!serverSocket.isClosed()) {
+			try (Socket socket = serverSocket.accept()) {
+				logger.info("Accepted job from " + socket.getRemoteSocketAddress() + ".");
+				runJob(socket);
+			} catch (IOException e) {
+				if (!serverSocket.isClosed()) {
+					logger.warn("Job failed.", e);
+				}
+			}
+		}
+	}
+
+	public void close() throws IOException {
+		serverSocket.close();
+	}
+
+	private void runJob(Socket socket) throws IOException {
+		socket.setTcpNoDelay(true);
+		DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+
+		WorkerJob job = WorkerJob.readFrom(in);
+		logger.info("Running devices " + job.getFirstDevice() + " to " + (job.getFirstDevice()
+				+ job.getNumDevices() - 1) + " with " + job.getMessages().size() + " messages.");
+
+		final DorDriverApplication application = new DorDriverApplication();
+		try {
+			application.configureJob(job);
+		} catch (ParseException | IllegalArgumentException e) {
+			logger.error("Invalid job arguments.", e);
+			writeFailure(out, "Invalid arguments: " + e.getMessage());
+			return;
+		}
+		final CountDownLatch prepared = new CountDownLatch(1);
+		CountDownLatch start = new CountDownLatch(1);
+		application.setStartSignal(prepared, start);
+
+		FutureTask<List<SenderThreadResult>> task = new FutureTask<>(new Callable<List<SenderThreadResult>>() {
+			@Override
+			public List<SenderThreadResult> call() throws Exception {
+				try {
+					return application.sendMessages();
+				} finally {
+					prepared.countDown();
+				}
+			}
+		});
+		Thread runner = new Thread(task, "worker-job");
+		runner.start();
+
+		try {
+			while (!prepared.await(HEARTBEAT_MILLIS, TimeUnit.MILLISECONDS)) {
+				writeHeartbeat(out);
+			}
+			if (task.isDone()) {
+				// Failed while preparing
+				writeFailure(out, task);
+				return;
+			}
+			out.writeByte(READY);
+			out.flush();
+
+			byte command = in.readByte();
+			if (command != START) {
+				throw new IOException("Unexpected command " + command + ".");
+			}
+			start.countDown();
+
+			List<SenderThreadResult> results = null;
+			while (results == null) {
+				try {
+					results = task.get(HEARTBEAT_MILLIS, TimeUnit.MILLISECONDS);
+				} catch (TimeoutException e) {
+					writeHeartbeat(out);
+				} catch (ExecutionException e) {
+					writeFailure(out, task);
+					return;
+				}
+			}
+
+			out.writeByte(RESULTS);
+			out.writeLong(application.getWallClockMillis());
+			out.writeInt(results.size());
+			for (SenderThreadResult result : results) {
+				result.writeTo(out);
+			}
+			List<EndpointResult> endpointResults = application.getEndpointResults();
+			out.writeInt(endpointResults.size());
+			for (EndpointResult endpointResult : endpointResults) {
+				endpointResult.writeTo(out);
+			}
+			SenderThreadResult.writeHistogram(out, application.getAckLatencyHistogram());
+			out.flush();
+			logger.info("Job completed.");
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} finally {
+			if (!task.isDone()) {
+				logger.warn("Coordinator lost, aborting job.");
+				runner.interrupt();
+			}
+		}
+	}
+
+	private void writeFailure(DataOutputStream out, FutureTask<?> task) throws IOException, InterruptedException {
+		String reason;
+		try {
+			task.get();
+			reason = "Unknown failure.";
+		} catch (ExecutionException e) {
+			logger.error("Job failed.", e.getCause());
+			reason = String.valueOf(e.getCause());
+		}
+		writeFailure(out, reason);
+	}
+
+	private void writeFailure(DataOutputStream out, String reason) throws IOException {
+		out.writeByte(FAILED);
+		out.writeUTF(reason);
+		out.flush();
+	}
+
+	private void writeHeartbeat(DataOutputStream out) throws IOException {
+		out.writeByte(HEARTBEAT);
+		out.flush();
+	}
+}
@@ -0,0 +1,88 @@
+package net.sllmdilab.dordriver.application;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+import net.sllmdilab.dordriver.metrics.LatencyIntervalLog;
+import net.sllmdilab.dordriver.network.Endpoint;
+
+import org.HdrHistogram.Histogram;
+
+/**
+ * Totals of one {@link Endpoint} at the end of a run, which can be sent from a {@link DriverWorker} and added to the
+ * totals of the other workers.
+ */
+public class EndpointResult {
+	/** host:port of the endpoint */
+	public String endpoint;
+	public long devices;
+	public long sentMessages;
+	public long acknowledgedMessages;
+	public long failedMessages;
+	public long failedConnections;
+	public long applicationErrors;
+	public long applicationRejects;
+	/** Acknowledgement latency of every acknowledged message, in microseconds */
+	public final Histogram ackLatencyHistogram = new Histogram(LatencyIntervalLog.SIGNIFICANT_DIGITS);
+
+	/**
+	 * Takes the totals of the endpoint. Consumes its latencies, see {@link Endpoint#getLatencyHistogram()}.
+	 */
+	public static EndpointResult of(Endpoint endpoint) {
+		EndpointResult result = new EndpointResult();
+		result.endpoint = endpoint.toString();
+		result.devices = endpoint.getDevices();
+		result.sentMessages = endpoint.getSentMessages();
+		result.acknowledgedMessages = endpoint.getAcknowledgedMessages();
+		result.failedMessages = endpoint.getFailedMessages();
+		result.failedConnections = endpoint.getFailedConnections();
+		result.applicationErrors = endpoint.getApplicationErrors();
+		result.applicationRejects = endpoint.getApplicationRejects();
+		result.ackLatencyHistogram.add(endpoint.getLatencyHistogram());
+		return result;
+	}
+
+	/**
+	 * Adds the totals of the same endpoint seen by another worker.
+	 */
+	public void add(EndpointResult other) {
+		devices += other.devices;
+		sentMessages += other.sentMessages;
+		acknowledgedMessages += other.acknowledgedMessages;
+		failedMessages += other.failedMessages;
+		failedConnections += other.failedConnections;
+		applicationErrors += other.applicationErrors;
+		applicationRejects += other.applicationRejects;
+		ackLatencyHistogram.add(other.ackLatencyHistogram);
+	}
+
+	/**
+	 * Writes the result for {@link #readFrom(DataInput)}.
+	 */
+	public void writeTo(DataOutput out) throws IOException {
+		out.writeUTF(endpoint);
+		out.writeLong(devices);
+		out.writeLong(sentMessages);
+		out.writeLong(acknowledgedMessages);
+		out.writeLong(failedMessages);
+		out.writeLong(failedConnections);
+		out.writeLong(applicationErrors);
+		out.writeLong(applicationRejects);
+		SenderThreadResult.writeHistogram(out, ackLatencyHistogram);
+	}
+
+	public static EndpointResult readFrom(DataInput in) throws IOException {
+		EndpointResult result = new EndpointResult();
+		result.endpoint = in.readUTF();
+		result.devices = in.readLong();
+		result.sentMessages = in.readLong();
+		result.acknowledgedMessages = in.readLong();
+		result.failedMessages = in.readLong();
+		result.failedConnections = in.readLong();
+		result.applicationErrors = in.readLong();
+		result.applicationRejects = in.readLong();
+		result.ackLatencyHistogram.add(SenderThreadResult.readHistogram(in));
+		return result;
+	}
+}
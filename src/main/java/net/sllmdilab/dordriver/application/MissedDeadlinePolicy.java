@@ -0,0 +1,25 @@
+package net.sllmdilab.dordriver.application;
+
+/**
+ * What a {@link PacingScheduler} does when a send is due before the previous one has completed.
+ */
+public enum MissedDeadlinePolicy {
+	/**
+	 * Send the missed messages back to back until the schedule has caught up.
+	 */
+	CATCH_UP,
+
+	/**
+	 * Drop the missed deadlines and continue on the next deadline in the future.
+	 */
+	SKIP,
+
+	/**
+	 * Send immediately, log the miss and continue the schedule from the late send.
+	 */
+	LOG;
+
+	public static MissedDeadlinePolicy fromString(String value) {
+		return valueOf(value.trim().toUpperCase().replace('-', '_'));
+	}
+}
@@ -0,0 +1,171 @@
+package net.sllmdilab.dordriver.application;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.LongSupplier;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Paces sends on absolute deadlines, epoch + n * period, measured with the monotonic System.nanoTime() clock. Unlike
+ * sleeping a fixed delay after each send the schedule does not drift with the time spent sending. Also keeps track of
+ * how late each send was relative to its deadline.
+ * 
+ * Not thread safe, each sender has its own scheduler.
+ */
+public class PacingScheduler {
+	private static Logger logger = LoggerFactory.getLogger(PacingScheduler.class);
+
+	/** With {@link MissedDeadlinePolicy#LOG}, missed deadlines are logged at most once per interval */
+	static final long LOG_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+	private final long periodNanos;
+	private final MissedDeadlinePolicy policy;
+	private final LongSupplier clock;
+	private long epochNanos;
+	private long slot;
+	private long deadlineNanos;
+
+	private long missedDeadlines;
+	private long skippedDeadlines;
+	private long jitterSamples;
+	private long totalJitterNanos;
+	private long maxJitterNanos;
+
+	private boolean missLogged;
+	private long lastMissLogNanos;
+	private long unloggedMisses;
+	private long maxUnloggedLateNanos;
+
+	public PacingScheduler(long periodNanos, MissedDeadlinePolicy policy) {
+		this(periodNanos, policy, System::nanoTime);
+	}
+
+	/**
+	 * Scheduler reading the time from clock instead of System.nanoTime(), for tests.
+	 */
+	PacingScheduler(long periodNanos, MissedDeadlinePolicy policy, LongSupplier clock) {
+		this.periodNanos = periodNanos;
+		this.policy = policy;
+		this.clock = clock;
+	}
+
+	/**
+	 * Starts the schedule, the first deadline is now.
+	 */
+	public void start() {
+		start(clock.getAsLong());
+	}
+
+	/**
+	 * Starts the schedule with the first deadline at epochNanos, which may be in the future.
+	 */
+	public void start(long epochNanos) {
+		this.epochNanos = epochNanos;
+		slot = 0;
+		deadlineNanos = epochNanos;
+	}
+
+	/**
+	 * Advances the schedule to the deadline of the next send, applying the missed deadline policy if it has already
+	 * passed.
+	 * 
+	 * @return the deadline of the next send, in the past if the send is due immediately
+	 */
+	public long nextDeadline(long nowNanos) {
+		++slot;
+		deadlineNanos = epochNanos + slot * periodNanos;
+
+		long lateNanos = nowNanos - deadlineNanos;
+		if (lateNanos > 0) {
+			++missedDeadlines;
+
+			switch (policy) {
+			case SKIP:
+				long missed = lateNanos / periodNanos + 1;
+				slot += missed;
+				skippedDeadlines += missed;
+				deadlineNanos = epochNanos + slot * periodNanos;
+				break;
+			case LOG:
+				logMissedDeadline(nowNanos, lateNanos);
+				epochNanos += lateNanos;
+				deadlineNanos = nowNanos;
+				break;
+			case CATCH_UP:
+			default:
+				break;
+			}
+		}
+
+		return deadlineNanos;
+	}
+
+	/**
+	 * Logs the first missed deadline right away and later ones as a count once per {@link #LOG_INTERVAL_NANOS}, so that
+	 * a sender that can not keep up does not flood the log.
+	 */
+	private void logMissedDeadline(long nowNanos, long lateNanos) {
+		++unloggedMisses;
+		maxUnloggedLateNanos = Math.max(maxUnloggedLateNanos, lateNanos);
+		if (missLogged && nowNanos - lastMissLogNanos < LOG_INTERVAL_NANOS) {
+			return;
+		}
+
+		if (unloggedMisses == 1) {
+			logger.warn("Missed send deadline by " + TimeUnit.NANOSECONDS.toMicros(lateNanos) + " us.");
+		} else {
+			logger.warn("Missed " + unloggedMisses + " send deadlines, by up to "
+					+ TimeUnit.NANOSECONDS.toMicros(maxUnloggedLateNanos) + " us.");
+		}
+		missLogged = true;
+		lastMissLogNanos = nowNanos;
+		unloggedMisses = 0;
+		maxUnloggedLateNanos = 0;
+	}
+
+	/**
+	 * Blocks until the current deadline, without advancing the schedule, and records how late the wake-up was.
+	 */
+	public void awaitDeadline() throws InterruptedException {
+		long deadline = deadlineNanos;
+
+		long remaining;
+		while ((remaining = deadline - clock.getAsLong()) > 0) {
+			LockSupport.parkNanos(remaining);
+			if (Thread.interrupted()) {
+				throw new InterruptedException();
+			}
+		}
+
+		recordJitter(clock.getAsLong() - deadline);
+	}
+
+	/**
+	 * Records how late a send started relative to its deadline.
+	 */
+	public void recordJitter(long lateNanos) {
+		++jitterSamples;
+		totalJitterNanos += lateNanos;
+		maxJitterNanos = Math.max(maxJitterNanos, lateNanos);
+	}
+
+	/**
+	 * The deadline of the current send, i.e. when it was intended to start.
+	 */
+	public long getDeadlineNanos() {
+		return deadlineNanos;
+	}
+
+	/**
+	 * Copies the jitter statistics into the result.
+	 */
+	public void writeTo(SenderThreadResult result) {
+		result.missedDeadlines = missedDeadlines;
+		result.skippedDeadlines = skippedDeadlines;
+		result.pacedSends = jitterSamples;
+		result.totalJitterMicros = TimeUnit.NANOSECONDS.toMicros(totalJitterNanos);
+		result.maxJitterMicros = TimeUnit.NANOSECONDS.toMicros(maxJitterNanos);
+	}
+}
@@ -1,17 +1,29 @@
 package net.sllmdilab.dordriver.application;
 
 import java.io.IOException;
-import java.time.Duration;
-import java.time.ZoneOffset;
-import java.time.ZonedDateTime;
-import java.util.Date;
 import java.util.List;
+import java.util.TimeZone;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.SynchronousQueue;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 
 import net.sllmdilab.dordriver.exeptions.DorDriverException;
+import net.sllmdilab.dordriver.message.CompiledMessage;
+import net.sllmdilab.dordriver.message.DeviceIdentity;
+import net.sllmdilab.dordriver.message.DtmCodec;
+import net.sllmdilab.dordriver.message.MessageCorpus;
+import net.sllmdilab.dordriver.message.StreamingMessageSource;
+import net.sllmdilab.dordriver.metrics.LiveMetrics;
+import net.sllmdilab.dordriver.network.AckCode;
+import net.sllmdilab.dordriver.network.AckListener;
+import net.sllmdilab.dordriver.network.ConnectionListener;
+import net.sllmdilab.dordriver.network.ConnectionManager;
+import net.sllmdilab.dordriver.network.ConnectionPool;
+import net.sllmdilab.dordriver.network.Endpoint;
 import net.sllmdilab.dordriver.network.Hl7Client;
+import net.sllmdilab.dordriver.network.MllpClient;
+import net.sllmdilab.dordriver.network.PipelinedMllpClient;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -25,43 +37,97 @@ import ca.uhn.hl7v2.model.v26.group.ORU_R01_OBSERVATION;
 import ca.uhn.hl7v2.model.v26.group.ORU_R01_ORDER_OBSERVATION;
 import ca.uhn.hl7v2.model.v26.group.ORU_R01_PATIENT_RESULT;
 import ca.uhn.hl7v2.model.v26.message.ORU_R01;
-import ca.uhn.hl7v2.model.v26.segment.OBR;
 import ca.uhn.hl7v2.model.v26.segment.OBX;
 import ca.uhn.hl7v2.parser.CanonicalModelClassFactory;
 
 public class SenderThread extends Thread {
 	private Logger logger = LoggerFactory.getLogger(SenderThread.class);
 
+	private static final long ACK_DRAIN_TIMEOUT_MILLIS = 10000;
+	private static final TimeZone LOCAL_ZONE = TimeZone.getDefault();
+
+	private String destAddress;
+	private int destPort;
 	private List<String> messages;
 	private int numMessages;
 	private long millisDelay;
 	private boolean keepOriginalTimestamp = false; // Default
+	private MissedDeadlinePolicy missedDeadlinePolicy = MissedDeadlinePolicy.LOG;
+	private PacingScheduler scheduler;
+	private boolean openLoop;
+	private long openLoopPeriodNanos;
+	private long openLoopStartNanos;
 	private int sentMessages;
 	private SenderThreadResult result;
 	private HapiContext hapiContext;
 	private Hl7Client hl7Client;
-	private ThreadPoolExecutor threadPoolExecutor;
+	private ExecutorService executorService;
+	private boolean sharedExecutorService;
+	private MessageCorpus corpus;
+	private boolean compiled;
+	private MllpClient mllpClient;
+	private PipelinedMllpClient pipelinedClient;
+	private byte[] encodeBuffer;
+	private LiveMetrics metrics;
+	private StreamingMessageSource messageSource;
+	private int startIndex;
+	private boolean directBuffers;
+	private boolean rawAcks;
+	private DeviceIdentity deviceIdentity;
+	private ConnectionManager connectionManager = new ConnectionManager();
+	private ConnectionPool connectionPool;
 
 	public SenderThread(String destAddress, int destPort, List<String> messages, int numMessages, long millisDelay, boolean keepOriginalTimestamp,
 			SenderThreadResult result) {
+		this(destAddress, destPort, messages, numMessages, millisDelay, keepOriginalTimestamp, result, null);
+	}
+
+	/**
+	 * @param executorService
+	 *            executor shared by the connections of many senders, e.g. a virtual thread per task executor. If null
+	 *            the sender creates and shuts down an executor of its own.
+	 */
+	public SenderThread(String destAddress, int destPort, List<String> messages, int numMessages, long millisDelay,
+			boolean keepOriginalTimestamp, SenderThreadResult result, ExecutorService executorService) {
+		this(destAddress, destPort, messages, null, numMessages, millisDelay, keepOriginalTimestamp, result,
+				executorService);
+	}
+
+	/**
+	 * Sends the messages of a corpus shared by all senders, or with a null corpus only the messages of a
+	 * {@link #setMessageSource(StreamingMessageSource)}.
+	 */
+	public SenderThread(String destAddress, int destPort, MessageCorpus corpus, int numMessages, long millisDelay,
+			boolean keepOriginalTimestamp, SenderThreadResult result) {
+		this(destAddress, destPort, null, corpus, numMessages, millisDelay, keepOriginalTimestamp, result, null);
+	}
+
+	/**
+	 * Same as {@link #SenderThread(String, int, MessageCorpus, int, long, boolean, SenderThreadResult)} with an
+	 * executor shared by the connections of many senders.
+	 */
+	public SenderThread(String destAddress, int destPort, MessageCorpus corpus, int numMessages, long millisDelay,
+			boolean keepOriginalTimestamp, SenderThreadResult result, ExecutorService executorService) {
+		this(destAddress, destPort, null, corpus, numMessages, millisDelay, keepOriginalTimestamp, result,
+				executorService);
+	}
 
+	private SenderThread(String destAddress, int destPort, List<String> messages, MessageCorpus corpus,
+			int numMessages, long millisDelay, boolean keepOriginalTimestamp, SenderThreadResult result,
+			ExecutorService executorService) {
+
+		this.destAddress = destAddress;
+		this.destPort = destPort;
 		this.messages = messages;
+		this.corpus = corpus;
 		this.numMessages = numMessages;
 		this.millisDelay = millisDelay;
 		this.result = result;
 		this.keepOriginalTimestamp = keepOriginalTimestamp;
+		this.executorService = executorService;
+		this.sharedExecutorService = executorService != null;
 
-		// We need to have separate threads with separate HAPI contexts in order
-		// to make sure we have parallel connections. See
-		// http://hl7api.sourceforge.net/base/apidocs/ca/uhn/hl7v2/HapiContext.html#newClient
-
-		threadPoolExecutor = new ThreadPoolExecutor(0, 2, 60, TimeUnit.SECONDS, new SynchronousQueue<Runnable>());
-
-		CanonicalModelClassFactory canonicalModelClassFactory = new CanonicalModelClassFactory("2.6");
-		hapiContext = new DefaultHapiContext(threadPoolExecutor);
-		hapiContext.setModelClassFactory(canonicalModelClassFactory);
-
-		hl7Client = new Hl7Client(hapiContext, destAddress, destPort, false);
+		mllpClient = new MllpClient(destAddress, destPort);
 	}
 
 	public SenderThread(String destAddress, int destPort, List<String> messages, int numMessages, long millisDelay,
@@ -71,68 +137,264 @@ public class SenderThread extends Thread {
 
 	@Override
 	public void run() {
+		try {
+			connectAndSend();
+		} finally {
+			cleanUp();
+		}
+	}
+
+	private void connectAndSend() {
 		logger.debug("Connecting.");
 
+		connectionManager.setListener(new ResultConnectionListener());
 		try {
-			hl7Client.connect();
+			// Pooled connections are established when first borrowed
+			if (isPooled()) {
+				logger.debug("Sending over pooled connections.");
+			} else if (usesMllpClient()) {
+				mllpClient.setDirectBuffers(directBuffers);
+				connectionManager.connect(mllpClient);
+			} else {
+				connectionManager.connect(getHl7Client());
+			}
 		} catch (Exception e) {
 			logger.error("Exception when connecting. ", e);
-			++result.failedConnections;
 			return;
 		}
 
 		logger.debug("Sending messages.");
 
 		try {
-			sendMessages(hl7Client);
+			if (isStreaming()) {
+				sendStreamedMessages();
+			} else {
+				sendMessages();
+			}
 		} catch (Exception e) {
 			logger.error("Exception when sending messages. ", e);
-			++result.failedConnections;
+			addFailedConnection();
 			return;
 		}
 
 		logger.debug("Sending completed.");
 		logger.debug("Sent " + sentMessages + " messages in " + result.totalRunTimeMillis + " milliseconds.");
+	}
 
+	/**
+	 * Releases the connection, the HAPI context and an executor of its own, also when sending failed.
+	 */
+	private void cleanUp() {
+		mllpClient.disconnect();
 		try {
-			hapiContext.close();
-			threadPoolExecutor.shutdown();
+			if (hapiContext != null) {
+				hapiContext.close();
+			}
 		} catch (IOException e) {
 			logger.error("Exception on cleanup.", e);
 		}
+		if (!sharedExecutorService && executorService != null) {
+			executorService.shutdown();
+		}
+	}
+
+	/**
+	 * Makes the thread send pre-compiled messages over a plain MLLP connection instead of parsing and re-encoding
+	 * each message with HAPI. Always the case for a corpus without the original messages.
+	 */
+	public void setCompiled(boolean compiled) {
+		this.compiled = compiled;
+	}
+
+	private boolean isCompiled() {
+		return compiled || deviceIdentity != null || (corpus != null && !corpus.hasMessages());
+	}
+
+	/**
+	 * Allows up to inFlightWindow unacknowledged messages on the connection. A window larger than 1 sends messages
+	 * over a pipelined MLLP connection instead of waiting for each acknowledgement.
+	 */
+	public void setInFlightWindow(int inFlightWindow) {
+		if (inFlightWindow > 1) {
+			pipelinedClient = new PipelinedMllpClient(destAddress, destPort, inFlightWindow, new ResultAckListener());
+			if (sharedExecutorService) {
+				pipelinedClient.setReaderExecutor(executorService);
+			}
+			mllpClient = pipelinedClient;
+		} else {
+			pipelinedClient = null;
+			mllpClient = new MllpClient(destAddress, destPort);
+		}
 	}
 
-	private ORU_R01 parseOruMessage(String message) throws HL7Exception {
-		return (ORU_R01) hapiContext.getPipeParser().parse(message);
+	private boolean isPipelined() {
+		return pipelinedClient != null;
 	}
 
-	private void sendMessages(Hl7Client hl7Client) throws HL7Exception {
+	public void setMissedDeadlinePolicy(MissedDeadlinePolicy missedDeadlinePolicy) {
+		this.missedDeadlinePolicy = missedDeadlinePolicy;
+	}
+
+	/**
+	 * Sends on a fixed timetable, startNanos + n * periodNanos, regardless of how long acknowledgements take. Missed
+	 * deadlines are always caught up and acknowledgement latency is measured from the intended send time, so a slow
+	 * receiver shows up as latency instead of as a lower send rate. Overrides the delay and missed deadline policy.
+	 */
+	public void setOpenLoopSchedule(long periodNanos, long startNanos) {
+		this.openLoop = true;
+		this.openLoopPeriodNanos = periodNanos;
+		this.openLoopStartNanos = startNanos;
+	}
+
+	/**
+	 * Reports progress to live metrics shared by all senders while the run is in progress.
+	 */
+	public void setMetrics(LiveMetrics metrics) {
+		this.metrics = metrics;
+	}
+
+	/**
+	 * Makes the thread send messages taken from a source shared by all senders until it runs dry, instead of
+	 * repeating the messages given in the constructor. Messages are compiled as they are taken and sent over a plain
+	 * MLLP connection.
+	 */
+	public void setMessageSource(StreamingMessageSource messageSource) {
+		this.messageSource = messageSource;
+	}
+
+	/**
+	 * Starts sending at the given message instead of the first one, so that senders replaying the same recording can
+	 * be spread over it. Timestamps are shifted to make the start message current.
+	 */
+	public void setStartIndex(int startIndex) {
+		this.startIndex = startIndex;
+	}
+
+	/**
+	 * Writes messages sent over a plain MLLP connection from pooled direct buffers with gathering writes, see
+	 * {@link net.sllmdilab.dordriver.network.MllpFrameWriter}. Has no effect on messages sent with HAPI.
+	 */
+	public void setDirectBuffers(boolean directBuffers) {
+		this.directBuffers = directBuffers;
+	}
+
+	/**
+	 * Sends messages parsed with HAPI over a plain MLLP connection and checks acknowledgements by scanning MSA-1 of
+	 * the raw response, instead of letting HAPI parse every acknowledgement into a message.
+	 */
+	public void setRawAcks(boolean rawAcks) {
+		this.rawAcks = rawAcks;
+	}
+
+	/**
+	 * Makes the sender look like a device of its own by writing the identity into the patient, bed, equipment and
+	 * control ID fields of every message. Messages are sent compiled.
+	 */
+	public void setDeviceIdentity(DeviceIdentity deviceIdentity) {
+		this.deviceIdentity = deviceIdentity;
+	}
+
+	/**
+	 * Establishes and re-establishes connections, with back-off between failed attempts. Replaces the default manager
+	 * that gives up after {@link ConnectionManager#DEFAULT_MAX_ATTEMPTS} attempts.
+	 */
+	public void setConnectionManager(ConnectionManager connectionManager) {
+		this.connectionManager = connectionManager;
+	}
+
+	/**
+	 * Sends every message over a connection borrowed from a pool shared with other senders instead of over a
+	 * connection of its own. Messages are sent over plain MLLP connections, pipelining is not supported.
+	 */
+	public void setConnectionPool(ConnectionPool connectionPool) {
+		this.connectionPool = connectionPool;
+	}
+
+	private boolean isPooled() {
+		return connectionPool != null;
+	}
+
+	private boolean usesMllpClient() {
+		return isCompiled() || isPipelined() || isStreaming() || rawAcks || isPooled();
+	}
+
+	private boolean isStreaming() {
+		return messageSource != null;
+	}
+
+	private boolean isPaced() {
+		return openLoop || millisDelay > 0;
+	}
+
+	/**
+	 * Start of the latency measurement for the message about to be sent. Closed loop, call it once the connection is
+	 * open, so that reconnecting and waiting for the pool do not count as latency.
+	 */
+	private long getIntendedSendNanos() {
+		return openLoop ? scheduler.getDeadlineNanos() : System.nanoTime();
+	}
+
+	/**
+	 * HAPI context of this thread, created on first use so that threads sending compiled messages never build one.
+	 */
+	private HapiContext getHapiContext() {
+		if (hapiContext == null) {
+			// We need to have separate threads with separate HAPI contexts in order
+			// to make sure we have parallel connections. See
+			// http://hl7api.sourceforge.net/base/apidocs/ca/uhn/hl7v2/HapiContext.html#newClient
+			if (executorService == null) {
+				executorService = new ThreadPoolExecutor(0, 2, 60, TimeUnit.SECONDS, new SynchronousQueue<Runnable>());
+			}
+
+			CanonicalModelClassFactory canonicalModelClassFactory = new CanonicalModelClassFactory("2.6");
+			hapiContext = new DefaultHapiContext(executorService);
+			hapiContext.setModelClassFactory(canonicalModelClassFactory);
+		}
+		return hapiContext;
+	}
+
+	private Hl7Client getHl7Client() {
+		if (hl7Client == null) {
+			hl7Client = new Hl7Client(getHapiContext(), destAddress, destPort, false);
+		}
+		return hl7Client;
+	}
+
+	ORU_R01 parseOruMessage(String message) throws HL7Exception {
+		return (ORU_R01) getHapiContext().getPipeParser().parse(message);
+	}
+
+	private void sendMessages() throws HL7Exception {
 		long startTimeMillis = System.currentTimeMillis();
 
-		ORU_R01 firstMessage = parseOruMessage(messages.get(0));
-		ORU_R01 lastMessage = parseOruMessage(messages.get(messages.size() - 1));
+		if (corpus == null) {
+			corpus = compiled || deviceIdentity != null ? MessageCorpus.compile(messages) : MessageCorpus
+					.analyse(messages);
+		}
+		if (isCompiled()) {
+			encodeBuffer = new byte[corpus.getMaxEncodedLength()];
+		}
 
-		Duration messageDuration = getOBRTimeFromStartToEnd(firstMessage, lastMessage);
+		int messageCount = corpus.size();
+		Long messageDurationMillis = corpus.getMessageDurationMillis();
+		long timestampDifferenceMillis = corpus.getTimestampDifferenceMillis(startIndex, System.currentTimeMillis());
 
-		Duration timestampDifference = getTimestampDifference(firstMessage);
+		startScheduler();
 
-		int messageIndex = 0;
+		int messageIndex = startIndex;
 		while (sentMessages < numMessages) {
-			long startIterTimeMillis = System.currentTimeMillis();
 			logger.debug("Sending message " + messageIndex + "...");
-			ORU_R01 message = null;
+			beforeSend();
 			try {
-				message = parseOruMessage(messages.get(messageIndex));
-
-				injectTimestampsForMessage(message, timestampDifference);
-
-				long startSendTimeMillis = System.currentTimeMillis();
-				hl7Client.sendMessage(message);
-				result.totalSendTimeMillis += (System.currentTimeMillis() - startSendTimeMillis);
+				if (isCompiled()) {
+					sendCompiledMessage(corpus.getCompiledMessage(messageIndex), timestampDifferenceMillis);
+				} else {
+					sendParsedMessage(corpus.getMessage(messageIndex), timestampDifferenceMillis);
+				}
 
 			} catch (HL7Exception | LLPException | IOException e) {
 				logger.error("Exception when sending message.", e);
-				++result.failedMessages;
+				addFailedMessages(1);
 			}
 
 			logger.debug("Message sent.");
@@ -140,132 +402,335 @@ public class SenderThread extends Thread {
 			++sentMessages;
 			++messageIndex;
 
-			boolean isLastMessage = messageIndex >= messages.size();
+			boolean isLastMessage = messageIndex >= messageCount;
 			if (isLastMessage) {
 				messageIndex = 0;
 				// Message duration defined when sending waveform messages.
-				if (messageDuration != null) {
+				if (messageDurationMillis != null) {
 					/*
 					 * Waveforms need continuation between messages, i.e. end time of a message is the start time of
 					 * next message, hence the fixed addition to the timestampDifference
 					 */
-					timestampDifference = timestampDifference.plusMillis(messageDuration.toMillis());
+					timestampDifferenceMillis += messageDurationMillis;
 				} else {
 					// Continuation not as important for parametric data, hence calculating a new one.
-					timestampDifference = getTimestampDifference(firstMessage);
+					timestampDifferenceMillis = corpus.getTimestampDifferenceMillis(0, System.currentTimeMillis());
 				}
 			}
-			long stopIterTimeMillis = System.currentTimeMillis();
-			long iterDuration = stopIterTimeMillis - startIterTimeMillis;
+			if (sentMessages < numMessages && isPaced()) {
+				scheduler.nextDeadline(System.nanoTime());
+				awaitDeadline();
+			}
+		}
+
+		if (isPipelined()) {
+			awaitAcknowledgements();
+		}
+
+		result.totalRunTimeMillis = System.currentTimeMillis() - startTimeMillis;
+		result.sentMessages = sentMessages;
+		// The thread actually running the sender, which is not this one when run on an executor
+		result.threadId = Thread.currentThread().getId();
+		scheduler.writeTo(result);
+	}
+
+	private void sendStreamedMessages() throws InterruptedException {
+		long startTimeMillis = System.currentTimeMillis();
+
+		startScheduler();
+
+		CompiledMessage message;
+		while ((message = messageSource.take()) != null) {
+			if (sentMessages > 0 && isPaced()) {
+				scheduler.nextDeadline(System.nanoTime());
+				awaitDeadline();
+			}
+
+			logger.debug("Sending message " + sentMessages + "...");
+			beforeSend();
 			try {
-				if (sentMessages < numMessages && millisDelay > 0) {
-					Thread.sleep(millisDelay - iterDuration);
+				if (encodeBuffer == null || encodeBuffer.length < message.getMaxEncodedLength()) {
+					encodeBuffer = new byte[message.getMaxEncodedLength()];
 				}
-			} catch (InterruptedException e) {
-				throw new DorDriverException("Thread interrupted: ", e);
+				sendCompiledMessage(message, messageSource.getTimestampDifferenceMillis());
+			} catch (HL7Exception | LLPException | IOException e) {
+				logger.error("Exception when sending message.", e);
+				addFailedMessages(1);
 			}
+
+			++sentMessages;
+		}
+
+		if (isPipelined()) {
+			awaitAcknowledgements();
 		}
 
 		result.totalRunTimeMillis = System.currentTimeMillis() - startTimeMillis;
 		result.sentMessages = sentMessages;
-		result.threadId = getId();
+		result.threadId = Thread.currentThread().getId();
+		scheduler.writeTo(result);
 	}
 
-	/**
-	 * Calculates the OBR time covered by two messages. It is the duration between start time of firstMessage and
-	 * endTime of lastMessage. Returns null if no endTime is found in lastMessage.
-	 * 
-	 * @param firstMessage
-	 * @param lastMessage
-	 * @return
-	 */
-	private Duration getOBRTimeFromStartToEnd(ORU_R01 firstMessage, ORU_R01 lastMessage) {
-		DTM startDate = firstMessage.getPATIENT_RESULT().getORDER_OBSERVATION().getOBR().getObr7_ObservationDateTime();
-		DTM endDate = lastMessage.getPATIENT_RESULT().getORDER_OBSERVATION().getOBR().getObr8_ObservationEndDateTime();
+	private void startScheduler() {
+		if (openLoop) {
+			scheduler = new PacingScheduler(openLoopPeriodNanos, MissedDeadlinePolicy.CATCH_UP);
+			scheduler.start(openLoopStartNanos);
+			awaitDeadline();
+		} else {
+			scheduler = new PacingScheduler(TimeUnit.MILLISECONDS.toNanos(millisDelay), missedDeadlinePolicy);
+			scheduler.start();
+		}
+	}
+
+	private void beforeSend() {
+		if (metrics != null) {
+			metrics.messageSent();
+		}
+	}
 
+	private void awaitDeadline() {
 		try {
-			if (endDate.isEmpty()) {
-				return null;
+			scheduler.awaitDeadline();
+		} catch (InterruptedException e) {
+			throw new DorDriverException("Thread interrupted: ", e);
+		}
+	}
+
+	private void sendParsedMessage(String messageString, long timestampDifferenceMillis) throws HL7Exception,
+			LLPException, IOException {
+		ORU_R01 message = parseOruMessage(messageString);
+
+		injectTimestampsForMessage(message, timestampDifferenceMillis);
+
+		if (usesMllpClient()) {
+			byte[] bytes = getHapiContext().getPipeParser().encode(message).getBytes(CompiledMessage.CHARSET);
+			sendBytes(bytes, bytes.length);
+			return;
+		}
+
+		long startSendTimeMillis = System.currentTimeMillis();
+		connectionManager.ensureOpen(getHl7Client());
+		long startSendNanos = getIntendedSendNanos();
+		Endpoint endpoint = endpointMessageSent();
+		AckCode ackCode;
+		try {
+			ackCode = getHl7Client().sendMessage(message);
+		} catch (HL7Exception | LLPException | IOException e) {
+			endpointMessagesFailed(endpoint, 1);
+			throw e;
+		}
+		recordAck(ackCode, System.nanoTime() - startSendNanos);
+		result.totalSendTimeMillis += (System.currentTimeMillis() - startSendTimeMillis);
+	}
+
+	private void sendCompiledMessage(CompiledMessage message, long timestampDifferenceMillis) throws HL7Exception,
+			LLPException, IOException {
+		int length = message.encode(encodeBuffer, 0, System.currentTimeMillis(), timestampDifferenceMillis,
+				keepOriginalTimestamp, deviceIdentity);
+		sendBytes(encodeBuffer, length);
+	}
+
+	/**
+	 * Sends an encoded message over this sender's MLLP connection or one borrowed from the pool, reconnecting first
+	 * if the connection was lost.
+	 */
+	private void sendBytes(byte[] bytes, int length) throws HL7Exception, LLPException, IOException {
+		long startSendTimeMillis = System.currentTimeMillis();
+		if (isPipelined()) {
+			connectionManager.ensureOpen(pipelinedClient);
+			Endpoint endpoint = endpointMessageSent();
+			try {
+				// Closed loop latency is measured from the write, see AckListener
+				if (openLoop) {
+					pipelinedClient.sendMessage(bytes, 0, length, getIntendedSendNanos());
+				} else {
+					pipelinedClient.sendMessage(bytes, 0, length);
+				}
+			} catch (LLPException | IOException e) {
+				endpointMessagesFailed(endpoint, 1);
+				throw e;
+			}
+		} else {
+			MllpClient client = isPooled() ? acquireConnection() : mllpClient;
+			try {
+				connectionManager.ensureOpen(client);
+				long startSendNanos = getIntendedSendNanos();
+				Endpoint endpoint = endpointMessageSent();
+				AckCode ackCode;
+				try {
+					ackCode = client.sendMessage(bytes, 0, length);
+				} catch (LLPException | IOException e) {
+					endpointMessagesFailed(endpoint, 1);
+					throw e;
+				}
+				recordAck(ackCode, System.nanoTime() - startSendNanos);
+			} finally {
+				if (isPooled()) {
+					connectionPool.release(client);
+				}
 			}
-			Date start = startDate.getValueAsDate();
-			Date end = endDate.getValueAsDate();
-			return Duration.between(start.toInstant(), end.toInstant());
-		} catch (HL7Exception e) {
-			throw new DorDriverException("Error when calculating OBR time covered by two messages.", e);
 		}
+		result.totalSendTimeMillis += (System.currentTimeMillis() - startSendTimeMillis);
 	}
 
 	/**
-	 * Fetch the difference between initial timestamp and current timestamp. This will later be appended to each
-	 * subsequent timestamp in order to maintain consistent time between messages.
+	 * Counts a message about to be written to the endpoint of the current connection, if load balanced.
+	 *
+	 * @return the endpoint, or null
 	 */
-	private Duration getTimestampDifference(ORU_R01 message) throws HL7Exception {
-		OBR obr = message.getPATIENT_RESULT().getORDER_OBSERVATION().getOBR();
+	private Endpoint endpointMessageSent() {
+		Endpoint endpoint = connectionManager.getEndpoint();
+		if (endpoint != null) {
+			endpoint.messageSent();
+		}
+		return endpoint;
+	}
 
-		// If end date is missing (not a waveform message), use start date
-		// instead
-		DTM date = obr.getObr8_ObservationEndDateTime();
-		if (date.isEmpty()) {
-			date = obr.getObr7_ObservationDateTime();
+	private void endpointMessagesFailed(Endpoint endpoint, int count) {
+		if (endpoint != null) {
+			endpoint.messagesFailed(count);
 		}
+	}
 
-		if (date.isEmpty()) {
-			throw new DorDriverException("OBR missing end date.");
-		} else {
-			return Duration.between(date.getValueAsDate().toInstant(), new Date().toInstant());
+	private MllpClient acquireConnection() {
+		try {
+			return connectionPool.acquire();
+		} catch (InterruptedException e) {
+			throw new DorDriverException("Thread interrupted: ", e);
+		}
+	}
+
+	private void awaitAcknowledgements() {
+		try {
+			if (!pipelinedClient.awaitAcknowledgements(ACK_DRAIN_TIMEOUT_MILLIS)) {
+				logger.warn(pipelinedClient.getInFlightCount() + " messages still unacknowledged.");
+			}
+		} catch (InterruptedException e) {
+			throw new DorDriverException("Thread interrupted: ", e);
+		}
+	}
+
+	private void recordAck(AckCode ackCode, long latencyNanos) {
+		long latencyMicros = TimeUnit.NANOSECONDS.toMicros(latencyNanos);
+		synchronized (result) {
+			result.addAckCode(ackCode);
+			result.totalAckLatencyMicros += latencyMicros;
+			if (metrics == null) {
+				result.ackLatencyHistogram.recordValue(latencyMicros);
+			}
+		}
+		// With live metrics the latency is recorded there only, for the whole run
+		if (metrics != null) {
+			metrics.messageAcknowledged(latencyMicros);
+		}
+		Endpoint endpoint = connectionManager.getEndpoint();
+		if (endpoint != null) {
+			endpoint.messageAcknowledged(ackCode, latencyMicros);
+		}
+	}
+
+	private void addFailedMessages(long count) {
+		synchronized (result) {
+			result.failedMessages += count;
+		}
+		if (metrics != null) {
+			metrics.messagesFailed(count);
+		}
+	}
+
+	private void addFailedConnection() {
+		synchronized (result) {
+			++result.failedConnections;
+		}
+		if (metrics != null) {
+			metrics.connectionFailed();
 		}
 	}
 
 	/**
 	 * Add the specified timestamp difference to each relevant timestamp in a message, modifying the message.
 	 */
-	private void injectTimestampsForMessage(ORU_R01 message, Duration timestampDifference) throws HL7Exception {
-		message.getMSH().getDateTimeOfMessage().setValue(new Date());
+	void injectTimestampsForMessage(ORU_R01 message, long timestampDifferenceMillis) throws HL7Exception {
+		message.getMSH().getDateTimeOfMessage().setValue(DtmCodec.format(System.currentTimeMillis(),
+				DtmCodec.MILLIS_PRECISION, DtmCodec.LOCAL_OFFSET, LOCAL_ZONE));
 		if(!this.keepOriginalTimestamp){
 			for (ORU_R01_PATIENT_RESULT patientResult : message.getPATIENT_RESULTAll()) {
 				for (ORU_R01_ORDER_OBSERVATION orderObservation : patientResult.getORDER_OBSERVATIONAll()) {
-					injectTimestampsForOrderObservation(timestampDifference, orderObservation);
+					injectTimestampsForOrderObservation(timestampDifferenceMillis, orderObservation);
 				}
 			}
 		}
 	}
 
-	private void injectTimestampsForOrderObservation(Duration timestampDifference,
+	private void injectTimestampsForOrderObservation(long timestampDifferenceMillis,
 			ORU_R01_ORDER_OBSERVATION orderObservation) throws HL7Exception {
 
-		injectTimestampsForObr(timestampDifference, orderObservation);
+		injectTimestampsForObr(timestampDifferenceMillis, orderObservation);
 
 		for (ORU_R01_OBSERVATION observation : orderObservation.getOBSERVATIONAll()) {
-			injectTimestampsForObx(timestampDifference, observation);
+			injectTimestampsForObx(timestampDifferenceMillis, observation);
 		}
 	}
 
-	private void injectTimestampsForObx(Duration timestampDifference, ORU_R01_OBSERVATION observation)
+	private void injectTimestampsForObx(long timestampDifferenceMillis, ORU_R01_OBSERVATION observation)
 			throws HL7Exception {
 		OBX obx = observation.getOBX();
-		DTM start = obx.getDateTimeOfTheObservation();
+		addOffset(obx.getDateTimeOfTheObservation(), timestampDifferenceMillis);
+	}
 
-		if (!start.isEmpty()) {
-			start.setValue(plusOffset(start.getValueAsDate(), timestampDifference));
+	private void injectTimestampsForObr(long timestampDifferenceMillis, ORU_R01_ORDER_OBSERVATION orderObservation)
+			throws HL7Exception {
+		addOffset(orderObservation.getOBR().getObr7_ObservationDateTime(), timestampDifferenceMillis);
+		addOffset(orderObservation.getOBR().getObr8_ObservationEndDateTime(), timestampDifferenceMillis);
+	}
+
+	/**
+	 * Adds the offset to a timestamp, keeping its precision and UTC offset.
+	 */
+	private void addOffset(DTM timestamp, long offsetMillis) throws HL7Exception {
+		if (!timestamp.isEmpty()) {
+			timestamp.setValue(DtmCodec.addMillis(timestamp.getValue(), offsetMillis, LOCAL_ZONE));
 		}
 	}
 
-	private void injectTimestampsForObr(Duration timestampDifference, ORU_R01_ORDER_OBSERVATION orderObservation)
-			throws HL7Exception {
-		DTM orderStart = orderObservation.getOBR().getObr7_ObservationDateTime();
-		if (!orderStart.isEmpty()) {
-			orderStart.setValue(plusOffset(orderStart.getValueAsDate(), timestampDifference));
+	private class ResultConnectionListener implements ConnectionListener {
+
+		@Override
+		public void connected(long connectNanos, boolean reconnect) {
+			long connectMicros = TimeUnit.NANOSECONDS.toMicros(connectNanos);
+			synchronized (result) {
+				result.connectTimeHistogram.recordValue(connectMicros);
+				if (reconnect) {
+					++result.reconnects;
+				}
+			}
+			if (metrics != null) {
+				metrics.connected(connectMicros);
+				if (reconnect) {
+					metrics.reconnected();
+				}
+			}
 		}
 
-		DTM orderEnd = orderObservation.getOBR().getObr8_ObservationEndDateTime();
-		if (!orderEnd.isEmpty()) {
-			orderEnd.setValue(plusOffset(orderEnd.getValueAsDate(), timestampDifference));
+		@Override
+		public void connectFailed(Exception e) {
+			logger.debug("Connection attempt failed: " + e);
+			addFailedConnection();
 		}
 	}
 
-	private Date plusOffset(Date date, Duration offset) {
-		ZonedDateTime zdt = ZonedDateTime.ofInstant(date.toInstant(), ZoneOffset.UTC);
+	private class ResultAckListener implements AckListener {
 
-		return Date.from(zdt.plus(offset).toInstant());
+		@Override
+		public void messageAcknowledged(String controlId, AckCode ackCode, long latencyNanos) {
+			recordAck(ackCode, latencyNanos);
+		}
+
+		@Override
+		public void messagesLost(int count) {
+			logger.warn("Connection lost with " + count + " unacknowledged messages.");
+			addFailedMessages(count);
+			endpointMessagesFailed(connectionManager.getEndpoint(), count);
+		}
 	}
 }
@@ -1,10 +1,114 @@
 package net.sllmdilab.dordriver.application;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.zip.DataFormatException;
+
+import net.sllmdilab.dordriver.metrics.LatencyIntervalLog;
+import net.sllmdilab.dordriver.network.AckCode;
+
+import org.HdrHistogram.Histogram;
+
 public class SenderThreadResult {
 	public long totalRunTimeMillis;
 	public long totalSendTimeMillis;
 	public long sentMessages;
 	public long failedMessages;
+	/** Failed connection attempts, including attempts that were retried */
 	public long failedConnections;
+	/** Connections re-established after being lost */
+	public long reconnects;
+	/** Time taken by every successful connection attempt, in microseconds */
+	public final Histogram connectTimeHistogram = new Histogram(LatencyIntervalLog.SIGNIFICANT_DIGITS);
+	public long totalAckLatencyMicros;
+	/** Messages acknowledged with AE, or without a valid acknowledgment code */
+	public long applicationErrors;
+	/** Messages acknowledged with AR */
+	public long applicationRejects;
+	/**
+	 * Acknowledgement latency of every acknowledged message, in microseconds. Empty with live metrics, which record the
+	 * latencies of the whole run instead.
+	 */
+	public final Histogram ackLatencyHistogram = new Histogram(LatencyIntervalLog.SIGNIFICANT_DIGITS);
+	public long pacedSends;
+	public long missedDeadlines;
+	public long skippedDeadlines;
+	public long totalJitterMicros;
+	public long maxJitterMicros;
 	public long threadId;
+
+	/**
+	 * Counts the acknowledgment code of an acknowledged message. Not synchronized.
+	 */
+	public void addAckCode(AckCode ackCode) {
+		if (ackCode == null || ackCode == AckCode.ERROR) {
+			++applicationErrors;
+		} else if (ackCode == AckCode.REJECT) {
+			++applicationRejects;
+		}
+	}
+
+	/**
+	 * Writes the result for {@link #readFrom(DataInput)}, histograms in HdrHistogram's compressed encoding.
+	 */
+	public void writeTo(DataOutput out) throws IOException {
+		out.writeLong(totalRunTimeMillis);
+		out.writeLong(totalSendTimeMillis);
+		out.writeLong(sentMessages);
+		out.writeLong(failedMessages);
+		out.writeLong(failedConnections);
+		out.writeLong(reconnects);
+		writeHistogram(out, connectTimeHistogram);
+		out.writeLong(totalAckLatencyMicros);
+		out.writeLong(applicationErrors);
+		out.writeLong(applicationRejects);
+		writeHistogram(out, ackLatencyHistogram);
+		out.writeLong(pacedSends);
+		out.writeLong(missedDeadlines);
+		out.writeLong(skippedDeadlines);
+		out.writeLong(totalJitterMicros);
+		out.writeLong(maxJitterMicros);
+		out.writeLong(threadId);
+	}
+
+	public static SenderThreadResult readFrom(DataInput in) throws IOException {
+		SenderThreadResult result = new SenderThreadResult();
+		result.totalRunTimeMillis = in.readLong();
+		result.totalSendTimeMillis = in.readLong();
+		result.sentMessages = in.readLong();
+		result.failedMessages = in.readLong();
+		result.failedConnections = in.readLong();
+		result.reconnects = in.readLong();
+		result.connectTimeHistogram.add(readHistogram(in));
+		result.totalAckLatencyMicros = in.readLong();
+		result.applicationErrors = in.readLong();
+		result.applicationRejects = in.readLong();
+		result.ackLatencyHistogram.add(readHistogram(in));
+		result.pacedSends = in.readLong();
+		result.missedDeadlines = in.readLong();
+		result.skippedDeadlines = in.readLong();
+		result.totalJitterMicros = in.readLong();
+		result.maxJitterMicros = in.readLong();
+		result.threadId = in.readLong();
+		return result;
+	}
+
+	static void writeHistogram(DataOutput out, Histogram histogram) throws IOException {
+		ByteBuffer buffer = ByteBuffer.allocate(histogram.getNeededByteBufferCapacity());
+		int length = histogram.encodeIntoCompressedByteBuffer(buffer);
+		out.writeInt(length);
+		out.write(buffer.array(), 0, length);
+	}
+
+	static Histogram readHistogram(DataInput in) throws IOException {
+		byte[] encoded = new byte[in.readInt()];
+		in.readFully(encoded);
+		try {
+			return Histogram.decodeFromCompressedByteBuffer(ByteBuffer.wrap(encoded), 0);
+		} catch (DataFormatException e) {
+			throw new IOException("Invalid histogram.", e);
+		}
+	}
 }
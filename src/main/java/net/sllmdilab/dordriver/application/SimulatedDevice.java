@@ -0,0 +1,461 @@
+package net.sllmdilab.dordriver.application;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.channels.SelectionKey;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import net.sllmdilab.dordriver.message.DeviceIdentity;
+import net.sllmdilab.dordriver.message.MessageCorpus;
+import net.sllmdilab.dordriver.metrics.LiveMetrics;
+import net.sllmdilab.dordriver.network.AckCode;
+import net.sllmdilab.dordriver.network.AckParser;
+import net.sllmdilab.dordriver.network.ConnectionManager;
+import net.sllmdilab.dordriver.network.Endpoint;
+import net.sllmdilab.dordriver.network.LoadBalancer;
+import net.sllmdilab.dordriver.network.NioHandler;
+import net.sllmdilab.dordriver.network.NioMllpConnection;
+import net.sllmdilab.dordriver.network.ReconnectBackoff;
+import net.sllmdilab.dordriver.network.SelectorLoop;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import ca.uhn.hl7v2.llp.LLPException;
+
+/**
+ * A simulated bedside device driven by a {@link SelectorLoop}. Does the same job as a {@link SenderThread} sending
+ * compiled messages, but as a state machine on a non-blocking connection so that thousands of devices can share a
+ * few threads.
+ */
+public class SimulatedDevice implements NioHandler {
+	private static Logger logger = LoggerFactory.getLogger(SimulatedDevice.class);
+
+	private static final long TIMEOUT_NANOS = TimeUnit.SECONDS.toNanos(10);
+
+	private enum State {
+		CONNECTING, BACKING_OFF, IDLE, SENDING, AWAITING_ACK, DONE
+	}
+
+	private final int deviceId;
+	private InetSocketAddress address;
+	private final MessageCorpus corpus;
+	private final int numMessages;
+	private long nanosDelay;
+	private PacingScheduler scheduler;
+	private boolean openLoop;
+	private long openLoopStartNanos;
+	private final boolean keepOriginalTimestamp;
+	private final SenderThreadResult result;
+	private final CountDownLatch completion;
+	private final int maxEncodedLength;
+	private LiveMetrics metrics;
+	private DeviceIdentity deviceIdentity;
+	private ReconnectBackoff backoff = new ReconnectBackoff();
+	private int maxConnectAttempts = ConnectionManager.DEFAULT_MAX_ATTEMPTS;
+	private LoadBalancer loadBalancer;
+	private Endpoint endpoint;
+
+	private SelectorLoop loop;
+	private NioMllpConnection connection;
+	private SelectionKey key;
+	private State state;
+
+	private int startIndex;
+	private int messageIndex;
+	private int sentMessages;
+	private long timestampDifferenceMillis;
+	private long startTimeMillis;
+	private long connectStartNanos;
+	private int connectAttempts;
+	private int connectCount;
+	private long reconnectNanos;
+	private long sendStartNanos;
+	private long intendedSendNanos;
+	private long nextSendNanos;
+	// Connect and acknowledgement timeouts share one queued timer, see scheduleTimeout
+	private long timeoutNanos;
+	private boolean timeoutQueued;
+	private long timeoutQueuedNanos;
+
+	public SimulatedDevice(int deviceId, InetSocketAddress address, MessageCorpus corpus, int numMessages,
+			long millisDelay, MissedDeadlinePolicy missedDeadlinePolicy, boolean keepOriginalTimestamp,
+			SenderThreadResult result, CountDownLatch completion) {
+		this.deviceId = deviceId;
+		this.address = address;
+		this.corpus = corpus;
+		this.numMessages = numMessages;
+		this.nanosDelay = TimeUnit.MILLISECONDS.toNanos(millisDelay);
+		this.scheduler = new PacingScheduler(nanosDelay, missedDeadlinePolicy);
+		this.keepOriginalTimestamp = keepOriginalTimestamp;
+		this.result = result;
+		this.completion = completion;
+
+		this.maxEncodedLength = corpus.getMaxEncodedLength();
+	}
+
+	/**
+	 * Sends on a fixed timetable, startNanos + n * periodNanos, catching up on missed deadlines and measuring
+	 * acknowledgement latency from the intended send time. See {@link SenderThread#setOpenLoopSchedule(long, long)}.
+	 */
+	public void setOpenLoopSchedule(long periodNanos, long startNanos) {
+		this.openLoop = true;
+		this.nanosDelay = periodNanos;
+		this.openLoopStartNanos = startNanos;
+		this.scheduler = new PacingScheduler(periodNanos, MissedDeadlinePolicy.CATCH_UP);
+	}
+
+	/**
+	 * Reports progress to live metrics shared by all devices while the run is in progress.
+	 */
+	public void setMetrics(LiveMetrics metrics) {
+		this.metrics = metrics;
+	}
+
+	/**
+	 * Starts sending at the given message instead of the first one. See {@link SenderThread#setStartIndex(int)}.
+	 */
+	public void setStartIndex(int startIndex) {
+		this.startIndex = startIndex;
+	}
+
+	/**
+	 * Writes the identity into every message. See {@link SenderThread#setDeviceIdentity(DeviceIdentity)}.
+	 */
+	public void setDeviceIdentity(DeviceIdentity deviceIdentity) {
+		this.deviceIdentity = deviceIdentity;
+	}
+
+	/**
+	 * Retries failed connection attempts after a delay from the back-off. Like a {@link ConnectionManager}, the device
+	 * gives up after maxConnectAttempts consecutive failures, or never if
+	 * {@link ConnectionManager#UNLIMITED_ATTEMPTS}: before the first connect by finishing, later by failing the
+	 * message waiting for the connection.
+	 */
+	public void setReconnectBackoff(ReconnectBackoff backoff, int maxConnectAttempts) {
+		this.backoff = backoff;
+		this.maxConnectAttempts = maxConnectAttempts;
+	}
+
+	/**
+	 * Places the device on an endpoint of the balancer before every connection attempt, instead of always connecting
+	 * to the address given in the constructor.
+	 */
+	public void setLoadBalancer(LoadBalancer loadBalancer) {
+		this.loadBalancer = loadBalancer;
+	}
+
+	private boolean isPaced() {
+		return openLoop || nanosDelay > 0;
+	}
+
+	@Override
+	public void start(SelectorLoop loop) {
+		this.loop = loop;
+
+		messageIndex = startIndex;
+		timestampDifferenceMillis = corpus.getTimestampDifferenceMillis(startIndex, System.currentTimeMillis());
+		startTimeMillis = System.currentTimeMillis();
+		nextSendNanos = openLoop ? openLoopStartNanos : System.nanoTime();
+		scheduler.start(nextSendNanos);
+
+		if (numMessages <= 0) {
+			finish();
+			return;
+		}
+
+		connect();
+	}
+
+	private void connect() {
+		state = State.CONNECTING;
+		if (loadBalancer != null) {
+			endpoint = loadBalancer.place(deviceId, endpoint);
+			address = endpoint.getAddress();
+		}
+		connectStartNanos = System.nanoTime();
+		try {
+			connection = NioMllpConnection.open(address);
+			key = connection.getChannel().register(loop.getSelector(), SelectionKey.OP_CONNECT, this);
+			scheduleTimeout(connectStartNanos);
+		} catch (IOException e) {
+			connectFailed(e);
+		}
+	}
+
+	private void connectFailed(Exception e) {
+		logger.debug("Device " + deviceId + " failed to connect: " + e);
+		closeConnection();
+		addFailedConnection();
+		if (endpoint != null) {
+			endpoint.connectFailed();
+		}
+
+		if (maxConnectAttempts != ConnectionManager.UNLIMITED_ATTEMPTS && ++connectAttempts >= maxConnectAttempts) {
+			connectAttempts = 0;
+			if (connectCount == 0) {
+				logger.error("Device " + deviceId + " failed to connect.", e);
+				finish();
+				return;
+			}
+
+			logger.error("Device " + deviceId + " failed to reconnect, failing message.", e);
+			++result.failedMessages;
+			if (metrics != null) {
+				metrics.messageSent();
+				metrics.messagesFailed(1);
+			}
+			state = State.BACKING_OFF;
+			messageCompleted();
+			if (state == State.DONE) {
+				return;
+			}
+		}
+
+		state = State.BACKING_OFF;
+		reconnectNanos = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(backoff.nextDelayMillis());
+		loop.schedule(this, reconnectNanos);
+	}
+
+	@Override
+	public void handleKey(SelectionKey key) {
+		try {
+			if (key.isConnectable()) {
+				handleConnect();
+			} else if (key.isWritable()) {
+				handleWrite();
+			} else if (key.isReadable()) {
+				handleRead();
+			}
+		} catch (IOException | LLPException e) {
+			if (state == State.CONNECTING) {
+				connectFailed(e);
+			} else {
+				logger.error("Device " + deviceId + " failed to send message.", e);
+				messageFailed();
+			}
+		}
+	}
+
+	@Override
+	public void handleTimer() {
+		long now = System.nanoTime();
+		if (timeoutQueued && now - timeoutQueuedNanos >= 0) {
+			timeoutQueued = false;
+		}
+
+		if (state == State.IDLE && now - nextSendNanos >= 0) {
+			try {
+				sendNext();
+			} catch (IOException e) {
+				logger.error("Device " + deviceId + " failed to send message.", e);
+				messageFailed();
+			}
+		} else if ((state == State.SENDING || state == State.AWAITING_ACK)
+				&& now - sendStartNanos >= TIMEOUT_NANOS) {
+			logger.error("Device " + deviceId + " timed out waiting for acknowledgement.");
+			messageFailed();
+		} else if (state == State.CONNECTING && now - connectStartNanos >= TIMEOUT_NANOS) {
+			connectFailed(new IOException("Timed out connecting."));
+		} else if (state == State.BACKING_OFF && now - reconnectNanos >= 0) {
+			connect();
+		}
+
+		if (state == State.CONNECTING || state == State.SENDING || state == State.AWAITING_ACK) {
+			queueTimeout();
+		}
+	}
+
+	/**
+	 * Sets the connect or acknowledgement timeout. Rather than a timer for every connect and send, only one timer is
+	 * queued per device. If it fires before the current timeout, because the connect or message it was queued for
+	 * completed, it is queued again for the rest.
+	 */
+	private void scheduleTimeout(long startNanos) {
+		timeoutNanos = startNanos + TIMEOUT_NANOS;
+		queueTimeout();
+	}
+
+	private void queueTimeout() {
+		if (!timeoutQueued) {
+			timeoutQueued = true;
+			timeoutQueuedNanos = timeoutNanos;
+			loop.schedule(this, timeoutNanos);
+		}
+	}
+
+	private void handleConnect() throws IOException {
+		if (!connection.finishConnect()) {
+			return;
+		}
+
+		long connectMicros = TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - connectStartNanos);
+		boolean reconnect = connectCount > 0;
+		++connectCount;
+		connectAttempts = 0;
+		backoff.reset();
+		if (endpoint != null) {
+			endpoint.connected();
+		}
+		result.connectTimeHistogram.recordValue(connectMicros);
+		if (reconnect) {
+			++result.reconnects;
+		}
+		if (metrics != null) {
+			metrics.connected(connectMicros);
+			if (reconnect) {
+				metrics.reconnected();
+			}
+		}
+
+		state = State.IDLE;
+		key.interestOps(0);
+		scheduleNext();
+	}
+
+	private void handleWrite() throws IOException {
+		if (connection.write()) {
+			awaitAck();
+		}
+	}
+
+	private void handleRead() throws IOException, LLPException {
+		if (!connection.read() || state != State.AWAITING_ACK) {
+			return;
+		}
+
+		long latencyMicros = TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - intendedSendNanos);
+		result.totalAckLatencyMicros += latencyMicros;
+		// With live metrics the latency is recorded there only, for the whole run
+		if (metrics != null) {
+			metrics.messageAcknowledged(latencyMicros);
+		} else {
+			result.ackLatencyHistogram.recordValue(latencyMicros);
+		}
+		AckCode ackCode = AckParser.getAckCode(connection.getResponse(), 0, connection.getResponseLength());
+		result.addAckCode(ackCode);
+		if (endpoint != null) {
+			endpoint.messageAcknowledged(ackCode, latencyMicros);
+		}
+
+		state = State.IDLE;
+		key.interestOps(0);
+		messageCompleted();
+	}
+
+	private void sendNext() throws IOException {
+		if (endpoint != null) {
+			endpoint.messageSent();
+		}
+		if (openLoop || (nanosDelay > 0 && sentMessages > 0)) {
+			scheduler.recordJitter(System.nanoTime() - nextSendNanos);
+		}
+
+		byte[] buffer = connection.beginMessage(maxEncodedLength);
+		int length = corpus.getCompiledMessage(messageIndex).encode(buffer, connection.getMessageOffset(),
+				System.currentTimeMillis(), timestampDifferenceMillis, keepOriginalTimestamp, deviceIdentity);
+		connection.endMessage(length);
+		if (metrics != null) {
+			metrics.messageSent();
+		}
+
+		sendStartNanos = System.nanoTime();
+		intendedSendNanos = openLoop ? nextSendNanos : sendStartNanos;
+		scheduleTimeout(sendStartNanos);
+
+		if (connection.write()) {
+			awaitAck();
+		} else {
+			state = State.SENDING;
+			key.interestOps(SelectionKey.OP_WRITE);
+		}
+	}
+
+	private void awaitAck() {
+		state = State.AWAITING_ACK;
+		key.interestOps(SelectionKey.OP_READ);
+	}
+
+	private void messageFailed() {
+		++result.failedMessages;
+		if (endpoint != null) {
+			endpoint.messagesFailed(1);
+		}
+		if (metrics != null) {
+			metrics.messagesFailed(1);
+		}
+		closeConnection();
+		state = State.CONNECTING;
+		messageCompleted();
+
+		if (state != State.DONE) {
+			connect();
+		}
+	}
+
+	private void messageCompleted() {
+		++sentMessages;
+		++messageIndex;
+
+		if (messageIndex >= corpus.size()) {
+			messageIndex = 0;
+			// Same continuation rules as SenderThread
+			if (corpus.getMessageDurationMillis() != null) {
+				timestampDifferenceMillis += corpus.getMessageDurationMillis();
+			} else {
+				timestampDifferenceMillis = corpus.getTimestampDifferenceMillis(0, System.currentTimeMillis());
+			}
+		}
+
+		if (sentMessages >= numMessages) {
+			finish();
+			return;
+		}
+
+		nextSendNanos = isPaced() ? scheduler.nextDeadline(System.nanoTime()) : System.nanoTime();
+		if (state == State.IDLE) {
+			scheduleNext();
+		}
+	}
+
+	private void scheduleNext() {
+		if (System.nanoTime() - nextSendNanos >= 0) {
+			try {
+				sendNext();
+			} catch (IOException e) {
+				logger.error("Device " + deviceId + " failed to send message.", e);
+				messageFailed();
+			}
+		} else {
+			loop.schedule(this, nextSendNanos);
+		}
+	}
+
+	private void addFailedConnection() {
+		++result.failedConnections;
+		if (metrics != null) {
+			metrics.connectionFailed();
+		}
+	}
+
+	private void closeConnection() {
+		if (connection != null) {
+			connection.close();
+			connection = null;
+		}
+	}
+
+	private void finish() {
+		state = State.DONE;
+		closeConnection();
+
+		result.totalRunTimeMillis = System.currentTimeMillis() - startTimeMillis;
+		result.totalSendTimeMillis = TimeUnit.MICROSECONDS.toMillis(result.totalAckLatencyMicros);
+		result.sentMessages = sentMessages;
+		result.threadId = deviceId;
+		scheduler.writeTo(result);
+
+		completion.countDown();
+	}
+}
@@ -0,0 +1,135 @@
+package net.sllmdilab.dordriver.application;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import net.sllmdilab.dordriver.message.CompiledMessage;
+
+/**
+ * Share of a distributed run assigned to one {@link DriverWorker} by the {@link DriverCoordinator}: a range of the
+ * device numbers, a slice of the messages and a share of the open loop rate. The command line of the coordinator is
+ * passed on unchanged so that workers run with the same options.
+ */
+public class WorkerJob {
+	/** Version of the job and of the replies of the worker, which must match on both sides */
+	private static final int VERSION = 2;
+
+	private final String[] args;
+	private final int firstDevice;
+	private final int numDevices;
+	private final Double ratePerSecond;
+	private final List<String> messages;
+
+	public WorkerJob(String[] args, int firstDevice, int numDevices, Double ratePerSecond, List<String> messages) {
+		this.args = args;
+		this.firstDevice = firstDevice;
+		this.numDevices = numDevices;
+		this.ratePerSecond = ratePerSecond;
+		this.messages = messages;
+	}
+
+	/**
+	 * Splits numDevices devices and the messages into one job per worker. Each worker gets a contiguous range of the
+	 * devices, a contiguous slice of the messages and a share of the rate in proportion to its devices. If there are
+	 * fewer messages than workers every worker gets all messages.
+	 *
+	 * @param ratePerSecond
+	 *            total open loop rate, or null
+	 */
+	public static List<WorkerJob> partition(String[] args, List<String> messages, int numDevices,
+			Double ratePerSecond, int numWorkers) {
+		if (numDevices < numWorkers) {
+			throw new IllegalArgumentException("Fewer threads (" + numDevices + ") than workers (" + numWorkers
+					+ ").");
+		}
+
+		List<WorkerJob> jobs = new ArrayList<>();
+		boolean splitMessages = messages.size() >= numWorkers;
+		for (int i = 0; i < numWorkers; ++i) {
+			int firstDevice = getPartStart(numDevices, numWorkers, i);
+			int workerDevices = getPartStart(numDevices, numWorkers, i + 1) - firstDevice;
+			Double workerRate = ratePerSecond != null ? ratePerSecond * workerDevices / numDevices : null;
+			List<String> workerMessages = splitMessages ? messages.subList(getPartStart(messages.size(), numWorkers,
+					i), getPartStart(messages.size(), numWorkers, i + 1)) : messages;
+
+			jobs.add(new WorkerJob(args, firstDevice, workerDevices, workerRate, workerMessages));
+		}
+		return jobs;
+	}
+
+	private static int getPartStart(int total, int parts, int part) {
+		return (int) ((long) part * total / parts);
+	}
+
+	public String[] getArgs() {
+		return args;
+	}
+
+	/**
+	 * Number of the first device, devices are numbered across all workers.
+	 */
+	public int getFirstDevice() {
+		return firstDevice;
+	}
+
+	public int getNumDevices() {
+		return numDevices;
+	}
+
+	/**
+	 * Open loop rate of this worker, or null.
+	 */
+	public Double getRatePerSecond() {
+		return ratePerSecond;
+	}
+
+	public List<String> getMessages() {
+		return messages;
+	}
+
+	public void writeTo(DataOutput out) throws IOException {
+		out.writeInt(VERSION);
+		out.writeInt(args.length);
+		for (String arg : args) {
+			out.writeUTF(arg);
+		}
+		out.writeInt(firstDevice);
+		out.writeInt(numDevices);
+		out.writeDouble(ratePerSecond != null ? ratePerSecond : Double.NaN);
+		out.writeInt(messages.size());
+		for (String message : messages) {
+			// Messages may be longer than writeUTF allows
+			byte[] bytes = message.getBytes(CompiledMessage.CHARSET);
+			out.writeInt(bytes.length);
+			out.write(bytes);
+		}
+	}
+
+	public static WorkerJob readFrom(DataInput in) throws IOException {
+		int version = in.readInt();
+		if (version != VERSION) {
+			throw new IOException("Unsupported job version " + version + ", coordinator and worker differ.");
+		}
+
+		String[] args = new String[in.readInt()];
+		for (int i = 0; i < args.length; ++i) {
+			args[i] = in.readUTF();
+		}
+		int firstDevice = in.readInt();
+		int numDevices = in.readInt();
+		double rate = in.readDouble();
+
+		int numMessages = in.readInt();
+		List<String> messages = new ArrayList<>(numMessages);
+		for (int i = 0; i < numMessages; ++i) {
+			byte[] bytes = new byte[in.readInt()];
+			in.readFully(bytes);
+			messages.add(new String(bytes, CompiledMessage.CHARSET));
+		}
+
+		return new WorkerJob(args, firstDevice, numDevices, Double.isNaN(rate) ? null : rate, messages);
+	}
+}
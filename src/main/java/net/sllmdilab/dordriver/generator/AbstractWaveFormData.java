@@ -1,6 +1,6 @@
 package net.sllmdilab.dordriver.generator;
 
-import java.util.List;
+import java.util.Arrays;
 import java.util.Map;
 
 import net.sllmdilab.commons.util.T5FHIRUtils;
@@ -19,7 +19,7 @@ public abstract class AbstractWaveFormData implements Mapable {
 	public static final String END_TIME_KEY = "END_TIME";
 	public static final String DATA_TYPE_KEY = "DATA_TYPE";
 
-	private List<Double> samples;
+	private double[] samples;
 	private double rangeLow;
 	private double rangeHigh;
 	private double rate;
@@ -37,11 +37,11 @@ public abstract class AbstractWaveFormData implements Mapable {
 		this(null, .0, .0, .0, type, null, null);
 	}
 
-	public AbstractWaveFormData(List<Double> samples, double rangeLow, double rangeHigh, double rate, WaveFormType type) {
+	public AbstractWaveFormData(double[] samples, double rangeLow, double rangeHigh, double rate, WaveFormType type) {
 		this(samples, rangeLow, rangeHigh, rate, type, null, null);
 	}
 
-	public AbstractWaveFormData(List<Double> samples, double rangeLow, double rangeHigh, double rate,
+	public AbstractWaveFormData(double[] samples, double rangeLow, double rangeHigh, double rate,
 			WaveFormType type, String startTime, String endTime) {
 		this.samples = samples;
 		this.rangeLow = rangeLow;
@@ -52,11 +52,11 @@ public abstract class AbstractWaveFormData implements Mapable {
 		this.endTime = endTime;
 	}
 
-	public List<Double> getSamples() {
+	public double[] getSamples() {
 		return samples;
 	}
 
-	public void setSamples(List<Double> samples) {
+	public void setSamples(double[] samples) {
 		this.samples = samples;
 	}
 
@@ -131,7 +131,7 @@ public abstract class AbstractWaveFormData implements Mapable {
 				T5FHIRUtils.convertHL7DateTypeToDate(that.startTime))
 				&& T5FHIRUtils.convertHL7DateTypeToDate(this.endTime).equals(
 						T5FHIRUtils.convertHL7DateTypeToDate(that.endTime));
-		boolean samplesEqual = this.samples.equals(that.samples);
+		boolean samplesEqual = Arrays.equals(this.samples, that.samples);
 		return parametersEqual && timesEqual && samplesEqual;
 
 	}
@@ -0,0 +1,114 @@
+package net.sllmdilab.dordriver.generator;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import net.sllmdilab.dordriver.exeptions.DorDriverException;
+
+/**
+ * A message template split once into its literal text and its placeholders, {@code <KEY>}, so that filling it is a
+ * single pass appending the literals and the values of the placeholders. Compiled templates are immutable and can be
+ * filled from several threads.
+ */
+public final class CompiledTemplate {
+	private static final Pattern PLACEHOLDER_PATTERN = Pattern.compile("<(\\w+?)>");
+
+	// literals[i] comes before the value of keys[i], the last literal after the last value
+	private final String[] literals;
+	private final String[] keys;
+	private final int literalLength;
+
+	private CompiledTemplate(String[] literals, String[] keys) {
+		this.literals = literals;
+		this.keys = keys;
+		int length = 0;
+		for (String literal : literals) {
+			length += literal.length();
+		}
+		this.literalLength = length;
+	}
+
+	public static CompiledTemplate compile(String template) {
+		List<String> literals = new ArrayList<>();
+		List<String> keys = new ArrayList<>();
+		Matcher matcher = PLACEHOLDER_PATTERN.matcher(template);
+		int literalStart = 0;
+		while (matcher.find()) {
+			literals.add(template.substring(literalStart, matcher.start()));
+			keys.add(matcher.group(1));
+			literalStart = matcher.end();
+		}
+		literals.add(template.substring(literalStart));
+		return new CompiledTemplate(literals.toArray(new String[literals.size()]), keys.toArray(new String[keys.size()]));
+	}
+
+	/**
+	 * Compiles a template that will be filled with values for {@code availableKeys}.
+	 *
+	 * @param source
+	 *            what provides the values, for the error message, e.g. "the data file"
+	 * @throws DorDriverException
+	 *             naming every placeholder of the template that is not one of the available keys
+	 */
+	public static CompiledTemplate compile(String template, Set<String> availableKeys, String source) {
+		CompiledTemplate compiled = compile(template);
+		Set<String> missing = compiled.getPlaceholders();
+		missing.removeAll(availableKeys);
+		if (!missing.isEmpty()) {
+			throw new DorDriverException("The place holders " + missing + " are not specified in " + source + ".");
+		}
+		return compiled;
+	}
+
+	/**
+	 * The keys of the placeholders in the order they first appear in the template.
+	 */
+	public Set<String> getPlaceholders() {
+		return new LinkedHashSet<>(Arrays.asList(keys));
+	}
+
+	public String fill(Map<String, String> values) {
+		String[] slotValues = lookUp(values);
+		int length = literalLength;
+		for (String value : slotValues) {
+			length += value.length();
+		}
+		StringBuilder sb = new StringBuilder(length);
+		for (int i = 0; i < slotValues.length; ++i) {
+			sb.append(literals[i]).append(slotValues[i]);
+		}
+		return sb.append(literals[slotValues.length]).toString();
+	}
+
+	/**
+	 * Writes the filled template straight to {@code writer}, nothing is written if a value is missing.
+	 */
+	public void fill(Map<String, String> values, Writer writer) throws IOException {
+		String[] slotValues = lookUp(values);
+		for (int i = 0; i < slotValues.length; ++i) {
+			writer.write(literals[i]);
+			writer.write(slotValues[i]);
+		}
+		writer.write(literals[slotValues.length]);
+	}
+
+	private String[] lookUp(Map<String, String> values) {
+		String[] slotValues = new String[keys.length];
+		for (int i = 0; i < keys.length; ++i) {
+			String value = values.get(keys[i]);
+			if (value == null) {
+				throw new DorDriverException("No value for the place holder '" + keys[i] + "'.");
+			}
+			slotValues[i] = value;
+		}
+		return slotValues;
+	}
+}
@@ -4,26 +4,26 @@ import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileReader;
 import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
 import java.nio.file.Files;
-import java.nio.file.Paths;
-import java.text.DateFormat;
-import java.text.SimpleDateFormat;
+import java.nio.file.Path;
 import java.time.Instant;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Collections;
+import java.util.Collection;
 import java.util.Date;
+import java.util.Deque;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
-import java.util.stream.Collectors;
-import java.util.stream.Stream;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
 
-import net.sllmdilab.commons.util.Constants;
 import net.sllmdilab.commons.util.T5FHIRUtils;
 import net.sllmdilab.dordriver.exeptions.DorDriverException;
 
@@ -32,7 +32,6 @@ import org.apache.commons.cli.CommandLineParser;
 import org.apache.commons.cli.DefaultParser;
 import org.apache.commons.cli.Options;
 import org.apache.commons.cli.ParseException;
-import org.apache.commons.lang.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -46,8 +45,10 @@ public class Hl7MessageTemplateFiller {
 	private static final String START_TIME_KEY = "START_TIME";
 	private static final String END_TIME_KEY = "END_TIME";
 	private static final String DEVICE_ID_KEY = "DEVICE_ID";
+	private static final int MAX_PENDING_MESSAGES_PER_THREAD = 4;
 	private String tmplPath;
 	private String tmpl;
+	private CompiledTemplate compiledTmpl;
 	private String dstPath = (new File("HL7_WF_filled.hl7")).getAbsolutePath();
 	private String dataPath;
 	private Double sampleRate = 128.0; // in Hz
@@ -55,8 +56,8 @@ public class Hl7MessageTemplateFiller {
 	private Double pulseRate = 70.0; // in bpm
 	private String deviceId = "C1007-123";
 	private String startTime = "20150617120000.000";
+	private int parallelism = 1;
 	private WaveFormDataFactory wfFactory;
-	private Pattern placeholderPattern = Pattern.compile("<(\\w+?)>");
 
 	private static final Logger logger = LoggerFactory.getLogger(Hl7MessageTemplateFiller.class);
 
@@ -68,12 +69,13 @@ public class Hl7MessageTemplateFiller {
 				"Time frame of messages in milliseconds. The data provided will be divided into multiple messages of this time frame.");
 		options.addOption("s", "src", true, "Path of the template");
 		options.addOption("d", "dst", true, "Path of the generated hl7 message file");
-		options.addOption("o", "data", true, "Path of the data file that should be used to fill the template.");
+		options.addOption("o", "data", true, "Path of the data file that should be used to fill the template. "
+				+ "A comma separated list of data files are filled one after the other.");
+		options.addOption("j", "parallelism", true, "Number of threads filling messages, default 1.");
 
 		Hl7MessageTemplateFiller filler = new Hl7MessageTemplateFiller();
 		filler.populateFromCommandLine(options, args);
-		String filledTmpl = filler.loadAndFillTemplate();
-		filler.saveToFile(filledTmpl, filler.dstPath);
+		filler.loadFillAndSaveTemplate(filler.dstPath);
 
 	}
 
@@ -115,18 +117,193 @@ public class Hl7MessageTemplateFiller {
 		} else {
 			System.out.println("Data file not specified. Using mathematical model instead.");
 		}
+		if (cmd.hasOption("parallelism")) {
+			this.parallelism = Integer.parseInt(cmd.getOptionValue("parallelism"));
+		}
 	}
 
 	public String loadAndFillTemplate() throws IOException {
+		StringWriter writer = new StringWriter();
+		loadAndFillTemplate(writer);
+		return writer.toString();
+	}
+
+	/**
+	 * Fills the template and writes the messages to {@code dst} as they are filled. With several data files and a
+	 * directory as {@code dst}, the messages of each data file are written to a file of their own in the directory,
+	 * named after the data file, which must then have different names apart from their extensions.
+	 */
+	public void loadFillAndSaveTemplate(String dst) throws IOException {
+		File dstFile = new File(dst);
+		if (dataPath == null || !dstFile.isDirectory()) {
+			try (Writer writer = Files.newBufferedWriter(dstFile.toPath(), Charset.defaultCharset())) {
+				loadAndFillTemplate(writer);
+			}
+			logger.info("HL7 message saved at '" + dst);
+			return;
+		}
+
+		Set<String> names = new HashSet<>();
+		for (String path : getDataPaths()) {
+			if (!names.add(getSaveName(path))) {
+				throw new DorDriverException("More than one data file would be saved as " + getSaveName(path) + ".");
+			}
+		}
+
 		this.tmpl = loadTemplate(tmplPath);
-		List<Map<String, String>> msgsData;
+		ForkJoinPool pool = newPool();
+		try {
+			int msgIdx = 0;
+			for (String path : getDataPaths()) {
+				Path file = dstFile.toPath().resolve(getSaveName(path));
+				try (Writer writer = Files.newBufferedWriter(file, Charset.defaultCharset())) {
+					msgIdx = fillDataFile(path, new MessageWriter(writer), msgIdx, pool);
+				}
+				logger.info("HL7 message saved at '" + file);
+			}
+		} finally {
+			shutdown(pool);
+		}
+	}
+
+	/**
+	 * Fills the template with the data files, or with generated data if there are none, and writes the messages
+	 * separated by newlines, the data files one after the other with their start times continuing from the previous
+	 * file. Messages are written as soon as they are filled, so only the time frames being filled are held in memory
+	 * whatever the size of the data files.
+	 */
+	public void loadAndFillTemplate(Writer writer) throws IOException {
+		this.tmpl = loadTemplate(tmplPath);
+		MessageWriter messageWriter = new MessageWriter(writer);
 		if (dataPath == null) {
-			msgsData = Arrays.asList(createWaveFormData());
-		} else {
-			msgsData = loadWaveFormData(dataPath);
+			Map<String, String> replacements = createWaveFormData();
+			messageWriter.write(CompiledTemplate.compile(tmpl, replacements.keySet(), "the generated wave form data"),
+					replacements);
+			return;
+		}
+
+		ForkJoinPool pool = newPool();
+		try {
+			int msgIdx = 0;
+			for (String path : getDataPaths()) {
+				msgIdx = fillDataFile(path, messageWriter, msgIdx, pool);
+			}
+		} finally {
+			shutdown(pool);
+		}
+	}
+
+	private List<String> getDataPaths() {
+		return Arrays.asList(dataPath.split(","));
+	}
+
+	/**
+	 * Name of the file the messages of a data file are saved to in a directory.
+	 */
+	private String getSaveName(String path) {
+		return new File(path).getName().replaceFirst("\\.[^.]*$", "") + ".hl7";
+	}
+
+	/**
+	 * The pool filling the messages of all data files, null if they are filled on the calling thread.
+	 */
+	private ForkJoinPool newPool() {
+		return parallelism > 1 ? new ForkJoinPool(parallelism) : null;
+	}
+
+	private void shutdown(ForkJoinPool pool) {
+		if (pool != null) {
+			pool.shutdownNow();
 		}
-		List<String> filledMsgs = msgsData.stream().map(data -> fillTemplate(tmpl, data)).collect(Collectors.toList());
-		return StringUtils.join(filledMsgs, "\n");
+	}
+
+	/**
+	 * Fills the time frames of a data file in order, or on the fork/join pool if there is one. Reading stays on the
+	 * calling thread, which also writes the filled messages in file order, so the output does not depend on the
+	 * parallelism. The template is compiled against the keys in the header of the data file before any row is read,
+	 * and checked against the columns with values once the first time frame has been read.
+	 *
+	 * @return the index of the message following the last one of the file
+	 */
+	private int fillDataFile(String path, MessageWriter messageWriter, int firstMsgIdx, ForkJoinPool pool)
+			throws IOException {
+		HeaderListener compiler = header -> {
+			// The first column gives the timestamps, whatever it is named
+			Set<String> columns = new HashSet<>(header.subList(1, header.size()));
+			columns.add(TIMESTAMP_KEY);
+			compiledTmpl = CompiledTemplate.compile(tmpl, getAvailableKeys(columns), "the data file");
+		};
+		if (pool == null) {
+			return readMessageWindows(path, firstMsgIdx, true, compiler, (window, dataMap, msgIdx) -> {
+				if (msgIdx == firstMsgIdx) {
+					checkValues(dataMap);
+				}
+				messageWriter.write(compiledTmpl, getReplacements(window, dataMap, msgIdx));
+			});
+		}
+
+		Deque<ForkJoinTask<String>> pending = new ArrayDeque<>();
+		try {
+			int nextMsgIdx = readMessageWindows(path, firstMsgIdx, false, compiler, (window, dataMap, msgIdx) -> {
+				if (msgIdx == firstMsgIdx) {
+					checkValues(dataMap);
+				}
+				// Start and end times are formatted here, only the windows and the template are shared with the pool
+				Map<String, String> replacements = getGeneralParams();
+				replacements.putAll(getTimeParams(msgIdx));
+				CompiledTemplate template = compiledTmpl;
+				pending.addLast(pool.submit(() -> {
+					replacements.putAll(convertToPlaceholderReplacementMap(window, dataMap, 0, window.getRows()));
+					return template.fill(replacements);
+				}));
+				if (pending.size() >= parallelism * MAX_PENDING_MESSAGES_PER_THREAD) {
+					messageWriter.write(pending.removeFirst().join());
+				}
+			});
+			while (!pending.isEmpty()) {
+				messageWriter.write(pending.removeFirst().join());
+			}
+			return nextMsgIdx;
+		} finally {
+			// Messages of a failed file are not written
+			for (ForkJoinTask<String> task : pending) {
+				task.cancel(false);
+			}
+		}
+	}
+
+	/**
+	 * Checks that the template has values in the first time frame of a data file, which a column named in the header
+	 * but without values does not give. Later time frames keep the values of the columns without values in them.
+	 */
+	private void checkValues(Map<String, SampleColumn> dataMap) {
+		Set<String> columns = new HashSet<>(dataMap.keySet());
+		columns.add(TIMESTAMP_KEY);
+		Set<String> missing = compiledTmpl.getPlaceholders();
+		missing.removeAll(getAvailableKeys(columns));
+		if (!missing.isEmpty()) {
+			throw new DorDriverException("The place holders " + missing + " have no values in the data file.");
+		}
+	}
+
+	/**
+	 * The keys a data file with these columns provides: its columns, the ranges and sample rates calculated for its
+	 * samples, and the general and time parameters.
+	 */
+	private Set<String> getAvailableKeys(Collection<String> header) {
+		Set<String> keys = new HashSet<>(header);
+		keys.addAll(getGeneralParams().keySet());
+		keys.add(START_TIME_KEY);
+		keys.add(END_TIME_KEY);
+		for (String key : header) {
+			if (key.startsWith(SAMPLES_PREFIX)) {
+				String dataType = key.split("_")[1];
+				keys.add(RANGE_LOW_PREFIX + dataType);
+				keys.add(RANGE_HIGH_PREFIX + dataType);
+				keys.add(RATE_PREFIX + dataType);
+			}
+		}
+		return keys;
 	}
 
 	public String loadTemplate(String pathStr) throws IOException {
@@ -153,137 +330,148 @@ public class Hl7MessageTemplateFiller {
 		return setupKeyReplacements(ecg1, ecg2, ecg3, sat);
 	}
 
-	private void addDataFromLine(String line, List<String> keys, Map<String, List<Double>> dataMap) {
-		String[] data = line.split(",");
+	public List<Map<String, String>> loadWaveFormData(String dataPath) throws IOException {
+		List<Map<String, String>> allMsgsReplacements = new ArrayList<>();
+		streamWaveFormData(dataPath, allMsgsReplacements::add);
+		return allMsgsReplacements;
+	}
 
-		// Handle column 0 (timestamps) separately
-		String timeStampStr = StringUtils.strip(data[0], "'");
+	/**
+	 * Reads the data file row by row and passes the replacements of every message time frame to {@code listener} once
+	 * its rows have been read. Rows after the last full time frame are dropped, unless the file is shorter than one time
+	 * frame. A key without values in a time frame keeps the values of the previous one.
+	 */
+	public void streamWaveFormData(String dataPath, MessageDataListener listener) throws IOException {
+		readMessageWindows(dataPath, 0, true, null,
+				(window, dataMap, msgIdx) -> listener.messageDataRead(getReplacements(window, dataMap, msgIdx)));
+	}
 
-		DateFormat df = new SimpleDateFormat(Constants.ISO_DATE_FORMAT);
-		long time;
-		try {
-			time = df.parse(timeStampStr).toInstant().toEpochMilli();
-			if (!dataMap.containsKey(keys.get(0))) {
-				dataMap.put(keys.get(0), new ArrayList<>());
+	/**
+	 * Reads the data file into one window per message time frame, numbering the messages from firstMsgIdx. A reused
+	 * window is only valid until {@code listener} returns, otherwise every time frame gets a window of its own that is
+	 * not changed afterwards. {@code headerListener}, if any, is called with the keys of the header before the first
+	 * time frame is read.
+	 *
+	 * @return the index of the message following the last one of the file
+	 */
+	private int readMessageWindows(String dataPath, int firstMsgIdx, boolean reuseWindow,
+			HeaderListener headerListener, WindowListener listener) throws IOException {
+		WaveFormTable window = new WaveFormTable();
+		Map<String, SampleColumn> carried = new HashMap<>();
+		int valuesPerMsg = 0;
+		int msgIdx = firstMsgIdx;
+		try (WaveFormCsvReader reader = new WaveFormCsvReader(new FileReader(dataPath))) {
+			List<String> header = reader.readHeader();
+			if (headerListener != null) {
+				headerListener.headerRead(header);
 			}
-			dataMap.get(keys.get(0)).add(1.0 * time);
-		} catch (java.text.ParseException e) {
-			logger.error("Datetime string '" + timeStampStr + "' could not be parsed to a date with format "
-					+ Constants.ISO_DATE_FORMAT);
-			throw new DorDriverException(e);
-		}
-
-		for (int idx = 1; idx < data.length; idx++) {
-			if (!dataMap.containsKey(keys.get(idx))) {
-				dataMap.put(keys.get(idx), new ArrayList<>());
+			while (reader.readRow(window)) {
+				if (valuesPerMsg == 0) {
+					// Parameters are given on the first row
+					valuesPerMsg = Math.max(1, (int) (getSampleRate(window) * this.msgTimeFrame * 0.001));
+				}
+				if (window.getRows() == valuesPerMsg) {
+					listener.windowRead(window, getDataMap(window, carried), msgIdx++);
+					if (reuseWindow) {
+						startNextWindow(window, carried);
+					} else {
+						carryColumns(window, carried);
+						window = new WaveFormTable();
+					}
+				}
 			}
-			dataMap.get(keys.get(idx)).add(Double.parseDouble(StringUtils.strip(data[idx], "'")));
 		}
+		if (msgIdx == firstMsgIdx && window.getRows() > 0) {
+			listener.windowRead(window, getDataMap(window, carried), msgIdx++);
+		}
+		return msgIdx;
 	}
 
-	public List<Map<String, String>> loadWaveFormData(String dataPath) throws IOException {
-		List<Map<String, String>> allMsgsReplacements = new ArrayList<>();
-		Map<String, List<Double>> fullDataMap = new HashMap<>();
-		try (FileReader fr = new FileReader(dataPath); BufferedReader br = new BufferedReader(fr)) {
-			// First line, Keys
-			String line = br.readLine();
-			List<String> keys = Stream.of(line.split(",")).map(s -> StringUtils.strip(s, "'"))
-					.collect(Collectors.toList());
-
-			// Remaining lines, Data
-			while ((line = br.readLine()) != null) {
-				addDataFromLine(line, keys, fullDataMap);
-			}
-
-			parseParametricValues(fullDataMap);
-
-			List<Map<String, List<Double>>> splittedDataMaps = splitToMultipleMessages(fullDataMap);
-
-			int idx = 0;
-			for (Map<String, List<Double>> dataMap : splittedDataMaps) {
-				Map<String, String> singleMsgReplacements = getGeneralParams();
-				singleMsgReplacements.putAll(getTimeParams(idx++));
-				singleMsgReplacements.putAll(convertToPlaceholderReplacementMap(dataMap));
-				allMsgsReplacements.add(singleMsgReplacements);
+	/**
+	 * The first sample rate given on the first row of a data file is used for the whole file, without one the sample
+	 * rate set on the filler.
+	 */
+	private double getSampleRate(WaveFormTable table) {
+		for (Map.Entry<String, SampleColumn> entry : table.getColumns().entrySet()) {
+			if (entry.getKey().startsWith(RATE_PREFIX) && entry.getValue().size() > 0) {
+				return entry.getValue().get(0);
 			}
 		}
-		return allMsgsReplacements;
+		return this.sampleRate;
 	}
 
-	private void parseParametricValues(Map<String, List<Double>> fullDataMap) {
-		for (String key : fullDataMap.keySet()) {
-			// Use the first sample rate encountered as a global sample rate
-			if (key.startsWith(RATE_PREFIX)) {
-				this.sampleRate = fullDataMap.get(key).get(0);
-				break;
+	private Map<String, String> getReplacements(WaveFormTable window, Map<String, SampleColumn> dataMap, int msgIdx) {
+		Map<String, String> replacements = getGeneralParams();
+		replacements.putAll(getTimeParams(msgIdx));
+		replacements.putAll(convertToPlaceholderReplacementMap(window, dataMap, 0, window.getRows()));
+		return replacements;
+	}
+
+	private Map<String, SampleColumn> getDataMap(WaveFormTable window, Map<String, SampleColumn> carried) {
+		Map<String, SampleColumn> dataMap = new HashMap<>(carried);
+		for (Map.Entry<String, SampleColumn> entry : window.getColumns().entrySet()) {
+			if (entry.getValue().size() > 0) {
+				dataMap.put(entry.getKey(), entry.getValue());
 			}
 		}
+		return dataMap;
 	}
 
-	private List<Map<String, List<Double>>> splitToMultipleMessages(Map<String, List<Double>> fullDataMap) {
-		List<Map<String, List<Double>>> splittedDataMaps = new ArrayList<>();
-
-		Map<String, List<Double>> prevDataMap = new HashMap<>();
-
-		// Timestamps exist for all data points
-		int longestListSize = fullDataMap.get(TIMESTAMP_KEY).size();
-		int valuesPerMsg = (int) (this.sampleRate * this.msgTimeFrame * 0.001);
-		int nrOfFullMsgs = Math.max(1, longestListSize / valuesPerMsg);
-		int i = 0;
-		for (int ctr = 0; ctr < nrOfFullMsgs; ctr++) {
-			Map<String, List<Double>> subDataMap = getNextDataMap(fullDataMap, prevDataMap, valuesPerMsg, i);
-			splittedDataMaps.add(subDataMap);
-			prevDataMap = subDataMap;
-			i += valuesPerMsg;
+	/**
+	 * Empties the window, keeping the values of the columns that had any for the time frames that have none. Values are
+	 * swapped with the ones carried before, so each key holds at most two time frames and the window keeps its columns.
+	 */
+	private void startNextWindow(WaveFormTable window, Map<String, SampleColumn> carried) {
+		for (Map.Entry<String, SampleColumn> entry : window.getColumns().entrySet()) {
+			if (entry.getValue().size() > 0) {
+				SampleColumn previous = carried.get(entry.getKey());
+				if (previous == null) {
+					previous = new SampleColumn();
+					carried.put(entry.getKey(), previous);
+				}
+				previous.swap(entry.getValue());
+			}
 		}
-
-		return splittedDataMaps;
+		window.clear();
 	}
 
-	private Map<String, List<Double>> getNextDataMap(Map<String, List<Double>> fullDataMap,
-			Map<String, List<Double>> prevDataMap, int valuesPerMsg, int msgIdx) {
-		Map<String, List<Double>> subDataMap = new HashMap<>();
-		Set<String> keySet = fullDataMap.keySet();
-		for (String key : keySet) {
-			if (fullDataMap.get(key).size() < msgIdx) {
-				// Use previous map
-				subDataMap.put(key, prevDataMap.get(key));
-			} else {
-				subDataMap.put(
-						key,
-						fullDataMap.get(key).subList(msgIdx,
-								msgIdx + Math.min(valuesPerMsg, fullDataMap.get(key).size())));
+	private void carryColumns(WaveFormTable window, Map<String, SampleColumn> carried) {
+		for (Map.Entry<String, SampleColumn> entry : window.getColumns().entrySet()) {
+			if (entry.getValue().size() > 0) {
+				carried.put(entry.getKey(), entry.getValue());
 			}
 		}
-		return subDataMap;
 	}
 
-	private Map<String, String> convertToPlaceholderReplacementMap(Map<String, List<Double>> dataMap) {
+	private Map<String, String> convertToPlaceholderReplacementMap(WaveFormTable table,
+			Map<String, SampleColumn> dataMap, int fromRow, int toRow) {
 		Map<String, String> replacementMap = new HashMap<>();
 		Set<String> keySet = dataMap.keySet();
+		long timeSpanMillis = table.getTimeSpanMillis(fromRow, toRow);
 		for (String key : keySet) {
-			replacementMap.putAll(addCalculatedValues(key, keySet, dataMap));
-			replacementMap.put(key, StringUtils.join(dataMap.get(key), '^'));
+			replacementMap.putAll(addCalculatedValues(key, keySet, dataMap, timeSpanMillis));
+			replacementMap.put(key, dataMap.get(key).join("^"));
 		}
+		replacementMap.put(TIMESTAMP_KEY, table.joinTimestamps(fromRow, toRow, "^"));
 		return replacementMap;
 	}
 
-	private Map<String, String> addCalculatedValues(String key, Set<String> keySet, Map<String, List<Double>> dataMap) {
+	private Map<String, String> addCalculatedValues(String key, Set<String> keySet, Map<String, SampleColumn> dataMap,
+			long timeSpanMillis) {
 		Map<String, String> rMap = new HashMap<>();
 		if (key.startsWith(SAMPLES_PREFIX)) {
 			String dataType = key.split("_")[1];
+			SampleColumn samples = dataMap.get(key);
 			// Calculate data ranges from samples
 			if (!keySet.contains(RANGE_LOW_PREFIX + dataType)) {
-				rMap.put(RANGE_LOW_PREFIX + dataType, Collections.min(dataMap.get(key)).toString());
+				rMap.put(RANGE_LOW_PREFIX + dataType, Double.toString(samples.getMin()));
 			}
 			if (!keySet.contains(RANGE_HIGH_PREFIX + dataType)) {
-				rMap.put(RANGE_HIGH_PREFIX + dataType, Collections.max(dataMap.get(key)).toString());
+				rMap.put(RANGE_HIGH_PREFIX + dataType, Double.toString(samples.getMax()));
 			}
 			// Calculate sample frequency
 			if (!keySet.contains(RATE_PREFIX + dataType)) {
-				Double minTimestamp = Collections.min(dataMap.get(TIMESTAMP_KEY));
-				Double maxTimestamp = Collections.max(dataMap.get(TIMESTAMP_KEY));
-				Double sampleRate = (dataMap.get(key).size() - 1) / (maxTimestamp - minTimestamp) * 1000;
+				double sampleRate = (samples.size() - 1) / (double) timeSpanMillis * 1000;
 				rMap.put(RATE_PREFIX + dataType, Double.toString(sampleRate));
 			}
 		}
@@ -318,29 +506,11 @@ public class Hl7MessageTemplateFiller {
 	}
 
 	public String fillTemplate(String tmpl, Map<String, String> values) {
-		Set<String> placeholders = findPlaceholders(tmpl);
-		for (String holder : placeholders) {
-			if (values.containsKey(holder)) {
-				tmpl = tmpl.replace("<" + holder + ">", values.get(holder));
-			} else {
-				throw new RuntimeException("The place holder '" + holder + "' is not specified in the data file.");
-			}
-		}
-		return tmpl;
+		return CompiledTemplate.compile(tmpl).fill(values);
 	}
 
 	public Set<String> findPlaceholders(String tmpl) {
-		Set<String> placeholders = new HashSet<>();
-		Matcher matcher = placeholderPattern.matcher(tmpl);
-		while (matcher.find()) {
-			placeholders.add(matcher.group(1));
-		}
-		return placeholders;
-	}
-
-	private void saveToFile(String strToSave, String dst) throws IOException {
-		Files.write(Paths.get(dst), strToSave.getBytes());
-		logger.info("HL7 message saved at '" + dst);
+		return CompiledTemplate.compile(tmpl).getPlaceholders();
 	}
 
 	public String getTmplPath() {
@@ -371,6 +541,14 @@ public class Hl7MessageTemplateFiller {
 		this.dataPath = dataPath;
 	}
 
+	public int getParallelism() {
+		return parallelism;
+	}
+
+	public void setParallelism(int parallelism) {
+		this.parallelism = parallelism;
+	}
+
 	public String getStartTime() {
 		return startTime;
 	}
@@ -378,4 +556,40 @@ public class Hl7MessageTemplateFiller {
 	public void setStartTime(String startTime) {
 		this.startTime = startTime;
 	}
+
+	private interface HeaderListener {
+		public void headerRead(List<String> keys);
+	}
+
+	private interface WindowListener {
+		public void windowRead(WaveFormTable window, Map<String, SampleColumn> dataMap, int msgIdx) throws IOException;
+	}
+
+	/**
+	 * Writes messages separated by newlines.
+	 */
+	private static class MessageWriter {
+		private final Writer writer;
+		private boolean first = true;
+
+		MessageWriter(Writer writer) {
+			this.writer = writer;
+		}
+
+		void write(String message) throws IOException {
+			if (!first) {
+				writer.write('\n');
+			}
+			first = false;
+			writer.write(message);
+		}
+
+		void write(CompiledTemplate template, Map<String, String> values) throws IOException {
+			if (!first) {
+				writer.write('\n');
+			}
+			first = false;
+			template.fill(values, writer);
+		}
+	}
 }
@@ -0,0 +1,19 @@
+package net.sllmdilab.dordriver.generator;
+
+import java.io.IOException;
+import java.util.Map;
+
+/**
+ * Receives the placeholder replacements of the messages read from a waveform data file, one message time frame at a
+ * time and in file order, see {@link Hl7MessageTemplateFiller#streamWaveFormData(String, MessageDataListener)}.
+ */
+public interface MessageDataListener {
+
+	/**
+	 * Called as soon as the rows of a message time frame have been read.
+	 *
+	 * @param replacements
+	 *            values of the placeholders of the message, keyed by placeholder name
+	 */
+	public void messageDataRead(Map<String, String> replacements) throws IOException;
+}
@@ -0,0 +1,129 @@
+package net.sllmdilab.dordriver.generator;
+
+import java.util.Arrays;
+
+/**
+ * A growable column of primitive samples, or a view of a range of another column that shares its array. The range of
+ * the samples is found in a single pass the first time it is asked for. Columns that are no longer added to may be read
+ * from several threads.
+ */
+final class SampleColumn {
+	private static final int INITIAL_CAPACITY = 256;
+
+	private double[] values;
+	private final int offset;
+	private int size;
+
+	private boolean rangeComputed;
+	private double min;
+	private double max;
+
+	SampleColumn() {
+		this(new double[INITIAL_CAPACITY], 0, 0);
+	}
+
+	private SampleColumn(double[] values, int offset, int size) {
+		this.values = values;
+		this.offset = offset;
+		this.size = size;
+	}
+
+	/**
+	 * Appends a sample, only for columns that are not views.
+	 */
+	void add(double value) {
+		if (size == values.length) {
+			values = Arrays.copyOf(values, values.length * 2);
+		}
+		values[size++] = value;
+		rangeComputed = false;
+	}
+
+	/**
+	 * Removes all samples, keeping the array, only for columns that are not views.
+	 */
+	void clear() {
+		size = 0;
+		rangeComputed = false;
+	}
+
+	/**
+	 * Exchanges the samples with another column, only for columns that are not views.
+	 */
+	void swap(SampleColumn other) {
+		double[] otherValues = other.values;
+		int otherSize = other.size;
+		other.values = values;
+		other.size = size;
+		other.rangeComputed = false;
+		values = otherValues;
+		size = otherSize;
+		rangeComputed = false;
+	}
+
+	double get(int index) {
+		return values[offset + index];
+	}
+
+	int size() {
+		return size;
+	}
+
+	/**
+	 * A view of the samples from index {@code from}, inclusive, to {@code to}, exclusive.
+	 */
+	SampleColumn subColumn(int from, int to) {
+		if (from < 0 || to > size || from > to) {
+			throw new IndexOutOfBoundsException("[" + from + ", " + to + ") of " + size);
+		}
+		return new SampleColumn(values, offset + from, to - from);
+	}
+
+	double getMin() {
+		computeRange();
+		return min;
+	}
+
+	double getMax() {
+		computeRange();
+		return max;
+	}
+
+	/**
+	 * Formats the samples as {@link Double#toString(double)} separated by {@code separator}.
+	 */
+	String join(String separator) {
+		return join(values, offset, offset + size, separator);
+	}
+
+	static String join(double[] values, int from, int to, String separator) {
+		StringBuilder sb = new StringBuilder((to - from) * 8);
+		for (int i = from; i < to; ++i) {
+			if (i > from) {
+				sb.append(separator);
+			}
+			sb.append(values[i]);
+		}
+		return sb.toString();
+	}
+
+	private synchronized void computeRange() {
+		if (rangeComputed) {
+			return;
+		}
+		double low = Double.POSITIVE_INFINITY;
+		double high = Double.NEGATIVE_INFINITY;
+		for (int i = offset; i < offset + size; ++i) {
+			double value = values[i];
+			if (value < low) {
+				low = value;
+			}
+			if (value > high) {
+				high = value;
+			}
+		}
+		min = low;
+		max = high;
+		rangeComputed = true;
+	}
+}
@@ -0,0 +1,354 @@
+package net.sllmdilab.dordriver.generator;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+import java.text.DateFormat;
+import java.text.SimpleDateFormat;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import net.sllmdilab.commons.util.Constants;
+import net.sllmdilab.dordriver.exeptions.DorDriverException;
+
+import org.apache.commons.lang.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Reads a waveform data file, a header row of keys followed by rows of a timestamp and values, from a char buffer
+ * straight into a {@link WaveFormTable}. Timestamps in {@link Constants#ISO_DATE_FORMAT} and plain decimal values are
+ * parsed in place without creating strings, anything else is left to {@link SimpleDateFormat} and
+ * {@link Double#parseDouble(String)}, so the results are the same as parsing every field with those. Fields may be
+ * quoted with {@code '}.
+ * <p>
+ * Columns are resolved from the header once for every table that is filled.
+ */
+final class WaveFormCsvReader implements Closeable {
+	private static final int BUFFER_SIZE = 64 * 1024;
+	// yyyy-MM-dd'T'HH:mm:ss.SSS and the length of its part up to the minutes
+	private static final int TIMESTAMP_LENGTH = 23;
+	private static final int MINUTE_LENGTH = 16;
+	// Decimals with at most this many significant digits and a power of ten up to 22 are both exact as doubles, so one
+	// multiplication or division gives the correctly rounded value
+	private static final int MAX_EXACT_DIGITS = 15;
+	private static final double[] POWERS_OF_TEN = { 1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11, 1e12,
+			1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22 };
+
+	private static final Logger logger = LoggerFactory.getLogger(WaveFormCsvReader.class);
+
+	private final Reader reader;
+	private char[] buffer = new char[BUFFER_SIZE];
+	private int position;
+	private int limit;
+	private boolean skipLineFeed;
+	private boolean endOfInput;
+	private int lineStart;
+	private int lineEnd;
+
+	private List<String> keys;
+	private SampleColumn[] columns;
+	private WaveFormTable table;
+
+	private final DateFormat dateFormat = new SimpleDateFormat(Constants.ISO_DATE_FORMAT);
+	// Same kind of calendar and time zone as the date format, timestamps only add seconds to the start of their minute
+	private final Calendar calendar = (Calendar) dateFormat.getCalendar().clone();
+	private final char[] minute = new char[MINUTE_LENGTH];
+	private boolean minuteValid;
+	private long minuteMillis;
+
+	WaveFormCsvReader(Reader reader) {
+		this.reader = reader;
+	}
+
+	/**
+	 * Reads the header row.
+	 *
+	 * @return the keys of the columns, the first one being the timestamps
+	 */
+	List<String> readHeader() throws IOException {
+		if (!nextLine()) {
+			throw new DorDriverException("The data file is empty.");
+		}
+		String line = new String(buffer, lineStart, lineEnd - lineStart);
+		keys = Stream.of(line.split(",")).map(s -> StringUtils.strip(s, "'")).collect(Collectors.toList());
+		columns = new SampleColumn[keys.size()];
+		return keys;
+	}
+
+	/**
+	 * Reads the next row into {@code table}. Values missing at the end of the row are not added to their columns.
+	 *
+	 * @return false at the end of the file
+	 */
+	boolean readRow(WaveFormTable table) throws IOException {
+		if (!nextLine()) {
+			return false;
+		}
+		if (table != this.table) {
+			this.table = table;
+			Arrays.fill(columns, null);
+		}
+		int fieldStart = lineStart;
+		int index = 0;
+		// Empty fields are only allowed at the end of the row, as with String.split
+		boolean emptyField = false;
+		for (int i = lineStart; i <= lineEnd; ++i) {
+			if (i == lineEnd || buffer[i] == ',') {
+				if (index == 0) {
+					table.addTimestamp(parseTimestamp(fieldStart, i));
+				} else if (i == fieldStart) {
+					emptyField = true;
+				} else {
+					if (emptyField) {
+						throw new NumberFormatException("empty String");
+					}
+					getColumn(table, index).add(parseDouble(fieldStart, i));
+				}
+				++index;
+				fieldStart = i + 1;
+			}
+		}
+		return true;
+	}
+
+	@Override
+	public void close() throws IOException {
+		reader.close();
+	}
+
+	private SampleColumn getColumn(WaveFormTable table, int index) {
+		if (index >= columns.length) {
+			throw new DorDriverException("Row with more values than keys in the header: "
+					+ new String(buffer, lineStart, lineEnd - lineStart));
+		}
+		SampleColumn column = columns[index];
+		if (column == null) {
+			column = table.getColumn(keys.get(index));
+			columns[index] = column;
+		}
+		return column;
+	}
+
+	/**
+	 * Finds the next line, filling the buffer as needed. Lines end with LF, CR or CR LF, as with
+	 * {@link java.io.BufferedReader#readLine()}.
+	 */
+	private boolean nextLine() throws IOException {
+		int scan = position;
+		while (true) {
+			if (skipLineFeed && position < limit) {
+				if (buffer[position] == '\n') {
+					++position;
+				}
+				skipLineFeed = false;
+				scan = position;
+			}
+			for (int i = scan; i < limit; ++i) {
+				char c = buffer[i];
+				if (c == '\n' || c == '\r') {
+					lineStart = position;
+					lineEnd = i;
+					position = i + 1;
+					skipLineFeed = c == '\r';
+					return true;
+				}
+			}
+			int scanned = limit - position;
+			if (!fill()) {
+				if (position == limit) {
+					return false;
+				}
+				lineStart = position;
+				lineEnd = limit;
+				position = limit;
+				return true;
+			}
+			scan = position + scanned;
+		}
+	}
+
+	/**
+	 * Moves the unread chars to the start of the buffer, growing it if a line does not fit, and reads more.
+	 *
+	 * @return false at the end of the input
+	 */
+	private boolean fill() throws IOException {
+		if (endOfInput) {
+			return false;
+		}
+		int unread = limit - position;
+		if (position > 0) {
+			System.arraycopy(buffer, position, buffer, 0, unread);
+		} else if (unread == buffer.length) {
+			buffer = Arrays.copyOf(buffer, buffer.length * 2);
+		}
+		position = 0;
+		limit = unread;
+		int read = reader.read(buffer, limit, buffer.length - limit);
+		if (read < 0) {
+			endOfInput = true;
+			return false;
+		}
+		limit += read;
+		return true;
+	}
+
+	private long parseTimestamp(int start, int end) {
+		while (start < end && buffer[start] == '\'') {
+			++start;
+		}
+		while (end > start && buffer[end - 1] == '\'') {
+			--end;
+		}
+		// Like SimpleDateFormat, anything after the milliseconds that is not a digit is ignored
+		if (end - start >= TIMESTAMP_LENGTH && isFixedFormat(start)
+				&& (end - start == TIMESTAMP_LENGTH || !isDigit(buffer[start + TIMESTAMP_LENGTH]))) {
+			if (!minuteValid || !isSameMinute(start)) {
+				calendar.clear();
+				calendar.set(number(start, 4), number(start + 5, 2) - 1, number(start + 8, 2), number(start + 11, 2),
+						number(start + 14, 2), 0);
+				minuteMillis = calendar.getTimeInMillis();
+				System.arraycopy(buffer, start, minute, 0, MINUTE_LENGTH);
+				minuteValid = true;
+			}
+			return minuteMillis + number(start + 17, 2) * 1000L + number(start + 20, 3);
+		}
+
+		String timestamp = new String(buffer, start, end - start);
+		try {
+			return dateFormat.parse(timestamp).getTime();
+		} catch (java.text.ParseException e) {
+			logger.error("Datetime string '" + timestamp + "' could not be parsed to a date with format "
+					+ Constants.ISO_DATE_FORMAT);
+			throw new DorDriverException(e);
+		}
+	}
+
+	private boolean isFixedFormat(int start) {
+		for (int i = 0; i < TIMESTAMP_LENGTH; ++i) {
+			char c = buffer[start + i];
+			switch (i) {
+			case 4:
+			case 7:
+				if (c != '-') {
+					return false;
+				}
+				break;
+			case 10:
+				if (c != 'T') {
+					return false;
+				}
+				break;
+			case 13:
+			case 16:
+				if (c != ':') {
+					return false;
+				}
+				break;
+			case 19:
+				if (c != '.') {
+					return false;
+				}
+				break;
+			default:
+				if (!isDigit(c)) {
+					return false;
+				}
+			}
+		}
+		return true;
+	}
+
+	private boolean isSameMinute(int start) {
+		for (int i = 0; i < MINUTE_LENGTH; ++i) {
+			if (buffer[start + i] != minute[i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private int number(int start, int digits) {
+		int value = 0;
+		for (int i = start; i < start + digits; ++i) {
+			value = value * 10 + buffer[i] - '0';
+		}
+		return value;
+	}
+
+	private double parseDouble(int start, int end) {
+		while (start < end && buffer[start] == '\'') {
+			++start;
+		}
+		while (end > start && buffer[end - 1] == '\'') {
+			--end;
+		}
+		int i = start;
+		boolean negative = false;
+		if (i < end && (buffer[i] == '-' || buffer[i] == '+')) {
+			negative = buffer[i] == '-';
+			++i;
+		}
+		long mantissa = 0;
+		int digits = 0;
+		int exponent = 0;
+		boolean anyDigit = false;
+		boolean point = false;
+		for (; i < end; ++i) {
+			char c = buffer[i];
+			if (isDigit(c)) {
+				anyDigit = true;
+				if (point) {
+					--exponent;
+				}
+				if (mantissa == 0 && c == '0') {
+					continue;
+				}
+				if (digits == MAX_EXACT_DIGITS) {
+					return parseDoubleString(start, end);
+				}
+				mantissa = mantissa * 10 + c - '0';
+				++digits;
+			} else if (c == '.' && !point) {
+				point = true;
+			} else {
+				break;
+			}
+		}
+		if (i < end && (buffer[i] == 'e' || buffer[i] == 'E') && anyDigit) {
+			++i;
+			boolean negativeExponent = false;
+			if (i < end && (buffer[i] == '-' || buffer[i] == '+')) {
+				negativeExponent = buffer[i] == '-';
+				++i;
+			}
+			int exponentStart = i;
+			int explicitExponent = 0;
+			while (i < end && isDigit(buffer[i]) && i - exponentStart < 3) {
+				explicitExponent = explicitExponent * 10 + buffer[i] - '0';
+				++i;
+			}
+			if (i == exponentStart) {
+				return parseDoubleString(start, end);
+			}
+			exponent += negativeExponent ? -explicitExponent : explicitExponent;
+		}
+		if (i != end || !anyDigit || exponent < -22 || exponent > 22) {
+			return parseDoubleString(start, end);
+		}
+		double value = exponent < 0 ? mantissa / POWERS_OF_TEN[-exponent] : mantissa * POWERS_OF_TEN[exponent];
+		return negative ? -value : value;
+	}
+
+	private double parseDoubleString(int start, int end) {
+		return Double.parseDouble(new String(buffer, start, end - start));
+	}
+
+	private static boolean isDigit(char c) {
+		return c >= '0' && c <= '9';
+	}
+}
@@ -1,22 +1,19 @@
 package net.sllmdilab.dordriver.generator;
 
 import java.util.HashMap;
-import java.util.List;
 import java.util.Map;
 
-import org.apache.commons.lang3.StringUtils;
-
 public class WaveFormData extends AbstractWaveFormData {
 	public WaveFormData() {
 
 	}
 
-	public WaveFormData(List<Double> samples, double rangeLow, double rangeHigh, double rate, WaveFormType type,
+	public WaveFormData(double[] samples, double rangeLow, double rangeHigh, double rate, WaveFormType type,
 			String startTime, String endTime) {
 		super(samples, rangeLow, rangeHigh, rate, type, startTime, endTime);
 	}
 
-	public WaveFormData(List<Double> samples, double rangeLow, double rangeHigh, double rate, WaveFormType type) {
+	public WaveFormData(double[] samples, double rangeLow, double rangeHigh, double rate, WaveFormType type) {
 		super(samples, rangeLow, rangeHigh, rate, type);
 	}
 
@@ -27,7 +24,8 @@ public class WaveFormData extends AbstractWaveFormData {
 	@Override
 	public Map<String, String> toMap() {
 		Map<String, String> map = new HashMap<>();
-		map.put(SAMPLES_PREFIX + this.getType(), StringUtils.join(this.getSamples(), this.getSampleSeparator()));
+		double[] samples = this.getSamples();
+		map.put(SAMPLES_PREFIX + this.getType(), SampleColumn.join(samples, 0, samples.length, this.getSampleSeparator()));
 		map.put(RATE_PREFIX + this.getType(), Double.toString(this.getRate()));
 		map.put(RANGE_LOW_PREFIX + this.getType(), Double.toString(this.getRangeLow()));
 		map.put(RANGE_HIGH_PREFIX + this.getType(), Double.toString(this.getRangeHigh()));
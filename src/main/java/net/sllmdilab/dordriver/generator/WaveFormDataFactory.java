@@ -1,8 +1,6 @@
 package net.sllmdilab.dordriver.generator;
 
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.List;
+import java.util.Arrays;
 
 public class WaveFormDataFactory {
 
@@ -10,21 +8,23 @@ public class WaveFormDataFactory {
 			Double sampleRate, long sampleTime, Double pulseRate,
 			WaveFormModel model) {
 		WaveFormData wf = new WaveFormData(type);
-		List<Double> samples = createSamples(sampleRate, sampleTime, pulseRate,
-				model);
-		wf.setSamples(samples);
-		wf.setRangeLow(Collections.min(samples));
-		wf.setRangeHigh(Collections.max(samples));
+		createSamples(wf, sampleRate, sampleTime, pulseRate, model);
 		wf.setRate(sampleRate);
 		return wf;
 	}
 
-	private List<Double> createSamples(Double sampleRate, long sampleTime,
+	/**
+	 * Sets the samples and their range, which is tracked while the samples are generated.
+	 */
+	private void createSamples(WaveFormData wf, Double sampleRate, long sampleTime,
 			Double pulseRate, WaveFormModel model) {
 		Double pulseInHz = pulseRate / 60; // pulseRate is in BPM.
-		List<Double> samples = new ArrayList<>();
-		Linspace counter = new Linspace(0.0f, 1.0 * sampleTime / 1000.0, sampleRate
-				* sampleTime / 1000.0);
+		double totalCount = sampleRate * sampleTime / 1000.0;
+		double[] samples = new double[(int) totalCount + 2];
+		int size = 0;
+		double min = Double.POSITIVE_INFINITY;
+		double max = Double.NEGATIVE_INFINITY;
+		Linspace counter = new Linspace(0.0f, 1.0 * sampleTime / 1000.0, totalCount);
 
 		double w = 2 * Math.PI * pulseInHz;
 		double y;
@@ -41,10 +41,17 @@ public class WaveFormDataFactory {
 				y = x;
 				break;
 			}
-			samples.add(y);
+			if (size == samples.length) {
+				samples = Arrays.copyOf(samples, size * 2);
+			}
+			samples[size++] = y;
+			min = Math.min(min, y);
+			max = Math.max(max, y);
 		}
-		return samples;
-	};
+		wf.setSamples(size == samples.length ? samples : Arrays.copyOf(samples, size));
+		wf.setRangeLow(min);
+		wf.setRangeHigh(max);
+	}
 
 	private class Linspace {
 		private double current;
@@ -0,0 +1,88 @@
+package net.sllmdilab.dordriver.generator;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Waveform data read from a CSV file, stored column by column: the timestamps as epoch millis in a {@code long[]} and
+ * the values of every other key in a {@link SampleColumn}. Parameter columns such as the sample rate may be shorter
+ * than the timestamps. Holds one message time frame at a time while the file is read.
+ */
+final class WaveFormTable {
+	private static final int INITIAL_CAPACITY = 256;
+
+	private long[] timestamps = new long[INITIAL_CAPACITY];
+	private int rows;
+	private final Map<String, SampleColumn> columns = new LinkedHashMap<>();
+
+	void addTimestamp(long timestampMillis) {
+		if (rows == timestamps.length) {
+			timestamps = Arrays.copyOf(timestamps, timestamps.length * 2);
+		}
+		timestamps[rows++] = timestampMillis;
+	}
+
+	/**
+	 * The column of a key, created empty on first use.
+	 */
+	SampleColumn getColumn(String key) {
+		SampleColumn column = columns.get(key);
+		if (column == null) {
+			column = new SampleColumn();
+			columns.put(key, column);
+		}
+		return column;
+	}
+
+	Map<String, SampleColumn> getColumns() {
+		return columns;
+	}
+
+	/**
+	 * Removes all rows, keeping the arrays for the next rows.
+	 */
+	void clear() {
+		rows = 0;
+		for (SampleColumn column : columns.values()) {
+			column.clear();
+		}
+	}
+
+	int getRows() {
+		return rows;
+	}
+
+	/**
+	 * The time between the earliest and the latest timestamp of rows {@code from} to {@code to}, exclusive, found in a
+	 * single pass.
+	 */
+	long getTimeSpanMillis(int from, int to) {
+		long earliest = Long.MAX_VALUE;
+		long latest = Long.MIN_VALUE;
+		for (int i = from; i < to; ++i) {
+			long timestamp = timestamps[i];
+			if (timestamp < earliest) {
+				earliest = timestamp;
+			}
+			if (timestamp > latest) {
+				latest = timestamp;
+			}
+		}
+		return latest - earliest;
+	}
+
+	/**
+	 * Formats the timestamps of rows {@code from} to {@code to}, exclusive, the way the samples are formatted.
+	 */
+	String joinTimestamps(int from, int to, String separator) {
+		StringBuilder sb = new StringBuilder((to - from) * 16);
+		for (int i = from; i < to; ++i) {
+			if (i > from) {
+				sb.append(separator);
+			}
+			sb.append((double) timestamps[i]);
+		}
+		return sb.toString();
+	}
+}
@@ -0,0 +1,451 @@
+package net.sllmdilab.dordriver.message;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TimeZone;
+
+import net.sllmdilab.dordriver.exeptions.DorDriverException;
+
+import ca.uhn.hl7v2.HL7Exception;
+
+/**
+ * An HL7v2 message that has been parsed once into an immutable byte template together with the positions of all
+ * fields that are rewritten on send: the timestamps MSH-7, OBR-7, OBR-8 and OBX-14, and the identity fields MSH-10,
+ * PID-3, the bed of PV1-3 and OBX-18 that are made unique per device, see {@link DeviceIdentity}. Encoding a message
+ * for sending only copies the literal parts of the template into a buffer and splices freshly formatted values in
+ * between, no HAPI message tree is built. Timestamps are parsed and formatted with {@link DtmCodec}, rewritten observation times
+ * keep the precision and UTC offset of the original value while MSH-7 is written to the millisecond with the local
+ * UTC offset.
+ *
+ * The template and the fields are either arrays or, for messages replayed from a {@link MessageIndex}, views of the
+ * memory mapped recording and index, so that a message can be taken from the index without copying anything.
+ *
+ * Instances are immutable and may be shared between sender threads.
+ */
+public class CompiledMessage {
+	public static final Charset CHARSET = StandardCharsets.ISO_8859_1;
+
+	private static final TimeZone LOCAL_ZONE = TimeZone.getDefault();
+	private static final String MSH = "MSH";
+	private static final String OBR = "OBR";
+	private static final String OBX = "OBX";
+	private static final String PID = "PID";
+	private static final String PV1 = "PV1";
+	/** Component of PV1-3 holding the bed */
+	private static final int BED_COMPONENT = 3;
+
+	/** Observation time of a message without one */
+	static final long NO_TIME = Long.MIN_VALUE;
+
+	private final byte[] template;
+	private final ByteBuffer mappedTemplate;
+	private final int templateOffset;
+	private final int templateLength;
+	private final TemplateField[] fields;
+	private final ByteBuffer mappedFields;
+	private final int fieldsOffset;
+	private final int fieldCount;
+	private final long observationStartMillis;
+	private final long observationEndMillis;
+	private final TimeZone localZone;
+
+	private CompiledMessage(byte[] template, TemplateField[] fields, Long observationStartMillis,
+			Long observationEndMillis, TimeZone localZone) {
+		this.template = template;
+		this.mappedTemplate = null;
+		this.templateOffset = 0;
+		this.templateLength = template.length;
+		this.fields = fields;
+		this.mappedFields = null;
+		this.fieldsOffset = 0;
+		this.fieldCount = fields.length;
+		this.observationStartMillis = observationStartMillis != null ? observationStartMillis : NO_TIME;
+		this.observationEndMillis = observationEndMillis != null ? observationEndMillis : NO_TIME;
+		this.localZone = localZone;
+	}
+
+	private CompiledMessage(ByteBuffer mappedTemplate, int templateOffset, int templateLength,
+			ByteBuffer mappedFields, int fieldsOffset, int fieldCount, long observationStartMillis,
+			long observationEndMillis) {
+		this.template = null;
+		this.mappedTemplate = mappedTemplate;
+		this.templateOffset = templateOffset;
+		this.templateLength = templateLength;
+		this.fields = null;
+		this.mappedFields = mappedFields;
+		this.fieldsOffset = fieldsOffset;
+		this.fieldCount = fieldCount;
+		this.observationStartMillis = observationStartMillis;
+		this.observationEndMillis = observationEndMillis;
+		this.localZone = LOCAL_ZONE;
+	}
+
+	/**
+	 * Scans an ER7 encoded message and records the location and original value of each timestamp and identity field.
+	 *
+	 * @throws HL7Exception
+	 *             if a timestamp field can not be parsed
+	 */
+	public static CompiledMessage compile(String message) throws HL7Exception {
+		byte[] template = message.getBytes(CHARSET);
+
+		if (template.length < 8 || !MSH.equals(new String(template, 0, 3, CHARSET))) {
+			throw new DorDriverException("Message does not start with an MSH segment.");
+		}
+
+		byte fieldSeparator = template[3];
+		byte componentSeparator = template[4];
+		byte repetitionSeparator = template[5];
+
+		List<TemplateField> fields = new ArrayList<>();
+		Long observationStartMillis = null;
+		Long observationEndMillis = null;
+		boolean firstObr = true;
+		boolean hasMessageTime = false;
+
+		int segmentStart = 0;
+		while (segmentStart < template.length) {
+			int segmentEnd = segmentStart;
+			while (segmentEnd < template.length && !isSegmentTerminator(template[segmentEnd])) {
+				++segmentEnd;
+			}
+
+			if (segmentEnd - segmentStart >= 3) {
+				String segmentName = new String(template, segmentStart, 3, CHARSET);
+				boolean isMsh = MSH.equals(segmentName);
+				int fieldNumber = isMsh ? 1 : 0;
+
+				for (int pos = segmentStart + 3; pos < segmentEnd; ++pos) {
+					if (template[pos] != fieldSeparator) {
+						continue;
+					}
+					++fieldNumber;
+
+					int valueStart = pos + 1;
+					int valueEnd = valueStart;
+					while (valueEnd < segmentEnd && template[valueEnd] != fieldSeparator
+							&& template[valueEnd] != componentSeparator && template[valueEnd] != repetitionSeparator) {
+						++valueEnd;
+					}
+
+					if (isMsh && fieldNumber == 7) {
+						fields.add(new TemplateField(TemplateField.MESSAGE_TIME, valueStart, valueEnd - valueStart, 0,
+								DtmCodec.MILLIS_PRECISION, DtmCodec.LOCAL_OFFSET));
+						hasMessageTime = true;
+					} else if (isMsh && fieldNumber == 10) {
+						fields.add(new TemplateField(TemplateField.CONTROL_ID, valueStart, valueEnd - valueStart));
+					} else if (PV1.equals(segmentName) && fieldNumber == 3) {
+						addBedField(template, valueStart, segmentEnd, fieldSeparator, componentSeparator,
+								repetitionSeparator, fields);
+					} else if (valueEnd > valueStart && isIdentity(segmentName, fieldNumber)) {
+						fields.add(new TemplateField(TemplateField.IDENTITY, valueStart, valueEnd - valueStart));
+					} else if (valueEnd > valueStart && isObservationTime(segmentName, fieldNumber)) {
+						int length = valueEnd - valueStart;
+						long millis = DtmCodec.parse(template, valueStart, length, LOCAL_ZONE);
+						fields.add(new TemplateField(TemplateField.OBSERVATION_TIME, valueStart, length, millis,
+								DtmCodec.getPrecision(template, valueStart, length),
+								DtmCodec.getOffsetMinutes(template, valueStart, length)));
+
+						if (firstObr && OBR.equals(segmentName)) {
+							if (fieldNumber == 7) {
+								observationStartMillis = millis;
+							} else {
+								observationEndMillis = millis;
+							}
+						}
+					}
+				}
+
+				if (OBR.equals(segmentName)) {
+					firstObr = false;
+				}
+			}
+
+			segmentStart = segmentEnd + 1;
+		}
+
+		if (!hasMessageTime) {
+			throw new DorDriverException("Message is missing MSH-7.");
+		}
+
+		return new CompiledMessage(template, fields.toArray(new TemplateField[fields.size()]), observationStartMillis,
+				observationEndMillis, LOCAL_ZONE);
+	}
+
+	/**
+	 * Creates a view of a previously compiled message. The template is read from templateLength bytes of
+	 * mappedTemplate starting at templateOffset and the fields from fieldCount entries of mappedFields starting at
+	 * fieldsOffset, laid out as described by {@link TemplateField}. Neither buffer is modified, so they may be shared
+	 * by any number of views.
+	 */
+	static CompiledMessage fromMapping(ByteBuffer mappedTemplate, int templateOffset, int templateLength,
+			ByteBuffer mappedFields, int fieldsOffset, int fieldCount, long observationStartMillis,
+			long observationEndMillis) {
+		return new CompiledMessage(mappedTemplate, templateOffset, templateLength, mappedFields, fieldsOffset,
+				fieldCount, observationStartMillis, observationEndMillis);
+	}
+
+	private static boolean isSegmentTerminator(byte b) {
+		return b == '\r' || b == '\n';
+	}
+
+	private static void addBedField(byte[] template, int pos, int segmentEnd, byte fieldSeparator,
+			byte componentSeparator, byte repetitionSeparator, List<TemplateField> fields) {
+		int component = 1;
+		while (component < BED_COMPONENT) {
+			if (pos >= segmentEnd || template[pos] == fieldSeparator || template[pos] == repetitionSeparator) {
+				return;
+			}
+			if (template[pos] == componentSeparator) {
+				++component;
+			}
+			++pos;
+		}
+
+		int valueEnd = pos;
+		while (valueEnd < segmentEnd && template[valueEnd] != fieldSeparator
+				&& template[valueEnd] != componentSeparator && template[valueEnd] != repetitionSeparator) {
+			++valueEnd;
+		}
+		if (valueEnd > pos) {
+			fields.add(new TemplateField(TemplateField.IDENTITY, pos, valueEnd - pos));
+		}
+	}
+
+	private static boolean isIdentity(String segmentName, int fieldNumber) {
+		return (PID.equals(segmentName) && fieldNumber == 3) || (OBX.equals(segmentName) && fieldNumber == 18);
+	}
+
+	private static boolean isObservationTime(String segmentName, int fieldNumber) {
+		return (OBR.equals(segmentName) && (fieldNumber == 7 || fieldNumber == 8))
+				|| (OBX.equals(segmentName) && fieldNumber == 14);
+	}
+
+	/**
+	 * Writes the message into the buffer with MSH-7 set to messageTimeMillis and, unless keepOriginalTimestamp is
+	 * set, offsetMillis added to every OBR-7, OBR-8 and OBX-14 timestamp. Identity fields are copied as they are.
+	 *
+	 * @param buffer
+	 *            destination, must be at least {@link #getMaxEncodedLength()} bytes long
+	 * @return the number of bytes written
+	 */
+	public int encode(byte[] buffer, long messageTimeMillis, long offsetMillis, boolean keepOriginalTimestamp) {
+		return encode(buffer, 0, messageTimeMillis, offsetMillis, keepOriginalTimestamp);
+	}
+
+	/**
+	 * Same as {@link #encode(byte[], long, long, boolean)} but writes the message starting at bufferOffset.
+	 *
+	 * @return the number of bytes written
+	 */
+	public int encode(byte[] buffer, int bufferOffset, long messageTimeMillis, long offsetMillis,
+			boolean keepOriginalTimestamp) {
+		return encode(buffer, bufferOffset, messageTimeMillis, offsetMillis, keepOriginalTimestamp, null);
+	}
+
+	/**
+	 * Same as {@link #encode(byte[], int, long, long, boolean)} but, unless deviceIdentity is null, also appends the
+	 * suffix of the device to every identity field and a unique sequence number to MSH-10. The sequence number of
+	 * the identity is advanced once the message has been written.
+	 *
+	 * @return the number of bytes written
+	 */
+	public int encode(byte[] buffer, int bufferOffset, long messageTimeMillis, long offsetMillis,
+			boolean keepOriginalTimestamp, DeviceIdentity deviceIdentity) {
+		int templatePos = 0;
+		int bufferPos = bufferOffset;
+		ByteBuffer source = mappedTemplate != null ? mappedTemplate.duplicate() : null;
+
+		for (int i = 0; i < fieldCount; ++i) {
+			int type = getFieldType(i);
+			boolean identity = type == TemplateField.IDENTITY || type == TemplateField.CONTROL_ID;
+			if (identity ? deviceIdentity == null : type == TemplateField.OBSERVATION_TIME && keepOriginalTimestamp) {
+				continue;
+			}
+
+			int fieldOffset = getFieldOffset(i);
+			int fieldLength = getFieldLength(i);
+			if (identity) {
+				// The original value is kept, the suffix goes right after it
+				int literalLength = fieldOffset + fieldLength - templatePos;
+				copyTemplate(source, templatePos, buffer, bufferPos, literalLength);
+				bufferPos += literalLength;
+
+				if (type == TemplateField.CONTROL_ID) {
+					bufferPos = deviceIdentity.writeControlIdSuffix(buffer, bufferPos);
+				} else {
+					bufferPos = deviceIdentity.writeSuffix(buffer, bufferPos);
+				}
+			} else {
+				int literalLength = fieldOffset - templatePos;
+				copyTemplate(source, templatePos, buffer, bufferPos, literalLength);
+				bufferPos += literalLength;
+
+				long millis = type == TemplateField.MESSAGE_TIME ? messageTimeMillis : getFieldOriginalMillis(i)
+						+ offsetMillis;
+				bufferPos = DtmCodec.format(millis, getFieldPrecision(i), getFieldOffsetMinutes(i), localZone,
+						buffer, bufferPos);
+			}
+
+			templatePos = fieldOffset + fieldLength;
+		}
+
+		int remaining = templateLength - templatePos;
+		copyTemplate(source, templatePos, buffer, bufferPos, remaining);
+
+		if (deviceIdentity != null) {
+			deviceIdentity.nextMessage();
+		}
+		return bufferPos + remaining - bufferOffset;
+	}
+
+	private void copyTemplate(ByteBuffer source, int templatePos, byte[] buffer, int bufferPos, int length) {
+		if (source == null) {
+			System.arraycopy(template, templatePos, buffer, bufferPos, length);
+		} else {
+			source.position(templateOffset + templatePos);
+			source.get(buffer, bufferPos, length);
+		}
+	}
+
+	/**
+	 * Upper bound of the number of bytes written by any of the encode methods, with or without a device identity.
+	 */
+	public int getMaxEncodedLength() {
+		int length = templateLength;
+		for (int i = 0; i < fieldCount; ++i) {
+			int type = getFieldType(i);
+			if (type == TemplateField.CONTROL_ID) {
+				length += DeviceIdentity.MAX_CONTROL_ID_SUFFIX_LENGTH;
+			} else if (type == TemplateField.IDENTITY) {
+				length += DeviceIdentity.MAX_SUFFIX_LENGTH;
+			} else {
+				length += Math.max(0, DtmCodec.getLength(getFieldPrecision(i), getFieldOffsetMinutes(i))
+						- getFieldLength(i));
+			}
+		}
+		return length;
+	}
+
+	private int getFieldType(int i) {
+		return fields != null ? fields[i].type : mappedFields.get(getMappedField(i) + TemplateField.MAPPED_TYPE);
+	}
+
+	private int getFieldOffset(int i) {
+		return fields != null ? fields[i].offset : mappedFields.getInt(getMappedField(i) + TemplateField.MAPPED_OFFSET);
+	}
+
+	private int getFieldLength(int i) {
+		return fields != null ? fields[i].length : mappedFields.getInt(getMappedField(i) + TemplateField.MAPPED_LENGTH);
+	}
+
+	private long getFieldOriginalMillis(int i) {
+		return fields != null ? fields[i].originalMillis : mappedFields.getLong(getMappedField(i)
+				+ TemplateField.MAPPED_ORIGINAL_MILLIS);
+	}
+
+	private int getFieldPrecision(int i) {
+		return fields != null ? fields[i].precision : mappedFields.get(getMappedField(i)
+				+ TemplateField.MAPPED_PRECISION);
+	}
+
+	private int getFieldOffsetMinutes(int i) {
+		return fields != null ? fields[i].offsetMinutes : mappedFields.getInt(getMappedField(i)
+				+ TemplateField.MAPPED_OFFSET_MINUTES);
+	}
+
+	private int getMappedField(int i) {
+		return fieldsOffset + i * TemplateField.MAPPED_SIZE;
+	}
+
+	/**
+	 * OBR-7 of the first OBR segment, or null if empty.
+	 */
+	public Long getObservationStartMillis() {
+		return observationStartMillis != NO_TIME ? observationStartMillis : null;
+	}
+
+	/**
+	 * OBR-8 of the first OBR segment, or null if empty.
+	 */
+	public Long getObservationEndMillis() {
+		return observationEndMillis != NO_TIME ? observationEndMillis : null;
+	}
+
+	/**
+	 * Length of the message as compiled, before timestamps are rewritten.
+	 */
+	public int getTemplateLength() {
+		return templateLength;
+	}
+
+	/**
+	 * The fields of a message compiled with {@link #compile(String)}.
+	 */
+	TemplateField[] getTemplateFields() {
+		return fields;
+	}
+
+	/**
+	 * Upper bound of the encoded length of any of the messages.
+	 */
+	public static int getMaxEncodedLength(List<CompiledMessage> messages) {
+		if (messages instanceof MessageIndex) {
+			return ((MessageIndex) messages).getMaxEncodedLength();
+		}
+
+		int length = 0;
+		for (CompiledMessage message : messages) {
+			length = Math.max(length, message.getMaxEncodedLength());
+		}
+		return length;
+	}
+
+	/**
+	 * A field rewritten on send. In a mapped index each field takes {@link #MAPPED_SIZE} bytes: offset in the message,
+	 * length, original time, type, precision and UTC offset.
+	 */
+	static class TemplateField {
+		/** OBR-7, OBR-8 or OBX-14, shifted by the timestamp offset */
+		static final int OBSERVATION_TIME = 0;
+		/** MSH-7, set to the send time */
+		static final int MESSAGE_TIME = 1;
+		/** PID-3, PV1-3 bed or OBX-18, suffixed with the device */
+		static final int IDENTITY = 2;
+		/** MSH-10, suffixed with the device and a sequence number */
+		static final int CONTROL_ID = 3;
+
+		static final int MAPPED_OFFSET = 0;
+		static final int MAPPED_LENGTH = 4;
+		static final int MAPPED_ORIGINAL_MILLIS = 8;
+		static final int MAPPED_TYPE = 16;
+		static final int MAPPED_PRECISION = 17;
+		static final int MAPPED_OFFSET_MINUTES = 18;
+		static final int MAPPED_SIZE = 22;
+
+		final int type;
+		final int offset;
+		final int length;
+		final long originalMillis;
+		/** Precision and UTC offset a timestamp field is written with, see {@link DtmCodec} */
+		final int precision;
+		final int offsetMinutes;
+
+		public TemplateField(int type, int offset, int length) {
+			this(type, offset, length, 0, 0, 0);
+		}
+
+		public TemplateField(int type, int offset, int length, long originalMillis, int precision,
+				int offsetMinutes) {
+			this.type = type;
+			this.offset = offset;
+			this.length = length;
+			this.originalMillis = originalMillis;
+			this.precision = precision;
+			this.offsetMinutes = offsetMinutes;
+		}
+	}
+}
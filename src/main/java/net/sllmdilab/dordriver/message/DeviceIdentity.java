@@ -0,0 +1,67 @@
+package net.sllmdilab.dordriver.message;
+
+/**
+ * Identity of one simulated device, written into the identifying fields of compiled messages so that every sender
+ * looks like a monitor of its own. The patient ID (PID-3), bed (PV1-3 bed component), equipment instance identifier
+ * (OBX-18) and control ID (MSH-10) of each message get the suffix "-&lt;device number&gt;". The control ID
+ * additionally gets "-&lt;sequence number&gt;" of the message, making it unique across all devices and messages.
+ *
+ * Not thread safe, each sender has an identity of its own.
+ */
+public class DeviceIdentity {
+	/** Longest device suffix, "-" and a non-negative int */
+	static final int MAX_SUFFIX_LENGTH = 1 + 10;
+	/** Longest control ID suffix, the device suffix, "-" and a non-negative long */
+	static final int MAX_CONTROL_ID_SUFFIX_LENGTH = MAX_SUFFIX_LENGTH + 1 + 19;
+
+	private final int deviceNumber;
+	private final byte[] suffix;
+	private long sequenceNumber;
+
+	public DeviceIdentity(int deviceNumber) {
+		if (deviceNumber < 0) {
+			throw new IllegalArgumentException("Negative device number: " + deviceNumber);
+		}
+		this.deviceNumber = deviceNumber;
+		this.suffix = ("-" + deviceNumber).getBytes(CompiledMessage.CHARSET);
+	}
+
+	public int getDeviceNumber() {
+		return deviceNumber;
+	}
+
+	/**
+	 * Sequence number written into the control ID of the next message.
+	 */
+	public long getSequenceNumber() {
+		return sequenceNumber;
+	}
+
+	int writeSuffix(byte[] buffer, int pos) {
+		System.arraycopy(suffix, 0, buffer, pos, suffix.length);
+		return pos + suffix.length;
+	}
+
+	int writeControlIdSuffix(byte[] buffer, int pos) {
+		pos = writeSuffix(buffer, pos);
+		buffer[pos++] = '-';
+
+		long value = sequenceNumber;
+		int digits = 1;
+		for (long rest = value / 10; rest > 0; rest /= 10) {
+			++digits;
+		}
+		for (int i = pos + digits - 1; i >= pos; --i) {
+			buffer[i] = (byte) ('0' + value % 10);
+			value /= 10;
+		}
+		return pos + digits;
+	}
+
+	/**
+	 * Moves on to the next sequence number, called once a message has been encoded.
+	 */
+	void nextMessage() {
+		++sequenceNumber;
+	}
+}
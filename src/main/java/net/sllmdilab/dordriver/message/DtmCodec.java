@@ -0,0 +1,279 @@
+package net.sllmdilab.dordriver.message;
+
+import java.util.TimeZone;
+
+import ca.uhn.hl7v2.model.DataTypeException;
+
+/**
+ * Parses and formats HL7 DTM values, YYYY[MM[DD[HH[MM[SS[.S[S[S[S]]]]]]]]][+/-ZZZZ], as epoch milliseconds straight
+ * from and into byte buffers. Unlike HAPI's {@link ca.uhn.hl7v2.model.v26.datatype.DTM} nothing is allocated, no
+ * Date, Calendar or String, so it can be used for every timestamp of every message sent.
+ *
+ * A value is described by its precision, the number of digits before the UTC offset, and its UTC offset in minutes.
+ * Values without a UTC offset are in the given local time zone. Fractions are truncated to milliseconds, a fourth
+ * fraction digit is written as zero.
+ */
+public final class DtmCodec {
+	/** Offset of values written without a UTC offset, local time */
+	public static final int NO_OFFSET = Integer.MIN_VALUE;
+	/** Offset of values written with the UTC offset of the local time zone at their instant */
+	public static final int LOCAL_OFFSET = Integer.MAX_VALUE;
+	/** Precision of YYYYMMDDHHMMSS.SSS */
+	public static final int MILLIS_PRECISION = 17;
+	/** Length of the longest value, YYYYMMDDHHMMSS.SSSS+ZZZZ */
+	public static final int MAX_LENGTH = 24;
+
+	private static final int SECONDS_PRECISION = 14;
+	private static final int MAX_PRECISION = 18;
+	private static final long MILLIS_PER_DAY = 86400000L;
+	private static final int MILLIS_PER_MINUTE = 60000;
+	private static final int[] DAYS_IN_MONTH = { 31, 29, 31, 30, 31, 30, 31, 31, 30, 31, 30, 31 };
+
+	private DtmCodec() {
+	}
+
+	/**
+	 * Returns the precision of a value, the number of digits before the UTC offset: 4 (year), 6 (month), 8 (day), 10
+	 * (hour), 12 (minute), 14 (second) or 15 to 18 (tenths to ten thousandths of a second).
+	 *
+	 * @throws DataTypeException
+	 *             if the value is not a valid DTM
+	 */
+	public static int getPrecision(byte[] value, int offset, int length) throws DataTypeException {
+		int end = offset + length;
+		int pos = offset;
+		while (pos < end && isDigit(value[pos])) {
+			++pos;
+		}
+		int precision = pos - offset;
+		if (precision < 4 || precision > SECONDS_PRECISION || precision % 2 != 0) {
+			throw invalid(value, offset, length);
+		}
+
+		if (precision == SECONDS_PRECISION && pos < end && value[pos] == '.') {
+			int fractionStart = ++pos;
+			while (pos < end && isDigit(value[pos])) {
+				++pos;
+			}
+			int fractionDigits = pos - fractionStart;
+			if (fractionDigits < 1 || fractionDigits > MAX_PRECISION - SECONDS_PRECISION) {
+				throw invalid(value, offset, length);
+			}
+			precision += fractionDigits;
+		}
+
+		if (pos < end) {
+			if (end - pos != 5 || (value[pos] != '+' && value[pos] != '-')) {
+				throw invalid(value, offset, length);
+			}
+			for (int i = pos + 1; i < end; ++i) {
+				if (!isDigit(value[i])) {
+					throw invalid(value, offset, length);
+				}
+			}
+		}
+		return precision;
+	}
+
+	/**
+	 * Returns the UTC offset of a value in minutes, or {@link #NO_OFFSET} if it has none. The value must be valid.
+	 */
+	public static int getOffsetMinutes(byte[] value, int offset, int length) {
+		if (length < 5 || (value[offset + length - 5] != '+' && value[offset + length - 5] != '-')) {
+			return NO_OFFSET;
+		}
+		int minutes = digits(value, offset + length - 4, 2) * 60 + digits(value, offset + length - 2, 2);
+		return value[offset + length - 5] == '-' ? -minutes : minutes;
+	}
+
+	/**
+	 * Returns the instant of a value as epoch milliseconds. Missing month and day are 1, missing time components 0.
+	 *
+	 * @throws DataTypeException
+	 *             if the value is not a valid DTM
+	 */
+	public static long parse(byte[] value, int offset, int length, TimeZone localZone) throws DataTypeException {
+		int precision = getPrecision(value, offset, length);
+
+		int year = digits(value, offset, 4);
+		int month = precision >= 6 ? digits(value, offset + 4, 2) : 1;
+		int day = precision >= 8 ? digits(value, offset + 6, 2) : 1;
+		int hour = precision >= 10 ? digits(value, offset + 8, 2) : 0;
+		int minute = precision >= 12 ? digits(value, offset + 10, 2) : 0;
+		int second = precision >= SECONDS_PRECISION ? digits(value, offset + 12, 2) : 0;
+		int millis = 0;
+		for (int i = 0; i < Math.min(3, precision - SECONDS_PRECISION); ++i) {
+			millis = millis * 10 + value[offset + 15 + i] - '0';
+		}
+		for (int i = precision - SECONDS_PRECISION; i < 3; ++i) {
+			millis *= 10;
+		}
+
+		if (month < 1 || month > 12 || day < 1 || day > DAYS_IN_MONTH[month - 1]
+				|| (month == 2 && day == 29 && !isLeapYear(year)) || hour > 23 || minute > 59 || second > 59) {
+			throw invalid(value, offset, length);
+		}
+
+		long localMillis = daysFromCivil(year, month, day) * MILLIS_PER_DAY
+				+ ((hour * 60 + minute) * 60 + second) * 1000L + millis;
+
+		int offsetMinutes = getOffsetMinutes(value, offset, length);
+		if (offsetMinutes != NO_OFFSET) {
+			return localMillis - offsetMinutes * (long) MILLIS_PER_MINUTE;
+		}
+		return toEpochMillis(localMillis, localZone);
+	}
+
+	/**
+	 * Converts local time to an instant the way java.time does. A local time in an overlap, when clocks are turned
+	 * back, gets the earlier offset and a local time in a gap, when clocks are turned forward, the offset before it.
+	 */
+	private static long toEpochMillis(long localMillis, TimeZone localZone) {
+		int offsetBefore = localZone.getOffset(localMillis - MILLIS_PER_DAY);
+		if (localZone.getOffset(localMillis - offsetBefore) == offsetBefore) {
+			return localMillis - offsetBefore;
+		}
+		int offsetAfter = localZone.getOffset(localMillis + MILLIS_PER_DAY);
+		if (localZone.getOffset(localMillis - offsetAfter) == offsetAfter) {
+			return localMillis - offsetAfter;
+		}
+		return localMillis - offsetBefore;
+	}
+
+	/**
+	 * Length of a value with the given precision and UTC offset.
+	 */
+	public static int getLength(int precision, int offsetMinutes) {
+		return precision + (precision > SECONDS_PRECISION ? 1 : 0) + (offsetMinutes != NO_OFFSET ? 5 : 0);
+	}
+
+	/**
+	 * Writes an instant into the buffer with the given precision, shorter precisions truncate, and UTC offset.
+	 *
+	 * @param offsetMinutes
+	 *            UTC offset to write the value in, {@link #NO_OFFSET} for local time without an offset or
+	 *            {@link #LOCAL_OFFSET} for local time with its offset
+	 * @return the position after the value
+	 */
+	public static int format(long millis, int precision, int offsetMinutes, TimeZone localZone, byte[] buffer,
+			int pos) {
+		int offsetMillis = offsetMinutes == NO_OFFSET || offsetMinutes == LOCAL_OFFSET ? localZone.getOffset(millis)
+				: offsetMinutes * MILLIS_PER_MINUTE;
+		long localMillis = millis + offsetMillis;
+		long days = Math.floorDiv(localMillis, MILLIS_PER_DAY);
+		int millisOfDay = (int) Math.floorMod(localMillis, MILLIS_PER_DAY);
+
+		// Civil date from days since the epoch, see http://howardhinnant.github.io/date_algorithms.html
+		long shiftedDays = days + 719468;
+		long era = Math.floorDiv(shiftedDays, 146097);
+		int dayOfEra = (int) (shiftedDays - era * 146097);
+		int yearOfEra = (dayOfEra - dayOfEra / 1460 + dayOfEra / 36524 - dayOfEra / 146096) / 365;
+		int dayOfYear = dayOfEra - (365 * yearOfEra + yearOfEra / 4 - yearOfEra / 100);
+		int shiftedMonth = (5 * dayOfYear + 2) / 153;
+		int day = dayOfYear - (153 * shiftedMonth + 2) / 5 + 1;
+		int month = shiftedMonth < 10 ? shiftedMonth + 3 : shiftedMonth - 9;
+		long year = yearOfEra + era * 400 + (month <= 2 ? 1 : 0);
+		if (year < 0 || year > 9999) {
+			throw new IllegalArgumentException("Timestamp out of range: " + millis);
+		}
+
+		pos = writeDigits(buffer, pos, (int) year, 4);
+		if (precision >= 6) {
+			pos = writeDigits(buffer, pos, month, 2);
+		}
+		if (precision >= 8) {
+			pos = writeDigits(buffer, pos, day, 2);
+		}
+		if (precision >= 10) {
+			pos = writeDigits(buffer, pos, millisOfDay / 3600000, 2);
+		}
+		if (precision >= 12) {
+			pos = writeDigits(buffer, pos, millisOfDay / MILLIS_PER_MINUTE % 60, 2);
+		}
+		if (precision >= SECONDS_PRECISION) {
+			pos = writeDigits(buffer, pos, millisOfDay / 1000 % 60, 2);
+		}
+		if (precision > SECONDS_PRECISION) {
+			buffer[pos++] = '.';
+			int fraction = millisOfDay % 1000;
+			int fractionDigits = precision - SECONDS_PRECISION;
+			for (int i = fractionDigits; i < 3; ++i) {
+				fraction /= 10;
+			}
+			for (int i = 3; i < fractionDigits; ++i) {
+				fraction *= 10;
+			}
+			pos = writeDigits(buffer, pos, fraction, fractionDigits);
+		}
+		if (offsetMinutes != NO_OFFSET) {
+			int minutes = offsetMillis / MILLIS_PER_MINUTE;
+			buffer[pos++] = (byte) (minutes < 0 ? '-' : '+');
+			minutes = Math.abs(minutes);
+			pos = writeDigits(buffer, pos, minutes / 60 * 100 + minutes % 60, 4);
+		}
+		return pos;
+	}
+
+	/**
+	 * Adds millis to a value, keeping its precision and UTC offset. For timestamps of messages parsed with HAPI.
+	 *
+	 * @throws DataTypeException
+	 *             if the value is not a valid DTM
+	 */
+	public static String addMillis(String value, long millis, TimeZone localZone) throws DataTypeException {
+		byte[] bytes = value.getBytes(CompiledMessage.CHARSET);
+		int precision = getPrecision(bytes, 0, bytes.length);
+		long instant = parse(bytes, 0, bytes.length, localZone) + millis;
+		return format(instant, precision, getOffsetMinutes(bytes, 0, bytes.length), localZone);
+	}
+
+	/**
+	 * Same as {@link #format(long, int, int, TimeZone, byte[], int)} but returns the value as a string.
+	 */
+	public static String format(long millis, int precision, int offsetMinutes, TimeZone localZone) {
+		byte[] buffer = new byte[MAX_LENGTH];
+		int length = format(millis, precision, offsetMinutes, localZone, buffer, 0);
+		return new String(buffer, 0, length, CompiledMessage.CHARSET);
+	}
+
+	private static boolean isDigit(byte b) {
+		return b >= '0' && b <= '9';
+	}
+
+	private static boolean isLeapYear(int year) {
+		return year % 4 == 0 && (year % 100 != 0 || year % 400 == 0);
+	}
+
+	private static int digits(byte[] value, int pos, int count) {
+		int result = 0;
+		for (int i = 0; i < count; ++i) {
+			result = result * 10 + value[pos + i] - '0';
+		}
+		return result;
+	}
+
+	private static int writeDigits(byte[] buffer, int pos, int value, int count) {
+		for (int i = pos + count - 1; i >= pos; --i) {
+			buffer[i] = (byte) ('0' + value % 10);
+			value /= 10;
+		}
+		return pos + count;
+	}
+
+	/**
+	 * Days since the epoch of a civil date, see http://howardhinnant.github.io/date_algorithms.html
+	 */
+	private static long daysFromCivil(int year, int month, int day) {
+		int shiftedYear = month <= 2 ? year - 1 : year;
+		int era = Math.floorDiv(shiftedYear, 400);
+		int yearOfEra = shiftedYear - era * 400;
+		int dayOfYear = (153 * (month > 2 ? month - 3 : month + 9) + 2) / 5 + day - 1;
+		int dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+		return era * 146097L + dayOfEra - 719468;
+	}
+
+	private static DataTypeException invalid(byte[] value, int offset, int length) {
+		return new DataTypeException("Invalid DTM value: "
+				+ new String(value, offset, length, CompiledMessage.CHARSET));
+	}
+}
@@ -0,0 +1,170 @@
+package net.sllmdilab.dordriver.message;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+import net.sllmdilab.dordriver.network.MllpClient;
+
+/**
+ * Reads HL7v2 messages one at a time from a stream of any size, holding only the current message in memory. Messages
+ * may be framed by MLLP start and end blocks or simply follow each other, in which case every segment starting with
+ * MSH starts a new message. Segments may be terminated by CR, LF or CRLF, blank lines are ignored. Returned messages
+ * have their segments terminated by CR.
+ */
+public class Hl7MessageReader implements Closeable {
+	private static final int CHUNK_SIZE = 64 * 1024;
+
+	private final InputStream in;
+	private final byte[] chunk = new byte[CHUNK_SIZE];
+	private int chunkPos;
+	private int chunkLength;
+
+	private byte[] message = new byte[4096];
+	private int messageLength;
+	private int segmentStart;
+	private String pending;
+
+	public Hl7MessageReader(InputStream in) {
+		this.in = in;
+	}
+
+	/**
+	 * @return the next message, or null at the end of the stream
+	 */
+	public String next() throws IOException {
+		if (pending != null) {
+			String result = pending;
+			pending = null;
+			return result;
+		}
+
+		while (true) {
+			if (chunkPos == chunkLength) {
+				chunkLength = in.read(chunk);
+				chunkPos = 0;
+				if (chunkLength <= 0) {
+					chunkLength = 0;
+					return endMessage();
+				}
+			}
+
+			byte b = chunk[chunkPos++];
+			if (b == MllpClient.START_BLOCK || b == MllpClient.END_BLOCK) {
+				String result = endMessage();
+				if (result != null) {
+					return result;
+				}
+			} else if (b == '\r' || b == '\n') {
+				String result = endSegment();
+				if (result != null) {
+					return result;
+				}
+			} else {
+				append(b);
+			}
+		}
+	}
+
+	/**
+	 * Terminates the current message at an MLLP block or the end of the stream.
+	 */
+	private String endMessage() {
+		String result = endSegment();
+		String rest = takeMessage(messageLength);
+		if (result == null) {
+			return rest;
+		}
+		pending = rest;
+		return result;
+	}
+
+	/**
+	 * Terminates the current segment. If it is an MSH segment following other segments, the message before it is
+	 * returned and the MSH segment starts the next message.
+	 */
+	private String endSegment() {
+		if (isBlank(segmentStart, messageLength)) {
+			messageLength = segmentStart;
+			return null;
+		}
+
+		append((byte) '\r');
+
+		String result = null;
+		if (segmentStart > 0 && isMsh(segmentStart)) {
+			result = takeMessage(segmentStart);
+		}
+		segmentStart = messageLength;
+		return result;
+	}
+
+	/**
+	 * Removes the first length bytes of the buffer and returns them as a message, or null if they are blank.
+	 */
+	private String takeMessage(int length) {
+		String result = isBlank(0, length) ? null : new String(message, 0, length, CompiledMessage.CHARSET);
+
+		System.arraycopy(message, length, message, 0, messageLength - length);
+		messageLength -= length;
+		segmentStart = Math.max(0, segmentStart - length);
+		return result;
+	}
+
+	private void append(byte b) {
+		if (messageLength == message.length) {
+			message = Arrays.copyOf(message, messageLength * 2);
+		}
+		message[messageLength++] = b;
+	}
+
+	private boolean isMsh(int pos) {
+		return messageLength - pos > 3 && message[pos] == 'M' && message[pos + 1] == 'S' && message[pos + 2] == 'H';
+	}
+
+	private boolean isBlank(int start, int end) {
+		for (int i = start; i < end; ++i) {
+			if (message[i] > ' ') {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Returns the message type and trigger event of MSH-9, e.g. "ORU^R01", without parsing the message.
+	 */
+	public static String getMessageType(String message) {
+		if (message.length() < 8 || !message.startsWith("MSH")) {
+			return "";
+		}
+
+		char fieldSeparator = message.charAt(3);
+		char componentSeparator = message.charAt(4);
+		int pos = 3;
+		for (int field = 1; field < 8; ++field) {
+			pos = message.indexOf(fieldSeparator, pos + 1);
+			if (pos < 0) {
+				return "";
+			}
+		}
+
+		int start = pos + 1;
+		int end = start;
+		int components = 0;
+		while (end < message.length()) {
+			char c = message.charAt(end);
+			if (c == fieldSeparator || c == '\r' || (c == componentSeparator && ++components == 2)) {
+				break;
+			}
+			++end;
+		}
+		return message.substring(start, end).replace(componentSeparator, '^');
+	}
+
+	@Override
+	public void close() throws IOException {
+		in.close();
+	}
+}
@@ -0,0 +1,181 @@
+package net.sllmdilab.dordriver.message;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import net.sllmdilab.dordriver.exeptions.DorDriverException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import ca.uhn.hl7v2.HL7Exception;
+
+/**
+ * The messages replayed by the senders of a run, analysed once when the run starts and shared by all senders. Holds
+ * either the compiled messages with their timestamp layouts, or the original messages when they are sent with HAPI,
+ * together with the observation time covered by one pass over all messages. Senders only keep a position and a
+ * timestamp offset of their own.
+ *
+ * Instances are immutable and may be read by any number of threads without locking.
+ */
+public class MessageCorpus {
+	private static Logger logger = LoggerFactory.getLogger(MessageCorpus.class);
+
+	private final List<String> messages;
+	private final List<CompiledMessage> compiledMessages;
+	/** OBR-7 and OBR-8 of the original messages, see {@link CompiledMessage#NO_TIME} */
+	private final long[] observationStartMillis;
+	private final long[] observationEndMillis;
+	private final int size;
+	private final Long messageDurationMillis;
+	private final int maxEncodedLength;
+
+	private MessageCorpus(List<String> messages, long[] observationStartMillis, long[] observationEndMillis,
+			List<CompiledMessage> compiledMessages) {
+		this.size = messages != null ? messages.size() : compiledMessages.size();
+		if (size == 0) {
+			throw new DorDriverException("No messages to send.");
+		}
+
+		this.messages = messages;
+		this.observationStartMillis = observationStartMillis;
+		this.observationEndMillis = observationEndMillis;
+		this.compiledMessages = compiledMessages;
+		this.maxEncodedLength = compiledMessages != null ? CompiledMessage.getMaxEncodedLength(compiledMessages) : 0;
+
+		// Waveforms continue where the previous pass ended, OBR-7 of the first to OBR-8 of the last message
+		Long start = getObservationStartMillis(0);
+		Long end = getObservationEndMillis(size - 1);
+		this.messageDurationMillis = start != null && end != null ? end - start : null;
+	}
+
+	/**
+	 * Compiles the messages for senders that send them compiled. Messages that can not be compiled are skipped.
+	 */
+	public static MessageCorpus compile(List<String> messages) {
+		List<CompiledMessage> compiledMessages = new ArrayList<>(messages.size());
+		for (int i = 0; i < messages.size(); ++i) {
+			CompiledMessage compiledMessage = compile(messages.get(i), i);
+			if (compiledMessage != null) {
+				compiledMessages.add(compiledMessage);
+			}
+		}
+		return new MessageCorpus(null, null, null, Collections.unmodifiableList(compiledMessages));
+	}
+
+	/**
+	 * Keeps the original messages for senders using HAPI, together with their observation times. Messages that can
+	 * not be compiled are skipped, so that the same messages are sent either way.
+	 */
+	public static MessageCorpus analyse(List<String> messages) {
+		List<String> validMessages = new ArrayList<>(messages.size());
+		long[] observationStartMillis = new long[messages.size()];
+		long[] observationEndMillis = new long[messages.size()];
+		for (int i = 0; i < messages.size(); ++i) {
+			CompiledMessage compiledMessage = compile(messages.get(i), i);
+			if (compiledMessage != null) {
+				observationStartMillis[validMessages.size()] = toLong(compiledMessage.getObservationStartMillis());
+				observationEndMillis[validMessages.size()] = toLong(compiledMessage.getObservationEndMillis());
+				validMessages.add(messages.get(i));
+			}
+		}
+		return new MessageCorpus(Collections.unmodifiableList(validMessages), observationStartMillis,
+				observationEndMillis, null);
+	}
+
+	private static CompiledMessage compile(String message, int i) {
+		try {
+			return CompiledMessage.compile(message);
+		} catch (HL7Exception | DorDriverException e) {
+			logger.warn("Error parsing message " + i + ", skipping it: " + e.getMessage());
+			return null;
+		}
+	}
+
+	private static long toLong(Long millis) {
+		return millis != null ? millis : CompiledMessage.NO_TIME;
+	}
+
+	/**
+	 * Corpus of messages that are only available compiled, such as a {@link MessageIndex}.
+	 */
+	public static MessageCorpus of(List<CompiledMessage> compiledMessages) {
+		return new MessageCorpus(null, null, null, compiledMessages);
+	}
+
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Whether the original messages are available, otherwise the messages can only be sent compiled.
+	 */
+	public boolean hasMessages() {
+		return messages != null;
+	}
+
+	/**
+	 * The original message at the given position, see {@link #hasMessages()}.
+	 */
+	public String getMessage(int i) {
+		if (messages == null) {
+			throw new DorDriverException("Messages are only available compiled.");
+		}
+		return messages.get(i);
+	}
+
+	/**
+	 * The compiled message at the given position, only available if not {@link #hasMessages()}.
+	 */
+	public CompiledMessage getCompiledMessage(int i) {
+		if (compiledMessages == null) {
+			throw new DorDriverException("Messages were not compiled.");
+		}
+		return compiledMessages.get(i);
+	}
+
+	/**
+	 * Observation time from OBR-7 of the first message to OBR-8 of the last message, or null if the last message has
+	 * no OBR-8, i.e. the messages are not waveforms.
+	 */
+	public Long getMessageDurationMillis() {
+		return messageDurationMillis;
+	}
+
+	/**
+	 * Offset that makes the message at the given position current: the time from its OBR-8, or OBR-7 if it has no
+	 * OBR-8, until nowMillis.
+	 */
+	public long getTimestampDifferenceMillis(int i, long nowMillis) {
+		Long date = getObservationEndMillis(i);
+		if (date == null) {
+			date = getObservationStartMillis(i);
+		}
+		if (date == null) {
+			throw new DorDriverException("OBR missing end date.");
+		}
+		return nowMillis - date;
+	}
+
+	private Long getObservationStartMillis(int i) {
+		if (compiledMessages != null) {
+			return compiledMessages.get(i).getObservationStartMillis();
+		}
+		return observationStartMillis[i] != CompiledMessage.NO_TIME ? observationStartMillis[i] : null;
+	}
+
+	private Long getObservationEndMillis(int i) {
+		if (compiledMessages != null) {
+			return compiledMessages.get(i).getObservationEndMillis();
+		}
+		return observationEndMillis[i] != CompiledMessage.NO_TIME ? observationEndMillis[i] : null;
+	}
+
+	/**
+	 * Upper bound of the encoded length of any of the compiled messages.
+	 */
+	public int getMaxEncodedLength() {
+		return maxEncodedLength;
+	}
+}
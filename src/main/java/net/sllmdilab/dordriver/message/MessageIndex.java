@@ -0,0 +1,360 @@
+package net.sllmdilab.dordriver.message;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PushbackInputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.AbstractList;
+import java.util.Arrays;
+
+import net.sllmdilab.dordriver.exeptions.DorDriverException;
+import net.sllmdilab.dordriver.message.CompiledMessage.TemplateField;
+import net.sllmdilab.dordriver.network.MllpClient;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import ca.uhn.hl7v2.HL7Exception;
+
+/**
+ * Random access to the ORU^R01 messages of a recording without loading it into memory. A one time compile step writes
+ * an index file next to the recording holding the offset, length and MSH-9 type of every message, the OBR-7 and OBR-8
+ * of its first OBR segment and the offsets and original values of its timestamp and identity fields. Later runs memory
+ * map the recording and the index and encode messages straight from the mapping, so startup takes next to no time and
+ * no memory regardless of the size of the recording. Messages are views of the mappings, taking one from the index
+ * copies nothing. The list is immutable and may be shared between sender threads.
+ *
+ * Messages are replayed exactly as stored, so the segments of the recording must be terminated by CR only.
+ */
+public class MessageIndex extends AbstractList<CompiledMessage> {
+	public static final String INDEX_SUFFIX = ".idx";
+
+	private static Logger logger = LoggerFactory.getLogger(MessageIndex.class);
+
+	private static final int MAGIC = 0x444f5249;
+	private static final int VERSION = 3;
+	private static final String MESSAGE_TYPE = "ORU^R01";
+
+	// magic, version, recording length, recording last modified, size, max message length, max encoded length,
+	// table offset
+	private static final int HEADER_SIZE = 4 + 4 + 8 + 8 + 4 + 4 + 4 + 8;
+
+	// offset, length, type, OBR-7, OBR-8, template fields offset, number of template fields
+	private static final int TYPE_LENGTH = 16;
+	private static final int RECORD_OFFSET = 0;
+	private static final int RECORD_LENGTH = 8;
+	private static final int RECORD_TYPE = 12;
+	private static final int RECORD_OBSERVATION_START = RECORD_TYPE + TYPE_LENGTH;
+	private static final int RECORD_OBSERVATION_END = RECORD_OBSERVATION_START + 8;
+	private static final int RECORD_FIELDS_OFFSET = RECORD_OBSERVATION_END + 8;
+	private static final int RECORD_FIELD_COUNT = RECORD_FIELDS_OFFSET + 8;
+	private static final int RECORD_SIZE = RECORD_FIELD_COUNT + 4;
+
+	// see TemplateField
+	private static final int FIELD_SIZE = TemplateField.MAPPED_SIZE;
+
+	/**
+	 * The recording is mapped in regions of this size, each overlapping the next by the longest message so that
+	 * every message lies within a single region.
+	 */
+	private static final long REGION_SIZE = 1L << 30;
+
+	private final ByteBuffer index;
+	private final ByteBuffer[] regions;
+	private final int size;
+	private final int maxEncodedLength;
+	private final int tableOffset;
+
+	private MessageIndex(ByteBuffer index, ByteBuffer[] regions, int size, int maxEncodedLength, int tableOffset) {
+		this.index = index;
+		this.regions = regions;
+		this.size = size;
+		this.maxEncodedLength = maxEncodedLength;
+		this.tableOffset = tableOffset;
+	}
+
+	/**
+	 * Opens the index of a recording, compiling it first if it is missing or older than the recording.
+	 */
+	public static MessageIndex open(File recording) throws IOException {
+		File indexFile = getIndexFile(recording);
+		if (!isCurrent(indexFile, recording)) {
+			logger.info("Indexing " + recording + ".");
+			build(recording, indexFile);
+		}
+		return load(recording, indexFile);
+	}
+
+	public static File getIndexFile(File recording) {
+		return new File(recording.getPath() + INDEX_SUFFIX);
+	}
+
+	private static boolean isCurrent(File indexFile, File recording) throws IOException {
+		if (!indexFile.isFile() || indexFile.length() < HEADER_SIZE) {
+			return false;
+		}
+		try (DataInputStream in = new DataInputStream(new FileInputStream(indexFile))) {
+			return in.readInt() == MAGIC && in.readInt() == VERSION && in.readLong() == recording.length()
+					&& in.readLong() == recording.lastModified();
+		}
+	}
+
+	/**
+	 * Compiles every ORU^R01 message of the recording and writes the index file. Other messages are skipped. The index
+	 * is written to a temporary file that replaces the index file once complete, so that concurrent runs never see a
+	 * partial index.
+	 */
+	public static void build(File recording, File indexFile) throws IOException {
+		File tempFile = new File(indexFile.getPath() + ".tmp");
+		File tableFile = new File(indexFile.getPath() + ".table.tmp");
+		int size = 0;
+		int maxMessageLength = 0;
+		int maxEncodedLength = 0;
+		long tableOffset;
+
+		try (Hl7MessageReader reader = new Hl7MessageReader(new FileInputStream(recording));
+				RecordingScanner scanner = new RecordingScanner(new FileInputStream(recording), recording);
+				DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)))) {
+
+			// Written last, an incomplete index is never current
+			out.write(new byte[HEADER_SIZE]);
+			long position = HEADER_SIZE;
+
+			try (DataOutputStream table = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(
+					tableFile)))) {
+				long messageIndex = 0;
+				String message;
+				while ((message = reader.next()) != null) {
+					long offset = scanner.find(message.getBytes(CompiledMessage.CHARSET), messageIndex);
+					int length = scanner.getLength();
+					String type = Hl7MessageReader.getMessageType(message);
+
+					CompiledMessage compiledMessage = null;
+					if (!MESSAGE_TYPE.equals(type)) {
+						logger.warn("Unsupported message type in message " + messageIndex + ", skipping it.");
+					} else {
+						try {
+							compiledMessage = CompiledMessage.compile(message);
+						} catch (HL7Exception | DorDriverException e) {
+							logger.warn("Error parsing message " + messageIndex + ", skipping it: " + e);
+						}
+					}
+					++messageIndex;
+
+					if (compiledMessage == null) {
+						continue;
+					}
+
+					TemplateField[] fields = compiledMessage.getTemplateFields();
+					for (TemplateField field : fields) {
+						out.writeInt(field.offset);
+						out.writeInt(field.length);
+						out.writeLong(field.originalMillis);
+						out.writeByte(field.type);
+						out.writeByte(field.precision);
+						out.writeInt(field.offsetMinutes);
+					}
+
+					table.writeLong(offset);
+					table.writeInt(length);
+					table.write(Arrays.copyOf(type.getBytes(CompiledMessage.CHARSET), TYPE_LENGTH));
+					table.writeLong(toLong(compiledMessage.getObservationStartMillis()));
+					table.writeLong(toLong(compiledMessage.getObservationEndMillis()));
+					table.writeLong(position);
+					table.writeInt(fields.length);
+
+					position += fields.length * FIELD_SIZE;
+					maxMessageLength = Math.max(maxMessageLength, length);
+					maxEncodedLength = Math.max(maxEncodedLength, compiledMessage.getMaxEncodedLength());
+					++size;
+				}
+			}
+
+			tableOffset = position;
+			Files.copy(tableFile.toPath(), out);
+		} catch (IOException | RuntimeException e) {
+			tempFile.delete();
+			throw e;
+		} finally {
+			tableFile.delete();
+		}
+
+		try {
+			try (RandomAccessFile file = new RandomAccessFile(tempFile, "rw")) {
+				file.writeInt(MAGIC);
+				file.writeInt(VERSION);
+				file.writeLong(recording.length());
+				file.writeLong(recording.lastModified());
+				file.writeInt(size);
+				file.writeInt(maxMessageLength);
+				file.writeInt(maxEncodedLength);
+				file.writeLong(tableOffset);
+			}
+			Files.move(tempFile.toPath(), indexFile.toPath(), StandardCopyOption.ATOMIC_MOVE,
+					StandardCopyOption.REPLACE_EXISTING);
+		} catch (IOException e) {
+			tempFile.delete();
+			throw e;
+		}
+
+		logger.info("Indexed " + size + " messages of " + recording + " in " + indexFile + ".");
+	}
+
+	private static long toLong(Long millis) {
+		return millis != null ? millis : CompiledMessage.NO_TIME;
+	}
+
+	private static MessageIndex load(File recording, File indexFile) throws IOException {
+		try (FileChannel indexChannel = FileChannel.open(indexFile.toPath(), StandardOpenOption.READ);
+				FileChannel recordingChannel = FileChannel.open(recording.toPath(), StandardOpenOption.READ)) {
+			if (indexChannel.size() > Integer.MAX_VALUE) {
+				throw new DorDriverException("Index " + indexFile + " is too large.");
+			}
+
+			ByteBuffer index = indexChannel.map(FileChannel.MapMode.READ_ONLY, 0, indexChannel.size());
+			int size = index.getInt(24);
+			int maxMessageLength = index.getInt(28);
+			int maxEncodedLength = index.getInt(32);
+			long tableOffset = index.getLong(36);
+
+			long recordingSize = recordingChannel.size();
+			ByteBuffer[] regions = new ByteBuffer[(int) ((recordingSize + REGION_SIZE - 1) / REGION_SIZE)];
+			for (int i = 0; i < regions.length; ++i) {
+				long regionStart = i * REGION_SIZE;
+				long regionSize = Math.min(REGION_SIZE + maxMessageLength, recordingSize - regionStart);
+				regions[i] = recordingChannel.map(FileChannel.MapMode.READ_ONLY, regionStart, regionSize);
+			}
+
+			return new MessageIndex(index, regions, size, maxEncodedLength, (int) tableOffset);
+		}
+	}
+
+	/**
+	 * Returns a view of the message at the given position of the recording. The message reads its template from the
+	 * mapped recording and its fields from the mapped index, nothing is copied.
+	 */
+	@Override
+	public CompiledMessage get(int i) {
+		int record = getRecord(i);
+		long offset = index.getLong(record + RECORD_OFFSET);
+
+		return CompiledMessage.fromMapping(regions[(int) (offset / REGION_SIZE)], (int) (offset % REGION_SIZE),
+				index.getInt(record + RECORD_LENGTH), index, (int) index.getLong(record + RECORD_FIELDS_OFFSET),
+				index.getInt(record + RECORD_FIELD_COUNT), index.getLong(record + RECORD_OBSERVATION_START),
+				index.getLong(record + RECORD_OBSERVATION_END));
+	}
+
+	/**
+	 * MSH-9 message type and trigger event of the message at the given position, e.g. "ORU^R01".
+	 */
+	public String getMessageType(int i) {
+		int record = getRecord(i);
+		byte[] type = new byte[TYPE_LENGTH];
+		for (int j = 0; j < TYPE_LENGTH; ++j) {
+			type[j] = index.get(record + RECORD_TYPE + j);
+		}
+		int length = 0;
+		while (length < TYPE_LENGTH && type[length] != 0) {
+			++length;
+		}
+		return new String(type, 0, length, CompiledMessage.CHARSET);
+	}
+
+	private int getRecord(int i) {
+		if (i < 0 || i >= size) {
+			throw new IndexOutOfBoundsException("Index: " + i + ", Size: " + size);
+		}
+		return tableOffset + i * RECORD_SIZE;
+	}
+
+	@Override
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Upper bound of the encoded length of any message in the recording.
+	 */
+	public int getMaxEncodedLength() {
+		return maxEncodedLength;
+	}
+
+	/**
+	 * Finds the messages returned by an {@link Hl7MessageReader} in the raw bytes of the recording, verifying that
+	 * each is stored exactly as it will be sent.
+	 */
+	private static class RecordingScanner implements AutoCloseable {
+		private final PushbackInputStream in;
+		private final File recording;
+		private long position;
+		private int length;
+
+		public RecordingScanner(InputStream in, File recording) {
+			this.in = new PushbackInputStream(new BufferedInputStream(in));
+			this.recording = recording;
+		}
+
+		/**
+		 * @return the offset of the message, its length is available from {@link #getLength()}
+		 */
+		public long find(byte[] message, long messageIndex) throws IOException {
+			int b;
+			do {
+				b = read();
+			} while (b != -1 && (b <= ' ' || b == MllpClient.START_BLOCK || b == MllpClient.END_BLOCK));
+
+			long offset = position - 1;
+			for (length = 0; length < message.length; ++length) {
+				if (length > 0) {
+					b = read();
+				}
+				if (b != (message[length] & 0xff)) {
+					// The last segment may be terminated by the end block or the end of the file instead
+					if (length == message.length - 1 && message[length] == '\r') {
+						unread(b);
+						break;
+					}
+					throw new DorDriverException("Message " + messageIndex + " of " + recording + " can not be "
+							+ "replayed as stored, segments must be terminated by CR only.");
+				}
+			}
+			return offset;
+		}
+
+		public int getLength() {
+			return length;
+		}
+
+		private int read() throws IOException {
+			int b = in.read();
+			if (b != -1) {
+				++position;
+			}
+			return b;
+		}
+
+		private void unread(int b) throws IOException {
+			if (b != -1) {
+				in.unread(b);
+				--position;
+			}
+		}
+
+		@Override
+		public void close() throws IOException {
+			in.close();
+		}
+	}
+}
@@ -0,0 +1,144 @@
+package net.sllmdilab.dordriver.message;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import ca.uhn.hl7v2.HL7Exception;
+
+/**
+ * Reads messages from an {@link Hl7MessageReader} on a background thread and hands them to any number of senders
+ * through a bounded queue, so that memory use does not depend on the size of the input. Every message is compiled
+ * once by the reader and handed out once. Messages that are not ORU^R01 are skipped using a cheap check of MSH-9,
+ * messages that fail to compile are skipped with a warning.
+ */
+public class StreamingMessageSource {
+	private static Logger logger = LoggerFactory.getLogger(StreamingMessageSource.class);
+
+	private static final String MESSAGE_TYPE = "ORU^R01";
+	private static final CompiledMessage END_OF_STREAM = CompiledMessage.fromMapping(ByteBuffer.allocate(0), 0, 0,
+			ByteBuffer.allocate(0), 0, 0, CompiledMessage.NO_TIME, CompiledMessage.NO_TIME);
+
+	private final Hl7MessageReader reader;
+	private final BlockingQueue<CompiledMessage> queue;
+	private final long maxMessages;
+	private final int numConsumers;
+	private volatile long timestampDifferenceMillis;
+	private volatile long readMessages;
+	private Thread readerThread;
+
+	/**
+	 * @param maxMessages
+	 *            stop after handing out this many messages
+	 * @param numConsumers
+	 *            number of senders calling {@link #take()}, each of which is told once that the stream has ended
+	 */
+	public StreamingMessageSource(Hl7MessageReader reader, int capacity, long maxMessages, int numConsumers) {
+		this.reader = reader;
+		this.queue = new ArrayBlockingQueue<>(capacity);
+		this.maxMessages = maxMessages;
+		this.numConsumers = numConsumers;
+	}
+
+	public void start() {
+		readerThread = new Thread("message-reader") {
+			@Override
+			public void run() {
+				try {
+					readMessages();
+				} catch (InterruptedException e) {
+					logger.debug("Message reader interrupted.");
+				}
+			}
+		};
+		readerThread.setDaemon(true);
+		readerThread.start();
+	}
+
+	private void readMessages() throws InterruptedException {
+		try {
+			long messageIndex = 0;
+			String message;
+			while (readMessages < maxMessages && (message = reader.next()) != null) {
+				if (!MESSAGE_TYPE.equals(Hl7MessageReader.getMessageType(message))) {
+					logger.warn("Unsupported message type in message " + messageIndex + ", skipping it.");
+				} else {
+					CompiledMessage compiledMessage = compile(message, messageIndex);
+					if (compiledMessage == null
+							|| (readMessages == 0 && !initTimestampDifference(compiledMessage, messageIndex))) {
+						logger.warn("Error parsing message " + messageIndex + ", skipping it.");
+					} else {
+						queue.put(compiledMessage);
+						++readMessages;
+					}
+				}
+				++messageIndex;
+			}
+		} catch (IOException e) {
+			logger.error("Exception when reading messages, stopping.", e);
+		} finally {
+			try {
+				reader.close();
+			} catch (IOException e) {
+				logger.debug("Exception when closing input.", e);
+			}
+			for (int i = 0; i < numConsumers; ++i) {
+				queue.put(END_OF_STREAM);
+			}
+		}
+	}
+
+	private static CompiledMessage compile(String message, long messageIndex) {
+		try {
+			return CompiledMessage.compile(message);
+		} catch (HL7Exception e) {
+			logger.debug("Could not compile message " + messageIndex + ".", e);
+			return null;
+		}
+	}
+
+	/**
+	 * The offset between the first message and now, see {@link #getTimestampDifferenceMillis()}.
+	 */
+	private boolean initTimestampDifference(CompiledMessage compiledMessage, long messageIndex) {
+		Long date = compiledMessage.getObservationEndMillis();
+		if (date == null) {
+			date = compiledMessage.getObservationStartMillis();
+		}
+		if (date == null) {
+			logger.debug("Message " + messageIndex + " has no OBR time.");
+			return false;
+		}
+		timestampDifferenceMillis = System.currentTimeMillis() - date;
+		return true;
+	}
+
+	/**
+	 * Blocks until a message is available.
+	 *
+	 * @return the next message, or null once all messages have been handed out
+	 */
+	public CompiledMessage take() throws InterruptedException {
+		CompiledMessage message = queue.take();
+		return message == END_OF_STREAM ? null : message;
+	}
+
+	/**
+	 * Difference between the OBR time of the first message and the time it was read. Added to the timestamps of all
+	 * messages so that the whole stream is replayed shifted to the present. Valid once a message has been taken.
+	 */
+	public long getTimestampDifferenceMillis() {
+		return timestampDifferenceMillis;
+	}
+
+	/**
+	 * Number of messages read and queued so far.
+	 */
+	public long getReadMessages() {
+		return readMessages;
+	}
+}
@@ -0,0 +1,72 @@
+package net.sllmdilab.dordriver.metrics;
+
+import java.io.Closeable;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.PrintStream;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.HistogramLogWriter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Writes the acknowledgement latencies recorded during each interval of a run to a file, so that it is possible to see
+ * when during a long run the receiver starts to degrade. The interval histograms, in microseconds, are taken from the
+ * recorder of a {@link LiveMetrics} by its reporting thread, see {@link LiveMetrics#setLatencyLog(LatencyIntervalLog)}.
+ *
+ * The file is an HdrHistogram log, readable with HistogramLogProcessor, unless its name ends with .csv in which case
+ * each interval is written as one line of percentiles.
+ */
+public class LatencyIntervalLog implements Closeable {
+	public static final int SIGNIFICANT_DIGITS = 3;
+
+	private static Logger logger = LoggerFactory.getLogger(LatencyIntervalLog.class);
+
+	private static final String CSV_SUFFIX = ".csv";
+	private static final String CSV_HEADER = "start_time_millis,end_time_millis,count,p50_us,p90_us,p99_us,p99_9_us,max_us";
+
+	private final PrintStream out;
+	private final HistogramLogWriter logWriter;
+
+	public LatencyIntervalLog(String fileName) throws FileNotFoundException {
+		this.out = new PrintStream(new FileOutputStream(fileName));
+		this.logWriter = fileName.endsWith(CSV_SUFFIX) ? null : new HistogramLogWriter(out);
+	}
+
+	public void start() {
+		long startTimeMillis = System.currentTimeMillis();
+		if (logWriter != null) {
+			logWriter.outputLogFormatVersion();
+			logWriter.outputStartTime(startTimeMillis);
+			logWriter.setBaseTime(startTimeMillis);
+			logWriter.outputLegend();
+		} else {
+			out.println(CSV_HEADER);
+		}
+	}
+
+	@Override
+	public void close() {
+		out.close();
+	}
+
+	/**
+	 * Writes the latencies of one interval, called from the reporting thread of the live metrics.
+	 */
+	synchronized void writeInterval(Histogram intervalHistogram) {
+		if (logWriter != null) {
+			logWriter.outputIntervalHistogram(intervalHistogram);
+		} else {
+			out.println(intervalHistogram.getStartTimeStamp() + "," + intervalHistogram.getEndTimeStamp() + ","
+					+ intervalHistogram.getTotalCount() + "," + intervalHistogram.getValueAtPercentile(50) + ","
+					+ intervalHistogram.getValueAtPercentile(90) + "," + intervalHistogram.getValueAtPercentile(99)
+					+ "," + intervalHistogram.getValueAtPercentile(99.9) + "," + intervalHistogram.getMaxValue());
+		}
+		out.flush();
+
+		if (out.checkError()) {
+			logger.error("Failed to write latency log.");
+		}
+	}
+}
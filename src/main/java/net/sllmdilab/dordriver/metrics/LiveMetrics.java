@@ -0,0 +1,254 @@
+package net.sllmdilab.dordriver.metrics;
+
+import java.io.Closeable;
+import java.util.Locale;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Counters updated by all senders while a run is in progress. Updates are lock free so that they can be made from the
+ * send path of any number of threads. Acknowledgement latencies are recorded once, into a single {@link Recorder}. A
+ * background thread takes its interval histogram every interval, adds it to the total of the run, optionally writes it
+ * to a {@link LatencyIntervalLog} and optionally logs a progress line.
+ *
+ * Latency percentiles cover the last completed interval only, so that degradation late in a long run is not hidden
+ * by hours of earlier samples. The counters, the latency histogram buckets and the latency sum cover the whole run.
+ */
+public class LiveMetrics implements Closeable {
+	private static Logger logger = LoggerFactory.getLogger(LiveMetrics.class);
+
+	private static final double[] QUANTILES = { 0.5, 0.9, 0.99, 0.999 };
+	/** Upper bounds of the ACK latency histogram buckets, in microseconds */
+	private static final long[] BUCKETS_MICROS = { 500, 1000, 2500, 5000, 10000, 25000, 50000, 100000, 250000, 500000,
+			1000000, 2500000, 5000000, 10000000 };
+
+	private final LongAdder sentMessages = new LongAdder();
+	private final LongAdder acknowledgedMessages = new LongAdder();
+	private final LongAdder failedMessages = new LongAdder();
+	private final LongAdder failedConnections = new LongAdder();
+	private final LongAdder reconnects = new LongAdder();
+	private final LongAdder connects = new LongAdder();
+	private final LongAdder totalConnectMicros = new LongAdder();
+	private final LongAdder inFlightMessages = new LongAdder();
+	private final Recorder latencyRecorder = new Recorder(LatencyIntervalLog.SIGNIFICANT_DIGITS);
+
+	private Histogram intervalHistogram;
+	private final Histogram totalHistogram = new Histogram(LatencyIntervalLog.SIGNIFICANT_DIGITS);
+	private volatile Histogram lastIntervalHistogram = new Histogram(LatencyIntervalLog.SIGNIFICANT_DIGITS);
+	private volatile Histogram lastTotalHistogram = new Histogram(LatencyIntervalLog.SIGNIFICANT_DIGITS);
+	private LatencyIntervalLog latencyLog;
+	private Thread reporterThread;
+
+	/**
+	 * Writes every interval histogram to the log as well. Must be called before {@link #start(long, boolean)}.
+	 */
+	public void setLatencyLog(LatencyIntervalLog latencyLog) {
+		this.latencyLog = latencyLog;
+	}
+
+	/**
+	 * Starts rolling the latency percentiles every intervalMillis.
+	 *
+	 * @param logProgress
+	 *            if set, also logs a progress line every interval
+	 */
+	public void start(final long intervalMillis, final boolean logProgress) {
+		reporterThread = new Thread("live-metrics") {
+			@Override
+			public void run() {
+				try {
+					while (!isInterrupted()) {
+						Thread.sleep(intervalMillis);
+						rollInterval();
+						if (logProgress) {
+							logger.info(formatProgress());
+						}
+					}
+				} catch (InterruptedException e) {
+					// Closed
+				}
+			}
+		};
+		reporterThread.setDaemon(true);
+		reporterThread.start();
+	}
+
+	/**
+	 * Stops the background thread and rolls the last, possibly partial, interval, after which
+	 * {@link #getAckLatencyHistogram()} covers the whole run.
+	 */
+	@Override
+	public void close() {
+		if (reporterThread != null) {
+			reporterThread.interrupt();
+			try {
+				reporterThread.join();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			reporterThread = null;
+		}
+		rollInterval();
+	}
+
+	/**
+	 * A message is about to be written.
+	 */
+	public void messageSent() {
+		sentMessages.increment();
+		inFlightMessages.increment();
+	}
+
+	public void messageAcknowledged(long latencyMicros) {
+		acknowledgedMessages.increment();
+		inFlightMessages.decrement();
+		latencyRecorder.recordValue(latencyMicros);
+	}
+
+	/**
+	 * Messages previously reported as sent that will never be acknowledged.
+	 */
+	public void messagesFailed(long count) {
+		failedMessages.add(count);
+		inFlightMessages.add(-count);
+	}
+
+	public void connectionFailed() {
+		failedConnections.increment();
+	}
+
+	public void reconnected() {
+		reconnects.increment();
+	}
+
+	/**
+	 * A connection was established, initially or by a reconnect.
+	 */
+	public void connected(long connectMicros) {
+		connects.increment();
+		totalConnectMicros.add(connectMicros);
+	}
+
+	public long getSentMessages() {
+		return sentMessages.sum();
+	}
+
+	public long getAcknowledgedMessages() {
+		return acknowledgedMessages.sum();
+	}
+
+	public long getFailedMessages() {
+		return failedMessages.sum();
+	}
+
+	public long getFailedConnections() {
+		return failedConnections.sum();
+	}
+
+	public long getReconnects() {
+		return reconnects.sum();
+	}
+
+	public long getConnects() {
+		return connects.sum();
+	}
+
+	public long getInFlightMessages() {
+		return inFlightMessages.sum();
+	}
+
+	/**
+	 * ACK latencies of the run up to the last completed interval, in microseconds.
+	 */
+	public Histogram getAckLatencyHistogram() {
+		return lastTotalHistogram;
+	}
+
+	synchronized void rollInterval() {
+		intervalHistogram = latencyRecorder.getIntervalHistogram(intervalHistogram);
+		totalHistogram.add(intervalHistogram);
+		lastIntervalHistogram = intervalHistogram.copy();
+		lastTotalHistogram = totalHistogram.copy();
+		if (latencyLog != null) {
+			latencyLog.writeInterval(intervalHistogram);
+		}
+	}
+
+	public String formatProgress() {
+		Histogram histogram = lastIntervalHistogram;
+		return "Sent " + getSentMessages() + ", acknowledged " + getAcknowledgedMessages() + ", failed "
+				+ getFailedMessages() + ", in flight " + getInFlightMessages() + ", failed connections "
+				+ getFailedConnections() + ", reconnects " + getReconnects() + ". ACK latency p50 "
+				+ histogram.getValueAtPercentile(50) + " us, p99 " + histogram.getValueAtPercentile(99) + " us, max "
+				+ histogram.getMaxValue() + " us.";
+	}
+
+	/**
+	 * Formats all metrics in the Prometheus text exposition format.
+	 */
+	public String formatPrometheus() {
+		StringBuilder sb = new StringBuilder();
+		appendMetric(sb, "dordriver_messages_sent_total", "counter", "Messages written to the receiver.",
+				getSentMessages());
+		appendMetric(sb, "dordriver_messages_acknowledged_total", "counter", "Messages acknowledged by the receiver.",
+				getAcknowledgedMessages());
+		appendMetric(sb, "dordriver_messages_failed_total", "counter",
+				"Messages that failed or were never acknowledged.", getFailedMessages());
+		appendMetric(sb, "dordriver_connections_failed_total", "counter",
+				"Failed connection attempts, including retries.", getFailedConnections());
+		appendMetric(sb, "dordriver_reconnects_total", "counter", "Reconnects after a connection was lost.",
+				getReconnects());
+		appendMetric(sb, "dordriver_connects_total", "counter", "Connections established, including reconnects.",
+				getConnects());
+		appendMetric(sb, "dordriver_messages_in_flight", "gauge", "Messages sent but not yet acknowledged.",
+				getInFlightMessages());
+
+		Histogram histogram = lastIntervalHistogram;
+		String name = "dordriver_ack_latency_interval_seconds";
+		sb.append("# HELP ").append(name)
+				.append(" ACK latency, quantiles over the last reporting interval.\n");
+		sb.append("# TYPE ").append(name).append(" summary\n");
+		for (double quantile : QUANTILES) {
+			sb.append(name).append("{quantile=\"").append(quantile).append("\"} ")
+					.append(toSeconds(histogram.getValueAtPercentile(quantile * 100))).append('\n');
+		}
+		sb.append(name).append("_sum ").append(toSeconds(Math.round(histogram.getMean() * histogram.getTotalCount())))
+				.append('\n');
+		sb.append(name).append("_count ").append(histogram.getTotalCount()).append('\n');
+
+		// Buckets are cumulative over the run, so that rates and quantiles can be computed over any time range
+		Histogram total = lastTotalHistogram;
+		name = "dordriver_ack_latency_seconds";
+		sb.append("# HELP ").append(name).append(" ACK latency over the whole run, up to the last interval.\n");
+		sb.append("# TYPE ").append(name).append(" histogram\n");
+		for (long bucketMicros : BUCKETS_MICROS) {
+			sb.append(name).append("_bucket{le=\"").append(toSeconds(bucketMicros)).append("\"} ")
+					.append(total.getCountBetweenValues(0, bucketMicros)).append('\n');
+		}
+		sb.append(name).append("_bucket{le=\"+Inf\"} ").append(total.getTotalCount()).append('\n');
+		sb.append(name).append("_sum ").append(toSeconds(Math.round(total.getMean() * total.getTotalCount())))
+				.append('\n');
+		sb.append(name).append("_count ").append(total.getTotalCount()).append('\n');
+
+		name = "dordriver_connect_time_seconds";
+		sb.append("# HELP ").append(name).append(" Time taken by successful connection attempts.\n");
+		sb.append("# TYPE ").append(name).append(" summary\n");
+		sb.append(name).append("_sum ").append(toSeconds(totalConnectMicros.sum())).append('\n');
+		sb.append(name).append("_count ").append(getConnects()).append('\n');
+		return sb.toString();
+	}
+
+	private static void appendMetric(StringBuilder sb, String name, String type, String help, long value) {
+		sb.append("# HELP ").append(name).append(' ').append(help).append('\n');
+		sb.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+		sb.append(name).append(' ').append(value).append('\n');
+	}
+
+	private static String toSeconds(long micros) {
+		return String.format(Locale.ROOT, "%.6f", micros / 1e6);
+	}
+}
@@ -0,0 +1,51 @@
+package net.sllmdilab.dordriver.metrics;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Serves {@link LiveMetrics} at /metrics in the Prometheus text format, using the HTTP server built into the JDK.
+ */
+public class PrometheusEndpoint implements Closeable {
+	private static Logger logger = LoggerFactory.getLogger(PrometheusEndpoint.class);
+
+	private static final String PATH = "/metrics";
+	private static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+
+	private final HttpServer server;
+
+	public PrometheusEndpoint(int port, final LiveMetrics metrics) throws IOException {
+		server = HttpServer.create(new InetSocketAddress(port), 0);
+		server.createContext(PATH, new HttpHandler() {
+			@Override
+			public void handle(HttpExchange exchange) throws IOException {
+				byte[] body = metrics.formatPrometheus().getBytes(StandardCharsets.UTF_8);
+				exchange.getResponseHeaders().set("Content-Type", CONTENT_TYPE);
+				exchange.sendResponseHeaders(200, body.length);
+				try (OutputStream out = exchange.getResponseBody()) {
+					out.write(body);
+				}
+			}
+		});
+	}
+
+	public void start() {
+		server.start();
+		logger.info("Serving metrics on port " + server.getAddress().getPort() + " at " + PATH + ".");
+	}
+
+	@Override
+	public void close() {
+		server.stop(0);
+	}
+}
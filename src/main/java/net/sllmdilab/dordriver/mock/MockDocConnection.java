@@ -0,0 +1,292 @@
+package net.sllmdilab.dordriver.mock;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.TimeZone;
+
+import net.sllmdilab.dordriver.message.DtmCodec;
+import net.sllmdilab.dordriver.network.AckCode;
+import net.sllmdilab.dordriver.network.MllpClient;
+import net.sllmdilab.dordriver.network.NioHandler;
+import net.sllmdilab.dordriver.network.SelectorLoop;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * One accepted connection of a {@link MockDocServer}. Deframes MLLP messages as they arrive and answers each with an
+ * acknowledgement echoing its MSH-10, in order. Messages are never parsed, only MSH-10 is located.
+ */
+class MockDocConnection implements NioHandler {
+	private static final int BUFFER_SIZE = 64 * 1024;
+	private static final int SECONDS_PRECISION = 14;
+	private static final byte[] ACK_HEADER = "MSH|^~\\&|DOC|DOC|DOR|DOR|".getBytes(StandardCharsets.ISO_8859_1);
+	private static final byte[] ACK_TYPE = "||ACK^R01^ACK|".getBytes(StandardCharsets.ISO_8859_1);
+	private static final byte[] ACK_MSA = "|P|2.6\rMSA|".getBytes(StandardCharsets.ISO_8859_1);
+
+	private static Logger logger = LoggerFactory.getLogger(MockDocConnection.class);
+
+	private final SocketChannel channel;
+	private final MockDocServer server;
+	private final Random random;
+	private final TimeZone localZone = TimeZone.getDefault();
+	private SelectorLoop loop;
+	private SelectionKey key;
+
+	private final ByteBuffer readBuffer = ByteBuffer.allocate(BUFFER_SIZE);
+	private ByteBuffer writeBuffer = ByteBuffer.allocate(BUFFER_SIZE);
+	private byte[] message = new byte[BUFFER_SIZE];
+	private int messageLength;
+	private boolean inMessage;
+	private byte[] ack = new byte[256];
+	private final ArrayDeque<PendingAck> pendingAcks = new ArrayDeque<>();
+
+	MockDocConnection(SocketChannel channel, MockDocServer server, Random random) {
+		this.channel = channel;
+		this.server = server;
+		this.random = random;
+	}
+
+	@Override
+	public void start(SelectorLoop loop) {
+		this.loop = loop;
+		try {
+			key = channel.register(loop.getSelector(), SelectionKey.OP_READ, this);
+		} catch (IOException e) {
+			logger.debug("Could not register connection.", e);
+			close();
+		}
+	}
+
+	@Override
+	public void handleKey(SelectionKey key) {
+		try {
+			if (key.isReadable() && !read()) {
+				return;
+			}
+			if (key.isValid() && key.isWritable()) {
+				flush();
+			}
+		} catch (IOException e) {
+			logger.debug("Connection failed.", e);
+			close();
+		}
+	}
+
+	@Override
+	public void handleTimer() {
+		if (!channel.isOpen()) {
+			return;
+		}
+
+		long now = System.nanoTime();
+		while (!pendingAcks.isEmpty() && pendingAcks.peek().dueNanos - now <= 0) {
+			PendingAck pending = pendingAcks.poll();
+			append(pending.bytes, pending.bytes.length);
+		}
+		if (!pendingAcks.isEmpty()) {
+			loop.schedule(this, pendingAcks.peek().dueNanos);
+		}
+
+		try {
+			flush();
+		} catch (IOException e) {
+			logger.debug("Connection failed.", e);
+			close();
+		}
+	}
+
+	/**
+	 * @return false if the connection was closed
+	 */
+	private boolean read() throws IOException {
+		int read = channel.read(readBuffer);
+		if (read < 0) {
+			close();
+			return false;
+		}
+
+		byte[] bytes = readBuffer.array();
+		int end = readBuffer.position();
+		for (int i = 0; i < end; ++i) {
+			byte b = bytes[i];
+			if (b == MllpClient.START_BLOCK) {
+				inMessage = true;
+				messageLength = 0;
+			} else if (b == MllpClient.END_BLOCK) {
+				// The trailing CR is skipped since it is outside a message
+				if (inMessage && !handleMessage()) {
+					return false;
+				}
+				inMessage = false;
+			} else if (inMessage) {
+				if (messageLength == message.length) {
+					message = Arrays.copyOf(message, messageLength * 2);
+				}
+				message[messageLength++] = b;
+			}
+		}
+		readBuffer.clear();
+
+		flush();
+		return true;
+	}
+
+	/**
+	 * Acknowledges, or drops the connection on, the message just received.
+	 *
+	 * @return false if the connection was dropped
+	 */
+	private boolean handleMessage() {
+		server.messageReceived();
+
+		double draw = random.nextDouble();
+		if (draw < server.getDropRate()) {
+			server.connectionDropped();
+			close();
+			return false;
+		}
+		draw -= server.getDropRate();
+		AckCode ackCode = draw < server.getErrorRate() ? AckCode.ERROR
+				: draw < server.getErrorRate() + server.getRejectRate() ? AckCode.REJECT : AckCode.ACCEPT;
+
+		int ackLength = encodeAck(ackCode);
+		server.acknowledged(ackCode);
+		long delayNanos = server.getAckDelayNanos();
+		if (delayNanos == 0) {
+			append(ack, ackLength);
+		} else {
+			long dueNanos = System.nanoTime() + delayNanos;
+			if (pendingAcks.isEmpty()) {
+				loop.schedule(this, dueNanos);
+			}
+			pendingAcks.add(new PendingAck(dueNanos, Arrays.copyOf(ack, ackLength)));
+		}
+		return true;
+	}
+
+	/**
+	 * Writes the MLLP framed acknowledgement of the current message into {@link #ack}.
+	 *
+	 * @return its length
+	 */
+	private int encodeAck(AckCode ackCode) {
+		int found = findControlId();
+		int controlIdStart = found >= 0 ? found : 0;
+		int controlIdLength = found >= 0 ? getFieldEnd(found) - found : 0;
+
+		int maxLength = ACK_HEADER.length + DtmCodec.MAX_LENGTH + ACK_TYPE.length + ACK_MSA.length
+				+ 2 * controlIdLength + 8;
+		if (ack.length < maxLength) {
+			ack = new byte[maxLength];
+		}
+
+		int pos = 0;
+		ack[pos++] = MllpClient.START_BLOCK;
+		pos = put(ACK_HEADER, ack, pos);
+		pos = DtmCodec.format(System.currentTimeMillis(), SECONDS_PRECISION, DtmCodec.NO_OFFSET, localZone, ack, pos);
+		pos = put(ACK_TYPE, ack, pos);
+		System.arraycopy(message, controlIdStart, ack, pos, controlIdLength);
+		pos += controlIdLength;
+		pos = put(ACK_MSA, ack, pos);
+		ack[pos++] = 'A';
+		ack[pos++] = (byte) (ackCode == AckCode.ERROR ? 'E' : ackCode == AckCode.REJECT ? 'R' : 'A');
+		ack[pos++] = '|';
+		System.arraycopy(message, controlIdStart, ack, pos, controlIdLength);
+		pos += controlIdLength;
+		ack[pos++] = MllpClient.CARRIAGE_RETURN;
+		ack[pos++] = MllpClient.END_BLOCK;
+		ack[pos++] = MllpClient.CARRIAGE_RETURN;
+		return pos;
+	}
+
+	/**
+	 * Position of MSH-10 of the current message, or -1 if it has none.
+	 */
+	private int findControlId() {
+		if (messageLength < 4 || message[0] != 'M' || message[1] != 'S' || message[2] != 'H') {
+			return -1;
+		}
+		// MSH-1 is the separator itself, MSH-10 follows the ninth separator
+		byte separator = message[3];
+		int separators = 0;
+		for (int i = 3; i < messageLength && message[i] != '\r' && message[i] != '\n'; ++i) {
+			if (message[i] == separator && ++separators == 9) {
+				return i + 1;
+			}
+		}
+		return -1;
+	}
+
+	private int getFieldEnd(int start) {
+		byte separator = message[3];
+		int end = start;
+		while (end < messageLength && message[end] != separator && message[end] != '\r' && message[end] != '\n') {
+			++end;
+		}
+		return end;
+	}
+
+	private static int put(byte[] source, byte[] target, int pos) {
+		System.arraycopy(source, 0, target, pos, source.length);
+		return pos + source.length;
+	}
+
+	private void append(byte[] bytes, int length) {
+		if (writeBuffer.remaining() < length) {
+			ByteBuffer larger = ByteBuffer.allocate(Math.max(writeBuffer.capacity() * 2, writeBuffer.position()
+					+ length));
+			writeBuffer.flip();
+			larger.put(writeBuffer);
+			writeBuffer = larger;
+		}
+		writeBuffer.put(bytes, 0, length);
+	}
+
+	/**
+	 * Writes as much as the socket accepts, waiting for it to become writable if anything is left.
+	 */
+	private void flush() throws IOException {
+		if (writeBuffer.position() == 0) {
+			return;
+		}
+
+		writeBuffer.flip();
+		channel.write(writeBuffer);
+		writeBuffer.compact();
+
+		int interestOps = writeBuffer.position() > 0 ? SelectionKey.OP_READ | SelectionKey.OP_WRITE
+				: SelectionKey.OP_READ;
+		if (key.interestOps() != interestOps) {
+			key.interestOps(interestOps);
+		}
+	}
+
+	private void close() {
+		pendingAcks.clear();
+		if (key != null) {
+			key.cancel();
+		}
+		try {
+			channel.close();
+		} catch (IOException e) {
+			logger.debug("Exception when closing channel.", e);
+		}
+	}
+
+	private static class PendingAck {
+		private final long dueNanos;
+		private final byte[] bytes;
+
+		PendingAck(long dueNanos, byte[] bytes) {
+			this.dueNanos = dueNanos;
+			this.bytes = bytes;
+		}
+	}
+}
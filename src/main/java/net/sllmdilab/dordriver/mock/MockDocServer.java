@@ -0,0 +1,316 @@
+package net.sllmdilab.dordriver.mock;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import net.sllmdilab.dordriver.network.AckCode;
+import net.sllmdilab.dordriver.network.NioHandler;
+import net.sllmdilab.dordriver.network.SelectorLoop;
+
+import org.apache.commons.cli.CommandLine;
+import org.apache.commons.cli.DefaultParser;
+import org.apache.commons.cli.HelpFormatter;
+import org.apache.commons.cli.Options;
+import org.apache.commons.cli.ParseException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A Device Observation Consumer stand-in for measuring the driver itself on one machine. Acknowledges every message
+ * it receives without parsing it, so that it can keep up with the driver, optionally after an artificial delay, with
+ * AE or AR instead of AA, or by dropping the connection instead. Connections are spread over a few
+ * {@link SelectorLoop}s.
+ *
+ * Settings must be made before {@link #start()}.
+ */
+public class MockDocServer implements Closeable {
+	private static final String USAGE = "[options] port";
+
+	private static Logger logger = LoggerFactory.getLogger(MockDocServer.class);
+
+	private final InetAddress bindAddress;
+	private final int port;
+	private long ackDelayNanos;
+	private double errorRate;
+	private double rejectRate;
+	private double dropRate;
+	private int numSelectors = 1;
+	private long seed = System.nanoTime();
+
+	private ServerSocketChannel serverChannel;
+	private final List<SelectorLoop> loops = new ArrayList<>();
+	private final LongAdder acceptedConnections = new LongAdder();
+	private final LongAdder droppedConnections = new LongAdder();
+	private final LongAdder receivedMessages = new LongAdder();
+	private final LongAdder applicationErrors = new LongAdder();
+	private final LongAdder applicationRejects = new LongAdder();
+
+	/**
+	 * Listens on the loopback address only.
+	 *
+	 * @param port
+	 *            port to listen on, 0 for any free port
+	 */
+	public MockDocServer(int port) {
+		this(InetAddress.getLoopbackAddress(), port);
+	}
+
+	/**
+	 * @param bindAddress
+	 *            address to listen on, e.g. the wildcard address to accept drivers on other hosts
+	 * @param port
+	 *            port to listen on, 0 for any free port
+	 */
+	public MockDocServer(InetAddress bindAddress, int port) {
+		this.bindAddress = bindAddress;
+		this.port = port;
+	}
+
+	public static void main(String[] args) throws IOException, InterruptedException {
+		Options options = new Options();
+		options.addOption("d", "ack-delay", true, "Delay before each acknowledgement in milliseconds (default 0).");
+		options.addOption("e", "error-rate", true, "Fraction of messages acknowledged with AE (default 0).");
+		options.addOption("r", "reject-rate", true, "Fraction of messages acknowledged with AR (default 0).");
+		options.addOption("x", "drop-rate", true,
+				"Fraction of messages on which the connection is closed instead of acknowledging (default 0).");
+		options.addOption("s", "selectors", true, "Number of selector loops (default 1).");
+		options.addOption("a", "address", true,
+				"Address to listen on, e.g. 0.0.0.0 for all interfaces (default the loopback address).");
+
+		CommandLine cmd = null;
+		try {
+			cmd = new DefaultParser().parse(options, args);
+		} catch (ParseException e) {
+			System.out.println(e.getMessage());
+			new HelpFormatter().printHelp(USAGE, options);
+			System.exit(-1);
+		}
+		if (cmd.getArgs().length < 1) {
+			new HelpFormatter().printHelp(USAGE, options);
+			System.exit(-1);
+		}
+
+		InetAddress bindAddress = cmd.hasOption("address") ? InetAddress.getByName(cmd.getOptionValue("address"))
+				: InetAddress.getLoopbackAddress();
+		final MockDocServer server = new MockDocServer(bindAddress, Integer.parseInt(cmd.getArgs()[0]));
+		server.setSettings(cmd.getOptionValue("ack-delay", "0"), cmd.getOptionValue("error-rate", "0"),
+				cmd.getOptionValue("reject-rate", "0"), cmd.getOptionValue("drop-rate", "0"));
+		if (cmd.hasOption("selectors")) {
+			server.setNumSelectors(Integer.parseInt(cmd.getOptionValue("selectors")));
+		}
+
+		final CountDownLatch stopped = new CountDownLatch(1);
+		Runtime.getRuntime().addShutdownHook(new Thread() {
+			@Override
+			public void run() {
+				server.close();
+				stopped.countDown();
+			}
+		});
+		server.start();
+		stopped.await();
+	}
+
+	/**
+	 * Parses the settings given as strings, as on a command line, throwing IllegalArgumentException if invalid.
+	 */
+	public void setSettings(String ackDelayMillis, String errorRate, String rejectRate, String dropRate) {
+		setAckDelayMillis(Long.parseLong(ackDelayMillis.trim()));
+		setErrorRate(Double.parseDouble(errorRate.trim()));
+		setRejectRate(Double.parseDouble(rejectRate.trim()));
+		setDropRate(Double.parseDouble(dropRate.trim()));
+		if (this.errorRate + this.rejectRate + this.dropRate > 1) {
+			throw new IllegalArgumentException("Error, reject and drop rates add up to more than 1.");
+		}
+	}
+
+	public void setAckDelayMillis(long ackDelayMillis) {
+		if (ackDelayMillis < 0) {
+			throw new IllegalArgumentException("Negative delay: " + ackDelayMillis);
+		}
+		this.ackDelayNanos = TimeUnit.MILLISECONDS.toNanos(ackDelayMillis);
+	}
+
+	public void setErrorRate(double errorRate) {
+		this.errorRate = checkRate(errorRate);
+	}
+
+	public void setRejectRate(double rejectRate) {
+		this.rejectRate = checkRate(rejectRate);
+	}
+
+	public void setDropRate(double dropRate) {
+		this.dropRate = checkRate(dropRate);
+	}
+
+	public void setNumSelectors(int numSelectors) {
+		this.numSelectors = numSelectors;
+	}
+
+	/**
+	 * Seed of the random draws deciding how each message is answered, for repeatable runs.
+	 */
+	public void setSeed(long seed) {
+		this.seed = seed;
+	}
+
+	private static double checkRate(double rate) {
+		if (!(rate >= 0 && rate <= 1)) {
+			throw new IllegalArgumentException("Rate not between 0 and 1: " + rate);
+		}
+		return rate;
+	}
+
+	public void start() throws IOException {
+		serverChannel = ServerSocketChannel.open();
+		serverChannel.setOption(StandardSocketOptions.SO_REUSEADDR, true);
+		serverChannel.bind(new InetSocketAddress(bindAddress, port), 1024);
+		serverChannel.configureBlocking(false);
+
+		for (int i = 0; i < numSelectors; ++i) {
+			SelectorLoop loop = new SelectorLoop("mock-doc-" + i);
+			loops.add(loop);
+			loop.start();
+		}
+		loops.get(0).register(new Acceptor());
+
+		logger.info("Mock DOC listening on " + bindAddress.getHostAddress() + ":" + getPort() + ", ACK delay "
+				+ TimeUnit.NANOSECONDS.toMillis(ackDelayNanos) + " ms, error rate " + errorRate + ", reject rate "
+				+ rejectRate + ", drop rate " + dropRate + ".");
+	}
+
+	public int getPort() {
+		return serverChannel.socket().getLocalPort();
+	}
+
+	/**
+	 * Stops listening and closes all connections.
+	 */
+	@Override
+	public void close() {
+		for (SelectorLoop loop : loops) {
+			loop.shutdown();
+		}
+		for (SelectorLoop loop : loops) {
+			try {
+				loop.join();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+		loops.clear();
+
+		if (serverChannel != null) {
+			try {
+				serverChannel.close();
+			} catch (IOException e) {
+				logger.debug("Exception when closing server channel.", e);
+			}
+			logger.info("Mock DOC received " + getReceivedMessages() + " messages on " + getAcceptedConnections()
+					+ " connections, " + getApplicationErrors() + " AE, " + getApplicationRejects() + " AR, "
+					+ getDroppedConnections() + " dropped connections.");
+		}
+	}
+
+	public long getAcceptedConnections() {
+		return acceptedConnections.sum();
+	}
+
+	public long getDroppedConnections() {
+		return droppedConnections.sum();
+	}
+
+	public long getReceivedMessages() {
+		return receivedMessages.sum();
+	}
+
+	public long getApplicationErrors() {
+		return applicationErrors.sum();
+	}
+
+	public long getApplicationRejects() {
+		return applicationRejects.sum();
+	}
+
+	long getAckDelayNanos() {
+		return ackDelayNanos;
+	}
+
+	double getErrorRate() {
+		return errorRate;
+	}
+
+	double getRejectRate() {
+		return rejectRate;
+	}
+
+	double getDropRate() {
+		return dropRate;
+	}
+
+	void messageReceived() {
+		receivedMessages.increment();
+	}
+
+	void acknowledged(AckCode ackCode) {
+		if (ackCode == AckCode.ERROR) {
+			applicationErrors.increment();
+		} else if (ackCode == AckCode.REJECT) {
+			applicationRejects.increment();
+		}
+	}
+
+	void connectionDropped() {
+		droppedConnections.increment();
+	}
+
+	/**
+	 * Accepts connections on the first loop and hands them out to all loops in turn.
+	 */
+	private class Acceptor implements NioHandler {
+		private int connectionNumber;
+
+		@Override
+		public void start(SelectorLoop loop) {
+			try {
+				serverChannel.register(loop.getSelector(), SelectionKey.OP_ACCEPT, this);
+			} catch (IOException e) {
+				logger.error("Could not listen for connections.", e);
+			}
+		}
+
+		@Override
+		public void handleKey(SelectionKey key) {
+			try {
+				SocketChannel channel;
+				while ((channel = serverChannel.accept()) != null) {
+					channel.configureBlocking(false);
+					channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+					acceptedConnections.increment();
+
+					int number = connectionNumber++;
+					loops.get(number % loops.size()).register(new MockDocConnection(channel, MockDocServer.this,
+							new Random(seed + number)));
+				}
+			} catch (IOException e) {
+				logger.warn("Could not accept connection.", e);
+			}
+		}
+
+		@Override
+		public void handleTimer() {
+		}
+	}
+}
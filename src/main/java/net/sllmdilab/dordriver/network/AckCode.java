@@ -0,0 +1,39 @@
+package net.sllmdilab.dordriver.network;
+
+/**
+ * Acknowledgment code of an HL7 acknowledgement, MSA-1. Original and enhanced mode codes are treated alike.
+ */
+public enum AckCode {
+	/** AA or CA, the message was accepted */
+	ACCEPT,
+	/** AE or CE, the receiving application failed to process the message */
+	ERROR,
+	/** AR or CR, the message was rejected */
+	REJECT;
+
+	/**
+	 * Returns the code for the given MSA-1 value, or null if it is not a valid acknowledgment code.
+	 */
+	public static AckCode fromValue(String value) {
+		if (value == null || value.length() != 2) {
+			return null;
+		}
+		return fromBytes(value.charAt(0), value.charAt(1));
+	}
+
+	static AckCode fromBytes(int first, int second) {
+		if (first != 'A' && first != 'C') {
+			return null;
+		}
+		switch (second) {
+		case 'A':
+			return ACCEPT;
+		case 'E':
+			return ERROR;
+		case 'R':
+			return REJECT;
+		default:
+			return null;
+		}
+	}
+}
@@ -0,0 +1,26 @@
+package net.sllmdilab.dordriver.network;
+
+/**
+ * Receives the outcome of messages sent through a {@link PipelinedMllpClient}. Methods are called from the thread
+ * reading acknowledgements, not from the sending thread.
+ */
+public interface AckListener {
+
+	/**
+	 * Called when the acknowledgement for a message has been received.
+	 * 
+	 * @param controlId
+	 *            MSH-10 of the acknowledged message
+	 * @param ackCode
+	 *            MSA-1 of the acknowledgement, null if missing or not a valid acknowledgment code
+	 * @param latencyNanos
+	 *            time from the message being written until its acknowledgement was read, or from when it should
+	 *            have been sent for messages sent with an intended send time
+	 */
+	public void messageAcknowledged(String controlId, AckCode ackCode, long latencyNanos);
+
+	/**
+	 * Called when the connection is lost with messages still waiting for acknowledgement.
+	 */
+	public void messagesLost(int count);
+}
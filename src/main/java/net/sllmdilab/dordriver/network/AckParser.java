@@ -0,0 +1,105 @@
+package net.sllmdilab.dordriver.network;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Reads fields of encoded HL7 messages by scanning their bytes, without parsing them into HAPI messages. Only meant
+ * for the few fields needed to match and check acknowledgements, MSH-10 of sent messages and MSA-1 and MSA-2 of their
+ * acknowledgements.
+ */
+public final class AckParser {
+
+	private AckParser() {
+	}
+
+	/**
+	 * Returns the acknowledgment code, MSA-1, of an encoded acknowledgement without allocating. Returns null if there
+	 * is no MSA segment or MSA-1 is not a valid acknowledgment code.
+	 */
+	public static AckCode getAckCode(byte[] message, int offset, int length) {
+		int start = findFieldStart(message, offset, length, "MSA", 1);
+		if (start < 0 || getFieldEnd(message, offset, length, start) - start != 2) {
+			return null;
+		}
+		return AckCode.fromBytes(message[start], message[start + 1]);
+	}
+
+	/**
+	 * Returns the control ID of the acknowledged message, MSA-2, or an empty string if not present.
+	 */
+	public static String getAcknowledgedControlId(byte[] message, int offset, int length) {
+		return findField(message, offset, length, "MSA", 2);
+	}
+
+	/**
+	 * Returns the first component of the given field of the first segment with the given name, or an empty string if
+	 * not present.
+	 */
+	public static String findField(byte[] message, int offset, int length, String segmentName, int fieldNumber) {
+		int start = findFieldStart(message, offset, length, segmentName, fieldNumber);
+		if (start < 0) {
+			return "";
+		}
+		return new String(message, start, getFieldEnd(message, offset, length, start) - start,
+				StandardCharsets.ISO_8859_1);
+	}
+
+	/**
+	 * Returns the position of the first byte of the given field of the first segment with the given name, or -1 if
+	 * not present.
+	 */
+	private static int findFieldStart(byte[] message, int offset, int length, String segmentName, int fieldNumber) {
+		int end = offset + length;
+		byte fieldSeparator = getFieldSeparator(message, offset, length);
+
+		int segmentStart = offset;
+		while (segmentStart < end) {
+			int segmentEnd = segmentStart;
+			while (segmentEnd < end && message[segmentEnd] != '\r' && message[segmentEnd] != '\n') {
+				++segmentEnd;
+			}
+
+			if (segmentEnd - segmentStart > 3 && isSegment(message, segmentStart, segmentName)) {
+				int field = "MSH".equals(segmentName) ? 1 : 0;
+				for (int pos = segmentStart + 3; pos < segmentEnd; ++pos) {
+					if (message[pos] == fieldSeparator && ++field == fieldNumber) {
+						return pos + 1;
+					}
+				}
+				return -1;
+			}
+
+			segmentStart = segmentEnd + 1;
+		}
+		return -1;
+	}
+
+	/**
+	 * Returns the position after the first component of the field starting at start.
+	 */
+	private static int getFieldEnd(byte[] message, int offset, int length, int start) {
+		int end = offset + length;
+		byte fieldSeparator = getFieldSeparator(message, offset, length);
+		byte componentSeparator = length > 4 ? message[offset + 4] : (byte) '^';
+
+		int pos = start;
+		while (pos < end && message[pos] != fieldSeparator && message[pos] != componentSeparator
+				&& message[pos] != '\r' && message[pos] != '\n') {
+			++pos;
+		}
+		return pos;
+	}
+
+	private static byte getFieldSeparator(byte[] message, int offset, int length) {
+		return length > 3 ? message[offset + 3] : (byte) '|';
+	}
+
+	private static boolean isSegment(byte[] message, int segmentStart, String segmentName) {
+		for (int i = 0; i < 3; ++i) {
+			if (message[segmentStart + i] != segmentName.charAt(i)) {
+				return false;
+			}
+		}
+		return true;
+	}
+}
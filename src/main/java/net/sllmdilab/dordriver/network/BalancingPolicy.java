@@ -0,0 +1,27 @@
+package net.sllmdilab.dordriver.network;
+
+/**
+ * How a {@link LoadBalancer} places devices on the endpoints of a cluster.
+ */
+public enum BalancingPolicy {
+	/**
+	 * Device n is placed on endpoint n modulo the number of endpoints.
+	 */
+	ROUND_ROBIN,
+
+	/**
+	 * Devices are placed on a consistent hash ring by device number, so a device always lands on the same endpoint
+	 * and only the devices of an added or removed endpoint move.
+	 */
+	HASH,
+
+	/**
+	 * Each connection attempt goes to the endpoint with the fewest outstanding messages, ties broken by the fewest
+	 * devices. Endpoints whose last connection attempt failed are avoided while any other endpoint is reachable.
+	 */
+	LEAST_OUTSTANDING;
+
+	public static BalancingPolicy fromString(String value) {
+		return valueOf(value.trim().toUpperCase().replace('-', '_'));
+	}
+}
@@ -0,0 +1,27 @@
+package net.sllmdilab.dordriver.network;
+
+import java.io.IOException;
+
+import ca.uhn.hl7v2.HL7Exception;
+
+/**
+ * A client connection that can be (re)established by a {@link ConnectionManager}.
+ */
+public interface Connectable {
+
+	void connect() throws IOException, HL7Exception;
+
+	void disconnect();
+
+	boolean isOpen();
+
+	/**
+	 * Address used by the next connect.
+	 */
+	void setAddress(String host, int port);
+
+	/**
+	 * Number of times the connection has been established, a connect after the first is a reconnect.
+	 */
+	int getConnectCount();
+}
@@ -0,0 +1,22 @@
+package net.sllmdilab.dordriver.network;
+
+/**
+ * Receives the outcome of every connection attempt made by a {@link ConnectionManager}.
+ */
+public interface ConnectionListener {
+
+	/**
+	 * A connection was established.
+	 *
+	 * @param connectNanos
+	 *            time the successful attempt took, excluding earlier failed attempts and back-off
+	 * @param reconnect
+	 *            whether the connection had been established before
+	 */
+	void connected(long connectNanos, boolean reconnect);
+
+	/**
+	 * An attempt failed, it is retried after a back-off delay unless the manager gives up.
+	 */
+	void connectFailed(Exception e);
+}
@@ -0,0 +1,132 @@
+package net.sllmdilab.dordriver.network;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import ca.uhn.hl7v2.HL7Exception;
+
+/**
+ * Establishes connections for one sender, retrying failed attempts with a {@link ReconnectBackoff} instead of giving
+ * up or retrying immediately. The back-off is only reset by a successful connect, so a sender that keeps failing
+ * waits longer and longer between attempts even across messages. Every attempt is reported to an optional
+ * {@link ConnectionListener}. With a {@link LoadBalancer} every attempt first places the sender on an endpoint of the
+ * cluster.
+ *
+ * Not thread safe, each sender has a manager of its own. The connections it manages may be shared, see
+ * {@link ConnectionPool}.
+ */
+public class ConnectionManager {
+	/** Retry until connected */
+	public static final int UNLIMITED_ATTEMPTS = 0;
+	public static final int DEFAULT_MAX_ATTEMPTS = 10;
+
+	private static Logger logger = LoggerFactory.getLogger(ConnectionManager.class);
+
+	private final ReconnectBackoff backoff;
+	private final int maxAttempts;
+	private ConnectionListener listener;
+	private LoadBalancer loadBalancer;
+	private int deviceNumber;
+	private volatile Endpoint endpoint;
+
+	public ConnectionManager() {
+		this(new ReconnectBackoff(), DEFAULT_MAX_ATTEMPTS);
+	}
+
+	/**
+	 * @param maxAttempts
+	 *            attempts per call before the last failure is thrown, or {@link #UNLIMITED_ATTEMPTS}
+	 */
+	public ConnectionManager(ReconnectBackoff backoff, int maxAttempts) {
+		this.backoff = backoff;
+		this.maxAttempts = maxAttempts;
+	}
+
+	public void setListener(ConnectionListener listener) {
+		this.listener = listener;
+	}
+
+	/**
+	 * Places the sender, as device deviceNumber, on an endpoint of the balancer before every connection attempt.
+	 */
+	public void setLoadBalancer(LoadBalancer loadBalancer, int deviceNumber) {
+		this.loadBalancer = loadBalancer;
+		this.deviceNumber = deviceNumber;
+	}
+
+	/**
+	 * Endpoint of the latest connection attempt, or null without a load balancer. May be read from any thread.
+	 */
+	public Endpoint getEndpoint() {
+		return endpoint;
+	}
+
+	/**
+	 * Connects unless the connection is already open.
+	 */
+	public void ensureOpen(Connectable connection) throws IOException, HL7Exception {
+		if (!connection.isOpen()) {
+			connect(connection);
+		}
+	}
+
+	/**
+	 * Connects, waiting a back-off delay after each failed attempt.
+	 *
+	 * @throws IOException
+	 *             or HL7Exception of the last attempt if all attempts failed, InterruptedIOException if interrupted
+	 *             while backing off
+	 */
+	public void connect(Connectable connection) throws IOException, HL7Exception {
+		boolean reconnect = connection.getConnectCount() > 0;
+		for (int attempt = 1;; ++attempt) {
+			if (loadBalancer != null) {
+				endpoint = loadBalancer.place(deviceNumber, endpoint);
+				connection.setAddress(endpoint.getHost(), endpoint.getPort());
+			}
+
+			long startNanos = System.nanoTime();
+			try {
+				connection.connect();
+			} catch (IOException | HL7Exception e) {
+				connection.disconnect();
+				if (endpoint != null) {
+					endpoint.connectFailed();
+				}
+				if (listener != null) {
+					listener.connectFailed(e);
+				}
+				if (maxAttempts != UNLIMITED_ATTEMPTS && attempt >= maxAttempts) {
+					// Keep backing off, the next call starts with the next delay
+					backoff.nextDelayMillis();
+					throw e;
+				}
+				backOff(attempt, e);
+				continue;
+			}
+
+			backoff.reset();
+			if (endpoint != null) {
+				endpoint.connected();
+			}
+			if (listener != null) {
+				listener.connected(System.nanoTime() - startNanos, reconnect);
+			}
+			return;
+		}
+	}
+
+	private void backOff(int attempt, Exception e) throws InterruptedIOException {
+		long delayMillis = backoff.nextDelayMillis();
+		logger.debug("Connection attempt " + attempt + " failed, retrying in " + delayMillis + " ms: " + e);
+		try {
+			Thread.sleep(delayMillis);
+		} catch (InterruptedException ie) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while waiting to reconnect.");
+		}
+	}
+}
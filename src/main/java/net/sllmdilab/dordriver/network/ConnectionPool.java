@@ -0,0 +1,62 @@
+package net.sllmdilab.dordriver.network;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * A bounded pool of MLLP connections shared by many senders, so that any number of logical devices can be simulated
+ * over a fixed number of sockets. A sender borrows a connection for one message and its acknowledgement and returns
+ * it afterwards, blocking while all connections are busy. Connections are created unconnected, borrowers establish
+ * them with their {@link ConnectionManager}.
+ *
+ * Thread safe.
+ */
+public class ConnectionPool implements Closeable {
+	private final List<MllpClient> clients;
+	private final BlockingQueue<MllpClient> idle;
+
+	public ConnectionPool(String host, int port, int size, boolean directBuffers) {
+		if (size < 1) {
+			throw new IllegalArgumentException("Pool size must be positive: " + size);
+		}
+		clients = new ArrayList<>(size);
+		idle = new ArrayBlockingQueue<>(size);
+		for (int i = 0; i < size; ++i) {
+			MllpClient client = new MllpClient(host, port);
+			client.setDirectBuffers(directBuffers);
+			clients.add(client);
+			idle.add(client);
+		}
+	}
+
+	/**
+	 * Borrows a connection, waiting for one to be returned if all are in use. The connection may be closed.
+	 */
+	public MllpClient acquire() throws InterruptedException {
+		return idle.take();
+	}
+
+	/**
+	 * Returns a connection borrowed with {@link #acquire()}.
+	 */
+	public void release(MllpClient client) {
+		idle.add(client);
+	}
+
+	public int size() {
+		return clients.size();
+	}
+
+	/**
+	 * Closes all connections, which must no longer be in use.
+	 */
+	@Override
+	public void close() {
+		for (MllpClient client : clients) {
+			client.disconnect();
+		}
+	}
+}
@@ -0,0 +1,60 @@
+package net.sllmdilab.dordriver.network;
+
+import java.nio.ByteBuffer;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Pool of direct byte buffers shared by all connections. Direct buffers are expensive to allocate and are only freed
+ * by the garbage collector, so buffers are reused when connections are closed and reopened. Capacities are rounded up
+ * to a power of two so that buffers of similar size can be shared.
+ */
+public final class DirectBufferPool {
+	private static final int MIN_CAPACITY_BITS = 12;
+	private static final int MAX_CAPACITY_BITS = 30;
+
+	private static final Queue<ByteBuffer>[] POOLS = newPools(MAX_CAPACITY_BITS + 1);
+
+	private DirectBufferPool() {
+	}
+
+	/**
+	 * Returns a cleared direct buffer with at least the given capacity.
+	 */
+	public static ByteBuffer acquire(int minCapacity) {
+		int bits = getCapacityBits(minCapacity);
+		ByteBuffer buffer = POOLS[bits].poll();
+		if (buffer == null) {
+			buffer = ByteBuffer.allocateDirect(1 << bits);
+		}
+		buffer.clear();
+		return buffer;
+	}
+
+	/**
+	 * Returns a buffer obtained from {@link #acquire(int)} to the pool. The buffer must not be used afterwards.
+	 */
+	public static void release(ByteBuffer buffer) {
+		int bits = getCapacityBits(buffer.capacity());
+		if (buffer.isDirect() && buffer.capacity() == 1 << bits) {
+			POOLS[bits].offer(buffer);
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	private static Queue<ByteBuffer>[] newPools(int count) {
+		Queue<ByteBuffer>[] pools = (Queue<ByteBuffer>[]) new Queue<?>[count];
+		for (int i = 0; i < pools.length; ++i) {
+			pools[i] = new ConcurrentLinkedQueue<>();
+		}
+		return pools;
+	}
+
+	private static int getCapacityBits(int capacity) {
+		int bits = 32 - Integer.numberOfLeadingZeros(Math.max(capacity, 1) - 1);
+		if (bits > MAX_CAPACITY_BITS) {
+			throw new IllegalArgumentException("Buffer capacity too large: " + capacity);
+		}
+		return Math.max(bits, MIN_CAPACITY_BITS);
+	}
+}
@@ -0,0 +1,173 @@
+package net.sllmdilab.dordriver.network;
+
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+
+import net.sllmdilab.dordriver.metrics.LatencyIntervalLog;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+
+/**
+ * One receiver of a cluster, with the load a {@link LoadBalancer} places devices by and the results of the messages
+ * sent to it. Counters are lock free and updated from the send path of all senders.
+ *
+ * A message counts as outstanding from when it is written to the endpoint until it is acknowledged or fails. Messages
+ * that fail before reaching an endpoint, e.g. because no connection could be established, are not counted.
+ */
+public class Endpoint {
+	private final String host;
+	private final int port;
+
+	private final LongAdder devices = new LongAdder();
+	private final LongAdder outstandingMessages = new LongAdder();
+	private final LongAdder sentMessages = new LongAdder();
+	private final LongAdder acknowledgedMessages = new LongAdder();
+	private final LongAdder failedMessages = new LongAdder();
+	private final LongAdder applicationErrors = new LongAdder();
+	private final LongAdder applicationRejects = new LongAdder();
+	private final LongAdder failedConnections = new LongAdder();
+	private final Recorder latencyRecorder = new Recorder(LatencyIntervalLog.SIGNIFICANT_DIGITS);
+	private volatile boolean failing;
+
+	public Endpoint(String host, int port) {
+		this.host = host;
+		this.port = port;
+	}
+
+	/**
+	 * Parses a comma separated list of host[:port], hosts without a port use defaultPort.
+	 */
+	public static List<Endpoint> parseList(String hosts, int defaultPort) {
+		List<Endpoint> endpoints = new ArrayList<>();
+		for (String value : hosts.split(",")) {
+			value = value.trim();
+			if (value.isEmpty()) {
+				continue;
+			}
+			int colon = value.indexOf(':');
+			if (colon >= 0 && colon == value.lastIndexOf(':')) {
+				endpoints.add(new Endpoint(value.substring(0, colon), Integer.parseInt(value.substring(colon + 1))));
+			} else {
+				endpoints.add(new Endpoint(value, defaultPort));
+			}
+		}
+		if (endpoints.isEmpty()) {
+			throw new IllegalArgumentException("No endpoints in: " + hosts);
+		}
+		return Collections.unmodifiableList(endpoints);
+	}
+
+	public String getHost() {
+		return host;
+	}
+
+	public int getPort() {
+		return port;
+	}
+
+	public InetSocketAddress getAddress() {
+		return new InetSocketAddress(host, port);
+	}
+
+	void devicePlaced() {
+		devices.increment();
+	}
+
+	void deviceRemoved() {
+		devices.decrement();
+	}
+
+	/**
+	 * Devices currently placed on the endpoint.
+	 */
+	public long getDevices() {
+		return devices.sum();
+	}
+
+	public void connected() {
+		failing = false;
+	}
+
+	public void connectFailed() {
+		failedConnections.increment();
+		failing = true;
+	}
+
+	/**
+	 * Whether the last connection attempt to the endpoint failed.
+	 */
+	public boolean isFailing() {
+		return failing;
+	}
+
+	/**
+	 * A message is about to be written to the endpoint.
+	 */
+	public void messageSent() {
+		sentMessages.increment();
+		outstandingMessages.increment();
+	}
+
+	public void messageAcknowledged(AckCode ackCode, long latencyMicros) {
+		acknowledgedMessages.increment();
+		outstandingMessages.decrement();
+		if (ackCode == null || ackCode == AckCode.ERROR) {
+			applicationErrors.increment();
+		} else if (ackCode == AckCode.REJECT) {
+			applicationRejects.increment();
+		}
+		latencyRecorder.recordValue(latencyMicros);
+	}
+
+	/**
+	 * Messages previously reported as sent that will never be acknowledged.
+	 */
+	public void messagesFailed(long count) {
+		failedMessages.add(count);
+		outstandingMessages.add(-count);
+	}
+
+	public long getOutstandingMessages() {
+		return outstandingMessages.sum();
+	}
+
+	public long getSentMessages() {
+		return sentMessages.sum();
+	}
+
+	public long getAcknowledgedMessages() {
+		return acknowledgedMessages.sum();
+	}
+
+	public long getFailedMessages() {
+		return failedMessages.sum();
+	}
+
+	public long getApplicationErrors() {
+		return applicationErrors.sum();
+	}
+
+	public long getApplicationRejects() {
+		return applicationRejects.sum();
+	}
+
+	public long getFailedConnections() {
+		return failedConnections.sum();
+	}
+
+	/**
+	 * Acknowledgement latencies, in microseconds, recorded since the previous call.
+	 */
+	public Histogram getLatencyHistogram() {
+		return latencyRecorder.getIntervalHistogram();
+	}
+
+	@Override
+	public String toString() {
+		return host + ":" + port;
+	}
+}
@@ -10,8 +10,9 @@ import ca.uhn.hl7v2.HapiContext;
 import ca.uhn.hl7v2.app.Connection;
 import ca.uhn.hl7v2.llp.LLPException;
 import ca.uhn.hl7v2.model.Message;
+import ca.uhn.hl7v2.util.Terser;
 
-public class Hl7Client {
+public class Hl7Client implements Connectable {
 	private Logger logger = LoggerFactory.getLogger(Hl7Client.class);
 	
 	private HapiContext context;
@@ -19,6 +20,7 @@ public class Hl7Client {
 	private String host;
 	private int port;
 	private boolean useTls;
+	private int connectCount;
 	
 	public Hl7Client(HapiContext context, String host, int port, boolean useTls) {
 		this.context = context;
@@ -27,19 +29,43 @@ public class Hl7Client {
 		this.useTls = useTls;
 	}
 	
+	@Override
 	public void connect() throws HL7Exception {
 		connection = context.newClient(host, port, useTls);
+		++connectCount;
 	}
 	
+	@Override
 	public void disconnect() {
-		if(connection.isOpen()) {
+		if(connection != null && connection.isOpen()) {
 			connection.close();
-			connection = null;
 		}
+		connection = null;
 	}
 	
-	public void sendMessage(Message message) throws HL7Exception, LLPException, IOException {
-		if(!connection.isOpen()) {
+	@Override
+	public boolean isOpen() {
+		return connection != null && connection.isOpen();
+	}
+	
+	@Override
+	public void setAddress(String host, int port) {
+		this.host = host;
+		this.port = port;
+	}
+	
+	@Override
+	public int getConnectCount() {
+		return connectCount;
+	}
+	
+	/**
+	 * Sends a message and blocks until the acknowledgement has been received.
+	 * 
+	 * @return the acknowledgment code, MSA-1, of the acknowledgement, or null if missing or not valid
+	 */
+	public AckCode sendMessage(Message message) throws HL7Exception, LLPException, IOException {
+		if(!isOpen()) {
 			logger.debug("Connection was unexpectedly closed, reconnecting.");
 			connect();
 		}
@@ -49,5 +75,12 @@ public class Hl7Client {
 		if(logger.isDebugEnabled()) {
 			logger.debug("Got response: " + response.encode());
 		}
+
+		try {
+			return AckCode.fromValue(new Terser(response).get("/MSA-1"));
+		} catch (HL7Exception e) {
+			logger.debug("Response has no MSA segment.", e);
+			return null;
+		}
 	}
 }
@@ -0,0 +1,117 @@
+package net.sllmdilab.dordriver.network;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import net.sllmdilab.dordriver.exeptions.DorDriverException;
+
+/**
+ * Places simulated devices on the endpoints of a cluster according to a {@link BalancingPolicy}. MLLP is connection
+ * oriented, so a device is placed when it connects and stays on the endpoint until it has to reconnect. Thread safe.
+ */
+public class LoadBalancer {
+	/** Points per endpoint on the hash ring, enough for an even spread over a handful of endpoints */
+	private static final int VIRTUAL_NODES = 160;
+
+	private final BalancingPolicy policy;
+	private final List<Endpoint> endpoints;
+	private final TreeMap<Long, Endpoint> ring = new TreeMap<>();
+
+	public LoadBalancer(BalancingPolicy policy, List<Endpoint> endpoints) {
+		if (endpoints.isEmpty()) {
+			throw new IllegalArgumentException("No endpoints.");
+		}
+		this.policy = policy;
+		this.endpoints = endpoints;
+
+		if (policy == BalancingPolicy.HASH) {
+			for (Endpoint endpoint : endpoints) {
+				for (int i = 0; i < VIRTUAL_NODES; ++i) {
+					ring.put(hash(endpoint + "#" + i), endpoint);
+				}
+			}
+		}
+	}
+
+	public List<Endpoint> getEndpoints() {
+		return endpoints;
+	}
+
+	/**
+	 * Places a device that is about to connect, moving it from the endpoint it was previously placed on, if any.
+	 *
+	 * @param previous
+	 *            endpoint returned by the previous call for the device, or null
+	 * @return the endpoint to connect to
+	 */
+	public Endpoint place(int deviceNumber, Endpoint previous) {
+		// The device does not count against the endpoint it is leaving
+		if (previous != null) {
+			previous.deviceRemoved();
+		}
+		Endpoint endpoint = select(deviceNumber);
+		endpoint.devicePlaced();
+		return endpoint;
+	}
+
+	Endpoint select(int deviceNumber) {
+		switch (policy) {
+		case ROUND_ROBIN:
+			return endpoints.get(deviceNumber % endpoints.size());
+		case HASH:
+			Map.Entry<Long, Endpoint> entry = ring.ceilingEntry(hash(Integer.toString(deviceNumber)));
+			return entry != null ? entry.getValue() : ring.firstEntry().getValue();
+		case LEAST_OUTSTANDING:
+			return selectLeastOutstanding();
+		default:
+			throw new IllegalStateException("Unknown policy: " + policy);
+		}
+	}
+
+	private Endpoint selectLeastOutstanding() {
+		Endpoint best = null;
+		long bestOutstanding = 0;
+		long bestDevices = 0;
+		for (Endpoint endpoint : endpoints) {
+			long outstanding = endpoint.getOutstandingMessages();
+			long devices = endpoint.getDevices();
+			if (best == null || compare(endpoint, outstanding, devices, best, bestOutstanding, bestDevices) < 0) {
+				best = endpoint;
+				bestOutstanding = outstanding;
+				bestDevices = devices;
+			}
+		}
+		return best;
+	}
+
+	private static int compare(Endpoint a, long aOutstanding, long aDevices, Endpoint b, long bOutstanding,
+			long bDevices) {
+		if (a.isFailing() != b.isFailing()) {
+			return a.isFailing() ? 1 : -1;
+		}
+		if (aOutstanding != bOutstanding) {
+			return aOutstanding < bOutstanding ? -1 : 1;
+		}
+		return Long.compare(aDevices, bDevices);
+	}
+
+	/**
+	 * First 64 bits of the MD5 digest, spreads similar keys such as consecutive device numbers over the whole ring.
+	 */
+	private static long hash(String key) {
+		try {
+			byte[] digest = MessageDigest.getInstance("MD5").digest(key.getBytes(StandardCharsets.UTF_8));
+			long hash = 0;
+			for (int i = 0; i < 8; ++i) {
+				hash = (hash << 8) | (digest[i] & 0xff);
+			}
+			return hash;
+		} catch (NoSuchAlgorithmException e) {
+			throw new DorDriverException("MD5 not available.", e);
+		}
+	}
+}
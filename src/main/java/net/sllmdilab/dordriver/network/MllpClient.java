@@ -0,0 +1,157 @@
+package net.sllmdilab.dordriver.network;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import ca.uhn.hl7v2.llp.LLPException;
+
+/**
+ * Minimal blocking MLLP client sending pre-encoded messages. Unlike {@link Hl7Client} it never builds a HAPI message,
+ * neither for the outgoing message nor for the acknowledgement.
+ */
+public class MllpClient implements Connectable {
+	public static final byte START_BLOCK = 0x0b;
+	public static final byte END_BLOCK = 0x1c;
+	public static final byte CARRIAGE_RETURN = 0x0d;
+
+	protected static final int DEFAULT_TIMEOUT_MILLIS = 10000;
+
+	private Logger logger = LoggerFactory.getLogger(MllpClient.class);
+
+	private String host;
+	private int port;
+	protected int timeoutMillis = DEFAULT_TIMEOUT_MILLIS;
+	protected Socket socket;
+	protected OutputStream outputStream;
+	protected InputStream inputStream;
+	private final MllpFrameReader responseReader = new MllpFrameReader();
+	private boolean directBuffers;
+	private MllpFrameWriter frameWriter;
+	private int connectCount;
+
+	public MllpClient(String host, int port) {
+		this.host = host;
+		this.port = port;
+	}
+
+	@Override
+	public void connect() throws IOException {
+		SocketChannel channel = null;
+		if (directBuffers) {
+			channel = SocketChannel.open();
+			socket = channel.socket();
+		} else {
+			socket = new Socket();
+		}
+		socket.setTcpNoDelay(true);
+		socket.setSoTimeout(timeoutMillis);
+		socket.connect(new InetSocketAddress(host, port), timeoutMillis);
+		inputStream = new BufferedInputStream(socket.getInputStream());
+
+		if (directBuffers) {
+			outputStream = null;
+			if (frameWriter != null) {
+				// Left over if the connection was closed without disconnecting
+				frameWriter.releaseBuffer();
+			}
+			frameWriter = new MllpFrameWriter(channel);
+		} else {
+			outputStream = new BufferedOutputStream(socket.getOutputStream());
+		}
+		++connectCount;
+	}
+
+	/**
+	 * Writes messages through a socket channel with an {@link MllpFrameWriter} instead of a buffered output stream.
+	 * Takes effect on the next connect.
+	 */
+	public void setDirectBuffers(boolean directBuffers) {
+		this.directBuffers = directBuffers;
+	}
+
+	@Override
+	public void disconnect() {
+		if (isOpen()) {
+			try {
+				socket.close();
+			} catch (IOException e) {
+				logger.debug("Exception when closing socket.", e);
+			}
+		}
+		socket = null;
+		if (frameWriter != null) {
+			frameWriter.releaseBuffer();
+			frameWriter = null;
+		}
+	}
+
+	@Override
+	public boolean isOpen() {
+		return socket != null && !socket.isClosed();
+	}
+
+	@Override
+	public void setAddress(String host, int port) {
+		this.host = host;
+		this.port = port;
+	}
+
+	@Override
+	public int getConnectCount() {
+		return connectCount;
+	}
+
+	/**
+	 * Sends a single MLLP framed message and blocks until the acknowledgement has been received.
+	 *
+	 * @return the acknowledgment code, MSA-1, of the acknowledgement, or null if missing or not valid
+	 */
+	public AckCode sendMessage(byte[] message, int offset, int length) throws LLPException, IOException {
+		if (!isOpen()) {
+			logger.debug("Connection was unexpectedly closed, reconnecting.");
+			connect();
+		}
+
+		int responseLength;
+		try {
+			writeMessage(message, offset, length);
+			responseLength = responseReader.read(inputStream);
+		} catch (IOException | LLPException e) {
+			disconnect();
+			throw e;
+		}
+
+		byte[] responseBytes = responseReader.getBytes();
+		if (logger.isDebugEnabled()) {
+			logger.debug("Got response: " + new String(responseBytes, 0, responseLength, StandardCharsets.ISO_8859_1));
+		}
+		return AckParser.getAckCode(responseBytes, 0, responseLength);
+	}
+
+	protected void writeMessage(byte[] message, int offset, int length) throws IOException {
+		if (frameWriter != null) {
+			frameWriter.write(message, offset, length);
+			return;
+		}
+
+		outputStream.write(START_BLOCK);
+		outputStream.write(message, offset, length);
+		outputStream.write(END_BLOCK);
+		outputStream.write(CARRIAGE_RETURN);
+		outputStream.flush();
+	}
+
+	public void setTimeoutMillis(int timeoutMillis) {
+		this.timeoutMillis = timeoutMillis;
+	}
+}
@@ -0,0 +1,56 @@
+package net.sllmdilab.dordriver.network;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+import ca.uhn.hl7v2.llp.LLPException;
+
+/**
+ * Reads MLLP framed responses from a stream into a buffer that grows to the longest response read so far.
+ *
+ * Not thread safe, each thread reading responses has a reader of its own.
+ */
+public class MllpFrameReader {
+	private byte[] bytes = new byte[256];
+
+	/**
+	 * Reads one MLLP framed response into {@link #getBytes()}.
+	 *
+	 * @return the length of the response, excluding framing
+	 */
+	public int read(InputStream in) throws LLPException, IOException {
+		int length = 0;
+
+		int b = in.read();
+		if (b == -1) {
+			throw new LLPException("Connection closed while waiting for response.");
+		}
+		if (b != MllpClient.START_BLOCK) {
+			throw new LLPException("Response does not start with an MLLP start block.");
+		}
+
+		while ((b = in.read()) != MllpClient.END_BLOCK) {
+			if (b == -1) {
+				throw new LLPException("Connection closed while reading response.");
+			}
+			if (length == bytes.length) {
+				bytes = Arrays.copyOf(bytes, length * 2);
+			}
+			bytes[length++] = (byte) b;
+		}
+
+		if (in.read() != MllpClient.CARRIAGE_RETURN) {
+			throw new LLPException("Response is not terminated by an MLLP end block.");
+		}
+
+		return length;
+	}
+
+	/**
+	 * The last response read, valid up to the length returned by {@link #read(InputStream)}.
+	 */
+	public byte[] getBytes() {
+		return bytes;
+	}
+}
@@ -0,0 +1,74 @@
+package net.sllmdilab.dordriver.network;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.GatheringByteChannel;
+
+/**
+ * Writes MLLP frames to a channel without assembling them in memory. The start block, the message and the end block
+ * are separate buffers written together with a single gathering write. Start and end blocks are constant direct
+ * buffers shared by all writers and the message is copied once, into a pooled direct buffer that the channel can
+ * write without copying it again.
+ *
+ * Not thread safe, each connection has a writer of its own.
+ */
+public class MllpFrameWriter {
+	private static final ByteBuffer HEADER = constant(MllpClient.START_BLOCK);
+	private static final ByteBuffer TRAILER = constant(MllpClient.END_BLOCK, MllpClient.CARRIAGE_RETURN);
+
+	private final GatheringByteChannel channel;
+	private final ByteBuffer header = HEADER.duplicate();
+	private final ByteBuffer trailer = TRAILER.duplicate();
+	private final ByteBuffer[] frame = new ByteBuffer[3];
+	private ByteBuffer body;
+
+	public MllpFrameWriter(GatheringByteChannel channel) {
+		this.channel = channel;
+		frame[0] = header;
+		frame[2] = trailer;
+	}
+
+	private static ByteBuffer constant(byte... bytes) {
+		ByteBuffer buffer = ByteBuffer.allocateDirect(bytes.length);
+		buffer.put(bytes);
+		buffer.flip();
+		return buffer.asReadOnlyBuffer();
+	}
+
+	/**
+	 * Copies the message into this writer's direct buffer and writes it as one frame.
+	 */
+	public void write(byte[] message, int offset, int length) throws IOException {
+		if (body == null || body.capacity() < length) {
+			releaseBuffer();
+			body = DirectBufferPool.acquire(length);
+		}
+		body.clear();
+		body.put(message, offset, length);
+		body.flip();
+		writeFrame(body);
+	}
+
+	private void writeFrame(ByteBuffer message) throws IOException {
+		header.rewind();
+		trailer.rewind();
+		frame[1] = message;
+		try {
+			while (trailer.hasRemaining()) {
+				channel.write(frame);
+			}
+		} finally {
+			frame[1] = null;
+		}
+	}
+
+	/**
+	 * Returns the direct buffer to the pool, the writer may still be used afterwards.
+	 */
+	public void releaseBuffer() {
+		if (body != null) {
+			DirectBufferPool.release(body);
+			body = null;
+		}
+	}
+}
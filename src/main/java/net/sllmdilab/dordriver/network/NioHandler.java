@@ -0,0 +1,24 @@
+package net.sllmdilab.dordriver.network;
+
+import java.nio.channels.SelectionKey;
+
+/**
+ * Callbacks for an object driven by a {@link SelectorLoop}. All methods are called from the loop thread.
+ */
+public interface NioHandler {
+
+	/**
+	 * Called once after the handler has been registered with a loop.
+	 */
+	public void start(SelectorLoop loop);
+
+	/**
+	 * Called when a channel registered with this handler as attachment is ready.
+	 */
+	public void handleKey(SelectionKey key);
+
+	/**
+	 * Called when a deadline scheduled with {@link SelectorLoop#schedule(NioHandler, long)} has passed.
+	 */
+	public void handleTimer();
+}
@@ -0,0 +1,151 @@
+package net.sllmdilab.dordriver.network;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.Arrays;
+
+import ca.uhn.hl7v2.llp.LLPException;
+
+/**
+ * Non-blocking MLLP connection framing outgoing messages and incoming responses itself. Meant to be driven by a
+ * {@link SelectorLoop}, it never blocks and holds a single outgoing message at a time.
+ */
+public class NioMllpConnection {
+	private static final int INITIAL_BUFFER_SIZE = 1024;
+
+	private final SocketChannel channel;
+	private ByteBuffer writeBuffer = ByteBuffer.allocate(INITIAL_BUFFER_SIZE);
+	private ByteBuffer readBuffer = ByteBuffer.allocate(INITIAL_BUFFER_SIZE);
+	private byte[] response = new byte[INITIAL_BUFFER_SIZE];
+	private int responseLength;
+
+	private NioMllpConnection(SocketChannel channel) {
+		this.channel = channel;
+	}
+
+	/**
+	 * Starts connecting to the address. The connection is not usable until {@link #finishConnect()} returns true.
+	 */
+	public static NioMllpConnection open(InetSocketAddress address) throws IOException {
+		SocketChannel channel = SocketChannel.open();
+		try {
+			channel.configureBlocking(false);
+			channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+			channel.connect(address);
+		} catch (IOException e) {
+			channel.close();
+			throw e;
+		}
+		return new NioMllpConnection(channel);
+	}
+
+	public SocketChannel getChannel() {
+		return channel;
+	}
+
+	public boolean finishConnect() throws IOException {
+		return channel.finishConnect();
+	}
+
+	/**
+	 * Returns a buffer into which the caller writes the message body starting at {@link #getMessageOffset()}, at most
+	 * maxLength bytes. Must be followed by {@link #endMessage(int)}.
+	 */
+	public byte[] beginMessage(int maxLength) {
+		if (writeBuffer.capacity() < maxLength + 3) {
+			writeBuffer = ByteBuffer.allocate(maxLength + 3);
+		}
+		writeBuffer.clear();
+		writeBuffer.put(MllpClient.START_BLOCK);
+		return writeBuffer.array();
+	}
+
+	public int getMessageOffset() {
+		return writeBuffer.arrayOffset() + 1;
+	}
+
+	public void endMessage(int length) {
+		writeBuffer.position(1 + length);
+		writeBuffer.put(MllpClient.END_BLOCK);
+		writeBuffer.put(MllpClient.CARRIAGE_RETURN);
+		writeBuffer.flip();
+	}
+
+	/**
+	 * Writes as much of the current message as the socket accepts.
+	 *
+	 * @return true if the whole message has been written
+	 */
+	public boolean write() throws IOException {
+		channel.write(writeBuffer);
+		return !writeBuffer.hasRemaining();
+	}
+
+	/**
+	 * Reads what is available from the socket.
+	 *
+	 * @return true if a complete response has been received, available through {@link #getResponse()}
+	 */
+	public boolean read() throws IOException, LLPException {
+		if (!readBuffer.hasRemaining()) {
+			readBuffer.flip();
+			readBuffer = ByteBuffer.allocate(readBuffer.capacity() * 2).put(readBuffer);
+		}
+
+		if (channel.read(readBuffer) == -1) {
+			throw new IOException("Connection closed by peer.");
+		}
+
+		readBuffer.flip();
+		try {
+			return extractResponse();
+		} finally {
+			readBuffer.compact();
+		}
+	}
+
+	private boolean extractResponse() throws LLPException {
+		int start = readBuffer.position();
+		int limit = readBuffer.limit();
+
+		if (start == limit) {
+			return false;
+		}
+		if (readBuffer.get(start) != MllpClient.START_BLOCK) {
+			throw new LLPException("Response does not start with an MLLP start block.");
+		}
+
+		for (int pos = start + 1; pos < limit - 1; ++pos) {
+			if (readBuffer.get(pos) == MllpClient.END_BLOCK && readBuffer.get(pos + 1) == MllpClient.CARRIAGE_RETURN) {
+				responseLength = pos - start - 1;
+				if (response.length < responseLength) {
+					response = Arrays.copyOf(response, responseLength);
+				}
+				readBuffer.position(start + 1);
+				readBuffer.get(response, 0, responseLength);
+				readBuffer.position(pos + 2);
+				return true;
+			}
+		}
+		return false;
+	}
+
+	public byte[] getResponse() {
+		return response;
+	}
+
+	public int getResponseLength() {
+		return responseLength;
+	}
+
+	public void close() {
+		try {
+			channel.close();
+		} catch (IOException e) {
+			// Nothing left to clean up
+		}
+	}
+}
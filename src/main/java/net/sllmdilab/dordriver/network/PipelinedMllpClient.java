@@ -0,0 +1,249 @@
+package net.sllmdilab.dordriver.network;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import ca.uhn.hl7v2.llp.LLPException;
+
+/**
+ * MLLP client keeping up to a fixed number of unacknowledged messages in flight on a single connection. Messages are
+ * written without waiting for their acknowledgement, a separate reader thread matches incoming acknowledgements to
+ * sent messages by MSH-10 control ID (MSA-2 of the acknowledgement) and reports their latency and acknowledgment
+ * code to an {@link AckListener}.
+ */
+public class PipelinedMllpClient extends MllpClient {
+	private Logger logger = LoggerFactory.getLogger(PipelinedMllpClient.class);
+
+	private final int maxInFlight;
+	private final AckListener ackListener;
+	private Executor readerExecutor;
+	private Semaphore window;
+	private Map<String, Deque<Long>> pending;
+
+	public PipelinedMllpClient(String host, int port, int maxInFlight, AckListener ackListener) {
+		super(host, port);
+		this.maxInFlight = maxInFlight;
+		this.ackListener = ackListener;
+	}
+
+	@Override
+	public void connect() throws IOException {
+		super.connect();
+
+		window = new Semaphore(maxInFlight);
+		pending = new HashMap<>();
+
+		AckReader ackReader = new AckReader(socket, inputStream, window, pending);
+		if (readerExecutor != null) {
+			readerExecutor.execute(ackReader);
+		} else {
+			Thread readerThread = new Thread(ackReader, "ack-reader-" + socket.getLocalPort());
+			readerThread.setDaemon(true);
+			readerThread.start();
+		}
+	}
+
+	/**
+	 * Runs the acknowledgement reader of each connection on the executor instead of a dedicated daemon thread.
+	 */
+	public void setReaderExecutor(Executor readerExecutor) {
+		this.readerExecutor = readerExecutor;
+	}
+
+	/**
+	 * Writes a single MLLP framed message, blocking only while the in-flight window is full.
+	 *
+	 * @return always null, the acknowledgment code is reported to the {@link AckListener} once received
+	 */
+	@Override
+	public AckCode sendMessage(byte[] message, int offset, int length) throws LLPException, IOException {
+		sendMessage(message, offset, length, 0, false);
+		return null;
+	}
+
+	/**
+	 * Same as {@link #sendMessage(byte[], int, int)} but measures the acknowledgement latency from intendedSendNanos
+	 * instead of from when the message was written. Used by open loop senders so that time spent waiting for a full
+	 * window counts as latency.
+	 */
+	public void sendMessage(byte[] message, int offset, int length, long intendedSendNanos) throws LLPException,
+			IOException {
+		sendMessage(message, offset, length, intendedSendNanos, true);
+	}
+
+	private void sendMessage(byte[] message, int offset, int length, long intendedSendNanos, boolean intended)
+			throws LLPException, IOException {
+		if (!isOpen()) {
+			logger.debug("Connection was unexpectedly closed, reconnecting.");
+			connect();
+		}
+
+		try {
+			if (!window.tryAcquire(timeoutMillis, TimeUnit.MILLISECONDS)) {
+				disconnect();
+				throw new LLPException("Timed out waiting for acknowledgements, " + maxInFlight
+						+ " messages in flight.");
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new LLPException("Interrupted while waiting for acknowledgements.", e);
+		}
+
+		String controlId = AckParser.findField(message, offset, length, "MSH", 10);
+		synchronized (pending) {
+			Deque<Long> sendTimes = pending.get(controlId);
+			if (sendTimes == null) {
+				sendTimes = new ArrayDeque<>();
+				pending.put(controlId, sendTimes);
+			}
+			sendTimes.add(intended ? intendedSendNanos : System.nanoTime());
+		}
+
+		try {
+			writeMessage(message, offset, length);
+		} catch (IOException e) {
+			// Reported to the caller, not to be counted as lost by the reader as well
+			removeLastPending(controlId);
+			disconnect();
+			throw e;
+		}
+	}
+
+	private void removeLastPending(String controlId) {
+		synchronized (pending) {
+			Deque<Long> sendTimes = pending.get(controlId);
+			if (sendTimes != null) {
+				sendTimes.pollLast();
+				if (sendTimes.isEmpty()) {
+					pending.remove(controlId);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Blocks until every message sent has been acknowledged or the timeout expires.
+	 *
+	 * @return true if no messages are left in flight
+	 */
+	public boolean awaitAcknowledgements(long timeoutMillis) throws InterruptedException {
+		if (!isOpen()) {
+			return getInFlightCount() == 0;
+		}
+		if (window.tryAcquire(maxInFlight, timeoutMillis, TimeUnit.MILLISECONDS)) {
+			window.release(maxInFlight);
+			return true;
+		}
+		return false;
+	}
+
+	public int getInFlightCount() {
+		return window == null ? 0 : maxInFlight - window.availablePermits();
+	}
+
+	private class AckReader implements Runnable {
+		private final Socket socket;
+		private final InputStream in;
+		private final Semaphore window;
+		private final Map<String, Deque<Long>> pending;
+		// Not the client's buffer, the sending thread may still use that one
+		private final MllpFrameReader ackReader = new MllpFrameReader();
+
+		public AckReader(Socket socket, InputStream in, Semaphore window, Map<String, Deque<Long>> pending) {
+			this.socket = socket;
+			this.in = in;
+			this.window = window;
+			this.pending = pending;
+		}
+
+		@Override
+		public void run() {
+			try {
+				while (!socket.isClosed()) {
+					int length;
+					try {
+						length = ackReader.read(in);
+					} catch (SocketTimeoutException e) {
+						if (countPending() == 0) {
+							continue;
+						}
+						throw e;
+					}
+
+					long receivedNanos = System.nanoTime();
+					byte[] responseBytes = ackReader.getBytes();
+					String controlId = AckParser.getAcknowledgedControlId(responseBytes, 0, length);
+					Long sendNanos = removePending(controlId);
+
+					if (sendNanos == null) {
+						logger.warn("Received acknowledgement for unknown control ID '" + controlId + "'.");
+						continue;
+					}
+
+					// Report before releasing the window, a sender waiting for its last acknowledgements must see it
+					ackListener.messageAcknowledged(controlId, AckParser.getAckCode(responseBytes, 0, length),
+							receivedNanos - sendNanos);
+					window.release();
+
+					if (logger.isDebugEnabled()) {
+						logger.debug("Got response for " + controlId + " after "
+								+ TimeUnit.NANOSECONDS.toMicros(receivedNanos - sendNanos) + " us: "
+								+ new String(responseBytes, 0, length, StandardCharsets.ISO_8859_1));
+					}
+				}
+			} catch (IOException | LLPException e) {
+				if (!socket.isClosed()) {
+					logger.error("Exception when reading acknowledgements, closing connection.", e);
+				}
+			} finally {
+				try {
+					socket.close();
+				} catch (IOException e) {
+					logger.debug("Exception when closing socket.", e);
+				}
+
+				int lost = countPending();
+				if (lost > 0) {
+					ackListener.messagesLost(lost);
+				}
+			}
+		}
+
+		private Long removePending(String controlId) {
+			synchronized (pending) {
+				Deque<Long> sendTimes = pending.get(controlId);
+				if (sendTimes == null) {
+					return null;
+				}
+				Long sendNanos = sendTimes.poll();
+				if (sendTimes.isEmpty()) {
+					pending.remove(controlId);
+				}
+				return sendNanos;
+			}
+		}
+
+		private int countPending() {
+			synchronized (pending) {
+				int count = 0;
+				for (Deque<Long> sendTimes : pending.values()) {
+					count += sendTimes.size();
+				}
+				return count;
+			}
+		}
+	}
+}
@@ -0,0 +1,70 @@
+package net.sllmdilab.dordriver.network;
+
+import java.util.Random;
+
+/**
+ * Exponential back-off with full jitter between connection attempts. The delay before retry n is drawn uniformly from
+ * [0, min(maxDelayMillis, initialDelayMillis * 2^n)], so senders that lost their connections at the same time, e.g.
+ * during a restart of the receiver, spread their reconnects out instead of hitting the listener all at once.
+ *
+ * Not thread safe, each connection manager has a back-off of its own.
+ */
+public class ReconnectBackoff {
+	public static final long DEFAULT_INITIAL_DELAY_MILLIS = 100;
+	public static final long DEFAULT_MAX_DELAY_MILLIS = 10000;
+
+	private final long initialDelayMillis;
+	private final long maxDelayMillis;
+	private final Random random;
+	private int failures;
+
+	public ReconnectBackoff() {
+		this(DEFAULT_INITIAL_DELAY_MILLIS, DEFAULT_MAX_DELAY_MILLIS);
+	}
+
+	public ReconnectBackoff(long initialDelayMillis, long maxDelayMillis) {
+		this(initialDelayMillis, maxDelayMillis, new Random());
+	}
+
+	ReconnectBackoff(long initialDelayMillis, long maxDelayMillis, Random random) {
+		if (initialDelayMillis < 0 || maxDelayMillis < initialDelayMillis) {
+			throw new IllegalArgumentException("Invalid back-off " + initialDelayMillis + " to " + maxDelayMillis
+					+ " milliseconds.");
+		}
+		this.initialDelayMillis = initialDelayMillis;
+		this.maxDelayMillis = maxDelayMillis;
+		this.random = random;
+	}
+
+	/**
+	 * Records a failed attempt and returns the delay before the next one.
+	 */
+	public long nextDelayMillis() {
+		long ceiling = getCeilingMillis(failures);
+		++failures;
+		return ceiling > 0 ? (long) (random.nextDouble() * (ceiling + 1)) : 0;
+	}
+
+	/**
+	 * Upper bound of the delay after the given number of earlier failures.
+	 */
+	long getCeilingMillis(int failures) {
+		// Shifting further would overflow, the ceiling is capped long before that
+		int shift = Math.min(failures, 30);
+		return Math.min(maxDelayMillis, initialDelayMillis << shift);
+	}
+
+	/**
+	 * Starts over from the initial delay, called once a connection has been established.
+	 */
+	public void reset() {
+		failures = 0;
+	}
+
+	/**
+	 * Failed attempts since the last reset.
+	 */
+	public int getFailures() {
+		return failures;
+	}
+}
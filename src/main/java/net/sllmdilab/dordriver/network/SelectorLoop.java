@@ -0,0 +1,160 @@
+package net.sllmdilab.dordriver.network;
+
+import java.io.IOException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.Iterator;
+import java.util.PriorityQueue;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A single thread multiplexing many non-blocking channels with a {@link Selector}, together with a simple timer
+ * queue so that handlers can wait for a deadline without a thread of their own.
+ */
+public class SelectorLoop extends Thread {
+	private Logger logger = LoggerFactory.getLogger(SelectorLoop.class);
+
+	private final Selector selector;
+	private final Queue<NioHandler> registrations = new ConcurrentLinkedQueue<>();
+	private final PriorityQueue<Timer> timers = new PriorityQueue<>();
+	private volatile boolean running = true;
+	private long timerSequence;
+
+	public SelectorLoop(String name) throws IOException {
+		super(name);
+		setDaemon(true);
+		selector = Selector.open();
+	}
+
+	/**
+	 * Hands a handler over to the loop. May be called from any thread.
+	 */
+	public void register(NioHandler handler) {
+		registrations.add(handler);
+		selector.wakeup();
+	}
+
+	/**
+	 * Calls {@link NioHandler#handleTimer()} once System.nanoTime() has passed deadlineNanos. Must be called from the
+	 * loop thread.
+	 */
+	public void schedule(NioHandler handler, long deadlineNanos) {
+		timers.add(new Timer(deadlineNanos, timerSequence++, handler));
+	}
+
+	public Selector getSelector() {
+		return selector;
+	}
+
+	public void shutdown() {
+		running = false;
+		selector.wakeup();
+	}
+
+	@Override
+	public void run() {
+		try {
+			while (running) {
+				select();
+				handleSelectedKeys();
+				handleRegistrations();
+				handleTimers();
+			}
+		} catch (IOException e) {
+			logger.error("Selector loop failed.", e);
+		} finally {
+			close();
+		}
+	}
+
+	private void select() throws IOException {
+		Timer next = timers.peek();
+		if (next == null) {
+			selector.select();
+			return;
+		}
+
+		long waitNanos = next.deadlineNanos - System.nanoTime();
+		if (waitNanos <= 0) {
+			selector.selectNow();
+		} else {
+			selector.select(Math.max(1, TimeUnit.NANOSECONDS.toMillis(waitNanos)));
+		}
+	}
+
+	private void handleSelectedKeys() {
+		Iterator<SelectionKey> it = selector.selectedKeys().iterator();
+		while (it.hasNext()) {
+			SelectionKey key = it.next();
+			it.remove();
+
+			if (key.isValid()) {
+				try {
+					((NioHandler) key.attachment()).handleKey(key);
+				} catch (RuntimeException e) {
+					logger.error("Unhandled exception in selector loop.", e);
+				}
+			}
+		}
+	}
+
+	private void handleRegistrations() {
+		NioHandler handler;
+		while ((handler = registrations.poll()) != null) {
+			try {
+				handler.start(this);
+			} catch (RuntimeException e) {
+				logger.error("Unhandled exception in selector loop.", e);
+			}
+		}
+	}
+
+	private void handleTimers() {
+		long now = System.nanoTime();
+		while (!timers.isEmpty() && timers.peek().deadlineNanos - now <= 0) {
+			try {
+				timers.poll().handler.handleTimer();
+			} catch (RuntimeException e) {
+				logger.error("Unhandled exception in selector loop.", e);
+			}
+		}
+	}
+
+	private void close() {
+		for (SelectionKey key : selector.keys()) {
+			try {
+				key.channel().close();
+			} catch (IOException e) {
+				logger.debug("Exception when closing channel.", e);
+			}
+		}
+		try {
+			selector.close();
+		} catch (IOException e) {
+			logger.debug("Exception when closing selector.", e);
+		}
+	}
+
+	private static class Timer implements Comparable<Timer> {
+		private final long deadlineNanos;
+		private final long sequence;
+		private final NioHandler handler;
+
+		public Timer(long deadlineNanos, long sequence, NioHandler handler) {
+			this.deadlineNanos = deadlineNanos;
+			this.sequence = sequence;
+			this.handler = handler;
+		}
+
+		@Override
+		public int compareTo(Timer that) {
+			int cmp = Long.signum(this.deadlineNanos - that.deadlineNanos);
+			return cmp != 0 ? cmp : Long.compare(this.sequence, that.sequence);
+		}
+	}
+}
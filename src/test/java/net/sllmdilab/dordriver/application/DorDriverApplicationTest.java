@@ -0,0 +1,188 @@
+package net.sllmdilab.dordriver.application;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import net.sllmdilab.dordriver.exeptions.DorDriverException;
+import net.sllmdilab.dordriver.mock.MockDocServer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class DorDriverApplicationTest {
+
+	//@formatter:off
+	private static final String MOCK_MESSAGE ="MSH|^~\\&|SendingApplication|SendingFacility|ReceivingApplication|ReceivingFacility|20120530112345||ORU^R01^ORU_R01|9879790004|P|2.6\r"+
+			"PID|||010101-2425||Doe^John^^^^^B\r"+
+			"OBR|2||XXX|WAVEFORM|||20150615145531.000|20150615145532.000\r"+
+			"OBX|1001|NA|131329^MDC_ECG_LEAD_I^MDC|1.1.1.1001|0.0^0.029039286658642516|266418^MDC_DIM_MILLI_VOLT^MDC||||||||20150615145531.000\r";
+	//@formatter:on
+
+	private MockDocServer server;
+
+	@Before
+	public void setup() throws Exception {
+		server = new MockDocServer(0);
+		server.start();
+	}
+
+	@After
+	public void tearDown() {
+		server.close();
+	}
+
+	@Test
+	public void shouldRunSendersOnVirtualThreadExecutor() throws Exception {
+		Set<Long> executorThreadIds = ConcurrentHashMap.newKeySet();
+		DorDriverApplication application = new DorDriverApplication("localhost", server.getPort(),
+				new ByteArrayInputStream(MOCK_MESSAGE.getBytes(StandardCharsets.ISO_8859_1)), 3, 0L, 4, false) {
+			@Override
+			ExecutorService newVirtualThreadPerTaskExecutor() {
+				try {
+					return super.newVirtualThreadPerTaskExecutor();
+				} catch (DorDriverException e) {
+					// Before Java 21, the same path on platform threads
+					return Executors.newCachedThreadPool(runnable -> {
+						Thread thread = new Thread(runnable);
+						thread.setDaemon(true);
+						executorThreadIds.add(thread.getId());
+						return thread;
+					});
+				}
+			}
+		};
+		application.setExecutor("virtual");
+
+		List<SenderThreadResult> results = application.sendMessages();
+
+		assertEquals(4, results.size());
+		for (SenderThreadResult result : results) {
+			assertEquals(3, result.sentMessages);
+			assertEquals(0, result.failedMessages);
+			assertTrue(executorThreadIds.isEmpty() || executorThreadIds.contains(result.threadId));
+		}
+		assertEquals(12, server.getReceivedMessages());
+	}
+
+	@Test
+	public void shouldKeepLiveMetricsLatenciesOutOfSenderResults() throws Exception {
+		DorDriverApplication application = new DorDriverApplication("localhost", server.getPort(),
+				new ByteArrayInputStream(MOCK_MESSAGE.getBytes(StandardCharsets.ISO_8859_1)), 3, 0L, 2, false);
+		application.setCompiled(true);
+		application.setLogProgress(true);
+
+		List<SenderThreadResult> results = application.sendMessages();
+
+		for (SenderThreadResult result : results) {
+			assertEquals(3, result.sentMessages);
+			assertEquals(0, result.ackLatencyHistogram.getTotalCount());
+		}
+		assertEquals(6, application.getAckLatencyHistogram().getTotalCount());
+	}
+
+	@Test(expected = DorDriverException.class)
+	public void shouldRejectDirectBuffersForHapiSends() throws Exception {
+		DorDriverApplication application = new DorDriverApplication("localhost", server.getPort(),
+				new ByteArrayInputStream(MOCK_MESSAGE.getBytes(StandardCharsets.ISO_8859_1)), 3, 0L, 1, false);
+		application.setDirectBuffers(true);
+
+		application.sendMessages();
+	}
+
+	@Test
+	public void shouldSendCompiledMessagesFromDirectBuffers() throws Exception {
+		DorDriverApplication application = new DorDriverApplication("localhost", server.getPort(),
+				new ByteArrayInputStream(MOCK_MESSAGE.getBytes(StandardCharsets.ISO_8859_1)), 3, 0L, 2, false);
+		application.setDirectBuffers(true);
+		application.setCompiled(true);
+
+		List<SenderThreadResult> results = application.sendMessages();
+
+		for (SenderThreadResult result : results) {
+			assertEquals(0, result.failedMessages);
+		}
+		assertEquals(6, server.getReceivedMessages());
+	}
+
+	@Test
+	public void shouldAnswerFromMockDocWithRejects() throws Exception {
+		int port = getFreePort();
+		DorDriverApplication application = new DorDriverApplication("localhost", port, new ByteArrayInputStream(
+				MOCK_MESSAGE.getBytes(StandardCharsets.ISO_8859_1)), 4, 0L, 1, false);
+		application.setCompiled(true);
+		application.setMockDoc(0L, 0, 1, 0);
+
+		List<SenderThreadResult> results = application.sendMessages();
+
+		assertEquals(4, results.get(0).sentMessages);
+		assertEquals(4, results.get(0).applicationRejects);
+		assertEquals(0, results.get(0).applicationErrors);
+	}
+
+	@Test(expected = DorDriverException.class)
+	public void shouldRejectMockDocForRemoteHosts() throws Exception {
+		DorDriverApplication application = new DorDriverApplication("localhost,192.0.2.1", getFreePort(),
+				new ByteArrayInputStream(MOCK_MESSAGE.getBytes(StandardCharsets.ISO_8859_1)), 1, 0L, 1, false);
+		application.setMockDoc(0L, 0, 0, 0);
+
+		application.sendMessages();
+	}
+
+	@Test
+	public void shouldStopMockDocWhenRunFails() throws Exception {
+		int port = getFreePort();
+		DorDriverApplication application = new DorDriverApplication("localhost", port, null, 1, 0L, 1, false);
+		application.setInputFileName("does-not-exist.hl7");
+		application.setMockDoc(0L, 0, 0, 0);
+
+		try {
+			application.sendMessages();
+			fail("Expected the missing input file to fail the run.");
+		} catch (FileNotFoundException e) {
+			// Expected
+		}
+
+		// Fails if the mock DOC is still listening
+		new ServerSocket(port).close();
+	}
+
+	@Test
+	public void shouldParseRatesPerSecond() {
+		assertEquals(5000, DorDriverApplication.parseRate("5000/s"), 0.0);
+		assertEquals(5000, DorDriverApplication.parseRate("5000"), 0.0);
+		assertEquals(5, DorDriverApplication.parseRate(" 300 / m "), 1e-9);
+		assertEquals(0.5, DorDriverApplication.parseRate("1800/h"), 1e-9);
+		assertEquals(2.5, DorDriverApplication.parseRate("2.5/s"), 0.0);
+	}
+
+	@Test
+	public void shouldRejectInvalidRates() {
+		for (String rate : new String[] { "", "fast", "/s", "10/d", "10/s/s", "0", "-5/s", "NaN", "Infinity/m" }) {
+			try {
+				DorDriverApplication.parseRate(rate);
+				fail("Accepted " + rate);
+			} catch (IllegalArgumentException e) {
+				// Expected
+			}
+		}
+	}
+
+	private static int getFreePort() throws IOException {
+		try (ServerSocket socket = new ServerSocket(0)) {
+			return socket.getLocalPort();
+		}
+	}
+}
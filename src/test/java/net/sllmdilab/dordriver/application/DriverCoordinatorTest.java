@@ -0,0 +1,170 @@
+package net.sllmdilab.dordriver.application;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import net.sllmdilab.dordriver.exeptions.DorDriverException;
+import net.sllmdilab.dordriver.mock.MockDocServer;
+import net.sllmdilab.dordriver.network.Endpoint;
+
+import org.junit.After;
+import org.junit.Test;
+
+public class DriverCoordinatorTest {
+
+	//@formatter:off
+	private static final String MOCK_MESSAGE ="MSH|^~\\&|SendingApplication|SendingFacility|ReceivingApplication|ReceivingFacility|20120530112345||ORU^R01^ORU_R01|9879790004|P|2.6\r"+
+			"PID|||010101-2425||Doe^John^^^^^B\r"+
+			"OBR|2||XXX|WAVEFORM|||20150615145531.000|20150615145532.000\r"+
+			"OBX|1001|NA|131329^MDC_ECG_LEAD_I^MDC|1.1.1.1001|0.0^0.029039286658642516|266418^MDC_DIM_MILLI_VOLT^MDC||||||||20150615145531.000\r";
+	//@formatter:on
+
+	private final List<DriverWorker> workers = new ArrayList<>();
+	private final List<MockDocServer> servers = new ArrayList<>();
+
+	@After
+	public void tearDown() throws IOException {
+		for (DriverWorker worker : workers) {
+			worker.close();
+		}
+		for (MockDocServer server : servers) {
+			server.close();
+		}
+	}
+
+	@Test
+	public void shouldPartitionDevicesMessagesAndRate() {
+		String[] args = { "host", "2575", "input.hl7" };
+		List<String> messages = Arrays.asList("1", "2", "3", "4", "5");
+
+		List<WorkerJob> jobs = WorkerJob.partition(args, messages, 10, 300.0, 3);
+
+		assertEquals(0, jobs.get(0).getFirstDevice());
+		assertEquals(3, jobs.get(0).getNumDevices());
+		assertEquals(3, jobs.get(1).getFirstDevice());
+		assertEquals(3, jobs.get(1).getNumDevices());
+		assertEquals(6, jobs.get(2).getFirstDevice());
+		assertEquals(4, jobs.get(2).getNumDevices());
+		assertEquals(Arrays.asList("1"), jobs.get(0).getMessages());
+		assertEquals(Arrays.asList("4", "5"), jobs.get(2).getMessages());
+		assertEquals(120.0, jobs.get(2).getRatePerSecond(), 0.001);
+
+		List<WorkerJob> closedLoop = WorkerJob.partition(args, messages.subList(0, 2), 3, null, 3);
+		assertEquals(messages.subList(0, 2), closedLoop.get(2).getMessages());
+		assertNull(closedLoop.get(2).getRatePerSecond());
+	}
+
+	@Test
+	public void shouldMergeResultsOfWorkersOverLoopback() throws IOException {
+		MockDocServer server = startServer();
+		List<Endpoint> addresses = startWorkers(2);
+
+		String[] args = { "-u", "localhost", Integer.toString(server.getPort()), "unused.hl7", "3", "0", "5" };
+		DriverCoordinator coordinator = new DriverCoordinator(addresses);
+		List<SenderThreadResult> results = coordinator.run(WorkerJob.partition(args,
+				Arrays.asList(MOCK_MESSAGE, MOCK_MESSAGE), 5, null, 2));
+
+		assertEquals(5, results.size());
+		long sentMessages = 0;
+		long acknowledgedMessages = 0;
+		for (SenderThreadResult result : results) {
+			sentMessages += result.sentMessages;
+			acknowledgedMessages += result.ackLatencyHistogram.getTotalCount();
+			assertEquals(0, result.failedMessages);
+		}
+		assertEquals(15, sentMessages);
+		assertEquals(15, acknowledgedMessages);
+		assertEquals(15, coordinator.getAckLatencyHistogram().getTotalCount());
+		assertEquals(15, server.getReceivedMessages());
+	}
+
+	@Test
+	public void shouldMergeEndpointResultsOfWorkers() throws IOException {
+		MockDocServer first = startServer();
+		MockDocServer second = startServer();
+		List<Endpoint> addresses = startWorkers(2);
+
+		String hosts = "localhost:" + first.getPort() + ",localhost:" + second.getPort();
+		String[] args = { "-u", "-L", "round-robin", hosts, Integer.toString(first.getPort()), "unused.hl7", "3",
+				"0", "4" };
+		DriverCoordinator coordinator = new DriverCoordinator(addresses);
+		coordinator.run(WorkerJob.partition(args, Arrays.asList(MOCK_MESSAGE, MOCK_MESSAGE), 4, null, 2));
+
+		List<EndpointResult> endpointResults = coordinator.getEndpointResults();
+		assertEquals(2, endpointResults.size());
+		assertEquals("localhost:" + first.getPort(), endpointResults.get(0).endpoint);
+		for (EndpointResult endpointResult : endpointResults) {
+			// Devices 0 and 2 on the first endpoint and 1 and 3 on the second, two from each worker
+			assertEquals(2, endpointResult.devices);
+			assertEquals(6, endpointResult.sentMessages);
+			assertEquals(6, endpointResult.acknowledgedMessages);
+			assertEquals(6, endpointResult.ackLatencyHistogram.getTotalCount());
+		}
+		assertEquals(6, first.getReceivedMessages());
+		assertEquals(6, second.getReceivedMessages());
+	}
+
+	@Test
+	public void shouldFailJobWithInvalidArgumentsAndKeepServing() throws IOException {
+		MockDocServer server = startServer();
+		List<Endpoint> addresses = startWorkers(1);
+		DriverCoordinator coordinator = new DriverCoordinator(addresses);
+
+		String[] invalidArgs = { "-r", "fast", "localhost", Integer.toString(server.getPort()), "unused.hl7" };
+		try {
+			coordinator.run(WorkerJob.partition(invalidArgs, Arrays.asList(MOCK_MESSAGE), 1, null, 1));
+			fail("Expected the worker to fail the job.");
+		} catch (DorDriverException e) {
+			assertTrue(e.getMessage(), e.getMessage().contains("Invalid arguments: Invalid rate: fast"));
+		}
+
+		String[] args = { "localhost", Integer.toString(server.getPort()), "unused.hl7", "2", "0", "1" };
+		List<SenderThreadResult> results = coordinator.run(WorkerJob.partition(args, Arrays.asList(MOCK_MESSAGE), 1,
+				null, 1));
+		assertEquals(2, results.get(0).sentMessages);
+	}
+
+	@Test
+	public void shouldListenOnLoopbackByDefault() throws IOException {
+		DriverWorker worker = new DriverWorker(0);
+		workers.add(worker);
+
+		assertTrue(worker.getAddress().isLoopbackAddress());
+	}
+
+	private MockDocServer startServer() throws IOException {
+		MockDocServer server = new MockDocServer(0);
+		servers.add(server);
+		server.start();
+		return server;
+	}
+
+	private List<Endpoint> startWorkers(int count) throws IOException {
+		List<Endpoint> addresses = new ArrayList<>();
+		for (int i = 0; i < count; ++i) {
+			final DriverWorker worker = new DriverWorker(0);
+			workers.add(worker);
+			addresses.add(new Endpoint("localhost", worker.getPort()));
+			startDaemon(new Runnable() {
+				@Override
+				public void run() {
+					worker.serve();
+				}
+			});
+		}
+		return addresses;
+	}
+
+	private static void startDaemon(Runnable runnable) {
+		Thread thread = new Thread(runnable);
+		thread.setDaemon(true);
+		thread.start();
+	}
+}
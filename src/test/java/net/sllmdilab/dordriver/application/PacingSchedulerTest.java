@@ -0,0 +1,141 @@
+package net.sllmdilab.dordriver.application;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.log4j.AppenderSkeleton;
+import org.apache.log4j.Logger;
+import org.apache.log4j.spi.LoggingEvent;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class PacingSchedulerTest {
+
+	private static final long PERIOD = 100;
+
+	private final List<String> warnings = new ArrayList<>();
+	private final AppenderSkeleton appender = new AppenderSkeleton() {
+		@Override
+		protected void append(LoggingEvent event) {
+			warnings.add(event.getRenderedMessage());
+		}
+
+		@Override
+		public boolean requiresLayout() {
+			return false;
+		}
+
+		@Override
+		public void close() {
+		}
+	};
+
+	private long now;
+
+	@Before
+	public void setup() {
+		Logger.getLogger(PacingScheduler.class).addAppender(appender);
+	}
+
+	@After
+	public void tearDown() {
+		Logger.getLogger(PacingScheduler.class).removeAppender(appender);
+	}
+
+	@Test
+	public void shouldKeepAbsoluteDeadlinesWhenOnTime() throws Exception {
+		PacingScheduler scheduler = newScheduler(MissedDeadlinePolicy.LOG);
+		scheduler.start();
+
+		now = 30;
+		assertEquals(100, scheduler.nextDeadline(now));
+		now = 110;
+		scheduler.awaitDeadline();
+		assertEquals(200, scheduler.nextDeadline(now));
+
+		SenderThreadResult result = writeResult(scheduler);
+		assertEquals(0, result.missedDeadlines);
+		assertEquals(1, result.pacedSends);
+		assertEquals(0, warnings.size());
+	}
+
+	@Test
+	public void shouldCatchUpOnMissedDeadlines() {
+		PacingScheduler scheduler = newScheduler(MissedDeadlinePolicy.CATCH_UP);
+		scheduler.start(0);
+
+		assertEquals(100, scheduler.nextDeadline(250));
+		assertEquals(200, scheduler.nextDeadline(250));
+		assertEquals(300, scheduler.nextDeadline(250));
+
+		SenderThreadResult result = writeResult(scheduler);
+		assertEquals(2, result.missedDeadlines);
+		assertEquals(0, result.skippedDeadlines);
+	}
+
+	@Test
+	public void shouldSkipMissedDeadlines() {
+		PacingScheduler scheduler = newScheduler(MissedDeadlinePolicy.SKIP);
+		scheduler.start(0);
+
+		assertEquals(400, scheduler.nextDeadline(350));
+		assertEquals(500, scheduler.nextDeadline(420));
+
+		SenderThreadResult result = writeResult(scheduler);
+		assertEquals(1, result.missedDeadlines);
+		assertEquals(3, result.skippedDeadlines);
+	}
+
+	@Test
+	public void shouldContinueFromLateSendAndLimitWarnings() {
+		PacingScheduler scheduler = newScheduler(MissedDeadlinePolicy.LOG);
+		scheduler.start(0);
+
+		assertEquals(250, scheduler.nextDeadline(250));
+		assertEquals(350, scheduler.nextDeadline(260));
+		assertEquals(1, warnings.size());
+
+		// Late on every send, only a count is logged once the interval has passed
+		long late = 350;
+		for (int i = 0; i < 10; ++i) {
+			late += 2 * PERIOD;
+			scheduler.nextDeadline(late);
+		}
+		assertEquals(1, warnings.size());
+		scheduler.nextDeadline(late + PacingScheduler.LOG_INTERVAL_NANOS);
+		assertEquals(2, warnings.size());
+		assertTrue(warnings.get(1), warnings.get(1).startsWith("Missed 11 send deadlines, by up to "));
+
+		assertEquals(12, writeResult(scheduler).missedDeadlines);
+	}
+
+	@Test
+	public void shouldRecordJitterOfLateWakeUp() throws Exception {
+		PacingScheduler scheduler = newScheduler(MissedDeadlinePolicy.CATCH_UP);
+		scheduler.start(0);
+		scheduler.nextDeadline(0);
+
+		now = 100 + TimeUnit.MICROSECONDS.toNanos(7);
+		scheduler.awaitDeadline();
+
+		SenderThreadResult result = writeResult(scheduler);
+		assertEquals(1, result.pacedSends);
+		assertEquals(7, result.totalJitterMicros);
+		assertEquals(7, result.maxJitterMicros);
+	}
+
+	private PacingScheduler newScheduler(MissedDeadlinePolicy policy) {
+		return new PacingScheduler(PERIOD, policy, () -> now);
+	}
+
+	private static SenderThreadResult writeResult(PacingScheduler scheduler) {
+		SenderThreadResult result = new SenderThreadResult();
+		scheduler.writeTo(result);
+		return result;
+	}
+}
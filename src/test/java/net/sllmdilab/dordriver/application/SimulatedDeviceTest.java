@@ -0,0 +1,156 @@
+package net.sllmdilab.dordriver.application;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import net.sllmdilab.dordriver.message.MessageCorpus;
+import net.sllmdilab.dordriver.mock.MockDocServer;
+import net.sllmdilab.dordriver.network.ConnectionManager;
+import net.sllmdilab.dordriver.network.ReconnectBackoff;
+import net.sllmdilab.dordriver.network.SelectorLoop;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class SimulatedDeviceTest {
+
+	//@formatter:off
+	private static final String MOCK_MESSAGE ="MSH|^~\\&|SendingApplication|SendingFacility|ReceivingApplication|ReceivingFacility|20120530112345||ORU^R01^ORU_R01|9879790004|P|2.6\r"+
+			"PID|||010101-2425||Doe^John^^^^^B\r"+
+			"OBR|2||XXX|WAVEFORM|||20150615145531.000|20150615145532.000\r"+
+			"OBX|1001|NA|131329^MDC_ECG_LEAD_I^MDC|1.1.1.1001|0.0^0.029039286658642516|266418^MDC_DIM_MILLI_VOLT^MDC||||||||20150615145531.000\r";
+	//@formatter:on
+
+	private MockDocServer server;
+	private MockDocServer lateServer;
+	private SelectorLoop loop;
+
+	@Before
+	public void setup() throws Exception {
+		server = new MockDocServer(0);
+		server.start();
+		loop = new SelectorLoop("test-devices");
+		loop.start();
+	}
+
+	@After
+	public void tearDown() {
+		loop.shutdown();
+		server.close();
+		if (lateServer != null) {
+			lateServer.close();
+		}
+	}
+
+	@Test
+	public void shouldSendAllMessagesAndRecordAcknowledgements() throws Exception {
+		SenderThreadResult result = new SenderThreadResult();
+		CountDownLatch completion = new CountDownLatch(1);
+		SimulatedDevice device = new SimulatedDevice(1, new InetSocketAddress("localhost", server.getPort()),
+				MessageCorpus.compile(Arrays.asList(MOCK_MESSAGE, MOCK_MESSAGE)), 5, 0, MissedDeadlinePolicy.CATCH_UP,
+				false, result, completion);
+
+		loop.register(device);
+
+		assertTrue(completion.await(10, TimeUnit.SECONDS));
+		assertEquals(5, result.sentMessages);
+		assertEquals(0, result.failedMessages);
+		assertEquals(5, result.ackLatencyHistogram.getTotalCount());
+		assertEquals(5, server.getReceivedMessages());
+		assertEquals(1, server.getAcceptedConnections());
+	}
+
+	@Test
+	public void shouldBackOffWithinBoundsAndGiveUpBeforeFirstConnect() throws Exception {
+		SenderThreadResult result = new SenderThreadResult();
+		CountDownLatch completion = new CountDownLatch(1);
+		SimulatedDevice device = newDevice(getUnusedPort(), result, completion);
+		RecordingBackoff backoff = new RecordingBackoff(20, 40);
+		device.setReconnectBackoff(backoff, 4);
+
+		long startNanos = System.nanoTime();
+		loop.register(device);
+
+		assertTrue(completion.await(10, TimeUnit.SECONDS));
+		assertEquals(4, result.failedConnections);
+		assertEquals(0, result.sentMessages);
+		// No delay after the last attempt, ceilings double from the initial delay up to the maximum
+		assertEquals(3, backoff.delays.size());
+		long[] ceilings = { 20, 40, 40 };
+		long totalDelayMillis = 0;
+		for (int i = 0; i < ceilings.length; ++i) {
+			long delay = backoff.delays.get(i);
+			assertTrue(delay + " > " + ceilings[i], delay >= 0 && delay <= ceilings[i]);
+			totalDelayMillis += delay;
+		}
+		assertTrue(System.nanoTime() - startNanos >= TimeUnit.MILLISECONDS.toNanos(totalDelayMillis));
+	}
+
+	@Test
+	public void shouldReconnectOnceReceiverIsUp() throws Exception {
+		int port = getUnusedPort();
+		SenderThreadResult result = new SenderThreadResult();
+		CountDownLatch completion = new CountDownLatch(1);
+		SimulatedDevice device = newDevice(port, result, completion);
+		RecordingBackoff backoff = new RecordingBackoff(10, 50);
+		device.setReconnectBackoff(backoff, ConnectionManager.UNLIMITED_ATTEMPTS);
+
+		loop.register(device);
+		assertTrue(backoff.backingOff.await(10, TimeUnit.SECONDS));
+		lateServer = new MockDocServer(port);
+		lateServer.start();
+
+		assertTrue(completion.await(10, TimeUnit.SECONDS));
+		assertEquals(5, result.sentMessages);
+		assertEquals(0, result.failedMessages);
+		assertTrue(result.failedConnections >= 2);
+		assertEquals(result.failedConnections, backoff.delays.size());
+		// Reset by the successful connect
+		assertEquals(0, backoff.getFailures());
+		assertEquals(1, lateServer.getAcceptedConnections());
+		assertEquals(5, lateServer.getReceivedMessages());
+	}
+
+	private SimulatedDevice newDevice(int port, SenderThreadResult result, CountDownLatch completion) {
+		return new SimulatedDevice(1, new InetSocketAddress("localhost", port),
+				MessageCorpus.compile(Arrays.asList(MOCK_MESSAGE, MOCK_MESSAGE)), 5, 0, MissedDeadlinePolicy.CATCH_UP,
+				false, result, completion);
+	}
+
+	private static int getUnusedPort() throws Exception {
+		try (ServerSocket socket = new ServerSocket(0, 1, InetAddress.getLoopbackAddress())) {
+			return socket.getLocalPort();
+		}
+	}
+
+	/**
+	 * Records the delays drawn, which are called for on the selector loop thread.
+	 */
+	private static class RecordingBackoff extends ReconnectBackoff {
+		private final List<Long> delays = Collections.synchronizedList(new ArrayList<Long>());
+		private final CountDownLatch backingOff = new CountDownLatch(2);
+
+		RecordingBackoff(long initialDelayMillis, long maxDelayMillis) {
+			super(initialDelayMillis, maxDelayMillis);
+		}
+
+		@Override
+		public long nextDelayMillis() {
+			long delay = super.nextDelayMillis();
+			delays.add(delay);
+			backingOff.countDown();
+			return delay;
+		}
+	}
+}
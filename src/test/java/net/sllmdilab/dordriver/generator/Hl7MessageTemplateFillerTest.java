@@ -3,11 +3,17 @@ package net.sllmdilab.dordriver.generator;
 import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 import static org.mockito.Matchers.any;
 import static org.mockito.Mockito.doReturn;
 import static org.mockito.Mockito.spy;
 
+import java.io.File;
 import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
@@ -20,6 +26,7 @@ import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
+import net.sllmdilab.dordriver.exeptions.DorDriverException;
 import net.sllmdilab.dordriver.generator.Hl7MessageTemplateFiller;
 import net.sllmdilab.dordriver.generator.WaveFormData;
 import net.sllmdilab.dordriver.generator.WaveFormDataFactory;
@@ -27,7 +34,9 @@ import net.sllmdilab.dordriver.generator.WaveFormModel;
 import net.sllmdilab.dordriver.generator.WaveFormType;
 
 import org.junit.Before;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 
 public class Hl7MessageTemplateFillerTest {
 
@@ -57,6 +66,9 @@ public class Hl7MessageTemplateFillerTest {
 
 	private Hl7MessageTemplateFiller filler;
 
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
 	@Before
 	public void setup() {
 		Hl7MessageTemplateFiller msgFiller = new Hl7MessageTemplateFiller();
@@ -100,6 +112,15 @@ public class Hl7MessageTemplateFillerTest {
 		assertArrayEquals(expectedOutput, actualOutput, 0.0001);
 	}
 
+	@Test
+	public void shouldSetRangeOfGeneratedSamples() {
+		WaveFormData wf = wfFactory.createRandomWaveFormData(WaveFormType.ECG1, 10.0, 1000, 1.0, WaveFormModel.LINEAR);
+
+		assertEquals(11, wf.getSamples().length);
+		assertEquals(0.0, wf.getRangeLow(), 0.0001);
+		assertEquals(1.0, wf.getRangeHigh(), 0.0001);
+	}
+
 	@Test
 	public void shouldParseFileCorrectly() throws IOException {
 		List<Map<String, String>> dataMaps = filler.loadWaveFormData(MOCK_DATA_PATH_1);
@@ -194,6 +215,249 @@ public class Hl7MessageTemplateFillerTest {
 		}
 	}
 
+	@Test
+	public void parallelFillingShouldGiveSameMessagesInSameOrder() throws Exception {
+		doReturn(fullMockTmpl).when(filler).loadTemplate(any());
+		filler.setDataPath(MOCK_DATA_PATH_3 + "," + MOCK_DATA_PATH_1 + "," + MOCK_DATA_PATH_3);
+		String sequential = filler.loadAndFillTemplate();
+
+		filler.setParallelism(3);
+		String parallel = filler.loadAndFillTemplate();
+
+		assertEquals(5, splitMessages(sequential).size());
+		assertEquals(sequential, parallel);
+	}
+
+	@Test
+	public void startTimesShouldKeepIncreasingAcrossDataFiles() throws Exception {
+		doReturn(fullMockTmpl).when(filler).loadTemplate(any());
+		filler.setDataPath(MOCK_DATA_PATH_3 + "," + MOCK_DATA_PATH_3);
+
+		for (int parallelism : new int[] { 1, 3 }) {
+			filler.setParallelism(parallelism);
+			List<String> msgs = splitMessages(filler.loadAndFillTemplate());
+
+			assertEquals(4, msgs.size());
+			for (int i = 1; i < msgs.size(); ++i) {
+				String previousEndTime = getObrField(msgs.get(i - 1), HL7_END_TIME_PATTERN);
+				String startTime = getObrField(msgs.get(i), HL7_START_TIME_PATTERN);
+				assertEquals(previousEndTime, startTime);
+				assertTrue(startTime.compareTo(getObrField(msgs.get(i - 1), HL7_START_TIME_PATTERN)) > 0);
+			}
+		}
+	}
+
+	@Test
+	public void shouldNotCarrySampleRateOfDataFileIntoNextFile() throws Exception {
+		doReturn("OBX|<SAMPLES_ECG1>\r").when(filler).loadTemplate(any());
+		// 12 rows without a sample rate are shorter than a time frame at the default 128 Hz
+		File withoutRate = folder.newFile();
+		try (PrintWriter writer = new PrintWriter(withoutRate, "UTF-8")) {
+			writer.println("'TIMESTAMP','SAMPLES_ECG1'");
+			for (int i = 0; i < 12; ++i) {
+				writer.println(String.format("'2015-06-21T00:00:%02d.000',0.1", i));
+			}
+		}
+		filler.setDataPath(MOCK_DATA_PATH_3 + "," + withoutRate.getPath());
+
+		assertEquals(3, splitMessages(filler.loadAndFillTemplate()).size());
+	}
+
+	@Test
+	public void shouldRejectDataFilesSavedUnderSameName() throws Exception {
+		doReturn(fullMockTmpl).when(filler).loadTemplate(any());
+		File dst = folder.newFolder("dst");
+		filler.setDataPath(MOCK_DATA_PATH_3 + "," + folder.newFolder("other").getPath() + "/wf-mock-samples-3.txt");
+
+		try {
+			filler.loadFillAndSaveTemplate(dst.getPath());
+			fail();
+		} catch (DorDriverException e) {
+			assertEquals("More than one data file would be saved as wf-mock-samples-3.hl7.", e.getMessage());
+		}
+		assertEquals(0, dst.list().length);
+	}
+
+	@Test
+	public void shouldReportPlaceholdersMissingFromDataFileBeforeFilling() throws Exception {
+		doReturn(fullMockTmpl + "OBX|1009|NA|150456^MDC_PRESS_BLD_ART^MDC|1.1.1.1009|<SAMPLES_ABP>|<RATE_ABP>\r").when(
+				filler).loadTemplate(any());
+		filler.setDataPath(MOCK_DATA_PATH_1);
+		StringWriter writer = new StringWriter();
+
+		try {
+			filler.loadAndFillTemplate(writer);
+			fail();
+		} catch (DorDriverException e) {
+			assertEquals("The place holders [SAMPLES_ABP, RATE_ABP] are not specified in the data file.",
+					e.getMessage());
+		}
+		assertEquals("", writer.toString());
+	}
+
+	@Test
+	public void shouldReportColumnsWithoutValuesBeforeFilling() throws Exception {
+		doReturn("OBX|<SAMPLES_ECG1>|<SAMPLES_SAT>|<RATE_SAT>\r").when(filler).loadTemplate(any());
+		File dataFile = folder.newFile();
+		try (PrintWriter writer = new PrintWriter(dataFile, "UTF-8")) {
+			writer.println("'TIMESTAMP','SAMPLES_ECG1','SAMPLES_SAT'");
+			writer.println("'2015-06-21T00:00:00.000',0.1");
+			writer.println("'2015-06-21T00:00:01.000',0.2");
+		}
+		filler.setDataPath(dataFile.getPath());
+		StringWriter writer = new StringWriter();
+
+		try {
+			filler.loadAndFillTemplate(writer);
+			fail();
+		} catch (DorDriverException e) {
+			assertEquals("The place holders [SAMPLES_SAT, RATE_SAT] have no values in the data file.", e.getMessage());
+		}
+		assertEquals("", writer.toString());
+	}
+
+	@Test
+	public void shouldReportPlaceholdersMissingFromGeneratedData() throws Exception {
+		doReturn(fullMockTmpl + "OBX|1009|NA|150456^MDC_PRESS_BLD_ART^MDC|1.1.1.1009|<SAMPLES_ABP>\r").when(filler)
+				.loadTemplate(any());
+
+		try {
+			filler.loadAndFillTemplate();
+			fail();
+		} catch (DorDriverException e) {
+			assertEquals("The place holders [SAMPLES_ABP] are not specified in the generated wave form data.",
+					e.getMessage());
+		}
+	}
+
+	@Test
+	public void shouldTakeTimestampsFromFirstColumnWhateverItsName() throws Exception {
+		doReturn("OBR|<START_TIME>|<END_TIME>|<TIMESTAMP>\rOBX|<SAMPLES_ECG1>\r").when(filler).loadTemplate(any());
+		File dataFile = folder.newFile();
+		try (PrintWriter writer = new PrintWriter(dataFile, "UTF-8")) {
+			writer.println("'TIME','SAMPLES_ECG1','RATE_ECG1'");
+			writer.println("'2015-06-21T00:00:00.000',0.1,1.0");
+		}
+		filler.setDataPath(dataFile.getPath());
+		StringWriter writer = new StringWriter();
+
+		filler.loadAndFillTemplate(writer);
+
+		List<String> msgs = splitMessages(writer.toString());
+		assertEquals(1, msgs.size());
+		assertTrue(msgs.get(0).endsWith("|0.1\r"));
+	}
+
+	@Test
+	public void shouldStreamEveryFullTimeFrameOfLongFile() throws Exception {
+		doReturn("OBR|<START_TIME>|<END_TIME>\rOBX|<SAMPLES_ECG1>|<RATE_ECG1>\r").when(filler).loadTemplate(any());
+		// 2 Hz and 3 second time frames, 6 rows per message and 2 rows left over
+		filler.setDataPath(writeDataFile(50, 50).getPath());
+
+		List<String> msgs = splitMessages(filler.loadAndFillTemplate());
+
+		assertEquals(8, msgs.size());
+		for (int i = 0; i < msgs.size(); ++i) {
+			String[] obx = msgs.get(i).split("\r")[1].split("\\|");
+			double[] expected = new double[6];
+			for (int j = 0; j < expected.length; ++j) {
+				expected[j] = (i * 6 + j) / 100.0;
+			}
+			assertArrayEquals(expected, parseSamples(obx[1]), 0.0001);
+			assertEquals(2.0, Double.parseDouble(obx[2]), 0.0001);
+			if (i > 0) {
+				String[] previousObr = msgs.get(i - 1).split("\r")[0].split("\\|");
+				String[] obr = msgs.get(i).split("\r")[0].split("\\|");
+				assertEquals(previousObr[2], obr[1]);
+			}
+		}
+	}
+
+	@Test
+	public void shouldCarryValuesOfColumnsWithoutValuesInLaterTimeFrames() throws Exception {
+		doReturn("OBX|<SAMPLES_ECG1>|<SAMPLES_SAT>|<RATE_ECG1>\r").when(filler).loadTemplate(any());
+		// Oxygen saturation only in the rows of the first time frame
+		filler.setDataPath(writeDataFile(18, 6).getPath());
+
+		List<String> msgs = splitMessages(filler.loadAndFillTemplate());
+
+		assertEquals(3, msgs.size());
+		double[] firstSat = { 0.0, 0.01, 0.02, 0.03, 0.04, 0.05 };
+		for (String msg : msgs) {
+			String[] obx = msg.split("\r")[0].split("\\|");
+			assertArrayEquals(firstSat, parseSamples(obx[2]), 0.0001);
+			assertEquals(2.0, Double.parseDouble(obx[3]), 0.0001);
+		}
+		String[] lastObx = msgs.get(2).split("\r")[0].split("\\|");
+		assertArrayEquals(new double[] { 0.12, 0.13, 0.14, 0.15, 0.16, 0.17 }, parseSamples(lastObx[1]), 0.0001);
+	}
+
+	@Test
+	public void shouldFillOneMessageFromFileShorterThanOneTimeFrame() throws Exception {
+		doReturn(fullMockTmpl).when(filler).loadTemplate(any());
+		// 10 rows at 250 Hz, a time frame holds 750
+		filler.setDataPath(MOCK_DATA_PATH_1);
+
+		List<String> msgs = splitMessages(filler.loadAndFillTemplate());
+
+		assertEquals(1, msgs.size());
+		assertWaveformDataEquals(getRowFromHL7Message(msgs.get(0), "OBX|1001|"), new double[] { 0.160, 0.185, 0.185,
+				0.185, 0.185, 0.185, 0.185, 0.185, 0.185, 0.200 });
+	}
+
+	@Test
+	public void shouldFillNoMessageFromFileWithoutRows() throws Exception {
+		doReturn(fullMockTmpl).when(filler).loadTemplate(any());
+		filler.setDataPath(writeDataFile(0, 0).getPath());
+
+		assertEquals("", filler.loadAndFillTemplate());
+	}
+
+	@Test
+	public void streamedFileShouldEqualMessagesFilledFromLoadedData() throws Exception {
+		doReturn(fullMockTmpl).when(filler).loadTemplate(any());
+		String dataPath = writeDataFile(50, 50).getPath();
+		filler.setDataPath(dataPath);
+		File dst = folder.newFile("filled.hl7");
+
+		filler.loadFillAndSaveTemplate(dst.getPath());
+
+		// All time frames loaded first, filled and joined, as before streaming
+		List<String> loaded = new ArrayList<>();
+		for (Map<String, String> values : filler.loadWaveFormData(dataPath)) {
+			loaded.add(filler.fillTemplate(fullMockTmpl, values));
+		}
+		assertEquals(8, loaded.size());
+		assertEquals(String.join("\n", loaded), new String(Files.readAllBytes(dst.toPath()), Charset.defaultCharset()));
+	}
+
+	/**
+	 * Writes a data file of rows at 2 Hz, the ECG sample of row i being i / 100 and the saturation sample, only in the
+	 * first satRows rows, too. The sample rate is given on the first row, which needs a saturation sample.
+	 */
+	private File writeDataFile(int rows, int satRows) throws IOException {
+		File file = folder.newFile();
+		try (PrintWriter writer = new PrintWriter(file, "UTF-8")) {
+			writer.println("'TIMESTAMP','SAMPLES_ECG1','SAMPLES_SAT','RATE_ECG1'");
+			for (int i = 0; i < rows; ++i) {
+				writer.print(String.format("'2015-06-21T00:00:%02d.%03d',%s", i / 2, i % 2 * 500, i / 100.0));
+				writer.print(i < satRows ? "," + i / 100.0 : "");
+				writer.println(i == 0 ? ",2.0" : "");
+			}
+		}
+		return file;
+	}
+
+	private String getObrField(String msg, Pattern pattern) {
+		Matcher m = pattern.matcher(getRowFromHL7Message(msg, "OBR|2|"));
+		assertTrue(m.find());
+		return m.group(2);
+	}
+
+	private double[] parseSamples(String samples) {
+		return Stream.of(samples.split("\\^")).mapToDouble(Double::parseDouble).toArray();
+	}
+
 	private List<String> splitMessages(String allMsgs) {
 		return Arrays.asList(allMsgs.split("\n"));
 	}
@@ -4,7 +4,7 @@ import static org.junit.Assert.assertEquals;
 import static org.mockito.Mockito.verify;
 
 import java.time.Duration;
-import java.time.ZonedDateTime;
+import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.Arrays;
 
@@ -74,11 +74,11 @@ public class SenderThreadTest {
 
 		Message messageArgument = messageArgumentCaptor.getAllValues().get(0);
 		Terser t = new Terser(messageArgument);
-		DateTimeFormatter dateTimeFormatter = DateTimeFormatter.ofPattern("yyyyMMddHHmmss.SSSx");
+		DateTimeFormatter dateTimeFormatter = DateTimeFormatter.ofPattern("yyyyMMddHHmmss.SSS");
 
-		ZonedDateTime obrStart = ZonedDateTime.parse(t.get("/.OBR-7"), dateTimeFormatter);
-		ZonedDateTime obrEnd = ZonedDateTime.parse(t.get("/.OBR-8"), dateTimeFormatter);
-		ZonedDateTime obx = ZonedDateTime.parse(t.get("/.OBSERVATION(1)/OBX-14"), dateTimeFormatter);
+		LocalDateTime obrStart = LocalDateTime.parse(t.get("/.OBR-7"), dateTimeFormatter);
+		LocalDateTime obrEnd = LocalDateTime.parse(t.get("/.OBR-8"), dateTimeFormatter);
+		LocalDateTime obx = LocalDateTime.parse(t.get("/.OBSERVATION(1)/OBX-14"), dateTimeFormatter);
 
 		assertEquals(1, senderThreadResult.sentMessages);
 		assertEquals(obrStart, obx);
@@ -0,0 +1,72 @@
+package net.sllmdilab.dordriver.generator;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.text.SimpleDateFormat;
+import java.util.Arrays;
+
+import net.sllmdilab.commons.util.Constants;
+
+import org.junit.Test;
+
+public class WaveFormCsvReaderTest {
+
+	@Test
+	public void shouldParseLikeSimpleDateFormatAndParseDouble() throws Exception {
+		String[] values = { "0.160", "'-0.185'", "1e-3", "12345678901234567", "0.1234567890123456789", "NaN", "+.5" };
+		String[] timestamps = { "'2015-06-21T00:00:00.000'", "2015-06-21T00:00:59.999+0000", "2015-6-21T1:02:03.4" };
+		StringBuilder csv = new StringBuilder("'TIMESTAMP','SAMPLES_ECG1'\r\n");
+		for (int i = 0; i < values.length; ++i) {
+			csv.append(timestamps[i % timestamps.length]).append(',').append(values[i]).append(i % 2 == 0 ? "\n" : "\r\n");
+		}
+		WaveFormTable table = new WaveFormTable();
+
+		try (WaveFormCsvReader reader = new WaveFormCsvReader(new StringReader(csv.toString()))) {
+			assertEquals(Arrays.asList("TIMESTAMP", "SAMPLES_ECG1"), reader.readHeader());
+			while (reader.readRow(table)) {
+			}
+		}
+
+		SimpleDateFormat format = new SimpleDateFormat(Constants.ISO_DATE_FORMAT);
+		SampleColumn samples = table.getColumn("SAMPLES_ECG1");
+		assertEquals(values.length, table.getRows());
+		for (int i = 0; i < values.length; ++i) {
+			assertEquals(Double.parseDouble(values[i].replace("'", "")), samples.get(i), 0.0);
+			long timestamp = format.parse(timestamps[i % timestamps.length].replace("'", "")).getTime();
+			assertEquals(Double.toString(timestamp), table.joinTimestamps(i, i + 1, "^"));
+		}
+	}
+
+	@Test
+	public void shouldSkipMissingValuesAtEndOfRow() throws IOException {
+		String csv = "'TIMESTAMP','SAMPLES_SAT','RATE_SAT'\n" + "'2015-06-21T00:00:00.000',0.1,250\n"
+				+ "'2015-06-21T00:00:00.004',0.2,,\n" + "'2015-06-21T00:00:00.008',0.3";
+		WaveFormTable table = new WaveFormTable();
+
+		try (WaveFormCsvReader reader = new WaveFormCsvReader(new StringReader(csv))) {
+			reader.readHeader();
+			for (int i = 0; i < 3; ++i) {
+				assertTrue(reader.readRow(table));
+			}
+			assertFalse(reader.readRow(table));
+		}
+
+		assertEquals(3, table.getColumn("SAMPLES_SAT").size());
+		assertEquals(1, table.getColumn("RATE_SAT").size());
+		assertEquals(8, table.getTimeSpanMillis(0, 3));
+	}
+
+	@Test(expected = NumberFormatException.class)
+	public void shouldRejectMissingValueInsideRow() throws IOException {
+		String csv = "TIMESTAMP,SAMPLES_ECG1,SAMPLES_SAT\n2015-06-21T00:00:00.000,,0.1\n";
+
+		try (WaveFormCsvReader reader = new WaveFormCsvReader(new StringReader(csv))) {
+			reader.readHeader();
+			reader.readRow(new WaveFormTable());
+		}
+	}
+}
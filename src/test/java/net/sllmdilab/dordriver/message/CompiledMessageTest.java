@@ -0,0 +1,130 @@
+package net.sllmdilab.dordriver.message;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Date;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import ca.uhn.hl7v2.DefaultHapiContext;
+import ca.uhn.hl7v2.model.Message;
+import ca.uhn.hl7v2.model.v26.datatype.DTM;
+import ca.uhn.hl7v2.parser.CanonicalModelClassFactory;
+import ca.uhn.hl7v2.parser.PipeParser;
+import ca.uhn.hl7v2.util.Terser;
+
+public class CompiledMessageTest {
+
+	//@formatter:off
+	private static final String MOCK_MESSAGE ="MSH|^~\\&|SendingApplication|SendingFacility|ReceivingApplication|ReceivingFacility|20120530112345||ORU^R01^ORU_R01|9879790004|P|2.6|||NE|AL|USA|ASCII|EN^English^ISO639||IHE_PCD_ORU_R01^IHE PCD^1.3.6.1.4.1.19376.1.6.1.1.1^ISO\r"+
+			"PID|||010101-2425||Doe^John^^^^^B\r"+
+			"PV1||I|ICU^2^23\r"+
+			"OBR|2||XXX|WAVEFORM|||20150615145531.000|20150615145532.000\r"+
+			"OBX|1000||69965^MDC_DEV_MON_PHYSIO_MULTI_PARAM_MDS^MDC|1.0.0.0||||F||||||||||ABC123\r"+
+			"OBX|1001|NA|131329^MDC_ECG_LEAD_I^MDC|1.1.1.1001|0.0^0.029039286658642516|266418^MDC_DIM_MILLI_VOLT^MDC||||||||20150615145531.000\r"+
+			"OBX|1002|NM|0^MDC_ATTR_SAMP_RATE^MDC|1.1.1.1001.1|256.0|264608^MDC_DIM_PER_SEC\r"+
+			"OBR|3||XXX|1234^CONTINUOUS_WAVEFORM^YYY|||20150615145533.000|20150615145534.000\r"+
+			"OBX|1014|NA|150456^MDC_PULS_OXIM_SAT_O2_WAVEFORM^MDC|1.1.1.1004|0.0^0.029039286658642516|262688^MDC_DIM_PERCENT^MDC||||||||20150615145533.000\r";
+	//@formatter:on
+
+	private static final long OFFSET_MILLIS = 86400000L + 1234L;
+
+	private PipeParser parser;
+
+	@Before
+	public void setup() {
+		parser = new DefaultHapiContext(new CanonicalModelClassFactory("2.6")).getPipeParser();
+	}
+
+	@Test
+	public void shouldRecordObservationTimesOfFirstObr() throws Exception {
+		CompiledMessage compiledMessage = CompiledMessage.compile(MOCK_MESSAGE);
+
+		assertEquals(1000L, compiledMessage.getObservationEndMillis() - compiledMessage.getObservationStartMillis());
+		assertEquals(parseDtm("20150615145531.000"), compiledMessage.getObservationStartMillis().longValue());
+	}
+
+	@Test
+	public void shouldOffsetObservationTimestamps() throws Exception {
+		Terser terser = encodeAndParse(CompiledMessage.compile(MOCK_MESSAGE), 0L, false);
+
+		assertEquals(parseDtm("20150615145531.000") + OFFSET_MILLIS, parseDtm(terser.get("/.OBR-7")));
+		assertEquals(parseDtm("20150615145532.000") + OFFSET_MILLIS, parseDtm(terser.get("/.OBR-8")));
+		assertEquals(parseDtm("20150615145531.000") + OFFSET_MILLIS,
+				parseDtm(terser.get("/.ORDER_OBSERVATION(0)/OBSERVATION(1)/OBX-14")));
+		assertEquals(parseDtm("20150615145533.000") + OFFSET_MILLIS,
+				parseDtm(terser.get("/.ORDER_OBSERVATION(1)/OBR-7")));
+		assertEquals(parseDtm("20150615145533.000") + OFFSET_MILLIS,
+				parseDtm(terser.get("/.ORDER_OBSERVATION(1)/OBSERVATION(0)/OBX-14")));
+	}
+
+	@Test
+	public void shouldFormatTimestampsToSameInstantAsHapi() throws Exception {
+		// HAPI drops trailing zeros of the fraction while compiled messages always write milliseconds
+		long second = System.currentTimeMillis() / 1000 * 1000;
+		for (long messageTime : new long[] { second + 123, second + 120, second + 100, second }) {
+			Terser terser = encodeAndParse(CompiledMessage.compile(MOCK_MESSAGE), messageTime, false);
+
+			DTM expected = new DTM(null);
+			expected.setValue(new Date(messageTime));
+
+			assertEquals(parseDtm(expected.getValue()), parseDtm(terser.get("/.MSH-7")));
+			assertEquals(messageTime, parseDtm(terser.get("/.MSH-7")));
+		}
+	}
+
+	@Test
+	public void shouldOnlyReplaceMessageTimeWhenKeepingOriginalTimestamps() throws Exception {
+		long messageTime = System.currentTimeMillis();
+		Terser terser = encodeAndParse(CompiledMessage.compile(MOCK_MESSAGE), messageTime, true);
+
+		assertEquals(messageTime, parseDtm(terser.get("/.MSH-7")));
+		assertEquals("20150615145531.000", terser.get("/.OBR-7"));
+		assertEquals("20150615145532.000", terser.get("/.OBR-8"));
+	}
+
+	@Test
+	public void shouldNotExceedMaxEncodedLength() throws Exception {
+		CompiledMessage compiledMessage = CompiledMessage.compile(MOCK_MESSAGE);
+		byte[] buffer = new byte[compiledMessage.getMaxEncodedLength()];
+
+		int length = compiledMessage.encode(buffer, System.currentTimeMillis(), OFFSET_MILLIS, false);
+
+		assertTrue(length <= buffer.length);
+	}
+
+	@Test
+	public void shouldWriteDeviceIdentity() throws Exception {
+		CompiledMessage compiledMessage = CompiledMessage.compile(MOCK_MESSAGE);
+		byte[] buffer = new byte[compiledMessage.getMaxEncodedLength()];
+		DeviceIdentity deviceIdentity = new DeviceIdentity(42);
+
+		compiledMessage.encode(buffer, 0, System.currentTimeMillis(), OFFSET_MILLIS, false, deviceIdentity);
+		int length = compiledMessage.encode(buffer, 0, System.currentTimeMillis(), OFFSET_MILLIS, false,
+				deviceIdentity);
+		Terser terser = new Terser(parser.parse(new String(buffer, 0, length, CompiledMessage.CHARSET)));
+
+		assertEquals("9879790004-42-1", terser.get("/.MSH-10"));
+		assertEquals("010101-2425-42", terser.get("/.PID-3"));
+		assertEquals("ICU", terser.get("/.PV1-3-1"));
+		assertEquals("23-42", terser.get("/.PV1-3-3"));
+		assertEquals("ABC123-42", terser.get("/.ORDER_OBSERVATION(0)/OBSERVATION(0)/OBX-18"));
+		assertEquals(2, deviceIdentity.getSequenceNumber());
+	}
+
+	private Terser encodeAndParse(CompiledMessage compiledMessage, long messageTime, boolean keepOriginalTimestamp)
+			throws Exception {
+		byte[] buffer = new byte[compiledMessage.getMaxEncodedLength()];
+		int length = compiledMessage.encode(buffer, messageTime, OFFSET_MILLIS, keepOriginalTimestamp);
+		Message message = parser.parse(new String(buffer, 0, length, CompiledMessage.CHARSET));
+		return new Terser(message);
+	}
+
+	private long parseDtm(String value) throws Exception {
+		DTM dtm = new DTM(null);
+		dtm.setValue(value);
+		return dtm.getValueAsDate().getTime();
+	}
+}
@@ -0,0 +1,184 @@
+package net.sllmdilab.dordriver.message;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.Date;
+import java.util.Random;
+import java.util.TimeZone;
+
+import org.junit.Test;
+
+import ca.uhn.hl7v2.model.DataTypeException;
+import ca.uhn.hl7v2.model.v26.datatype.DTM;
+
+public class DtmCodecTest {
+
+	private static final TimeZone LOCAL_ZONE = TimeZone.getDefault();
+
+	//@formatter:off
+	private static final String[] LOCAL_VALUES = {
+			"20150615", "2015061514", "201506151455", "20150615145531", "20150615145531.1", "20150615145531.12",
+			"20150615145531.123", "20150615145531.1234", "20160229235959.999", "20150329023000" };
+	private static final String[] VALUES = {
+			"2015", "201506", "20150615145531.123+0200", "20150615145531.123-0530", "20150615145531+0000",
+			"201506151455-1000", "20151231235959.999+0100", "19700101000000.000+0000", "99991231235959.999-1200",
+			"20151025023000.500" };
+	private static final String[] INVALID_VALUES = {
+			"", "201", "20150", "2015061", "20151301", "20150230", "20150229", "2015061524", "201506151460",
+			"20150615145560", "20150615145531.", "20150615145531.12345", "201506151455.1", "20150615145531+02",
+			"20150615145531+02000", "20150615145531*0200", "2015a615", "20150615145531.12a" };
+	//@formatter:on
+
+	@Test
+	public void shouldParseLikeHapi() throws Exception {
+		// HAPI 2.2 gets values without a day and values with a UTC offset wrong, see shouldParseLikeJavaTime
+		for (String value : LOCAL_VALUES) {
+			assertEquals(value, parseWithHapi(value), parse(value));
+		}
+	}
+
+	@Test
+	public void shouldParseLikeJavaTime() throws Exception {
+		for (String value : LOCAL_VALUES) {
+			assertEquals(value, parseWithJavaTime(value), parse(value));
+		}
+		for (String value : VALUES) {
+			assertEquals(value, parseWithJavaTime(value), parse(value));
+		}
+	}
+
+	@Test
+	public void shouldRejectInvalidValues() {
+		for (String value : INVALID_VALUES) {
+			try {
+				parse(value);
+				fail("Accepted " + value);
+			} catch (DataTypeException e) {
+				// Expected
+			}
+		}
+	}
+
+	@Test
+	public void shouldGetPrecisionAndOffset() throws Exception {
+		assertEquals(4, getPrecision("2015"));
+		assertEquals(14, getPrecision("20150615145531+0200"));
+		assertEquals(17, getPrecision("20150615145531.123"));
+		assertEquals(18, getPrecision("20150615145531.1234-0530"));
+
+		assertEquals(DtmCodec.NO_OFFSET, getOffsetMinutes("20150615145531.123"));
+		assertEquals(120, getOffsetMinutes("20150615145531+0200"));
+		assertEquals(-330, getOffsetMinutes("20150615145531.1234-0530"));
+		assertEquals(0, getOffsetMinutes("2015061514-0000"));
+	}
+
+	@Test
+	public void shouldFormatLikeHapi() throws Exception {
+		Random random = new Random(0);
+		for (int i = 0; i < 1000; ++i) {
+			// HAPI drops trailing zeros of the fraction, use times without any
+			long millis = random.nextLong() % (200L * 365 * 86400000) / 10 * 10 + 1 + random.nextInt(9);
+
+			DTM expected = new DTM(null);
+			expected.setValue(new Date(millis));
+
+			assertEquals(expected.getValue(),
+					DtmCodec.format(millis, DtmCodec.MILLIS_PRECISION, DtmCodec.LOCAL_OFFSET, LOCAL_ZONE));
+		}
+	}
+
+	@Test
+	public void shouldKeepPrecisionAndOffsetWhenAddingMillis() throws Exception {
+		assertEquals("20150616145532.357", DtmCodec.addMillis("20150615145531.123", 86401234L, LOCAL_ZONE));
+		assertEquals("20150615145532.3", DtmCodec.addMillis("20150615145531.1", 1234L, LOCAL_ZONE));
+		assertEquals("20150615145532.3570-0530", DtmCodec.addMillis("20150615145531.1230-0530", 1234L, LOCAL_ZONE));
+		assertEquals("20150615145532+0200", DtmCodec.addMillis("20150615145531+0200", 1234L, LOCAL_ZONE));
+		assertEquals("201506160000+0000", DtmCodec.addMillis("201506152359+0000", 60000L, LOCAL_ZONE));
+		assertEquals("20160101", DtmCodec.addMillis("20151231", 86400000L, LOCAL_ZONE));
+		assertEquals("20150615145530.877+0000", DtmCodec.addMillis("20150615145531.000+0000", -123L, LOCAL_ZONE));
+	}
+
+	@Test
+	public void shouldRoundTripEveryPrecision() throws Exception {
+		Random random = new Random(1);
+		int[] precisions = { 4, 6, 8, 10, 12, 14, 15, 16, 17, 18 };
+		int[] offsets = { DtmCodec.NO_OFFSET, 0, 60, -330, 845 };
+		byte[] buffer = new byte[DtmCodec.MAX_LENGTH];
+
+		for (int i = 0; i < 1000; ++i) {
+			// Time zone rules of TimeZone and java.time differ before 1900
+			long millis = 1000000000000L + random.nextLong() % (30L * 365 * 86400000);
+			int precision = precisions[random.nextInt(precisions.length)];
+			int offsetMinutes = offsets[random.nextInt(offsets.length)];
+
+			int length = DtmCodec.format(millis, precision, offsetMinutes, LOCAL_ZONE, buffer, 0);
+			String value = new String(buffer, 0, length, CompiledMessage.CHARSET);
+
+			assertEquals(value, DtmCodec.getLength(precision, offsetMinutes), length);
+			assertEquals(value, precision, DtmCodec.getPrecision(buffer, 0, length));
+			assertEquals(value, offsetMinutes, DtmCodec.getOffsetMinutes(buffer, 0, length));
+			assertEquals(value, parseWithJavaTime(value), DtmCodec.parse(buffer, 0, length, LOCAL_ZONE));
+			if (precision >= 17) {
+				assertEquals(value, millis, DtmCodec.parse(buffer, 0, length, LOCAL_ZONE));
+			}
+		}
+	}
+
+	@Test
+	public void shouldWriteAtPosition() {
+		byte[] buffer = "xx____________________________".getBytes(CompiledMessage.CHARSET);
+
+		int end = DtmCodec.format(0, DtmCodec.MILLIS_PRECISION, 60, LOCAL_ZONE, buffer, 2);
+
+		assertEquals(2 + 23, end);
+		assertEquals("xx19700101010000.000+0100_____", new String(buffer, CompiledMessage.CHARSET));
+	}
+
+	private long parse(String value) throws DataTypeException {
+		byte[] bytes = value.getBytes(CompiledMessage.CHARSET);
+		return DtmCodec.parse(bytes, 0, bytes.length, LOCAL_ZONE);
+	}
+
+	private int getPrecision(String value) throws DataTypeException {
+		byte[] bytes = value.getBytes(CompiledMessage.CHARSET);
+		return DtmCodec.getPrecision(bytes, 0, bytes.length);
+	}
+
+	private int getOffsetMinutes(String value) {
+		byte[] bytes = value.getBytes(CompiledMessage.CHARSET);
+		return DtmCodec.getOffsetMinutes(bytes, 0, bytes.length);
+	}
+
+	/**
+	 * Reference implementation of DTM parsing using java.time.
+	 */
+	private long parseWithJavaTime(String value) {
+		String offset = value.matches(".*[+-]\\d{4}") ? value.substring(value.length() - 5) : null;
+		String local = offset != null ? value.substring(0, value.length() - 5) : value;
+		String fraction = local.length() > 14 ? (local.substring(15) + "00").substring(0, 3) : "000";
+
+		LocalDateTime time = LocalDateTime.of(Integer.parseInt(local.substring(0, 4)), component(local, 4, 1),
+				component(local, 6, 1), component(local, 8, 0), component(local, 10, 0), component(local, 12, 0),
+				Integer.parseInt(fraction) * 1000000);
+		if (offset == null) {
+			return time.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+		}
+		int minutes = Integer.parseInt(offset.substring(1, 3)) * 60 + Integer.parseInt(offset.substring(3));
+		return time.toInstant(ZoneOffset.ofTotalSeconds((offset.charAt(0) == '-' ? -minutes : minutes) * 60))
+				.toEpochMilli();
+	}
+
+	private int component(String value, int start, int defaultValue) {
+		return value.length() >= start + 2 ? Integer.parseInt(value.substring(start, start + 2)) : defaultValue;
+	}
+
+	private long parseWithHapi(String value) throws Exception {
+		DTM dtm = new DTM(null);
+		dtm.setValue(value);
+		return dtm.getValueAsDate().getTime();
+	}
+}
@@ -0,0 +1,94 @@
+package net.sllmdilab.dordriver.message;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+public class Hl7MessageReaderTest {
+
+	//@formatter:off
+	private static final String MESSAGE_1 ="MSH|^~\\&|SendingApplication|SendingFacility|ReceivingApplication|ReceivingFacility|20120530112345||ORU^R01^ORU_R01|9879790004|P|2.6\r"+
+			"PID|||010101-2425||Doe^John^^^^^B\r"+
+			"OBR|2||XXX|WAVEFORM|||20150615145531.000|20150615145532.000\r"+
+			"OBX|1001|NA|131329^MDC_ECG_LEAD_I^MDC|1.1.1.1001|0.0^0.029039286658642516|266418^MDC_DIM_MILLI_VOLT^MDC\r";
+	private static final String MESSAGE_2 ="MSH|^~\\&|SendingApplication|SendingFacility|ReceivingApplication|ReceivingFacility|20120530112346||ADT^A01|9879790005|P|2.6\r"+
+			"PID|||010101-2425||Doe^John^^^^^B\r";
+	//@formatter:on
+
+	@Test
+	public void shouldSplitOnMshSegments() throws Exception {
+		List<String> messages = readAll(MESSAGE_1 + MESSAGE_2);
+
+		assertEquals(2, messages.size());
+		assertEquals(MESSAGE_1, messages.get(0));
+		assertEquals(MESSAGE_2, messages.get(1));
+	}
+
+	@Test
+	public void shouldSplitOnMllpBlocks() throws Exception {
+		List<String> messages = readAll("\u000b" + MESSAGE_1 + "\u001c\r\n\u000b" + MESSAGE_2 + "\u001c\r");
+
+		assertEquals(2, messages.size());
+		assertEquals(MESSAGE_1, messages.get(0));
+		assertEquals(MESSAGE_2, messages.get(1));
+	}
+
+	@Test
+	public void shouldNormalizeLineEndingsAndSkipBlankLines() throws Exception {
+		List<String> messages = readAll("\n" + MESSAGE_1.replace("\r", "\r\n") + "\n\n" + MESSAGE_2.replace("\r", "\n"));
+
+		assertEquals(2, messages.size());
+		assertEquals(MESSAGE_1, messages.get(0));
+		assertEquals(MESSAGE_2, messages.get(1));
+	}
+
+	@Test
+	public void shouldTerminateLastSegment() throws Exception {
+		List<String> messages = readAll(MESSAGE_1.substring(0, MESSAGE_1.length() - 1));
+
+		assertEquals(1, messages.size());
+		assertEquals(MESSAGE_1, messages.get(0));
+	}
+
+	@Test
+	public void shouldReadMessagesLargerThanBuffers() throws Exception {
+		StringBuilder sb = new StringBuilder(MESSAGE_1);
+		for (int i = 0; i < 5000; ++i) {
+			sb.append("OBX|").append(i).append("|NM|0^MDC_ATTR_SAMP_RATE^MDC|1.1.1.1001.1|256.0|264608^MDC_DIM_PER_SEC\r");
+		}
+		String largeMessage = sb.toString();
+
+		List<String> messages = readAll(largeMessage + MESSAGE_2 + largeMessage);
+
+		assertEquals(3, messages.size());
+		assertEquals(largeMessage, messages.get(0));
+		assertEquals(MESSAGE_2, messages.get(1));
+		assertEquals(largeMessage, messages.get(2));
+	}
+
+	@Test
+	public void shouldGetMessageType() {
+		assertEquals("ORU^R01", Hl7MessageReader.getMessageType(MESSAGE_1));
+		assertEquals("ADT^A01", Hl7MessageReader.getMessageType(MESSAGE_2));
+		assertEquals("", Hl7MessageReader.getMessageType("PID|||010101-2425\r"));
+	}
+
+	private List<String> readAll(String input) throws IOException {
+		List<String> messages = new ArrayList<>();
+		try (Hl7MessageReader reader = new Hl7MessageReader(new ByteArrayInputStream(
+				input.getBytes(CompiledMessage.CHARSET)))) {
+			String message;
+			while ((message = reader.next()) != null) {
+				messages.add(message);
+			}
+			assertNull(reader.next());
+		}
+		return messages;
+	}
+}
@@ -0,0 +1,84 @@
+package net.sllmdilab.dordriver.message;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import net.sllmdilab.dordriver.exeptions.DorDriverException;
+
+import org.junit.Test;
+
+public class MessageCorpusTest {
+
+	//@formatter:off
+	private static final String WAVEFORM_MESSAGE ="MSH|^~\\&|SendingApplication|SendingFacility|ReceivingApplication|ReceivingFacility|20120530112345||ORU^R01^ORU_R01|9879790004|P|2.6\r"+
+			"PID|||010101-2425||Doe^John^^^^^B\r"+
+			"OBR|2||XXX|WAVEFORM|||20150615145531.000|20150615145532.000\r"+
+			"OBX|1001|NA|131329^MDC_ECG_LEAD_I^MDC|1.1.1.1001|0.0^0.029039286658642516|266418^MDC_DIM_MILLI_VOLT^MDC||||||||20150615145531.000\r";
+	private static final String PARAMETER_MESSAGE ="MSH|^~\\&|SendingApplication|SendingFacility|ReceivingApplication|ReceivingFacility|20120530112345||ORU^R01^ORU_R01|9879790005|P|2.6\r"+
+			"PID|||010101-2425||Doe^John^^^^^B\r"+
+			"OBR|2||XXX|PARAMETER|||20150615145533.000\r"+
+			"OBX|1|NM|147842^MDC_ECG_HEART_RATE^MDC|1.1.1.1|72|264864^MDC_DIM_BEAT_PER_MIN^MDC||||||||20150615145533.000\r";
+	//@formatter:on
+
+	private static final String MALFORMED_MESSAGE = WAVEFORM_MESSAGE.replace("20150615145532.000", "2015XX");
+	private static final String MISSING_MSH = WAVEFORM_MESSAGE.substring(WAVEFORM_MESSAGE.indexOf("PID"));
+	private static final String SECOND_WAVEFORM_MESSAGE = WAVEFORM_MESSAGE.replace("145532", "145534");
+
+	@Test
+	public void shouldKeepOnlyCompiledMessagesWhenCompiling() {
+		MessageCorpus corpus = MessageCorpus.compile(Arrays.asList(WAVEFORM_MESSAGE, SECOND_WAVEFORM_MESSAGE));
+
+		assertEquals(2, corpus.size());
+		assertFalse(corpus.hasMessages());
+		assertEquals(WAVEFORM_MESSAGE.length(), corpus.getCompiledMessage(0).getTemplateLength());
+		assertEquals(3000, corpus.getMessageDurationMillis().longValue());
+		assertTrue(corpus.getMaxEncodedLength() >= WAVEFORM_MESSAGE.length());
+	}
+
+	@Test(expected = DorDriverException.class)
+	public void shouldNotKeepOriginalsWhenCompiling() {
+		MessageCorpus.compile(Arrays.asList(WAVEFORM_MESSAGE)).getMessage(0);
+	}
+
+	@Test
+	public void shouldKeepOnlyOriginalsAndObservationTimesWhenAnalysing() {
+		MessageCorpus corpus = MessageCorpus.analyse(Arrays.asList(WAVEFORM_MESSAGE, SECOND_WAVEFORM_MESSAGE));
+
+		assertEquals(2, corpus.size());
+		assertTrue(corpus.hasMessages());
+		assertEquals(SECOND_WAVEFORM_MESSAGE, corpus.getMessage(1));
+		assertEquals(3000, corpus.getMessageDurationMillis().longValue());
+		assertEquals(MessageCorpus.compile(Arrays.asList(WAVEFORM_MESSAGE, SECOND_WAVEFORM_MESSAGE))
+				.getTimestampDifferenceMillis(1, 0), corpus.getTimestampDifferenceMillis(1, 0));
+	}
+
+	@Test(expected = DorDriverException.class)
+	public void shouldNotCompileWhenAnalysing() {
+		MessageCorpus.analyse(Arrays.asList(WAVEFORM_MESSAGE)).getCompiledMessage(0);
+	}
+
+	@Test
+	public void shouldSkipMessagesThatCanNotBeCompiled() {
+		for (boolean compile : new boolean[] { true, false }) {
+			List<String> messages = Arrays.asList(MALFORMED_MESSAGE, WAVEFORM_MESSAGE, MISSING_MSH,
+					PARAMETER_MESSAGE);
+			MessageCorpus corpus = compile ? MessageCorpus.compile(messages) : MessageCorpus.analyse(messages);
+
+			assertEquals(2, corpus.size());
+			// The parameter message has no OBR-8, so there is no waveform continuation
+			assertNull(corpus.getMessageDurationMillis());
+			assertEquals(corpus.getTimestampDifferenceMillis(0, 0) - 1000, corpus.getTimestampDifferenceMillis(1, 0));
+		}
+	}
+
+	@Test(expected = DorDriverException.class)
+	public void shouldRejectCorpusWithoutValidMessages() {
+		MessageCorpus.analyse(Collections.singletonList(MALFORMED_MESSAGE));
+	}
+}
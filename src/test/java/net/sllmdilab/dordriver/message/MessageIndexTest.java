@@ -0,0 +1,119 @@
+package net.sllmdilab.dordriver.message;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+import net.sllmdilab.dordriver.exeptions.DorDriverException;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class MessageIndexTest {
+
+	//@formatter:off
+	private static final String ORU_MESSAGE ="MSH|^~\\&|SendingApplication|SendingFacility|ReceivingApplication|ReceivingFacility|20120530112345||ORU^R01^ORU_R01|9879790004|P|2.6\r"+
+			"PID|||010101-2425||Doe^John^^^^^B\r"+
+			"OBR|2||XXX|WAVEFORM|||20150615145531.000|20150615145532.000\r"+
+			"OBX|1001|NA|131329^MDC_ECG_LEAD_I^MDC|1.1.1.1001|0.0^0.029039286658642516|266418^MDC_DIM_MILLI_VOLT^MDC||||||||20150615145531.000\r";
+	private static final String ADT_MESSAGE ="MSH|^~\\&|SendingApplication|SendingFacility|ReceivingApplication|ReceivingFacility|20120530112346||ADT^A01|9879790005|P|2.6\r"+
+			"PID|||010101-2425||Doe^John^^^^^B\r";
+	//@formatter:on
+
+	private static final long MESSAGE_TIME_MILLIS = 1434376531123L;
+	private static final long OFFSET_MILLIS = 86400000L + 1234L;
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void shouldEncodeLikeCompiledMessage() throws Exception {
+		File recording = write("\u000b" + ORU_MESSAGE + "\u001c\r\n\u000b" + ADT_MESSAGE + "\u001c\r\n\u000b"
+				+ ORU_MESSAGE.replace("9879790004", "9879790006") + "\u001c\r\n");
+
+		MessageIndex index = MessageIndex.open(recording);
+
+		assertEquals(2, index.size());
+		assertEquals("ORU^R01", index.getMessageType(1));
+		assertEquals(encode(CompiledMessage.compile(ORU_MESSAGE)), encode(index.get(0)));
+		assertEquals(encode(CompiledMessage.compile(ORU_MESSAGE.replace("9879790004", "9879790006"))),
+				encode(index.get(1)));
+		assertEquals(CompiledMessage.compile(ORU_MESSAGE).getObservationStartMillis(),
+				index.get(0).getObservationStartMillis());
+	}
+
+	@Test
+	public void shouldReuseCurrentIndex() throws Exception {
+		File recording = write(ORU_MESSAGE + ORU_MESSAGE);
+		MessageIndex.open(recording);
+		byte[] indexBytes = Files.readAllBytes(MessageIndex.getIndexFile(recording).toPath());
+		assertTrue(MessageIndex.getIndexFile(recording).setLastModified(0));
+
+		MessageIndex index = MessageIndex.open(recording);
+
+		assertEquals(2, index.size());
+		assertArrayEquals(indexBytes, Files.readAllBytes(MessageIndex.getIndexFile(recording).toPath()));
+		assertEquals(0, MessageIndex.getIndexFile(recording).lastModified());
+	}
+
+	@Test
+	public void shouldAcceptUnterminatedLastSegment() throws Exception {
+		File recording = write(ORU_MESSAGE.substring(0, ORU_MESSAGE.length() - 1));
+
+		CompiledMessage message = MessageIndex.open(recording).get(0);
+
+		String expected = encode(CompiledMessage.compile(ORU_MESSAGE));
+		assertEquals(ORU_MESSAGE.length() - 1, message.getTemplateLength());
+		assertEquals(expected.substring(0, expected.length() - 1), encode(message));
+	}
+
+	@Test(expected = DorDriverException.class)
+	public void shouldRejectLineFeedTerminatedSegments() throws Exception {
+		MessageIndex.open(write(ORU_MESSAGE.replace('\r', '\n')));
+	}
+
+	@Test
+	public void shouldReplaceIndexWithoutLeavingTemporaryFiles() throws Exception {
+		File recording = write(ORU_MESSAGE);
+		File indexFile = MessageIndex.getIndexFile(recording);
+		Files.write(indexFile.toPath(), new byte[] { 1, 2, 3 });
+
+		MessageIndex index = MessageIndex.open(recording);
+
+		assertEquals(1, index.size());
+		assertEquals(encode(CompiledMessage.compile(ORU_MESSAGE)), encode(index.get(0)));
+		String[] files = folder.getRoot().list();
+		Arrays.sort(files);
+		assertArrayEquals(new String[] { recording.getName(), indexFile.getName() }, files);
+	}
+
+	@Test
+	public void shouldDeleteTemporaryFilesWhenIndexingFails() throws Exception {
+		File recording = write(ORU_MESSAGE.replace('\r', '\n'));
+
+		try {
+			MessageIndex.open(recording);
+		} catch (DorDriverException e) {
+			// Expected
+		}
+
+		assertArrayEquals(new String[] { recording.getName() }, folder.getRoot().list());
+	}
+
+	private File write(String content) throws Exception {
+		File recording = folder.newFile();
+		Files.write(recording.toPath(), content.getBytes(CompiledMessage.CHARSET));
+		return recording;
+	}
+
+	private String encode(CompiledMessage message) {
+		byte[] buffer = new byte[message.getMaxEncodedLength()];
+		int length = message.encode(buffer, MESSAGE_TIME_MILLIS, OFFSET_MILLIS, false);
+		return new String(Arrays.copyOf(buffer, length), CompiledMessage.CHARSET);
+	}
+}
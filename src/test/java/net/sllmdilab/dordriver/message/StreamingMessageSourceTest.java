@@ -0,0 +1,44 @@
+package net.sllmdilab.dordriver.message;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.ByteArrayInputStream;
+
+import org.junit.Test;
+
+public class StreamingMessageSourceTest {
+
+	//@formatter:off
+	private static final String ORU_MESSAGE ="MSH|^~\\&|SendingApplication|SendingFacility|ReceivingApplication|ReceivingFacility|20120530112345||ORU^R01^ORU_R01|9879790004|P|2.6\r"+
+			"PID|||010101-2425||Doe^John^^^^^B\r"+
+			"OBR|2||XXX|WAVEFORM|||20150615145531.000|20150615145532.000\r"+
+			"OBX|1001|NA|131329^MDC_ECG_LEAD_I^MDC|1.1.1.1001|0.0^0.029039286658642516|266418^MDC_DIM_MILLI_VOLT^MDC||||||||20150615145531.000\r";
+	private static final String ADT_MESSAGE ="MSH|^~\\&|SendingApplication|SendingFacility|ReceivingApplication|ReceivingFacility|20120530112346||ADT^A01|9879790005|P|2.6\r"+
+			"PID|||010101-2425||Doe^John^^^^^B\r";
+	//@formatter:on
+
+	@Test
+	public void shouldHandOutEachValidMessageCompiledOnce() throws Exception {
+		String malformed = ORU_MESSAGE.replace("9879790004", "9879790005").replace("20150615145532.000", "2015XX");
+		String input = "\u000b" + ORU_MESSAGE + "\u001c\r\n\u000b" + ADT_MESSAGE + "\u001c\r\n\u000b" + malformed
+				+ "\u001c\r\n\u000b" + ORU_MESSAGE.replace("9879790004", "9879790006") + "\u001c\r\n";
+		StreamingMessageSource source = new StreamingMessageSource(new Hl7MessageReader(new ByteArrayInputStream(
+				input.getBytes(CompiledMessage.CHARSET))), 2, Long.MAX_VALUE, 2);
+
+		source.start();
+
+		assertEquals(encode(CompiledMessage.compile(ORU_MESSAGE)), encode(source.take()));
+		assertEquals(encode(CompiledMessage.compile(ORU_MESSAGE.replace("9879790004", "9879790006"))),
+				encode(source.take()));
+		assertNull(source.take());
+		assertNull(source.take());
+		assertEquals(2, source.getReadMessages());
+	}
+
+	private static String encode(CompiledMessage message) {
+		byte[] buffer = new byte[message.getMaxEncodedLength()];
+		int length = message.encode(buffer, 1434376531123L, 0, true);
+		return new String(buffer, 0, length, CompiledMessage.CHARSET);
+	}
+}
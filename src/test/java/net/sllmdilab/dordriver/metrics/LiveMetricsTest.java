@@ -0,0 +1,63 @@
+package net.sllmdilab.dordriver.metrics;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class LiveMetricsTest {
+
+	@Test
+	public void shouldFormatAckLatencyAsPrometheusHistogram() {
+		LiveMetrics metrics = new LiveMetrics();
+		for (long latencyMicros : new long[] { 200, 800, 1000, 3000, 20000000 }) {
+			metrics.messageSent();
+			metrics.messageAcknowledged(latencyMicros);
+		}
+		metrics.messageSent();
+		metrics.rollInterval();
+
+		String text = metrics.formatPrometheus();
+
+		assertTrue(text.contains("# TYPE dordriver_messages_sent_total counter\ndordriver_messages_sent_total 6\n"));
+		assertTrue(text.contains("dordriver_messages_acknowledged_total 5\n"));
+		assertTrue(text.contains("# TYPE dordriver_messages_in_flight gauge\ndordriver_messages_in_flight 1\n"));
+
+		assertTrue(text.contains("# TYPE dordriver_ack_latency_seconds histogram\n"));
+		assertTrue(text.contains("dordriver_ack_latency_seconds_bucket{le=\"0.000500\"} 1\n"));
+		assertTrue(text.contains("dordriver_ack_latency_seconds_bucket{le=\"0.001000\"} 3\n"));
+		assertTrue(text.contains("dordriver_ack_latency_seconds_bucket{le=\"0.005000\"} 4\n"));
+		assertTrue(text.contains("dordriver_ack_latency_seconds_bucket{le=\"10.000000\"} 4\n"));
+		assertTrue(text.contains("dordriver_ack_latency_seconds_bucket{le=\"+Inf\"} 5\n"));
+		assertTrue(text.contains("dordriver_ack_latency_seconds_count 5\n"));
+		assertTrue(text.contains("dordriver_ack_latency_seconds_sum 20."));
+
+		assertTrue(text.contains("# TYPE dordriver_ack_latency_interval_seconds summary\n"));
+		assertTrue(text.contains("dordriver_ack_latency_interval_seconds_count 5\n"));
+	}
+
+	@Test
+	public void shouldKeepBucketsCumulativeAcrossIntervals() {
+		LiveMetrics metrics = new LiveMetrics();
+		metrics.messageAcknowledged(100);
+		metrics.rollInterval();
+		metrics.messageAcknowledged(100);
+		metrics.rollInterval();
+
+		String text = metrics.formatPrometheus();
+
+		assertTrue(text.contains("dordriver_ack_latency_seconds_bucket{le=\"0.000500\"} 2\n"));
+		assertTrue(text.contains("dordriver_ack_latency_interval_seconds_count 1\n"));
+	}
+
+	@Test
+	public void shouldCoverWholeRunAfterClose() {
+		LiveMetrics metrics = new LiveMetrics();
+		metrics.start(60000, false);
+		metrics.messageAcknowledged(100);
+		metrics.messageAcknowledged(200);
+		metrics.close();
+
+		assertEquals(2, metrics.getAckLatencyHistogram().getTotalCount());
+	}
+}
@@ -0,0 +1,112 @@
+package net.sllmdilab.dordriver.mock;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import net.sllmdilab.dordriver.network.AckCode;
+import net.sllmdilab.dordriver.network.AckParser;
+import net.sllmdilab.dordriver.network.MllpClient;
+
+import org.junit.After;
+import org.junit.Test;
+
+import ca.uhn.hl7v2.llp.LLPException;
+
+public class MockDocServerTest {
+
+	private static final byte[] MESSAGE = ("MSH|^~\\&|SendingApplication|SendingFacility|ReceivingApplication|"
+			+ "ReceivingFacility|20120530112345||ORU^R01^ORU_R01|9879790004|P|2.6\rPID|||010101-2425\r")
+			.getBytes(StandardCharsets.ISO_8859_1);
+
+	private MockDocServer server;
+	private MllpClient client;
+
+	@After
+	public void tearDown() {
+		if (client != null) {
+			client.disconnect();
+		}
+		server.close();
+	}
+
+	@Test
+	public void shouldAcknowledgeWithControlIdOfMessage() throws Exception {
+		start(new MockDocServer(0));
+
+		try (Socket socket = new Socket("localhost", server.getPort())) {
+			for (int i = 0; i < 3; ++i) {
+				byte[] ack = sendMessage(socket);
+				assertEquals(AckCode.ACCEPT, AckParser.getAckCode(ack, 0, ack.length));
+				assertEquals("9879790004", AckParser.getAcknowledgedControlId(ack, 0, ack.length));
+				assertEquals("ACK", AckParser.findField(ack, 0, ack.length, "MSH", 9));
+			}
+		}
+		assertEquals(3, server.getReceivedMessages());
+		assertEquals(1, server.getAcceptedConnections());
+	}
+
+	@Test
+	public void shouldAcknowledgeWithErrorsAndDelay() throws Exception {
+		MockDocServer server = new MockDocServer(0);
+		server.setSettings("50", "1", "0", "0");
+		start(server);
+
+		long startNanos = System.nanoTime();
+		assertEquals(AckCode.ERROR, client.sendMessage(MESSAGE, 0, MESSAGE.length));
+		assertTrue(System.nanoTime() - startNanos >= TimeUnit.MILLISECONDS.toNanos(50));
+		assertEquals(1, server.getApplicationErrors());
+	}
+
+	@Test
+	public void shouldDropConnections() throws Exception {
+		MockDocServer server = new MockDocServer(0);
+		server.setDropRate(1);
+		start(server);
+
+		try {
+			client.sendMessage(MESSAGE, 0, MESSAGE.length);
+			fail("Acknowledged");
+		} catch (LLPException | IOException e) {
+			// Expected
+		}
+		assertEquals(1, server.getDroppedConnections());
+	}
+
+	private void start(MockDocServer server) throws IOException {
+		this.server = server;
+		server.setSeed(0);
+		server.start();
+		client = new MllpClient("localhost", server.getPort());
+	}
+
+	/**
+	 * Sends the message MLLP framed and returns the acknowledgement without framing.
+	 */
+	private static byte[] sendMessage(Socket socket) throws IOException {
+		OutputStream out = socket.getOutputStream();
+		out.write(MllpClient.START_BLOCK);
+		out.write(MESSAGE);
+		out.write(MllpClient.END_BLOCK);
+		out.write(MllpClient.CARRIAGE_RETURN);
+		out.flush();
+
+		InputStream in = socket.getInputStream();
+		ByteArrayOutputStream ack = new ByteArrayOutputStream();
+		assertEquals(MllpClient.START_BLOCK, in.read());
+		int b;
+		while ((b = in.read()) != MllpClient.END_BLOCK) {
+			ack.write(b);
+		}
+		assertEquals(MllpClient.CARRIAGE_RETURN, in.read());
+		return ack.toByteArray();
+	}
+}
@@ -0,0 +1,48 @@
+package net.sllmdilab.dordriver.network;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Test;
+
+public class AckParserTest {
+
+	//@formatter:off
+	private static final String ACK ="MSH|^~\\&|ReceivingApplication|ReceivingFacility|SendingApplication|SendingFacility|20150615145531||ACK^R01^ACK|1234|P|2.6\r"+
+			"MSA|AA|9879790004\r";
+	//@formatter:on
+
+	@Test
+	public void shouldGetAckCode() {
+		assertEquals(AckCode.ACCEPT, getAckCode(ACK));
+		assertEquals(AckCode.ERROR, getAckCode(ACK.replace("MSA|AA", "MSA|AE")));
+		assertEquals(AckCode.REJECT, getAckCode(ACK.replace("MSA|AA", "MSA|AR")));
+		assertEquals(AckCode.ERROR, getAckCode(ACK.replace("MSA|AA", "MSA|CE")));
+		assertEquals(AckCode.ACCEPT, getAckCode(ACK.replace("MSA|AA|9879790004\r", "MSA|AA")));
+	}
+
+	@Test
+	public void shouldNotGetInvalidAckCode() {
+		assertNull(getAckCode(ACK.replace("MSA|AA", "MSA|AAA")));
+		assertNull(getAckCode(ACK.replace("MSA|AA", "MSA|XA")));
+		assertNull(getAckCode(ACK.replace("MSA|AA", "MSA|")));
+		assertNull(getAckCode(ACK.replace("MSA|AA|9879790004\r", "")));
+	}
+
+	@Test
+	public void shouldGetAcknowledgedControlId() {
+		byte[] bytes = ("xx" + ACK).getBytes(StandardCharsets.ISO_8859_1);
+
+		assertEquals("9879790004", AckParser.getAcknowledgedControlId(bytes, 2, bytes.length - 2));
+		assertEquals("1234", AckParser.findField(bytes, 2, bytes.length - 2, "MSH", 10));
+		assertEquals("ACK", AckParser.findField(bytes, 2, bytes.length - 2, "MSH", 9));
+		assertEquals("", AckParser.findField(bytes, 2, bytes.length - 2, "MSA", 3));
+	}
+
+	private AckCode getAckCode(String ack) {
+		byte[] bytes = ack.getBytes(StandardCharsets.ISO_8859_1);
+		return AckParser.getAckCode(bytes, 0, bytes.length);
+	}
+}
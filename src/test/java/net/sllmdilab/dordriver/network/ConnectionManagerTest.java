@@ -0,0 +1,130 @@
+package net.sllmdilab.dordriver.network;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.net.ConnectException;
+import java.util.Random;
+
+import org.junit.Test;
+
+import ca.uhn.hl7v2.HL7Exception;
+
+public class ConnectionManagerTest {
+
+	@Test
+	public void shouldBackOffExponentiallyWithJitter() {
+		ReconnectBackoff backoff = new ReconnectBackoff(100, 1000, new Random(0));
+
+		long[] ceilings = { 100, 200, 400, 800, 1000, 1000 };
+		for (long ceiling : ceilings) {
+			long delay = backoff.nextDelayMillis();
+			assertTrue(delay + " > " + ceiling, delay >= 0 && delay <= ceiling);
+		}
+		assertEquals(1000, backoff.getCeilingMillis(100));
+
+		backoff.reset();
+		assertEquals(0, backoff.getFailures());
+		assertTrue(backoff.nextDelayMillis() <= 100);
+	}
+
+	@Test
+	public void shouldRetryUntilConnected() throws Exception {
+		FlakyConnection connection = new FlakyConnection(3);
+		CountingListener listener = new CountingListener();
+		ConnectionManager manager = new ConnectionManager(new ReconnectBackoff(0, 0), 5);
+		manager.setListener(listener);
+
+		manager.connect(connection);
+
+		assertTrue(connection.isOpen());
+		assertEquals(3, listener.failures);
+		assertEquals(1, listener.connects);
+		assertEquals(0, listener.reconnects);
+
+		connection.open = false;
+		manager.ensureOpen(connection);
+
+		assertEquals(1, listener.reconnects);
+	}
+
+	@Test
+	public void shouldGiveUpAfterMaxAttempts() throws Exception {
+		FlakyConnection connection = new FlakyConnection(10);
+		CountingListener listener = new CountingListener();
+		ConnectionManager manager = new ConnectionManager(new ReconnectBackoff(0, 0), 4);
+		manager.setListener(listener);
+
+		try {
+			manager.connect(connection);
+			fail("Connected");
+		} catch (ConnectException e) {
+			// Expected
+		}
+
+		assertFalse(connection.isOpen());
+		assertEquals(4, listener.failures);
+		assertEquals(0, listener.connects);
+	}
+
+	private static class FlakyConnection implements Connectable {
+		private int remainingFailures;
+		private int connectCount;
+		private boolean open;
+
+		FlakyConnection(int failures) {
+			this.remainingFailures = failures;
+		}
+
+		@Override
+		public void connect() throws IOException, HL7Exception {
+			if (remainingFailures > 0) {
+				--remainingFailures;
+				throw new ConnectException("Connection refused");
+			}
+			open = true;
+			++connectCount;
+		}
+
+		@Override
+		public void disconnect() {
+			open = false;
+		}
+
+		@Override
+		public boolean isOpen() {
+			return open;
+		}
+
+		@Override
+		public void setAddress(String host, int port) {
+		}
+
+		@Override
+		public int getConnectCount() {
+			return connectCount;
+		}
+	}
+
+	private static class CountingListener implements ConnectionListener {
+		int connects;
+		int reconnects;
+		int failures;
+
+		@Override
+		public void connected(long connectNanos, boolean reconnect) {
+			++connects;
+			if (reconnect) {
+				++reconnects;
+			}
+		}
+
+		@Override
+		public void connectFailed(Exception e) {
+			++failures;
+		}
+	}
+}
@@ -0,0 +1,110 @@
+package net.sllmdilab.dordriver.network;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import net.sllmdilab.dordriver.mock.MockDocServer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ConnectionPoolTest {
+
+	private static final byte[] MESSAGE = "MSH|^~\\&|DOR|DOR|DOC|DOC|20120530112345||ORU^R01^ORU_R01|1|P|2.6\rPID|||1\r"
+			.getBytes(StandardCharsets.ISO_8859_1);
+
+	private MockDocServer server;
+	private ConnectionPool pool;
+	private ConnectionManager manager = new ConnectionManager(new ReconnectBackoff(0, 0), 3);
+
+	@Before
+	public void setup() throws Exception {
+		server = new MockDocServer(0);
+		server.start();
+		pool = new ConnectionPool("localhost", server.getPort(), 2, false);
+	}
+
+	@After
+	public void tearDown() {
+		pool.close();
+		server.close();
+	}
+
+	@Test
+	public void shouldReuseReturnedConnections() throws Exception {
+		for (int i = 0; i < 4; ++i) {
+			MllpClient client = pool.acquire();
+			manager.ensureOpen(client);
+			assertEquals(AckCode.ACCEPT, client.sendMessage(MESSAGE, 0, MESSAGE.length));
+			pool.release(client);
+		}
+
+		// Connections are handed out in turn, each is established once
+		assertEquals(2, pool.size());
+		assertEquals(4, server.getReceivedMessages());
+		assertEquals(2, server.getAcceptedConnections());
+	}
+
+	@Test
+	public void shouldBlockUntilConnectionIsReturned() throws Exception {
+		MllpClient first = pool.acquire();
+		MllpClient second = pool.acquire();
+		assertNotSame(first, second);
+
+		CompletableFuture<MllpClient> third = CompletableFuture.supplyAsync(() -> {
+			try {
+				return pool.acquire();
+			} catch (InterruptedException e) {
+				throw new IllegalStateException(e);
+			}
+		});
+		try {
+			third.get(200, TimeUnit.MILLISECONDS);
+			throw new AssertionError("Acquired a connection from an exhausted pool");
+		} catch (TimeoutException e) {
+			// Expected
+		}
+
+		pool.release(second);
+		assertSame(second, third.get(5, TimeUnit.SECONDS));
+		pool.release(first);
+		pool.release(second);
+	}
+
+	@Test
+	public void shouldReconnectClosedConnection() throws Exception {
+		pool.close();
+		pool = new ConnectionPool("localhost", server.getPort(), 1, false);
+		MllpClient client = pool.acquire();
+		manager.ensureOpen(client);
+		pool.release(client);
+
+		// E.g. closed by a failed send of another borrower
+		pool.close();
+		MllpClient borrowed = pool.acquire();
+		assertSame(client, borrowed);
+		assertFalse(borrowed.isOpen());
+
+		manager.ensureOpen(borrowed);
+
+		assertTrue(borrowed.isOpen());
+		assertEquals(2, borrowed.getConnectCount());
+		assertEquals(AckCode.ACCEPT, borrowed.sendMessage(MESSAGE, 0, MESSAGE.length));
+		pool.release(borrowed);
+		assertEquals(2, server.getAcceptedConnections());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void shouldRejectEmptyPool() {
+		new ConnectionPool("localhost", server.getPort(), 0, false);
+	}
+}
@@ -0,0 +1,78 @@
+package net.sllmdilab.dordriver.network;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+public class LoadBalancerTest {
+
+	@Test
+	public void shouldParseEndpoints() {
+		List<Endpoint> endpoints = Endpoint.parseList("doc1, doc2:2576,,10.0.0.3", 2575);
+
+		assertEquals("[doc1:2575, doc2:2576, 10.0.0.3:2575]", endpoints.toString());
+	}
+
+	@Test
+	public void shouldPlaceRoundRobin() {
+		List<Endpoint> endpoints = Endpoint.parseList("a,b,c", 2575);
+		LoadBalancer loadBalancer = new LoadBalancer(BalancingPolicy.ROUND_ROBIN, endpoints);
+
+		for (int i = 0; i < 9; ++i) {
+			assertSame(endpoints.get(i % 3), loadBalancer.place(i, null));
+		}
+		assertEquals(3, endpoints.get(0).getDevices());
+	}
+
+	@Test
+	public void shouldOnlyMoveDevicesOfRemovedEndpointWhenHashing() {
+		List<Endpoint> endpoints = Endpoint.parseList("a,b,c,d", 2575);
+		LoadBalancer all = new LoadBalancer(BalancingPolicy.HASH, endpoints);
+		LoadBalancer withoutD = new LoadBalancer(BalancingPolicy.HASH, endpoints.subList(0, 3));
+
+		Map<Endpoint, Integer> counts = new HashMap<>();
+		for (int i = 0; i < 1000; ++i) {
+			Endpoint endpoint = all.select(i);
+			assertSame(endpoint, all.select(i));
+			if (endpoint != endpoints.get(3)) {
+				assertSame(endpoint, withoutD.select(i));
+			}
+			counts.put(endpoint, counts.containsKey(endpoint) ? counts.get(endpoint) + 1 : 1);
+		}
+
+		for (Endpoint endpoint : endpoints) {
+			assertTrue(endpoint + " got " + counts.get(endpoint), counts.get(endpoint) > 150);
+		}
+	}
+
+	@Test
+	public void shouldPlaceOnLeastOutstandingReachableEndpoint() {
+		List<Endpoint> endpoints = Arrays.asList(new Endpoint("a", 1), new Endpoint("b", 1), new Endpoint("c", 1));
+		LoadBalancer loadBalancer = new LoadBalancer(BalancingPolicy.LEAST_OUTSTANDING, endpoints);
+
+		endpoints.get(0).messageSent();
+		endpoints.get(1).messageSent();
+		assertSame(endpoints.get(2), loadBalancer.place(0, null));
+
+		// Ties are broken by the number of devices
+		endpoints.get(0).messagesFailed(1);
+		endpoints.get(1).messageAcknowledged(AckCode.ACCEPT, 100);
+		assertSame(endpoints.get(0), loadBalancer.place(1, null));
+
+		endpoints.get(1).connectFailed();
+		endpoints.get(0).messageSent();
+		endpoints.get(2).messageSent();
+		assertSame(endpoints.get(0), loadBalancer.place(2, null));
+
+		Endpoint moved = loadBalancer.place(2, endpoints.get(0));
+		assertSame(endpoints.get(0), moved);
+		assertEquals(2, endpoints.get(0).getDevices());
+	}
+}
@@ -0,0 +1,145 @@
+package net.sllmdilab.dordriver.network;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.GatheringByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+public class MllpFrameWriterTest {
+
+	private static final byte[] MESSAGE = "MSH|^~\\&|DOR|DOR|DOC|DOC|20120530112345||ORU^R01^ORU_R01|1|P|2.6\rPID|||1\r"
+			.getBytes(StandardCharsets.ISO_8859_1);
+
+	@Test
+	public void shouldWriteStartBlockMessageEndBlockAndCarriageReturn() throws Exception {
+		RecordingChannel channel = new RecordingChannel(Integer.MAX_VALUE);
+		MllpFrameWriter writer = new MllpFrameWriter(channel);
+
+		writer.write(MESSAGE, 0, MESSAGE.length);
+
+		assertArrayEquals(frame(MESSAGE), channel.bytes.toByteArray());
+		assertEquals(1, channel.writes);
+		writer.releaseBuffer();
+	}
+
+	@Test
+	public void shouldCompleteFrameAcrossPartialWrites() throws Exception {
+		RecordingChannel channel = new RecordingChannel(7);
+		MllpFrameWriter writer = new MllpFrameWriter(channel);
+		byte[] padded = new byte[MESSAGE.length + 4];
+		System.arraycopy(MESSAGE, 0, padded, 2, MESSAGE.length);
+
+		writer.write(padded, 2, MESSAGE.length);
+		writer.write(MESSAGE, 0, MESSAGE.length);
+
+		ByteArrayOutputStream expected = new ByteArrayOutputStream();
+		expected.write(frame(MESSAGE));
+		expected.write(frame(MESSAGE));
+		assertArrayEquals(expected.toByteArray(), channel.bytes.toByteArray());
+		assertTrue(channel.writes > 2 * frame(MESSAGE).length / 7);
+		writer.releaseBuffer();
+	}
+
+	@Test
+	public void shouldReuseMessageBufferAndReturnItToPool() throws Exception {
+		RecordingChannel channel = new RecordingChannel(Integer.MAX_VALUE);
+		MllpFrameWriter writer = new MllpFrameWriter(channel);
+		byte[] message = new byte[300000];
+
+		writer.write(message, 0, message.length);
+		writer.write(message, 0, 1000);
+
+		ByteBuffer body = channel.bodies.get(0);
+		assertEquals(2, channel.bodies.size());
+		assertSame(body, channel.bodies.get(1));
+		assertTrue(body.isDirect());
+
+		writer.releaseBuffer();
+		ByteBuffer acquired = DirectBufferPool.acquire(message.length);
+		assertSame(body, acquired);
+		assertEquals(0, acquired.position());
+		assertEquals(acquired.capacity(), acquired.limit());
+		DirectBufferPool.release(acquired);
+	}
+
+	@Test
+	public void shouldPoolBuffersByPowerOfTwoCapacity() {
+		ByteBuffer buffer = DirectBufferPool.acquire(600000);
+		assertEquals(1 << 20, buffer.capacity());
+		assertEquals(4096, DirectBufferPool.acquire(1).capacity());
+
+		DirectBufferPool.release(buffer);
+		assertSame(buffer, DirectBufferPool.acquire(1 << 20));
+
+		// Buffers that were not acquired from the pool are not taken back
+		ByteBuffer heapBuffer = ByteBuffer.allocate(1 << 20);
+		DirectBufferPool.release(heapBuffer);
+		assertNotSame(heapBuffer, DirectBufferPool.acquire(1 << 20));
+	}
+
+	private static byte[] frame(byte[] message) {
+		byte[] frame = new byte[message.length + 3];
+		frame[0] = MllpClient.START_BLOCK;
+		System.arraycopy(message, 0, frame, 1, message.length);
+		frame[frame.length - 2] = MllpClient.END_BLOCK;
+		frame[frame.length - 1] = MllpClient.CARRIAGE_RETURN;
+		return frame;
+	}
+
+	/**
+	 * Accepts at most maxBytes per write, like a socket channel with a full send buffer.
+	 */
+	private static class RecordingChannel implements GatheringByteChannel {
+		private final int maxBytes;
+		private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		private final List<ByteBuffer> bodies = new ArrayList<>();
+		private int writes;
+
+		public RecordingChannel(int maxBytes) {
+			this.maxBytes = maxBytes;
+		}
+
+		@Override
+		public long write(ByteBuffer[] srcs, int offset, int length) {
+			bodies.add(srcs[offset + 1]);
+			++writes;
+			long written = 0;
+			for (int i = offset; i < offset + length && written < maxBytes; ++i) {
+				while (srcs[i].hasRemaining() && written < maxBytes) {
+					bytes.write(srcs[i].get());
+					++written;
+				}
+			}
+			return written;
+		}
+
+		@Override
+		public long write(ByteBuffer[] srcs) {
+			return write(srcs, 0, srcs.length);
+		}
+
+		@Override
+		public int write(ByteBuffer src) {
+			return (int) write(new ByteBuffer[] { src });
+		}
+
+		@Override
+		public boolean isOpen() {
+			return true;
+		}
+
+		@Override
+		public void close() {
+		}
+	}
+}
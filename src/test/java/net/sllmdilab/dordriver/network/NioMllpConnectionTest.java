@@ -0,0 +1,164 @@
+package net.sllmdilab.dordriver.network;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.channels.SelectionKey;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import ca.uhn.hl7v2.llp.LLPException;
+
+public class NioMllpConnectionTest {
+
+	private ServerSocket serverSocket;
+	private SelectorLoop loop;
+
+	@Before
+	public void setup() throws IOException {
+		serverSocket = new ServerSocket(0, 1, InetAddress.getLoopbackAddress());
+		loop = new SelectorLoop("test-selector");
+		loop.start();
+	}
+
+	@After
+	public void tearDown() throws IOException {
+		loop.shutdown();
+		serverSocket.close();
+	}
+
+	@Test
+	public void shouldSendFrameAndReadResponseArrivingInParts() throws Exception {
+		// Both larger than the initial buffers, so that they have to grow
+		byte[] message = filled(3000, 'M');
+		byte[] response = filled(5000, 'A');
+		byte[][] received = new byte[1][];
+
+		Thread server = new Thread(() -> {
+			try (Socket socket = serverSocket.accept()) {
+				received[0] = readFrame(new BufferedInputStream(socket.getInputStream()));
+				OutputStream out = socket.getOutputStream();
+				byte[] frame = frame(response);
+				out.write(frame, 0, 100);
+				out.flush();
+				Thread.sleep(200);
+				out.write(frame, 100, frame.length - 100);
+				out.flush();
+				socket.getInputStream().read();
+			} catch (Exception e) {
+				throw new IllegalStateException(e);
+			}
+		});
+		server.setDaemon(true);
+		server.start();
+
+		Client client = new Client(message);
+		loop.register(client);
+
+		assertTrue(client.done.await(5, TimeUnit.SECONDS));
+		assertArrayEquals(frame(message), received[0]);
+		assertArrayEquals(response, Arrays.copyOf(client.connection.getResponse(),
+				client.connection.getResponseLength()));
+		assertTrue("Reads: " + client.reads, client.reads >= 2);
+		assertTrue(client.timerFired);
+		client.connection.close();
+	}
+
+	/**
+	 * Connects, writes one message, reads one response and checks that a timer scheduled meanwhile fires.
+	 */
+	private class Client implements NioHandler {
+		private final byte[] message;
+		private final CountDownLatch done = new CountDownLatch(1);
+		private NioMllpConnection connection;
+		private volatile int reads;
+		private volatile boolean timerFired;
+
+		public Client(byte[] message) {
+			this.message = message;
+		}
+
+		@Override
+		public void start(SelectorLoop loop) {
+			try {
+				connection = NioMllpConnection.open(new InetSocketAddress(InetAddress.getLoopbackAddress(),
+						serverSocket.getLocalPort()));
+				connection.getChannel().register(loop.getSelector(), SelectionKey.OP_CONNECT, this);
+				loop.schedule(this, System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(50));
+			} catch (IOException e) {
+				throw new IllegalStateException(e);
+			}
+		}
+
+		@Override
+		public void handleKey(SelectionKey key) {
+			try {
+				if (key.isConnectable()) {
+					if (connection.finishConnect()) {
+						byte[] buffer = connection.beginMessage(message.length);
+						System.arraycopy(message, 0, buffer, connection.getMessageOffset(), message.length);
+						connection.endMessage(message.length);
+						key.interestOps(SelectionKey.OP_WRITE);
+					}
+				} else if (key.isWritable()) {
+					if (connection.write()) {
+						key.interestOps(SelectionKey.OP_READ);
+					}
+				} else if (key.isReadable()) {
+					++reads;
+					if (connection.read()) {
+						key.interestOps(0);
+						done.countDown();
+					}
+				}
+			} catch (IOException | LLPException e) {
+				throw new IllegalStateException(e);
+			}
+		}
+
+		@Override
+		public void handleTimer() {
+			timerFired = true;
+		}
+	}
+
+	private static byte[] readFrame(InputStream in) throws IOException {
+		byte[] frame = new byte[0];
+		int b;
+		do {
+			b = in.read();
+			frame = Arrays.copyOf(frame, frame.length + 1);
+			frame[frame.length - 1] = (byte) b;
+		} while (b != MllpClient.CARRIAGE_RETURN && b != -1);
+		return frame;
+	}
+
+	private static byte[] frame(byte[] body) {
+		byte[] frame = new byte[body.length + 3];
+		frame[0] = MllpClient.START_BLOCK;
+		System.arraycopy(body, 0, frame, 1, body.length);
+		frame[body.length + 1] = MllpClient.END_BLOCK;
+		frame[body.length + 2] = MllpClient.CARRIAGE_RETURN;
+		return frame;
+	}
+
+	private static byte[] filled(int length, char c) {
+		byte[] bytes = new byte[length];
+		Arrays.fill(bytes, (byte) c);
+		return bytes;
+	}
+}
@@ -0,0 +1,144 @@
+package net.sllmdilab.dordriver.network;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class PipelinedMllpClientTest {
+
+	private ServerSocket serverSocket;
+	private PipelinedMllpClient client;
+	private RecordingListener listener = new RecordingListener();
+	private final CountDownLatch acksAllowed = new CountDownLatch(1);
+
+	@Before
+	public void setup() throws IOException {
+		serverSocket = new ServerSocket(0, 1, InetAddress.getLoopbackAddress());
+		client = new PipelinedMllpClient("localhost", serverSocket.getLocalPort(), 4, listener);
+		client.setTimeoutMillis(5000);
+	}
+
+	@After
+	public void tearDown() throws IOException {
+		client.disconnect();
+		serverSocket.close();
+	}
+
+	@Test
+	public void shouldMatchAcknowledgementsOutOfOrderByControlId() throws Exception {
+		// Acknowledges all three messages at once, in reverse order and with a duplicate control ID
+		Thread server = serve(3, false, "C", "A", "B", "A");
+		client.connect();
+
+		client.sendMessage(message("A"), 0, message("A").length);
+		client.sendMessage(message("B"), 0, message("B").length);
+		client.sendMessage(message("A"), 0, message("A").length);
+		assertEquals(3, client.getInFlightCount());
+		acksAllowed.countDown();
+
+		// The window is released only when both acknowledgements of A arrived, the unknown C is ignored
+		assertTrue(client.awaitAcknowledgements(5000));
+		server.join(5000);
+
+		assertEquals(0, client.getInFlightCount());
+		assertEquals(listener.acknowledged.toString(), 3, listener.acknowledged.size());
+		Collections.sort(listener.acknowledged);
+		assertEquals("[A ACCEPT, A ACCEPT, B ACCEPT]", listener.acknowledged.toString());
+		assertEquals(0, listener.lost);
+	}
+
+	@Test
+	public void shouldReportUnacknowledgedMessagesAsLostWhenConnectionCloses() throws Exception {
+		Thread server = serve(3, true, "B");
+		acksAllowed.countDown();
+		client.connect();
+
+		for (String controlId : new String[] { "A", "B", "C" }) {
+			client.sendMessage(message(controlId), 0, message(controlId).length);
+		}
+		server.join(5000);
+
+		assertTrue(listener.lostLatch.await(5, TimeUnit.SECONDS));
+		assertEquals(2, listener.lost);
+		assertEquals("[B ACCEPT]", listener.acknowledged.toString());
+		assertFalse(client.isOpen());
+		assertFalse(client.awaitAcknowledgements(0));
+	}
+
+	/**
+	 * Accepts one connection, reads the given number of messages and then, once allowed, writes acknowledgements for
+	 * the control IDs.
+	 */
+	private Thread serve(int messages, boolean close, String... ackControlIds) {
+		Thread thread = new Thread(() -> {
+			try (Socket socket = serverSocket.accept()) {
+				InputStream in = new BufferedInputStream(socket.getInputStream());
+				MllpFrameReader reader = new MllpFrameReader();
+				for (int i = 0; i < messages; ++i) {
+					reader.read(in);
+				}
+				acksAllowed.await();
+				OutputStream out = socket.getOutputStream();
+				for (String controlId : ackControlIds) {
+					out.write(MllpClient.START_BLOCK);
+					out.write(("MSH|^~\\&|DOC|DOC|DOR|DOR|20150615145531||ACK^R01^ACK|" + controlId + "|P|2.6\rMSA|AA|"
+							+ controlId + "\r").getBytes(StandardCharsets.ISO_8859_1));
+					out.write(MllpClient.END_BLOCK);
+					out.write(MllpClient.CARRIAGE_RETURN);
+				}
+				out.flush();
+				if (!close) {
+					// Keep the connection open until the client disconnects
+					while (in.read() != -1) {
+					}
+				}
+			} catch (Exception e) {
+				throw new IllegalStateException(e);
+			}
+		});
+		thread.setDaemon(true);
+		thread.start();
+		return thread;
+	}
+
+	private static byte[] message(String controlId) {
+		return ("MSH|^~\\&|DOR|DOR|DOC|DOC|20120530112345||ORU^R01^ORU_R01|" + controlId + "|P|2.6\rPID|||1\r")
+				.getBytes(StandardCharsets.ISO_8859_1);
+	}
+
+	private static class RecordingListener implements AckListener {
+		private final List<String> acknowledged = Collections.synchronizedList(new ArrayList<>());
+		private final CountDownLatch lostLatch = new CountDownLatch(1);
+		private volatile int lost;
+
+		@Override
+		public void messageAcknowledged(String controlId, AckCode ackCode, long latencyNanos) {
+			assertTrue(latencyNanos >= 0);
+			acknowledged.add(controlId + " " + ackCode);
+		}
+
+		@Override
+		public void messagesLost(int count) {
+			lost = count;
+			lostLatch.countDown();
+		}
+	}
+}